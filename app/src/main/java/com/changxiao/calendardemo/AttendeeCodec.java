@@ -0,0 +1,32 @@
+package com.changxiao.calendardemo;
+
+import android.provider.CalendarContract.Attendees;
+import android.text.TextUtils;
+
+/**
+ * 参与人表的编码
+ *
+ * Created by Chang.Xiao on 2019/6/5.
+ *
+ * @version 1.0
+ */
+final class AttendeeCodec {
+
+  private AttendeeCodec() {
+  }
+
+  /**
+   * 编码参与人，不含 EVENT_ID；邮箱为空时不写
+   * @param model
+   * @param out
+   */
+  static void encode(AttendeeModel model, ColumnWriter out) {
+    out.put(Attendees.ATTENDEE_NAME, model.getName());
+    out.put(Attendees.ATTENDEE_RELATIONSHIP, model.getRelationship());
+    out.put(Attendees.ATTENDEE_TYPE, model.getType());
+    out.put(Attendees.ATTENDEE_STATUS, model.getStatus());
+    if (!TextUtils.isEmpty(model.getEmail())) {
+      out.put(Attendees.ATTENDEE_EMAIL, model.getEmail());
+    }
+  }
+}
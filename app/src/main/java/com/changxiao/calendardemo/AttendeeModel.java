@@ -0,0 +1,75 @@
+package com.changxiao.calendardemo;
+
+/**
+ * 日程参与人 model
+ *
+ * Created by Chang.Xiao on 2019/5/6.
+ *
+ * @version 1.0
+ */
+public class AttendeeModel {
+
+  private long id;
+  private long eventId;
+  private String name; // 参与者姓名
+  private String email; // 参与者电子邮件
+  private int relationship = 1; // 与会者与事件的关系：无(0)，参与者(1)，组织者(2)，执行者(3)，发言人(4)
+  private int type = 2; // 与会者的类型：无(0)，必须(1)，可选(2)，资源(3)
+  private int status = 3; // 与会者的状态：无(0)，接受(1)，拒绝(2)，邀请(3)，暂定(4)
+
+  public long getId() {
+    return id;
+  }
+
+  public void setId(long id) {
+    this.id = id;
+  }
+
+  public long getEventId() {
+    return eventId;
+  }
+
+  public void setEventId(long eventId) {
+    this.eventId = eventId;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public String getEmail() {
+    return email;
+  }
+
+  public void setEmail(String email) {
+    this.email = email;
+  }
+
+  public int getRelationship() {
+    return relationship;
+  }
+
+  public void setRelationship(int relationship) {
+    this.relationship = relationship;
+  }
+
+  public int getType() {
+    return type;
+  }
+
+  public void setType(int type) {
+    this.type = type;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public void setStatus(int status) {
+    this.status = status;
+  }
+}
@@ -0,0 +1,39 @@
+package com.changxiao.calendardemo;
+
+import android.database.Cursor;
+import android.provider.CalendarContract.Attendees;
+
+/**
+ * 参与人表行映射，对应 {@link CalendarManager#ATTENDEES_COLUMNS}
+ *
+ * Created by Chang.Xiao on 2019/5/10.
+ *
+ * @version 1.0
+ */
+public class AttendeeRowMapper extends RowMapper<AttendeeModel> {
+
+  private final int idIndex;
+  private final int eventIdIndex;
+  private final int nameIndex;
+  private final int emailIndex;
+  private final int statusIndex;
+
+  public AttendeeRowMapper(Cursor cursor) {
+    idIndex = cursor.getColumnIndexOrThrow(Attendees._ID);
+    eventIdIndex = cursor.getColumnIndexOrThrow(Attendees.EVENT_ID);
+    nameIndex = cursor.getColumnIndexOrThrow(Attendees.ATTENDEE_NAME);
+    emailIndex = cursor.getColumnIndexOrThrow(Attendees.ATTENDEE_EMAIL);
+    statusIndex = cursor.getColumnIndexOrThrow(Attendees.ATTENDEE_STATUS);
+  }
+
+  @Override
+  public AttendeeModel map(Cursor cursor) {
+    AttendeeModel attendee = new AttendeeModel();
+    attendee.setId(cursor.getLong(idIndex));
+    attendee.setEventId(cursor.getLong(eventIdIndex));
+    attendee.setName(cursor.getString(nameIndex));
+    attendee.setEmail(cursor.getString(emailIndex));
+    attendee.setStatus(cursor.getInt(statusIndex));
+    return attendee;
+  }
+}
@@ -0,0 +1,23 @@
+package com.changxiao.calendardemo;
+
+/**
+ * 日历异步操作回调，在主线程回调
+ *
+ * Created by Chang.Xiao on 2019/5/13.
+ *
+ * @version 1.0
+ */
+public interface CalendarCallback<T> {
+
+  /**
+   * 操作完成
+   * @param result
+   */
+  void onSuccess(T result);
+
+  /**
+   * 操作抛出异常（如没有日历权限）
+   * @param e
+   */
+  void onError(Throwable e);
+}
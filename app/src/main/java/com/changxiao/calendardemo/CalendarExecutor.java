@@ -0,0 +1,186 @@
+package com.changxiao.calendardemo;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 日历 provider 读写的后台线程池
+ *
+ * 线程数固定上限（默认 {@link #DEFAULT_POOL_SIZE}），空闲后自动回收；线程命名为 CalendarManager-io-N，方便在 trace 中定位。
+ * 等待队列有容量上限（默认 {@link #DEFAULT_QUEUE_CAPACITY}），provider 变慢时不会无限堆积任务；
+ * 队列满时拒绝新任务：submit 的任务以 RejectedExecutionException 失败（有回调时回调 onError），execute 直接抛出。
+ * 任务结果通过主线程 Handler 回调给 {@link CalendarCallback}
+ *
+ * Created by Chang.Xiao on 2019/5/13.
+ *
+ * @version 1.0
+ */
+public class CalendarExecutor {
+
+  public static final int DEFAULT_POOL_SIZE = 2;
+  public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  /** 队列满或已 shutdown 时让 submit 的任务失败，execute 的任务抛出异常 */
+  private static final RejectedExecutionHandler REJECT = new RejectedExecutionHandler() {
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+      RejectedExecutionException e = new RejectedExecutionException(executor.isShutdown()
+          ? "calendar executor shut down"
+          : "calendar task queue full: " + executor.getQueue().size() + " pending");
+      if (r instanceof CalendarExecutor.CallbackTask) {
+        ((CalendarExecutor.CallbackTask<?>) r).reject(e);
+        return;
+      }
+      throw e;
+    }
+  };
+
+  private final ThreadPoolExecutor mExecutor;
+  private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+  public CalendarExecutor(int poolSize) {
+    this(poolSize, "CalendarManager-io");
+  }
+
+  /**
+   * @param poolSize 线程数
+   * @param threadName 线程名前缀，线程命名为 threadName-N
+   */
+  public CalendarExecutor(int poolSize, String threadName) {
+    this(poolSize, DEFAULT_QUEUE_CAPACITY, threadName);
+  }
+
+  /**
+   * @param poolSize 线程数
+   * @param queueCapacity 等待队列容量，队列满时拒绝新任务
+   * @param threadName 线程名前缀，线程命名为 threadName-N
+   */
+  public CalendarExecutor(int poolSize, int queueCapacity, final String threadName) {
+    if (poolSize <= 0) {
+      throw new IllegalArgumentException("poolSize must be > 0");
+    }
+    if (queueCapacity <= 0) {
+      throw new IllegalArgumentException("queueCapacity must be > 0");
+    }
+    mExecutor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+          private final AtomicInteger mCount = new AtomicInteger(1);
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, threadName + "-" + mCount.getAndIncrement());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+          }
+        }, REJECT);
+    mExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * 调整线程数，已提交的任务不受影响
+   * @param poolSize
+   */
+  public void setPoolSize(int poolSize) {
+    if (poolSize <= 0) {
+      throw new IllegalArgumentException("poolSize must be > 0");
+    }
+    if (poolSize > mExecutor.getMaximumPoolSize()) {
+      mExecutor.setMaximumPoolSize(poolSize);
+      mExecutor.setCorePoolSize(poolSize);
+    } else {
+      mExecutor.setCorePoolSize(poolSize);
+      mExecutor.setMaximumPoolSize(poolSize);
+    }
+  }
+
+  public int getPoolSize() {
+    return mExecutor.getMaximumPoolSize();
+  }
+
+  /**
+   * 提交任务
+   * @param task
+   * @param callback 可以为空；不为空时在主线程回调，任务被取消则不回调
+   * @return 队列已满时返回已失败的 Future，get() 抛出原因为 RejectedExecutionException 的 ExecutionException
+   */
+  public <T> Future<T> submit(Callable<T> task, CalendarCallback<T> callback) {
+    CallbackTask<T> future = new CallbackTask<>(task, callback);
+    mExecutor.execute(future);
+    return future;
+  }
+
+  /**
+   * 完成后在主线程回调的任务
+   */
+  private final class CallbackTask<T> extends FutureTask<T> {
+
+    private final CalendarCallback<T> mCallback;
+
+    CallbackTask(Callable<T> task, CalendarCallback<T> callback) {
+      super(task);
+      mCallback = callback;
+    }
+
+    /**
+     * 队列已满，任务不再执行，以 e 失败
+     * @param e
+     */
+    void reject(RejectedExecutionException e) {
+      setException(e);
+    }
+
+    @Override
+    protected void done() {
+      if (mCallback == null || isCancelled()) {
+        return;
+      }
+      try {
+        final T result = get();
+        mMainHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            mCallback.onSuccess(result);
+          }
+        });
+      } catch (final ExecutionException e) {
+        mMainHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            mCallback.onError(e.getCause());
+          }
+        });
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * 不再接受新任务，已提交的任务执行完后线程退出；之后提交的任务以 RejectedExecutionException 失败
+   */
+  public void shutdown() {
+    mExecutor.shutdown();
+  }
+
+  /**
+   * 在后台线程执行，不需要结果
+   * @param task
+   * @throws RejectedExecutionException 队列已满
+   */
+  public void execute(Runnable task) {
+    mExecutor.execute(task);
+  }
+}
@@ -1,25 +1,38 @@
 package com.changxiao.calendardemo;
 
+import android.content.BroadcastReceiver;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.graphics.Color;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.provider.CalendarContract;
 import android.provider.CalendarContract.Attendees;
 import android.provider.CalendarContract.Events;
+import android.provider.CalendarContract.Instances;
 import android.provider.CalendarContract.Reminders;
 import android.text.TextUtils;
 import android.util.Log;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
 
 /*
 总结
@@ -63,6 +76,46 @@ public class CalendarManager {
 
   private Context mContext;
 
+  /** 批量插入时单次applyBatch包含的日程数，避免单个binder事务过大、写锁占用过久 */
+  private static final int INSERT_BATCH_SIZE = 50;
+
+  /** 日历表变化后延迟刷新账户id的时间，合并连续的变化通知 */
+  private static final long ACCOUNT_REFRESH_DELAY = 500;
+
+  /** 应用日历账户id缓存，-1表示未缓存；只有注册了日历表监听（调用过init）才会缓存 */
+  private volatile int mCalendarId = -1;
+  /** 应用账户下的分片日历 key -> 日历id，与 mCalendarId 同时缓存，null表示未缓存；只整体替换，不修改 */
+  private volatile Map<String, Integer> mShardIds;
+  private volatile CalendarShardPolicy mShardPolicy;
+  private final Object mAccountLock = new Object();
+  private Handler mObserverHandler;
+  private ContentObserver mCalendarsObserver;
+  private BroadcastReceiver mTimeZoneReceiver;
+
+  private int mAsyncPoolSize = CalendarExecutor.DEFAULT_POOL_SIZE;
+  private CalendarExecutor mExecutor;
+
+  /** 多日历并发查询的线程数，与异步接口的线程池分开，异步任务中等待查询结果不会互相占满线程 */
+  private static final int FAN_OUT_POOL_SIZE = 4;
+  private CalendarExecutor mFanOutExecutor;
+
+  private EventWriteQueue mWriteQueue;
+
+  /** provider IPC 次数统计，所有 provider 调用都经过 mResolver */
+  private final IpcStats mIpcStats = new IpcStats();
+  /** 跟踪最外层接口调用，统计IPC、耗时等指标 */
+  private final OperationTracker mTracker = new OperationTracker(mIpcStats);
+  private final CalendarResolver mResolver = new CalendarResolver(mTracker);
+
+  /** upsertEvent 的查询和写入需要串行 */
+  private final Object mUpsertLock = new Object();
+
+  private final List<EventChangeListener> mEventListeners = new CopyOnWriteArrayList<>();
+  private volatile EventIntervalIndex mIntervalIndex;
+  private volatile EventMirror mEventMirror;
+  private volatile ReminderScheduler mReminderScheduler;
+  private volatile EventSearchIndex mSearchIndex;
+
   // 系统calendar content provider相关的uri，以下为Android2.2版本以后的uri
   private String CALANDER_URL = "content://com.android.calendar/calendars";
   private String CALANDER_EVENT_URL = "content://com.android.calendar/events";
@@ -103,6 +156,23 @@ public class CalendarManager {
       CalendarContract.Events.STATUS,
   };
 
+  /** Instances table columns */
+  public static final String[] INSTANCES_COLUMNS = new String[] {
+      CalendarContract.Instances.EVENT_ID,
+      CalendarContract.Instances.CALENDAR_ID,
+      CalendarContract.Instances.TITLE,
+      CalendarContract.Instances.DESCRIPTION,
+      CalendarContract.Instances.EVENT_LOCATION,
+      CalendarContract.Instances.BEGIN,
+      CalendarContract.Instances.END,
+      CalendarContract.Instances.EVENT_TIMEZONE,
+      CalendarContract.Instances.HAS_ALARM,
+      CalendarContract.Instances.ALL_DAY,
+      CalendarContract.Instances.AVAILABILITY,
+      CalendarContract.Instances.ACCESS_LEVEL,
+      CalendarContract.Instances.STATUS,
+  };
+
   /** Reminders table columns */
   public static final String[] REMINDERS_COLUMNS = new String[] {
       CalendarContract.Reminders._ID,
@@ -116,7 +186,8 @@ public class CalendarManager {
       CalendarContract.Attendees._ID,
       CalendarContract.Attendees.ATTENDEE_NAME,
       CalendarContract.Attendees.ATTENDEE_EMAIL,
-      CalendarContract.Attendees.ATTENDEE_STATUS
+      CalendarContract.Attendees.ATTENDEE_STATUS,
+      CalendarContract.Attendees.EVENT_ID
   };
 
   private static class InnerHolder {
@@ -133,6 +204,8 @@ public class CalendarManager {
   public void init(Context context) {
     if (context != null) {
       mContext = context.getApplicationContext();
+      registerCalendarsObserver();
+      registerTimeZoneReceiver();
     } else {
       // TODO: 2019/4/24  这里需要application
 //      mContext = context;
@@ -140,587 +213,1437 @@ public class CalendarManager {
   }
 
   /**
-   * 获取时区
-   * @return
+   * 监听日历表变化，变化时在后台线程重新查询账户id。
+   * 注意：日历provider的任何写操作都会通知到该uri（包括我们自己插入事件），
+   * 所以这里不直接清空缓存，而是合并通知后在后台刷新，写事件的调用方始终直接使用缓存
    */
-  public String[] getTimeZones() {
-    return TimeZone.getAvailableIDs();
+  private synchronized void registerCalendarsObserver() {
+    if (mCalendarsObserver != null) {
+      return;
+    }
+    HandlerThread observerThread = new HandlerThread("CalendarManager-observer");
+    observerThread.start();
+    mObserverHandler = new Handler(observerThread.getLooper());
+    mCalendarsObserver = new ContentObserver(mObserverHandler) {
+      @Override
+      public void onChange(boolean selfChange) {
+        mObserverHandler.removeCallbacks(mRefreshAccountTask);
+        mObserverHandler.postDelayed(mRefreshAccountTask, ACCOUNT_REFRESH_DELAY);
+      }
+    };
+    mContext.getContentResolver().registerContentObserver(calendarsUri, true, mCalendarsObserver);
   }
 
   /**
-   * 更新日程提醒
-   * @return Uri
-   * @throws Exception
+   * 系统时区变化时清空 CalendarTimeUtils 缓存的默认时区，全天事件的编码、忙闲计算使用新的时区，
+   * 时间区间索引中的全天事件按新的时区重新放入
    */
-  public boolean updateReminder(Context context, ReminderModel model) {
-    if (null == model) {
-      return false;
-    }
-    if (!isExistReminder(model.getId())) {
-      return false;
+  private synchronized void registerTimeZoneReceiver() {
+    if (mTimeZoneReceiver != null) {
+      return;
     }
-    ContentValues reminderVal = new ContentValues();
+    mTimeZoneReceiver = new BroadcastReceiver() {
+      @Override
+      public void onReceive(Context context, Intent intent) {
+        CalendarTimeUtils.resetDefaultTimeZone();
+        EventIntervalIndex index = mIntervalIndex;
+        if (index != null) {
+          index.setTimeZone(CalendarTimeUtils.getDefaultTimeZone());
+        }
+      }
+    };
+    mContext.registerReceiver(mTimeZoneReceiver, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+    // 注册之前时区可能已经变化
+    CalendarTimeUtils.resetDefaultTimeZone();
+  }
 
-    reminderVal.put(Reminders.MINUTES, model.getMinutes()); // 提醒在事件前多少分钟后发出
-    //提醒方法
-    int methodType = Reminders.METHOD_DEFAULT;
-    int method = model.getMethod();
-    if (method == 1) {
-      methodType = Reminders.METHOD_ALERT;
-    } else if (method == 2) {
-      methodType = Reminders.METHOD_EMAIL;
-    } else if (method == 3) {
-      methodType = Reminders.METHOD_SMS;
+  private final Runnable mRefreshAccountTask = new Runnable() {
+    @Override
+    public void run() {
+      if (mCalendarId < 0) {
+        return;
+      }
+      CalendarOperation outer = mTracker.enter(CalendarOperation.ACCOUNT_LOOKUP);
+      try {
+        synchronized (mAccountLock) {
+          Map<String, Integer> shards = new HashMap<>();
+          int id = checkCalendarAccount(mContext, shards);
+          mShardIds = id >= 0 ? shards : null;
+          mCalendarId = id;
+        }
+      } catch (Exception e) {
+        // 没有权限等情况，清空缓存，下次写入时重新查询
+        mTracker.markError();
+        mCalendarId = -1;
+        mShardIds = null;
+        Log.w(TAG, "refresh calendar account failed: " + e.getMessage());
+      } finally {
+        mTracker.exit(outer);
+      }
     }
-    reminderVal.put(Reminders.METHOD, methodType);
+  };
 
-    try{
-      context.getContentResolver().update(Uri.parse(CALANDER_REMIDER_URL), reminderVal, Reminders._ID + "=" + model.getId() , null);
-      return true;
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-    return false;
+  /**
+   * 清空账户id缓存（如事件写入失败，可能是账户已被删除）
+   */
+  private void invalidateCalendarAccount() {
+    mCalendarId = -1;
+    mShardIds = null;
   }
 
   /**
-   * 更新日程事件
-   * @param model
+   * provider IPC 次数统计，按对外接口区分
    * @return
    */
-  public boolean updateEvent(Context context, EventModel model) {
-    if (model == null) {
-      return false;
-    }
-    if (!isExistEvent(model.getId())) {
-      return false;
-    }
-
-    ContentValues values = new ContentValues();
+  public IpcStats getIpcStats() {
+    return mIpcStats;
+  }
 
-    values.put(Events.CALENDAR_ID, model.getCalendarId());
-    values.put(Events.TITLE, model.getTitle());
-    values.put(Events.DESCRIPTION, model.getDescription());
-    values.put(Events.EVENT_LOCATION, model.getEventLocation());
+  CalendarResolver getResolver() {
+    return mResolver;
+  }
 
-    //计算开始、结束时间，全部用Date也可以。
-    Calendar startCld 	= Calendar.getInstance();
-    Calendar endCld 	= Calendar.getInstance();
-    //如果是全天事件的话，取开始时间的那一整天
-    if (model.isAllDay()) {
-      values.put(Events.ALL_DAY, true);
-      values.put(Events.DTSTART, model.getDtstart());
-      values.put(Events.DTEND, model.getDtend());
-    } else {
-      values.put(Events.DTSTART, model.getDtstart());
-      values.put(Events.DTEND, model.getDtend());
-    }
-    values.put(Events.EVENT_TIMEZONE, model.getEventTimezone());
-    values.put(Events.HAS_ALARM, model.isHasAlarm());
-    values.put(Events.AVAILABILITY, model.getAvailability());
-    values.put(Events.ACCESS_LEVEL, model.getAccessLevel());
-    try {
-      context.getContentResolver().update(Uri.parse(CALANDER_EVENT_URL), values, Events._ID + "=" + model.getId(), null);
-      return true;
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-    return false;
+  OperationTracker getTracker() {
+    return mTracker;
   }
 
   /**
-   * 查询日程(事件、提醒、参与人)
-   * @param model
-   * @return
+   * 设置指标监听，记录各接口的耗时、行数、失败次数，传null关闭
+   * 一般使用 {@link CalendarMetrics}，由上报模块定期调用 {@link CalendarMetrics#snapshot(boolean)}
+   * @param listener
    */
-  public List<EventModel> queryEvents(Context context, EventModel model) {
-    List<EventModel> result = new ArrayList<>();
-
-    StringBuilder selection = new StringBuilder();
-    List<String> selectionArgs = new ArrayList<>();
-    if (model != null) {
-      selection.append(" 1=1 ");
+  public void setMetricsListener(CalendarMetricsListener listener) {
+    mTracker.setListener(listener);
+  }
 
-      String calendarId 	= String.valueOf(model.getCalendarId());
-      String eventId 		= String.valueOf(model.getId());
-      String title 		= model.getTitle();
-      String description 	= model.getDescription();
-      String location 	= model.getEventLocation();
-      String startDate	= String.valueOf(model.getDtstart());
-      String endDate		= String.valueOf(model.getDtend());
-      String status		= String.valueOf(model.getEventStatus());
+  public CalendarMetricsListener getMetricsListener() {
+    return mTracker.getListener();
+  }
 
-      selection.append(" AND " + Events.CALENDAR_ID + "=? ");
-      selectionArgs.add(calendarId);
-      selection.append(" AND " + Events._ID + "=? ");
-      selectionArgs.add(eventId);
-      selection.append(" AND " + Events.TITLE + " LIKE ? ");
-      selectionArgs.add("%" + title + "%");
-      selection.append(" AND " + Events.DESCRIPTION + " LIKE ? ");
-      selectionArgs.add("%" + description + "%");
-      selection.append(" AND " + Events.EVENT_LOCATION + " LIKE ? ");
-      selectionArgs.add("%" + location + "%");
-      selection.append(" AND " + Events.STATUS + " =? ");
-      selectionArgs.add(status);
+  /**
+   * 设置异步接口使用的线程数，默认 {@link CalendarExecutor#DEFAULT_POOL_SIZE}
+   * @param poolSize
+   */
+  public synchronized void setAsyncPoolSize(int poolSize) {
+    if (mExecutor != null) {
+      mExecutor.setPoolSize(poolSize);
+    }
+    mAsyncPoolSize = poolSize;
+  }
 
-      selection.append(" AND " + Events.DTSTART + " >=? ");
-      selectionArgs.add(startDate + "");
-      selection.append(" AND " + Events.DTEND + " <=? ");
-      selectionArgs.add(endDate + "");
+  /**
+   * 异步接口使用的线程池，第一次使用时创建
+   * @return
+   */
+  public synchronized CalendarExecutor getExecutor() {
+    if (mExecutor == null) {
+      mExecutor = new CalendarExecutor(mAsyncPoolSize);
     }
-//		EVENTS_COLUMNS 换成 null 查询所有字段
-    Cursor eventsCursor = context.getContentResolver().query(
-        Uri.parse(CALANDER_EVENT_URL),
-        EVENTS_COLUMNS,
-        selection.length() == 0 ? null : selection.toString(),
-        selectionArgs.size() == 0 ?	null : selectionArgs.toArray(new String[]{}),
-        null);
+    return mExecutor;
+  }
 
-    Map<String, Object> event = new HashMap<>();
-    EventModel eventModel = new EventModel();
-    while (eventsCursor.moveToNext()) {
-      //以下字段解释，在添加事件里可查看addEvents()
-      String eid 		= eventsCursor.getString(eventsCursor.getColumnIndex(Events._ID));
-      String calendarId 	= eventsCursor.getString(eventsCursor.getColumnIndex(Events.CALENDAR_ID));
-      String title 		= eventsCursor.getString(eventsCursor.getColumnIndex(Events.TITLE));
-      String description 	= eventsCursor.getString(eventsCursor.getColumnIndex(Events.DESCRIPTION));
-      String location 	= eventsCursor.getString(eventsCursor.getColumnIndex(Events.EVENT_LOCATION));
-      long startDate 		= eventsCursor.getLong(eventsCursor.getColumnIndex(Events.DTSTART));
-      long endDate 		= eventsCursor.getLong(eventsCursor.getColumnIndex(Events.DTEND));
-      String timeZone 	= eventsCursor.getString(eventsCursor.getColumnIndex(Events.EVENT_TIMEZONE));
-      String hasAlarm 	= eventsCursor.getString(eventsCursor.getColumnIndex(Events.HAS_ALARM));
-      String allDay 		= eventsCursor.getString(eventsCursor.getColumnIndex(Events.ALL_DAY));
-      String availability = eventsCursor.getString(eventsCursor.getColumnIndex(Events.AVAILABILITY));
-      String accessLevel 	= eventsCursor.getString(eventsCursor.getColumnIndex(Events.ACCESS_LEVEL));
-      String status 		= eventsCursor.getString(eventsCursor.getColumnIndex(Events.STATUS));
-
-      Calendar calendar = Calendar.getInstance();
-
-//      eventModel.setId(eid);
-      event.put("calendarId",		calendarId);
-      event.put("title",			title);
-      event.put("description",	description);
-      event.put("location",		location);
-
-      calendar.setTimeInMillis(startDate);
-//      event.put("startDate",		Utils.getFormatCld(calendar));
-
-      calendar.setTimeInMillis(endDate);
-//      event.put("endDate",		Utils.getFormatCld(calendar));
-
-      event.put("timeZone",		timeZone);
-      event.put("hasAlarm",		hasAlarm);
-      event.put("allDay",			allDay);
-      event.put("availability",	availability);
-      event.put("accessLevel",	accessLevel);
-      event.put("status",			status);
-      //查询提醒
-      Cursor remindersCursor = context.getContentResolver().query(
-          Uri.parse(CALANDER_REMIDER_URL),
-          REMINDERS_COLUMNS,
-          Reminders.EVENT_ID + "=?",
-          new String[]{ eid },
-          null);
+  /**
+   * 多日历并发查询的线程池，第一次使用时创建
+   * @return
+   */
+  synchronized CalendarExecutor getFanOutExecutor() {
+    if (mFanOutExecutor == null) {
+      mFanOutExecutor = new CalendarExecutor(FAN_OUT_POOL_SIZE, "CalendarManager-query");
+    }
+    return mFanOutExecutor;
+  }
 
-      List<Map<String, Object>> reminders = new ArrayList<>();
-      while (remindersCursor.moveToNext()) {
-        Map<String, Object> reminder = new HashMap<>();
+  /**
+   * 关闭异步接口和多日历并发查询的线程池，已提交的任务执行完后线程退出；之后再使用时重新创建
+   * 空闲线程 30 秒后本来也会回收，退出日历相关页面或模块时调用可以立即释放；
+   * 未取完的 {@link MergedEventQuery} 之后的分页查询会以 RejectedExecutionException 失败
+   */
+  public synchronized void releaseExecutors() {
+    if (mExecutor != null) {
+      mExecutor.shutdown();
+      mExecutor = null;
+    }
+    if (mFanOutExecutor != null) {
+      mFanOutExecutor.shutdown();
+      mFanOutExecutor = null;
+    }
+  }
 
-        String rid 		= remindersCursor.getString(remindersCursor.getColumnIndex(Reminders._ID));
-        String eventId 	= remindersCursor.getString(remindersCursor.getColumnIndex(Reminders.EVENT_ID));
-        String minutes 	= remindersCursor.getString(remindersCursor.getColumnIndex(Reminders.MINUTES));
-        String method	= remindersCursor.getString(remindersCursor.getColumnIndex(Reminders.METHOD));
+  /*
+   * 以下为异步接口：在 CalendarExecutor 的后台线程执行同名的同步方法，结果在主线程回调。
+   * 主线程不能直接调用同步方法（provider IPC 会阻塞，容易ANR），同步方法保留给已经在后台线程的调用方。
+   * context 统一转成 application context，避免任务持有 Activity
+   */
 
-        reminder.put("id", 		rid);
-        reminder.put("eventId", eventId);
-        reminder.put("minutes", minutes);
-        reminder.put("method", 	method);
-        reminders.add(reminder);
+  /**
+   * 异步添加日历事件、日程
+   * @see #addCalendarEvent(Context, CalendarRemindModel)
+   */
+  public Future<Boolean> addCalendarEventAsync(Context context, final CalendarRemindModel calendarRemindModel, CalendarCallback<Boolean> callback) {
+    final Context appContext = context.getApplicationContext();
+    return getExecutor().submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return addCalendarEvent(appContext, calendarRemindModel);
       }
-      remindersCursor.close();
-      event.put("reminders", reminders);
-      //查询参与人
-      Cursor attendeesCursor = context.getContentResolver().query(
-          Uri.parse(CALANDER_ATTENDEE_URL),
-          ATTENDEES_COLUMNS,
-          Attendees.EVENT_ID + "=?",
-          new String[]{ eid },
-          null);
+    }, callback);
+  }
 
-      List<Map<String, Object>> attendees = new ArrayList<Map<String,Object>>();
-      while (attendeesCursor.moveToNext()) {
-        Map<String, Object> attendee = new HashMap<String, Object>();
-        String rid 		= attendeesCursor.getString(attendeesCursor.getColumnIndex(Attendees._ID));
-        String name 	= attendeesCursor.getString(attendeesCursor.getColumnIndex(Attendees.ATTENDEE_NAME));
-        String email 	= attendeesCursor.getString(attendeesCursor.getColumnIndex(Attendees.ATTENDEE_EMAIL));
-        String _status	= attendeesCursor.getString(attendeesCursor.getColumnIndex(Attendees.ATTENDEE_STATUS));
+  /**
+   * 异步添加日历事件、日程
+   * @see #insertEvent(CalendarRemindModel)
+   */
+  public Future<Uri> insertEventAsync(final CalendarRemindModel calendarRemindModel, CalendarCallback<Uri> callback) {
+    return getExecutor().submit(new Callable<Uri>() {
+      @Override
+      public Uri call() {
+        return insertEvent(calendarRemindModel);
+      }
+    }, callback);
+  }
 
-        attendee.put("id", 		rid);
-        attendee.put("name", 	name);
-        attendee.put("email", 	email);
-        attendee.put("status", 	_status);
-        attendees.add(attendee);
+  /**
+   * 异步按去重key写入日程
+   * @see #upsertEvent(CalendarRemindModel, String)
+   */
+  public Future<Uri> upsertEventAsync(final CalendarRemindModel calendarRemindModel, final String dedupKey, CalendarCallback<Uri> callback) {
+    return getExecutor().submit(new Callable<Uri>() {
+      @Override
+      public Uri call() {
+        return upsertEvent(calendarRemindModel, dedupKey);
       }
-      attendeesCursor.close();
-      event.put("attendees", reminders);
+    }, callback);
+  }
 
-//      result.add(event);
-    }
-    eventsCursor.close();
+  /**
+   * 异步按期望状态同步应用日历
+   * @see #reconcileEvents(List)
+   */
+  public Future<ReconcileResult> reconcileEventsAsync(final List<CalendarRemindModel> desired, CalendarCallback<ReconcileResult> callback) {
+    return getExecutor().submit(new Callable<ReconcileResult>() {
+      @Override
+      public ReconcileResult call() {
+        return reconcileEvents(desired);
+      }
+    }, callback);
+  }
 
-    return result;
+  /**
+   * 异步批量插入日程
+   * @see #insertEvents(List)
+   */
+  public Future<List<EventInsertResult>> insertEventsAsync(final List<CalendarRemindModel> calendars, CalendarCallback<List<EventInsertResult>> callback) {
+    return getExecutor().submit(new Callable<List<EventInsertResult>>() {
+      @Override
+      public List<EventInsertResult> call() {
+        return insertEvents(calendars);
+      }
+    }, callback);
   }
 
   /**
-   * 添加日历事件、日程
-   * @param calendarRemindModel
+   * 异步更新日程事件
+   * @see #updateEvent(Context, EventModel)
    */
-  public Uri insertEvent(CalendarRemindModel calendarRemindModel) {
-    if (null == mContext || null == calendarRemindModel) {
-      return null;
-    }
-    // 获取日历账户的id
-    int calId = checkAndAddCalendarAccount(mContext);
-    if (calId < 0) {
-      // 获取账户id失败直接返回，添加日历事件失败
-      return null;
-    }
+  public Future<Boolean> updateEventAsync(Context context, final EventModel model, CalendarCallback<Boolean> callback) {
+    final Context appContext = context.getApplicationContext();
+    return getExecutor().submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return updateEvent(appContext, model);
+      }
+    }, callback);
+  }
 
-    try {
-      ContentValues event = new ContentValues();
-      // 插入账户的id
-      event.put(CalendarContract.Events.CALENDAR_ID, calId); // 日历事件属于的Calendars#_ID，必须有
-      event.put(CalendarContract.Events.TITLE, calendarRemindModel.getTitle()); // 事件的标题
-      event.put(CalendarContract.Events.DESCRIPTION, calendarRemindModel.getDescription()); // 事件的备注
-      Calendar calendar = Calendar.getInstance();
-      Calendar startCalendar = Calendar.getInstance();
-      Calendar endCalendar = Calendar.getInstance();
-      // 如果是全天事件的话，取开始时间的那一整天
-      if (calendarRemindModel.isAllDay()) {
-        // 开始时间
-        startCalendar.set(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get(Calendar.DAY_OF_MONTH), 0, 0, 0);
-        // 结束时间
-        endCalendar.set(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get(Calendar.DAY_OF_MONTH), 24, 0, 0);
-      } else {
-        // 开始时间
-        startCalendar.setTimeInMillis(calendarRemindModel.getStartDate()); // 设置开始时间
-        // 结束时间
-        endCalendar.setTimeInMillis(calendarRemindModel.getEndDate()); // 设置终止时间
-      }
-      event.put(CalendarContract.Events.ALL_DAY, calendarRemindModel.isAllDay());
-      long start = startCalendar.getTimeInMillis();
-      long end = endCalendar.getTimeInMillis();
-      event.put(CalendarContract.Events.DTSTART, start); // 事件的启动时间，使用从纪元开始的UTC毫秒计时，必须有
-      event.put(CalendarContract.Events.DTEND, end); // 事件的结束时间，使用从纪元开始的UTC毫秒计时，对于非重复发生的事件，必须有
-
-      event.put(CalendarContract.Events.STATUS, 1); // 事件状态:暂定(0)，确认(1)或取消(2)
-      event.put(CalendarContract.Events.HAS_ALARM, calendarRemindModel.getHasAlarm()); // 设置有闹钟提醒
-      String timeZone = calendarRemindModel.getTimeZone();
-      event.put(CalendarContract.Events.EVENT_TIMEZONE, TextUtils.isEmpty(timeZone) ? "Asia/Shanghai" : timeZone); // 事件所针对的时区，必须有
-      String location = calendarRemindModel.getLocation();
-      // 如果地址不为空插入地址
-      if (!TextUtils.isEmpty(location)) {
-        event.put(CalendarContract.Events.EVENT_LOCATION, location);
-      }
-      // 设置我的状态
-      event.put(CalendarContract.Events.AVAILABILITY, calendarRemindModel.getAvailability());
-      // 设置隐私
-      event.put(CalendarContract.Events.ACCESS_LEVEL, calendarRemindModel.getAccessLevel());
-      // 添加事件（这里如果calId不正确不会崩溃）
-      return mContext.getContentResolver().insert(Uri.parse(CALANDER_EVENT_URL), event);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-    return null;
+  /**
+   * 异步更新日程提醒
+   * @see #updateReminder(Context, ReminderModel)
+   */
+  public Future<Boolean> updateReminderAsync(Context context, final ReminderModel model, CalendarCallback<Boolean> callback) {
+    final Context appContext = context.getApplicationContext();
+    return getExecutor().submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return updateReminder(appContext, model);
+      }
+    }, callback);
   }
 
   /**
-   * 批量插入日程
-   * @param calendars
-   * @return Map<String, Object>
+   * 异步查询日程
+   * @see #queryEvents(Context, EventModel, boolean)
    */
-//  public boolean insertEvents(List<CalendarRemindModel> calendars) {
-//    if (calendars == null || calendars.isEmpty()) {
-//      return false;
-//    }
-//    ArrayList<ContentProviderOperation> ops = null;
-//
-//    for (int i = 0; i < calendars.size(); i++) {
-//      //获得日程
-//      CalendarRemindModel calendar = calendars.get(i);
-//      //插入事件
-//      Uri eUri = null;
-//      try {
-//        eUri = insertEvent(calendar);
-//      } catch (Exception e) {
-//        addResult.add("第" + (i + 1) + "条日程，添加事件失败：" + e.getMessage());
-//      }
-//      //如果事件插入成功，则插入提醒和参与者
-//      if (!Utils.isEmpty(eUri)) {
-//        String eventId = eUri.getLastPathSegment();
-//        //存入插入事件的结果
-//        addResult.add(eUri.toString());
-//
-//        ops = new ArrayList<ContentProviderOperation>();
-//        //插入提醒，可以添加多个提醒
-//        Map<Object, Map<String, String>> reminders = (Map<Object, Map<String, String>>) calendar.get("reminders");
-//        if (!Utils.isEmpty(reminders)) {
-//          for (Object key : reminders.keySet()) {
-//            reminders.get(key).put("eventId", eventId);
-//            try {
-//              insertReminder(reminders.get(key), ops);
-//            } catch (Exception e) {
-//              Log.i(Const.APPTAG, e.getMessage());
-//            }
-//          }
-//        }
-//        //插入参与者，可以添加多个参与者
-//        Map<Object, Map<String, String>> attendees = (Map<Object, Map<String, String>>) calendar.get("attendees");
-//        if (!Utils.isEmpty(attendees)) {
-//          for (Object key : attendees.keySet()) {
-//            attendees.get(key).put("eventId", eventId);
-//            try {
-//              insertAttendee(attendees.get(key), ops);
-//            } catch (Exception e) {
-//              Log.i(Const.APPTAG, e.getMessage());
-//            }
-//          }
-//        }
-//        if (!Utils.isEmpty(ops)) {
-//          //执行批量插入
-//          try {
-//            ContentProviderResult[] cps = resolver.applyBatch(CalendarContract.AUTHORITY, ops);
-//            //event表插入返回的Uri集合
-//            for (ContentProviderResult cp : cps) {
-//              Log.i(Const.APPTAG, cp.toString());
-//              addResult.add(cp.uri.toString());
-//            }
-//          } catch (Exception e) {
-//            Log.i(Const.APPTAG, e.getMessage());
-//            addResult.add("第" + (i + 1) + "条日程，添加(提醒和参与者)失败:" + e.getMessage());
-//          }
-//        }
-//      }
-//    }
-//    result.put("result", "1");
-//    result.put("obj", addResult);
-//
-//    return result;
-//  }
+  public Future<List<EventModel>> queryEventsAsync(Context context, final EventModel model, final boolean withDetails, CalendarCallback<List<EventModel>> callback) {
+    final Context appContext = context.getApplicationContext();
+    return getExecutor().submit(new Callable<List<EventModel>>() {
+      @Override
+      public List<EventModel> call() {
+        return queryEvents(appContext, model, withDetails);
+      }
+    }, callback);
+  }
+
   /**
-   * 插入日程参与者，如果参数ops不为空，则不执行插入，添加到ops里执行批量插入
-   * @param attendees
-   * @param ops
-   * @return Uri
-   * @throws Exception
+   * 异步删除日历事件、日程
+   * @see #deleteCalendarEventCount(Context, String)
    */
-//  public Uri insertAttendee(Map<String, String> attendees, ArrayList<ContentProviderOperation> ops) throws Exception{
-//    if (Utils.isEmpty(attendees)) {
-//      return null;
-//    }
-//    try {
-//      String eventId		= attendees.get("eventId");//外键事件id
-//      String name 		= attendees.get("name");//参与者姓名
-//      //如果时间id、或者参与姓名为空，不添加参与者
-//      if (!isExistEvent(Long.parseLong(eventId)) || Utils.isEmpty(name)) {
-//        return null;
-//      }
-//      String email		= attendees.get("email");//参与者电子邮件
-//
-//      /** 没明白具体什么意思，暂时用默认值  */
-//      int relationship	= Attendees.RELATIONSHIP_ATTENDEE;//与会者与事件的关系
-//      int type			= Attendees.TYPE_OPTIONAL;//与会者的类型
-//      int status			= Attendees.ATTENDEE_STATUS_INVITED;//与会者的状态
-//      if (ops == null) {
-//        ContentValues attendeesVal = new ContentValues();
-//        attendeesVal.put(Attendees.EVENT_ID, eventId);
-//        attendeesVal.put(Attendees.ATTENDEE_NAME, name);
-//        if (!Utils.isEmpty(email)) {
-//          attendeesVal.put(Attendees.ATTENDEE_EMAIL, email);//参与者 email
-//        }
-//
-//        attendeesVal.put(Attendees.ATTENDEE_RELATIONSHIP, relationship);//关系
-//        attendeesVal.put(Attendees.ATTENDEE_TYPE, type);//类型
-//        attendeesVal.put(Attendees.ATTENDEE_STATUS, status);//状态
-//
-//        Uri uri = resolver.insert(attendeesUri, attendeesVal);
-//        return uri;
-//      } else {
-//        Builder builder = ContentProviderOperation.newInsert(attendeesUri)
-//            .withYieldAllowed(true)
-//            .withValue(Attendees.EVENT_ID, eventId)
-//            .withValue(Attendees.ATTENDEE_NAME, name)
-//            .withValue(Attendees.ATTENDEE_EMAIL, email)
-//            .withValue(Attendees.ATTENDEE_RELATIONSHIP, relationship)
-//            .withValue(Attendees.ATTENDEE_TYPE, type)
-//            .withValue(Attendees.ATTENDEE_STATUS, status);
-//        if (!Utils.isEmpty(email)) {
-//          builder.withValue(Attendees.ATTENDEE_EMAIL, email);
-//        }
-//        ops.add(builder.build());
-//      }
-//    }catch (Exception e) {
-//      throw e;
-//    }
-//    return null;
-//  }
+  public Future<Integer> deleteCalendarEventAsync(Context context, final String title, CalendarCallback<Integer> callback) {
+    final Context appContext = context.getApplicationContext();
+    return getExecutor().submit(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return deleteCalendarEventCount(appContext, title);
+      }
+    }, callback);
+  }
+
   /**
-   * 插入日程提醒，如果参数ops不为空，则不执行插入。
-   * @param reminders
-   * @param ops
-   * @return Uri
+   * 异步批量删除事件
+   * @see #deleteEvents(Context, EventDeleteFilter)
    */
-//  public Uri insertReminder(Map<String, String> reminders, ArrayList<ContentProviderOperation> ops)
-//      throws Exception {
-//    //---------------------------Reminders表的数据------------------------------------
-//    //插入提醒，可以添加多个提醒
-//    if (!Utils.isEmpty(reminders)) {
-//      try {
-//        String eventId		= reminders.get("eventId");//外键事件id
-//        //如果时间id为空，不添加提醒
-//        if (!isExistEvent(Long.parseLong(eventId))) {
-//          return null;
-//        }
-//
-//        String mimutes 		= reminders.get("mimutes");//提醒在事件前几分钟后发出
-//        String method		= reminders.get("method");//提醒方法:METHOD_DEFAULT:0,*_ALERT:1,*_EMAIL:2,*_SMS:3
-//
-//        //提醒方法
-//        int methodType = Reminders.METHOD_DEFAULT;
-//        if (method.equals("1")) {
-//          methodType = Reminders.METHOD_ALERT;
-//        } else if (method.equals("2")) {
-//          methodType = Reminders.METHOD_EMAIL;
-//        } else if (method.equals("3")) {
-//          methodType = Reminders.METHOD_SMS;
-//        }
-//        //提醒时间
-//        int m = Utils.isNumber(mimutes) ? Integer.parseInt(mimutes) : 0;
-//
-//        if (ops == null) {
-//          ContentValues alarmVal = new ContentValues();
-//          alarmVal.put(Reminders.EVENT_ID, eventId);
-//          alarmVal.put(Reminders.MINUTES, m);//提醒在事件前多少分钟后发出
-//          alarmVal.put(Reminders.METHOD, methodType);
-//
-//          Uri uri = resolver.insert(remindersUri, alarmVal);
-//          return uri;
-//        } else {
-//          ContentProviderOperation op = ContentProviderOperation.newInsert(remindersUri)
-//              .withYieldAllowed(true)
-//              .withValue(Reminders.EVENT_ID, eventId)
-//              .withValue(Reminders.MINUTES, m)
-//              .withValue(Reminders.METHOD, methodType)
-//              .build();
-//          ops.add(op);
-//        }
-//      } catch (Exception e) {
-//        throw e;
-//      }
-//    }
-//    return null;
-//  }
+  public Future<Integer> deleteEventsAsync(Context context, final EventDeleteFilter filter, CalendarCallback<Integer> callback) {
+    final Context appContext = context.getApplicationContext();
+    return getExecutor().submit(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return deleteEvents(appContext, filter);
+      }
+    }, callback);
+  }
 
   /**
-   * 查询event是否存在
-   * @param id
+   * 合并写入队列，用于短时间内对同一事件、提醒的多次更新（如拖动事件），第一次使用时创建
+   * 需要先调用 {@link #init(Context)}
    * @return
    */
-  public boolean isExistEvent(long id) {
-    Cursor cursor = mContext.getContentResolver().query(
-        Uri.parse(CALANDER_EVENT_URL),
-        new String[]{ Events._ID},
-        Events._ID + "=" + id,
-        null,
-        null);
-    if (cursor.moveToFirst()) {
-      return true;
+  public synchronized EventWriteQueue getWriteQueue() {
+    if (mWriteQueue == null) {
+      if (mContext == null) {
+        throw new IllegalStateException("CalendarManager未初始化，请先调用init");
+      }
+      mWriteQueue = new EventWriteQueue(mContext, this);
     }
-    return false;
+    return mWriteQueue;
   }
 
   /**
-   * 查询Reminder是否存在
-   * @param id
+   * 获取时区
    * @return
    */
-  public boolean isExistReminder(long id) {
-    Cursor cursor = mContext.getContentResolver().query(
-        Uri.parse(CALANDER_REMIDER_URL),
-        new String[]{ Reminders._ID},
-        Reminders._ID + "=" + id,
-        null,
-        null);
-    if (cursor.moveToFirst()) {
-      return true;
+  public String[] getTimeZones() {
+    return TimeZone.getAvailableIDs();
+  }
+
+  /**
+   * 更新日程提醒
+   * @return Uri
+   * @throws Exception
+   */
+  public boolean updateReminder(Context context, ReminderModel model) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.UPDATE_REMINDER);
+    try {
+      if (null == model) {
+        return false;
+      }
+      ContentValues reminderVal = ReminderCodec.toValues(model);
+
+      try{
+        // 不再先查询是否存在：提醒不存在时更新0行，少一次IPC
+        int rows = mResolver.update(context, Uri.parse(CALANDER_REMIDER_URL), reminderVal, Reminders._ID + "=" + model.getId() , null);
+        mTracker.addRows(rows);
+        if (rows > 0) {
+          notifyReminderUpdated(model);
+        }
+        return rows > 0;
+      } catch (Exception e) {
+        mTracker.error(TAG, "updateReminder failed", e);
+      }
+      return false;
+    } finally {
+      mTracker.exit(outer);
     }
-    return false;
   }
 
   /**
-   * 查询Attendee是否存在
-   * @param id
+   * 更新日程事件，只写入修改过的字段（见 {@link EventModel#getDirtyFields()}），成功后清除修改标记
+   * 没有修改过的字段时不访问provider，直接返回true；有 {@link EventChangeListener} 时更新后再按id读取一次整行用于通知。
+   * 设置了分片策略且修改了开始、结束时间时先读取一次当前的行，必要时把事件移到新时间对应的分片
+   * @param model
    * @return
    */
-  public boolean isExistAttendee(long id) {
-    Cursor cursor = mContext.getContentResolver().query(
-        Uri.parse(CALANDER_ATTENDEE_URL),
-        new String[]{ Attendees._ID},
-        Attendees._ID + "=" + id,
-        null,
-        null);
-    if (cursor.moveToFirst()) {
-      return true;
+  public boolean updateEvent(Context context, EventModel model) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.UPDATE_EVENT);
+    try {
+      if (model == null) {
+        return false;
+      }
+
+      // 只写入修改过的字段
+      ContentValues values = EventCodec.toUpdateValues(model);
+      if (values.size() == 0) {
+        return true;
+      }
+      try {
+        // 修改了时间的分片事件可能要换分片
+        if (!assignShardCalendars(context, Collections.singletonMap(model.getId(), values))) {
+          return false;
+        }
+        // 不再先查询是否存在：事件不存在时更新0行，少一次IPC
+        int rows = mResolver.update(context, Uri.parse(CALANDER_EVENT_URL), values, Events._ID + "=" + model.getId(), null);
+        if (rows <= 0) {
+          return false;
+        }
+        model.clearDirtyFields();
+        mTracker.addRows(rows);
+        notifyEventsUpdated(context, new long[]{ model.getId() });
+        return true;
+      } catch (Exception e) {
+        mTracker.error(TAG, "updateEvent failed", e);
+      }
+      return false;
+    } finally {
+      mTracker.exit(outer);
     }
-    return false;
   }
 
   /**
-   * 删除event表里数据
+   * 查询日程(事件、提醒、参与人)
+   * @param model
    * @return
    */
-//  public Map<String, String> delEvents(List<String> ids, String calendarId, boolean delAll){
-//    Map<String, String> result = new HashMap<String, String>();
-//
-//    String selection = null;
-//
-//    if (delAll) {
-//      selection = Events._ID + " > 0";
-//    } else if (Utils.isNumber(calendarId)) {
-//      selection = Events.CALENDAR_ID + "=" + calendarId;
-//    } else if(Utils.isEmpty(ids)){
-//      result.put("result", "0");
-//      result.put("obj", "要删除日程事件的id为空！");
-//      return result;
-//    } else {
-//      String where = "";
-//      for (String id : ids) {
-//        if (Utils.isNumber(id)) {
-//          where += id + ",";
-//        }
-//      }
-//      selection = Events._ID + " in(" + where.substring(0, where.length() - 1) + ")";
-//    }
-//
-//    try {
-//      Log.i(Const.APPTAG, "====：" + selection);
-//      int n = resolver.delete(
-//          eventsUri,
-//          selection,
-//          null);
-//
-//      result.put("result", "1");
-//      result.put("obj", n + "");
-//
-//    } catch (Exception e) {
-//      result.put("result", "-1");
-//      result.put("obj", "删除错误：" + e.toString());
-//    }
-//    return result;
-//  }
+  public List<EventModel> queryEvents(Context context, EventModel model) {
+    return queryEvents(context, model, true);
+  }
 
   /**
-   * 更新日历的名称
+   * 查询日程
+   * withDetails为true时，按页批量查询提醒、参与人（每页每张表一次 EVENT_ID IN (...) 查询），再按事件id归并到事件上
+   * @param model 查询条件，为空时查询全部
+   * @param withDetails 是否同时查询提醒、参与人
+   * @return
+   */
+  public List<EventModel> queryEvents(Context context, EventModel model, boolean withDetails) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.QUERY_EVENTS);
+    try {
+      List<EventModel> result = new ArrayList<>();
+
+      List<String> selectionArgs = new ArrayList<>();
+      String selection = buildEventSelection(model, selectionArgs);
+//		EVENTS_COLUMNS 换成 null 查询所有字段
+      Cursor eventsCursor = mResolver.query(context,
+          Uri.parse(CALANDER_EVENT_URL),
+          EVENTS_COLUMNS,
+          selection,
+          selectionArgs.size() == 0 ?	null : selectionArgs.toArray(new String[]{}),
+          null);
+      if (eventsCursor == null) {
+        mTracker.markError();
+        return result;
+      }
+      try {
+        new EventRowMapper(eventsCursor).mapAll(eventsCursor, result);
+      } finally {
+        eventsCursor.close();
+      }
+
+      if (withDetails && !result.isEmpty()) {
+        attachDetails(context, result);
+      }
+      mTracker.addRows(result.size());
+      return result;
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 查询日程，结果按列紧凑存储，不为每行创建 EventModel，适合大量事件的查询，见 {@link CompactEventStore}
+   * 不含提醒、参与人
+   * @param context
+   * @param model 查询条件，与 {@link #queryEvents(Context, EventModel, boolean)} 相同，为空时查询全部
+   * @return 查询失败返回空结果集
+   */
+  public CompactEventStore queryEventsCompact(Context context, EventModel model) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.QUERY_EVENTS_COMPACT);
+    try {
+      List<String> selectionArgs = new ArrayList<>();
+      String selection = buildEventSelection(model, selectionArgs);
+      Cursor eventsCursor = mResolver.query(context,
+          Uri.parse(CALANDER_EVENT_URL),
+          EVENTS_COLUMNS,
+          selection,
+          selectionArgs.size() == 0 ? null : selectionArgs.toArray(new String[selectionArgs.size()]),
+          null);
+      if (eventsCursor == null) {
+        mTracker.markError();
+        return CompactEventStore.of(new ArrayList<EventModel>());
+      }
+      try {
+        CompactEventStore store = CompactEventStore.read(eventsCursor);
+        mTracker.addRows(store.size());
+        return store;
+      } finally {
+        eventsCursor.close();
+      }
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 并发查询多个日历的事件，按开始时间归并，见 {@link MergedEventQuery}
+   * 各日历在 FAN_OUT_POOL_SIZE 个线程上同时分页查询，返回后立即开始查询各日历的第一页，
+   * 每个查询同时提交的预取不超过线程数；所有日历都返回第一页后就可以取结果，不需要等最慢的日历查完
+   * @param context
+   * @param calendarIds
+   * @param begin 只查询开始时间不早于 begin 的事件，Long.MIN_VALUE 表示不限
+   * @param end 只查询开始时间早于 end 的事件，Long.MAX_VALUE 表示不限
+   * @param pageSize 每个日历每次查询的条数
+   * @return 按 (DTSTART, CALENDAR_ID, _ID) 排序
+   */
+  public MergedEventQuery queryEventsMerged(Context context, long[] calendarIds, long begin, long end, int pageSize) {
+    return new MergedEventQuery(context.getApplicationContext(), getFanOutExecutor(), calendarIds, begin, end, pageSize, FAN_OUT_POOL_SIZE);
+  }
+
+  /**
+   * 查询应用日历在时间段内的事件实例，设置了分片策略时只查询与时间段有交集的分片
+   * @see #queryInstances(Context, long, long, long[])
+   */
+  public List<EventModel> queryAppInstances(Context context, long begin, long end) {
+    long[] calIds = getAppCalendarIds(context, begin, end);
+    if (calIds.length == 0) {
+      return new ArrayList<>();
+    }
+    return queryInstances(context, begin, end, calIds);
+  }
+
+  /**
+   * 查询时间段内的事件实例
+   * 基于 Instances 表：provider 会展开重复事件并使用预先计算好的实例表，与时间段有重叠的实例都会返回（不要求完全落在时间段内）
+   * @param context
+   * @param begin 开始时间，UTC毫秒
+   * @param end 结束时间，UTC毫秒
+   * @param calendarIds 只查询这些日历，为空时查询所有日历
+   * @return 按实例开始时间排序，每个实例一个 EventModel，dtstart/dtend 为实例的开始、结束时间
+   */
+  public List<EventModel> queryInstances(Context context, long begin, long end, long[] calendarIds) {
+    Uri.Builder builder = Instances.CONTENT_URI.buildUpon();
+    ContentUris.appendId(builder, begin);
+    ContentUris.appendId(builder, end);
+    return queryInstances(context, builder.build(), calendarIds);
+  }
+
+  /**
+   * 按儒略日查询事件实例，适合按天展示的日历视图
+   * @param context
+   * @param startDay 开始的儒略日
+   * @param endDay 结束的儒略日（包含）
+   * @param calendarIds 只查询这些日历，为空时查询所有日历
+   * @return
+   */
+  public List<EventModel> queryInstancesByDay(Context context, int startDay, int endDay, long[] calendarIds) {
+    Uri.Builder builder = Instances.CONTENT_BY_DAY_URI.buildUpon();
+    ContentUris.appendId(builder, startDay);
+    ContentUris.appendId(builder, endDay);
+    return queryInstances(context, builder.build(), calendarIds);
+  }
+
+  /**
+   * 查询时间段内的忙闲，只读一次 Instances 表（重复事件已展开），在内存中排序合并
+   * 取消的事件、“我的状态”为空闲的事件不占用时间，全天事件按系统时区的整天计算，见 {@link FreeBusy}
+   * @param context
+   * @param begin 开始时间，UTC毫秒
+   * @param end 结束时间，UTC毫秒
+   * @param calendarIds 只统计这些日历，为空时统计所有日历
+   * @return
+   */
+  public FreeBusy queryFreeBusy(Context context, long begin, long end, long[] calendarIds) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.QUERY_FREE_BUSY);
+    try {
+      // 全天事件以UTC零点存储，按UTC可能早开始或晚结束一天，查询范围前后各放宽一天，计算时再裁剪
+      long queryBegin = begin == Long.MIN_VALUE ? begin : begin - CalendarTimeUtils.MILLIS_PER_DAY;
+      long queryEnd = end == Long.MAX_VALUE ? end : end + CalendarTimeUtils.MILLIS_PER_DAY;
+      List<EventModel> instances = queryInstances(context, queryBegin, queryEnd, calendarIds);
+      return FreeBusy.compute(begin, end, instances, CalendarTimeUtils.getDefaultTimeZone());
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 时间段内所有不短于 minLength 的空闲时间
+   * @param context
+   * @param begin 开始时间，UTC毫秒
+   * @param end 结束时间，UTC毫秒
+   * @param minLength 毫秒
+   * @param calendarIds 只统计这些日历，为空时统计所有日历
+   * @return 按开始时间排序
+   * @see #queryFreeBusy(Context, long, long, long[])
+   */
+  public List<FreeBusy.Slot> queryFreeSlots(Context context, long begin, long end, long minLength, long[] calendarIds) {
+    return queryFreeBusy(context, begin, end, calendarIds).getFreeSlots(minLength);
+  }
+
+  private List<EventModel> queryInstances(Context context, Uri uri, long[] calendarIds) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.QUERY_INSTANCES);
+    try {
+      List<EventModel> result = new ArrayList<>();
+      String selection = null;
+      String[] selectionArgs = null;
+      if (calendarIds != null && calendarIds.length > 0) {
+        selection = SelectionUtils.in(Instances.CALENDAR_ID, calendarIds.length);
+        selectionArgs = new String[calendarIds.length];
+        for (int i = 0; i < calendarIds.length; i++) {
+          selectionArgs[i] = String.valueOf(calendarIds[i]);
+        }
+      }
+      Cursor cursor = mResolver.query(context, uri, INSTANCES_COLUMNS, selection, selectionArgs,
+          Instances.BEGIN + " ASC");
+      if (cursor == null) {
+        mTracker.markError();
+        return result;
+      }
+      try {
+        new InstanceRowMapper(cursor).mapAll(cursor, result);
+      } finally {
+        cursor.close();
+      }
+      mTracker.addRows(result.size());
+      return result;
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 查询某个日历中的所有事件（不含提醒、参与人）
+   * @param context
+   * @param calendarId
+   * @return
+   */
+  public List<EventModel> queryCalendarEvents(Context context, long calendarId) {
+    return queryCalendarEvents(context, new long[]{ calendarId });
+  }
+
+  /**
+   * 查询多个日历中的所有事件（不含提醒、参与人），如 {@link #getAppCalendarIds(Context, long, long)} 的结果
+   * @param context
+   * @param calendarIds
+   * @return
+   */
+  public List<EventModel> queryCalendarEvents(Context context, long[] calendarIds) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.QUERY_CALENDAR_EVENTS);
+    try {
+      List<EventModel> result = new ArrayList<>();
+      if (calendarIds.length == 0) {
+        return result;
+      }
+      Cursor cursor = mResolver.query(context,
+          Uri.parse(CALANDER_EVENT_URL),
+          EVENTS_COLUMNS,
+          SelectionUtils.in(Events.CALENDAR_ID, calendarIds.length) + " AND " + Events.DELETED + "!=1",
+          SelectionUtils.toArgs(calendarIds),
+          null);
+      if (cursor == null) {
+        mTracker.markError();
+        return result;
+      }
+      try {
+        new EventRowMapper(cursor).mapAll(cursor, result);
+      } finally {
+        cursor.close();
+      }
+      mTracker.addRows(result.size());
+      return result;
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 从应用日历的事件建立时间区间索引，之后通过 CalendarManager 的写操作会同步更新索引
+   * 建立后可以用 {@link #getIntervalIndex()} 做冲突检查，不需要再访问provider
+   * @param context
+   * @return
+   */
+  public EventIntervalIndex buildIntervalIndex(Context context) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.BUILD_INTERVAL_INDEX);
+    try {
+      EventIntervalIndex index = mIntervalIndex;
+      if (index == null) {
+        synchronized (this) {
+          if (mIntervalIndex == null) {
+            mIntervalIndex = new EventIntervalIndex();
+            addEventChangeListener(mIntervalIndex);
+          }
+          index = mIntervalIndex;
+        }
+      }
+      long[] calIds = getAppCalendarIds(context);
+      index.setCalendarIds(calIds);
+      index.build(queryCalendarEvents(context, calIds));
+      return index;
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 时间区间索引，没有调用过 {@link #buildIntervalIndex(Context)} 时为null
+   * @return
+   */
+  public EventIntervalIndex getIntervalIndex() {
+    return mIntervalIndex;
+  }
+
+  /**
+   * 应用日历事件的内存镜像，第一次调用时在当前线程全量加载（有IPC，不要在主线程第一次调用），
+   * 之后监听事件表增量刷新，见 {@link EventMirror}
+   * @return 没有调用过 {@link #init(Context)} 或加载失败时返回null
+   */
+  public EventMirror getEventMirror() {
+    EventMirror mirror = mEventMirror;
+    if (mirror != null || mContext == null || mObserverHandler == null) {
+      return mirror;
+    }
+    synchronized (this) {
+      if (mEventMirror == null) {
+        mirror = new EventMirror(this, mContext, mObserverHandler);
+        // 先监听再加载，加载期间的变化会触发一次刷新
+        mirror.start();
+        addEventChangeListener(mirror);
+        if (!mirror.load()) {
+          removeEventChangeListener(mirror);
+          mirror.stop();
+          return null;
+        }
+        mEventMirror = mirror;
+      }
+      return mEventMirror;
+    }
+  }
+
+  /**
+   * 停止并丢弃事件镜像
+   */
+  public synchronized void releaseEventMirror() {
+    releaseSearchIndex();
+    if (mEventMirror != null) {
+      removeEventChangeListener(mEventMirror);
+      mEventMirror.stop();
+      mEventMirror = null;
+    }
+  }
+
+  /**
+   * 应用内提醒调度，第一次调用时创建并在调度线程加载应用日历中未开始的事件和提醒，见 {@link ReminderScheduler}
+   * @return 没有调用过 {@link #init(Context)} 时返回null
+   */
+  public synchronized ReminderScheduler getReminderScheduler() {
+    if (mReminderScheduler == null && mContext != null) {
+      ReminderScheduler scheduler = new ReminderScheduler(this, mContext);
+      // 先监听再加载，加载前保存的事件由加载结果覆盖
+      addEventChangeListener(scheduler);
+      scheduler.reload();
+      mReminderScheduler = scheduler;
+    }
+    return mReminderScheduler;
+  }
+
+  /**
+   * 停止并丢弃应用内提醒调度
+   */
+  public synchronized void releaseReminderScheduler() {
+    if (mReminderScheduler != null) {
+      removeEventChangeListener(mReminderScheduler);
+      mReminderScheduler.stop();
+      mReminderScheduler = null;
+    }
+  }
+
+  /**
+   * 应用日历事件的本地搜索索引，从 {@link #getEventMirror()} 加载并跟随镜像更新，见 {@link EventSearchIndex}
+   * 第一次调用时可能要加载镜像（有IPC），不要在主线程第一次调用
+   * @return 镜像不可用时返回null
+   */
+  public EventSearchIndex getSearchIndex() {
+    EventSearchIndex index = mSearchIndex;
+    if (index != null) {
+      return index;
+    }
+    EventMirror mirror = getEventMirror();
+    if (mirror == null) {
+      return null;
+    }
+    synchronized (this) {
+      if (mSearchIndex == null) {
+        index = new EventSearchIndex();
+        // 先监听再加载，load 在持有索引锁时读取镜像，之后的变化不会丢失
+        mirror.addChangeListener(index);
+        index.load(mirror);
+        mSearchIndex = index;
+      }
+      return mSearchIndex;
+    }
+  }
+
+  /**
+   * 丢弃搜索索引，释放事件镜像时也会调用
+   */
+  public synchronized void releaseSearchIndex() {
+    if (mSearchIndex != null) {
+      if (mEventMirror != null) {
+        mEventMirror.removeChangeListener(mSearchIndex);
+      }
+      mSearchIndex = null;
+    }
+  }
+
+  /**
+   * 搜索应用日历中标题、备注、地点包含 query 的事件，不区分大小写
+   * 在 {@link #getSearchIndex()} 中找出匹配的事件id，再按id分批查询这些行，provider中不做全表的 LIKE 扫描；
+   * 索引不可用时退回 LIKE 查询
+   * @param context
+   * @param query 为空时返回所有事件
+   * @param fields 搜索的字段，见 {@link EventSearchIndex#FIELDS_ALL}
+   * @param prefix 为true时只匹配词的开头，见 {@link EventSearchIndex#searchPrefix(String, int)}
+   * @param withDetails 是否同时查询提醒、参与人
+   * @return 按开始时间排序
+   */
+  public List<EventModel> searchEvents(Context context, String query, int fields, boolean prefix, boolean withDetails) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.SEARCH_EVENTS);
+    try {
+      List<EventModel> result = new ArrayList<>();
+      EventSearchIndex index = getSearchIndex();
+      if (index == null) {
+        searchEventsByLike(context, query, fields, prefix, result);
+      } else {
+        long[] ids = prefix ? index.searchPrefix(query, fields) : index.search(query, fields);
+        if (!queryEventsByIds(context, ids, result)) {
+          mTracker.markError();
+          return result;
+        }
+      }
+      Collections.sort(result, EventMirror.START_ORDER);
+      if (withDetails && !result.isEmpty()) {
+        attachDetails(context, result);
+      }
+      mTracker.addRows(result.size());
+      return result;
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /** 没有搜索索引时在provider中用 LIKE 查询，再按索引相同的规则过滤 */
+  private void searchEventsByLike(Context context, String query, int fields, boolean prefix, List<EventModel> out) {
+    long[] calIds = getAppCalendarIds(context);
+    if (calIds.length == 0) {
+      return;
+    }
+    StringBuilder selection = new StringBuilder(SelectionUtils.in(Events.CALENDAR_ID, calIds.length))
+        .append(" AND ").append(Events.DELETED).append("!=1");
+    List<String> args = new ArrayList<>(Arrays.asList(SelectionUtils.toArgs(calIds)));
+    if (!TextUtils.isEmpty(query)) {
+      List<String> columns = new ArrayList<>();
+      if ((fields & EventModel.FIELD_TITLE) != 0) {
+        columns.add(Events.TITLE);
+      }
+      if ((fields & EventModel.FIELD_DESCRIPTION) != 0) {
+        columns.add(Events.DESCRIPTION);
+      }
+      if ((fields & EventModel.FIELD_EVENT_LOCATION) != 0) {
+        columns.add(Events.EVENT_LOCATION);
+      }
+      if (columns.isEmpty()) {
+        return;
+      }
+      selection.append(" AND (");
+      for (int i = 0; i < columns.size(); i++) {
+        selection.append(i == 0 ? "" : " OR ").append(columns.get(i)).append(" LIKE ?");
+        args.add("%" + query + "%");
+      }
+      selection.append(")");
+    }
+    Cursor cursor = mResolver.query(context,
+        Uri.parse(CALANDER_EVENT_URL),
+        EVENTS_COLUMNS,
+        selection.toString(),
+        args.toArray(new String[args.size()]),
+        null);
+    if (cursor == null) {
+      mTracker.markError();
+      return;
+    }
+    List<EventModel> events = new ArrayList<>();
+    try {
+      new EventRowMapper(cursor).mapAll(cursor, events);
+    } finally {
+      cursor.close();
+    }
+    for (EventModel event : events) {
+      if (EventSearchIndex.matches(event, query, fields, prefix)) {
+        out.add(event);
+      }
+    }
+  }
+
+  /**
+   * 查询应用日历中的所有事件（不含提醒、参与人）
+   * 已经建立 {@link #getEventMirror()} 时直接读镜像，没有IPC；否则查询provider
+   * @param context
+   * @return 按开始时间排序
+   */
+  public List<EventModel> queryAppEvents(Context context) {
+    EventMirror mirror = mEventMirror;
+    if (mirror != null && mirror.isLoaded()) {
+      return mirror.getEvents();
+    }
+    List<EventModel> events = queryCalendarEvents(context, getAppCalendarIds(context));
+    Collections.sort(events, EventMirror.START_ORDER);
+    return events;
+  }
+
+  public void addEventChangeListener(EventChangeListener listener) {
+    if (listener != null && !mEventListeners.contains(listener)) {
+      mEventListeners.add(listener);
+    }
+  }
+
+  public void removeEventChangeListener(EventChangeListener listener) {
+    mEventListeners.remove(listener);
+  }
+
+  /**
+   * 按id分批查询事件（不含提醒、参与人）
+   * @param context
+   * @param ids
+   * @param out 查询结果追加到该列表
+   * @return 查询是否成功
+   */
+  private boolean queryEventsByIds(Context context, long[] ids, List<EventModel> out) {
+    for (int from = 0; from < ids.length; from += SelectionUtils.IN_CHUNK_SIZE) {
+      int to = Math.min(from + SelectionUtils.IN_CHUNK_SIZE, ids.length);
+      Cursor cursor = mResolver.query(context,
+          Uri.parse(CALANDER_EVENT_URL),
+          EVENTS_COLUMNS,
+          SelectionUtils.in(Events._ID, to - from) + " AND " + Events.DELETED + "!=1",
+          SelectionUtils.toArgs(ids, from, to),
+          null);
+      if (cursor == null) {
+        return false;
+      }
+      try {
+        new EventRowMapper(cursor).mapAll(cursor, out);
+      } finally {
+        cursor.close();
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 事件已按字段更新：更新只写入修改过的列，调用方的 EventModel 不一定是完整的行，
+   * 按id重新读取整行后再通知监听者。没有监听者时不读取；读取失败时不通知，镜像会在变化通知后自行刷新
+   * @param context
+   * @param eventIds
+   */
+  void notifyEventsUpdated(Context context, long[] eventIds) {
+    if (mEventListeners.isEmpty() || eventIds.length == 0) {
+      return;
+    }
+    List<EventModel> events = new ArrayList<>(eventIds.length);
+    if (!queryEventsByIds(context, eventIds, events)) {
+      Log.w(TAG, "reload updated events failed");
+      return;
+    }
+    for (EventModel event : events) {
+      notifyEventSaved(event);
+    }
+  }
+
+  void notifyEventSaved(EventModel event) {
+    for (EventChangeListener listener : mEventListeners) {
+      listener.onEventSaved(event);
+    }
+  }
+
+  void notifyEventsDeleted(List<Long> eventIds) {
+    for (EventChangeListener listener : mEventListeners) {
+      listener.onEventsDeleted(eventIds);
+    }
+  }
+
+  /**
+   * 提醒已更新，同步应用内提醒调度
+   * @param reminder
+   */
+  void notifyReminderUpdated(ReminderModel reminder) {
+    ReminderScheduler scheduler = mReminderScheduler;
+    if (scheduler != null) {
+      scheduler.onReminderUpdated(reminder);
+    }
+  }
+
+  /**
+   * 按 (DTSTART, _ID) 分页遍历事件
+   * @param context
+   * @param pageSize 每页条数
+   * @param token 从该位置之后开始，为空时从头开始，见 {@link EventPageToken#parse(String)}
+   * @return
+   */
+  public EventPager newEventPager(Context context, int pageSize, EventPageToken token) {
+    return new EventPager(context, pageSize, token);
+  }
+
+  /**
+   * 分页遍历应用日历中的事件
+   * @param context
+   * @param pageSize
+   * @param token
+   * @return 还没有应用日历时返回null
+   */
+  public EventPager newAppEventPager(Context context, int pageSize, EventPageToken token) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.EVENT_PAGER);
+    try {
+      long[] calIds = getAppCalendarIds(context);
+      if (calIds.length == 0) {
+        return null;
+      }
+      EventPager pager = new EventPager(context, pageSize, token);
+      pager.setCalendarIds(calIds);
+      return pager;
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 组装 queryEvents 的查询条件
+   * @param model 查询条件，为空时返回null
+   * @param selectionArgs 查询参数，追加到该列表
+   * @return
+   */
+  String buildEventSelection(EventModel model, List<String> selectionArgs) {
+    StringBuilder selection = new StringBuilder();
+    if (model != null) {
+      selection.append(" 1=1 ");
+
+      String calendarId 	= String.valueOf(model.getCalendarId());
+      String eventId 		= String.valueOf(model.getId());
+      String title 		= model.getTitle();
+      String description 	= model.getDescription();
+      String location 	= model.getEventLocation();
+      String startDate	= String.valueOf(model.getDtstart());
+      String endDate		= String.valueOf(model.getDtend());
+      String status		= String.valueOf(model.getEventStatus());
+
+      selection.append(" AND " + Events.CALENDAR_ID + "=? ");
+      selectionArgs.add(calendarId);
+      selection.append(" AND " + Events._ID + "=? ");
+      selectionArgs.add(eventId);
+      selection.append(" AND " + Events.TITLE + " LIKE ? ");
+      selectionArgs.add("%" + title + "%");
+      selection.append(" AND " + Events.DESCRIPTION + " LIKE ? ");
+      selectionArgs.add("%" + description + "%");
+      selection.append(" AND " + Events.EVENT_LOCATION + " LIKE ? ");
+      selectionArgs.add("%" + location + "%");
+      selection.append(" AND " + Events.STATUS + " =? ");
+      selectionArgs.add(status);
+
+      selection.append(" AND " + Events.DTSTART + " >=? ");
+      selectionArgs.add(startDate + "");
+      selection.append(" AND " + Events.DTEND + " <=? ");
+      selectionArgs.add(endDate + "");
+    }
+    return selection.length() == 0 ? null : selection.toString();
+  }
+
+  /**
+   * 批量查询并归并事件的提醒、参与人
+   * @param context
+   * @param events
+   */
+  private void attachDetails(Context context, List<EventModel> events) {
+    Map<Long, EventModel> eventMap = new HashMap<>(events.size() * 2);
+    List<Long> ids = new ArrayList<>(events.size());
+    for (EventModel event : events) {
+      event.setReminders(new ArrayList<ReminderModel>());
+      event.setAttendees(new ArrayList<AttendeeModel>());
+      if (eventMap.put(event.getId(), event) == null) {
+        ids.add(event.getId());
+      }
+    }
+
+    for (int from = 0; from < ids.size(); from += SelectionUtils.IN_CHUNK_SIZE) {
+      int to = Math.min(from + SelectionUtils.IN_CHUNK_SIZE, ids.size());
+      String[] args = SelectionUtils.toArgs(ids, from, to);
+      //查询提醒
+      Cursor remindersCursor = mResolver.query(context,
+          Uri.parse(CALANDER_REMIDER_URL),
+          REMINDERS_COLUMNS,
+          SelectionUtils.in(Reminders.EVENT_ID, args.length),
+          args,
+          null);
+      if (remindersCursor != null) {
+        try {
+          ReminderRowMapper mapper = new ReminderRowMapper(remindersCursor);
+          while (remindersCursor.moveToNext()) {
+            ReminderModel reminder = mapper.map(remindersCursor);
+            EventModel event = eventMap.get(reminder.getEventId());
+            if (event != null) {
+              event.getReminders().add(reminder);
+            }
+          }
+        } finally {
+          remindersCursor.close();
+        }
+      }
+      //查询参与人
+      Cursor attendeesCursor = mResolver.query(context,
+          Uri.parse(CALANDER_ATTENDEE_URL),
+          ATTENDEES_COLUMNS,
+          SelectionUtils.in(Attendees.EVENT_ID, args.length),
+          args,
+          null);
+      if (attendeesCursor != null) {
+        try {
+          AttendeeRowMapper mapper = new AttendeeRowMapper(attendeesCursor);
+          while (attendeesCursor.moveToNext()) {
+            AttendeeModel attendee = mapper.map(attendeesCursor);
+            EventModel event = eventMap.get(attendee.getEventId());
+            if (event != null) {
+              event.getAttendees().add(attendee);
+            }
+          }
+        } finally {
+          attendeesCursor.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * 添加日历事件、日程
+   * @param calendarRemindModel
+   */
+  public Uri insertEvent(CalendarRemindModel calendarRemindModel) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.INSERT_EVENT);
+    try {
+      if (null == mContext || null == calendarRemindModel) {
+        return null;
+      }
+      // 获取日历账户的id，设置了分片策略时为事件所属的分片日历
+      int calId = checkAndAddWriteCalendar(mContext, calendarRemindModel);
+      if (calId < 0) {
+        // 获取账户id失败直接返回，添加日历事件失败
+        mTracker.markError();
+        return null;
+      }
+
+      try {
+        ContentValues event = EventCodec.toInsertValues(calId, calendarRemindModel);
+        // 添加事件（这里如果calId不正确不会崩溃）
+        Uri uri = mResolver.insert(mContext, Uri.parse(CALANDER_EVENT_URL), event);
+        if (uri == null) {
+          mTracker.markError();
+          invalidateCalendarAccount();
+        } else {
+          mTracker.addRows(1);
+          notifyEventSaved(EventCodec.decode(ContentUris.parseId(uri), event));
+        }
+        return uri;
+      } catch (Exception e) {
+        invalidateCalendarAccount();
+        mTracker.error(TAG, "insertEvent failed", e);
+      }
+      return null;
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 批量插入日程（事件、提醒、参与人）
+   * 每 INSERT_BATCH_SIZE 条日程组成一次 applyBatch，提醒和参与人通过 withValueBackReference 引用同一批次中插入的事件；
+   * 某一批次失败时逐条重试该批次，保证单条错误数据不影响其它日程
+   * 设置了分片策略时按写入的日历分别组成批次
+   * @param calendars
+   * @return 与入参一一对应的插入结果
+   */
+  public List<EventInsertResult> insertEvents(List<CalendarRemindModel> calendars) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.INSERT_EVENTS);
+    try {
+      List<EventInsertResult> results = new ArrayList<>();
+      if (calendars == null || calendars.isEmpty()) {
+        return results;
+      }
+      for (int i = 0; i < calendars.size(); i++) {
+        results.add(new EventInsertResult(i));
+      }
+      if (null == mContext) {
+        markFailed(results, "CalendarManager未初始化");
+        mTracker.markError();
+        return results;
+      }
+      // 日历账户id缓存后不再查询，不分片时整批只查询一次
+      Map<Integer, List<EventInsertResult>> batches = new LinkedHashMap<>();
+      for (int i = 0; i < calendars.size(); i++) {
+        if (calendars.get(i) == null) {
+          results.get(i).setError("日程为空");
+          continue;
+        }
+        int calId = checkAndAddWriteCalendar(mContext, calendars.get(i));
+        if (calId < 0) {
+          results.get(i).setError("获取日历账户失败");
+          continue;
+        }
+        List<EventInsertResult> batch = batches.get(calId);
+        if (batch == null) {
+          batch = new ArrayList<>();
+          batches.put(calId, batch);
+        }
+        batch.add(results.get(i));
+        if (batch.size() >= INSERT_BATCH_SIZE) {
+          applyInsertBatch(calId, calendars, batch);
+          batch.clear();
+        }
+      }
+      for (Map.Entry<Integer, List<EventInsertResult>> entry : batches.entrySet()) {
+        if (!entry.getValue().isEmpty()) {
+          applyInsertBatch(entry.getKey(), calendars, entry.getValue());
+        }
+      }
+      for (EventInsertResult result : results) {
+        if (result.isSuccess()) {
+          mTracker.addRows(1);
+        } else {
+          mTracker.markError();
+        }
+      }
+      return results;
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 执行一个批次的插入，批次失败时逐条重试以定位失败的日程
+   * @param calId
+   * @param calendars
+   * @param batch
+   */
+  private void applyInsertBatch(int calId, List<CalendarRemindModel> calendars, List<EventInsertResult> batch) {
+    ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+    int[] eventOpIndexes = new int[batch.size()];
+    for (int i = 0; i < batch.size(); i++) {
+      eventOpIndexes[i] = ops.size();
+      CalendarRemindModel model = calendars.get(batch.get(i).getPosition());
+      appendInsertOperations(ops, eventsUri, EventCodec.toInsertValues(calId, model), model);
+    }
+    try {
+      ContentProviderResult[] cps = mResolver.applyBatch(mContext, CalendarContract.AUTHORITY, ops);
+      for (int i = 0; i < batch.size(); i++) {
+        Uri uri = cps[eventOpIndexes[i]].uri;
+        if (uri == null) {
+          batch.get(i).setError("添加事件失败");
+        } else {
+          long eventId = ContentUris.parseId(uri);
+          batch.get(i).setEventId(eventId);
+          if (!mEventListeners.isEmpty()) {
+            notifyEventSaved(EventCodec.decode(eventId, EventCodec.toInsertValues(calId, calendars.get(batch.get(i).getPosition()))));
+          }
+        }
+      }
+    } catch (Exception e) {
+      Log.w(TAG, "insertEvents batch failed: " + e.getMessage());
+      if (batch.size() == 1) {
+        batch.get(0).setError(e.toString());
+        return;
+      }
+      // 整批回滚，逐条重试
+      List<EventInsertResult> single = new ArrayList<>(1);
+      for (EventInsertResult result : batch) {
+        single.clear();
+        single.add(result);
+        applyInsertBatch(calId, calendars, single);
+      }
+    }
+  }
+
+  private void markFailed(List<EventInsertResult> results, String error) {
+    for (EventInsertResult result : results) {
+      result.setError(error);
+    }
+  }
+
+  /**
+   * 追加一条日程的插入操作：事件、提醒、参与人。事件为第一个操作，提醒和参与人引用它的插入结果
+   * @param ops
+   * @param eventUri 事件表uri，需要写同步列时传同步适配器uri
+   * @param eventValues 事件数据
+   * @param calendarRemindModel
+   */
+  void appendInsertOperations(ArrayList<ContentProviderOperation> ops, Uri eventUri, ContentValues eventValues, CalendarRemindModel calendarRemindModel) {
+    int eventIndex = ops.size();
+    // 不设置withYieldAllowed：批次必须整体提交或整体回滚，失败后逐条重试才不会重复插入
+    ops.add(ContentProviderOperation.newInsert(eventUri)
+        .withValues(eventValues)
+        .build());
+    appendReminderOperations(ops, calendarRemindModel.getReminders(), -1, eventIndex);
+    appendAttendeeOperations(ops, calendarRemindModel.getAttendees(), -1, eventIndex);
+  }
+
+  /**
+   * 追加一条日程的更新操作：按id更新事件；提醒、参与人列表不为null时先删除原有的再插入
+   * @param ops
+   * @param eventUri 事件表uri，需要写同步列时传同步适配器uri
+   * @param eventId
+   * @param eventValues
+   * @param calendarRemindModel
+   */
+  private void appendUpdateOperations(ArrayList<ContentProviderOperation> ops, Uri eventUri, long eventId, ContentValues eventValues, CalendarRemindModel calendarRemindModel) {
+    ops.add(ContentProviderOperation.newUpdate(ContentUris.withAppendedId(eventUri, eventId))
+        .withValues(eventValues)
+        .build());
+    String[] eventIdArgs = new String[]{ String.valueOf(eventId) };
+    if (calendarRemindModel.getReminders() != null) {
+      ops.add(ContentProviderOperation.newDelete(remindersUri)
+          .withSelection(Reminders.EVENT_ID + "=?", eventIdArgs)
+          .build());
+      appendReminderOperations(ops, calendarRemindModel.getReminders(), eventId, -1);
+    }
+    if (calendarRemindModel.getAttendees() != null) {
+      ops.add(ContentProviderOperation.newDelete(attendeesUri)
+          .withSelection(Attendees.EVENT_ID + "=?", eventIdArgs)
+          .build());
+      appendAttendeeOperations(ops, calendarRemindModel.getAttendees(), eventId, -1);
+    }
+  }
+
+  /**
+   * 设置提醒、参与人的EVENT_ID：已知事件id时直接设置，否则引用同一批次中第eventIndex个操作插入的事件
+   */
+  private ContentProviderOperation.Builder withEventId(ContentProviderOperation.Builder builder, String column, long eventId, int eventIndex) {
+    return eventId >= 0 ? builder.withValue(column, eventId) : builder.withValueBackReference(column, eventIndex);
+  }
+
+  /**
+   * 插入提醒，可以添加多个提醒，为空时默认在事件发生时提醒
+   */
+  void appendReminderOperations(ArrayList<ContentProviderOperation> ops, List<ReminderModel> reminders, long eventId, int eventIndex) {
+    if (reminders == null || reminders.isEmpty()) {
+      ContentProviderOperation.Builder builder = withEventId(ContentProviderOperation.newInsert(remindersUri), Reminders.EVENT_ID, eventId, eventIndex);
+      ReminderCodec.encodeDefault(ColumnWriter.of(builder));
+      ops.add(builder.build());
+    } else {
+      for (ReminderModel reminder : reminders) {
+        ContentProviderOperation.Builder builder = withEventId(ContentProviderOperation.newInsert(remindersUri), Reminders.EVENT_ID, eventId, eventIndex);
+        ReminderCodec.encode(reminder, ColumnWriter.of(builder));
+        ops.add(builder.build());
+      }
+    }
+  }
+
+  /**
+   * 插入参与者，可以添加多个参与者，参与者姓名为空的不添加
+   */
+  void appendAttendeeOperations(ArrayList<ContentProviderOperation> ops, List<AttendeeModel> attendees, long eventId, int eventIndex) {
+    if (attendees != null) {
+      for (AttendeeModel attendee : attendees) {
+        if (TextUtils.isEmpty(attendee.getName())) {
+          continue;
+        }
+        ContentProviderOperation.Builder builder = withEventId(ContentProviderOperation.newInsert(attendeesUri), Attendees.EVENT_ID, eventId, eventIndex);
+        AttendeeCodec.encode(attendee, ColumnWriter.of(builder));
+        ops.add(builder.build());
+      }
+    }
+  }
+
+  /**
+   * 查询event是否存在
+   * @param id
+   * @return
+   */
+  public boolean isExistEvent(long id) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.CHECK_EXIST);
+    try {
+      Cursor cursor = mResolver.query(mContext,
+          Uri.parse(CALANDER_EVENT_URL),
+          new String[]{ Events._ID},
+          Events._ID + "=" + id,
+          null,
+          null);
+      if (cursor == null) {
+        return false;
+      }
+      try {
+        return cursor.moveToFirst();
+      } finally {
+        cursor.close();
+      }
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 查询Reminder是否存在
+   * @param id
+   * @return
+   */
+  public boolean isExistReminder(long id) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.CHECK_EXIST);
+    try {
+      Cursor cursor = mResolver.query(mContext,
+          Uri.parse(CALANDER_REMIDER_URL),
+          new String[]{ Reminders._ID},
+          Reminders._ID + "=" + id,
+          null,
+          null);
+      if (cursor == null) {
+        return false;
+      }
+      try {
+        return cursor.moveToFirst();
+      } finally {
+        cursor.close();
+      }
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 查询Attendee是否存在
+   * @param id
+   * @return
+   */
+  public boolean isExistAttendee(long id) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.CHECK_EXIST);
+    try {
+      Cursor cursor = mResolver.query(mContext,
+          Uri.parse(CALANDER_ATTENDEE_URL),
+          new String[]{ Attendees._ID},
+          Attendees._ID + "=" + id,
+          null,
+          null);
+      if (cursor == null) {
+        return false;
+      }
+      try {
+        return cursor.moveToFirst();
+      } finally {
+        cursor.close();
+      }
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 更新日历的名称
    * @param param
    * @return Map
    */
@@ -812,186 +1735,623 @@ public class CalendarManager {
 
 
   /**
-   * 检查是否有存在的账户。有则返回账户id，否则返回-1
+   * 检查是否有存在的应用账户。有则返回默认日历的id，否则返回-1
+   * 只按应用自己的账户名、账户类型查询，且只取_ID、CAL_SYNC1；同一次查询中把分片日历（CAL_SYNC1为分片key）放入shards
+   * @param context
+   * @param shards
+   * @return
+   */
+  private int checkCalendarAccount(Context context, Map<String, Integer> shards) {
+    Cursor userCursor = mResolver.query(context,
+        Uri.parse(CALANDER_URL),
+        new String[]{ CalendarContract.Calendars._ID, CalendarContract.Calendars.CAL_SYNC1 },
+        CalendarContract.Calendars.ACCOUNT_NAME + "=? AND " + CalendarContract.Calendars.ACCOUNT_TYPE + "=?",
+        new String[]{ CALENDARS_ACCOUNT_NAME, CALENDARS_ACCOUNT_TYPE },
+        null);
+    try {
+      if (userCursor == null) // 查询返回空值
+        return -1;
+      int id = -1;
+      while (userCursor.moveToNext()) {
+        String shardKey = userCursor.getString(1);
+        if (shardKey != null) {
+          shards.put(shardKey, userCursor.getInt(0));
+        } else if (id < 0) { // 存在应用账户，返回默认日历的id
+          id = userCursor.getInt(0);
+        }
+      }
+      return id;
+    } finally {
+      if (userCursor != null) {
+        userCursor.close();
+      }
+    }
+  }
+
+  private static String CALENDARS_NAME = "test";
+  private static String CALENDARS_ACCOUNT_NAME = "test@gmail.com";
+  private static String CALENDARS_ACCOUNT_TYPE = "com.android.exchange";
+  private static String CALENDARS_DISPLAY_NAME = "测试账户";
+
+  /**
+   * 添加账户下的日历。创建成功则返回日历id，否则返回-1
+   * @param context
+   * @param shardKey 分片key，写入 CAL_SYNC1；null表示默认日历
+   * @return
+   */
+  private long addCalendarAccount(Context context, String shardKey) {
+    TimeZone timeZone = TimeZone.getDefault();
+    ContentValues value = new ContentValues();
+    if (shardKey == null) {
+      value.put(CalendarContract.Calendars.NAME, CALENDARS_NAME);
+      value.put(CalendarContract.Calendars.CALENDAR_DISPLAY_NAME, CALENDARS_DISPLAY_NAME);
+    } else {
+      value.put(CalendarContract.Calendars.NAME, CALENDARS_NAME + "-" + shardKey);
+      value.put(CalendarContract.Calendars.CALENDAR_DISPLAY_NAME, CALENDARS_DISPLAY_NAME + " " + shardKey);
+      value.put(CalendarContract.Calendars.CAL_SYNC1, shardKey);
+    }
+    value.put(CalendarContract.Calendars.ACCOUNT_NAME, CALENDARS_ACCOUNT_NAME);
+    value.put(CalendarContract.Calendars.ACCOUNT_TYPE, CALENDARS_ACCOUNT_TYPE);
+    // 分片日历也要可见：CalendarProvider 只为 VISIBLE=1 的日历中的事件安排提醒闹钟，隐藏后分片中事件的系统提醒不会触发；
+    // 代价是系统日历的日历列表中每个分片多一项（显示名带分片key）
+    value.put(CalendarContract.Calendars.VISIBLE, 1);
+    value.put(CalendarContract.Calendars.CALENDAR_COLOR, Color.BLUE);
+    value.put(CalendarContract.Calendars.CALENDAR_ACCESS_LEVEL, CalendarContract.Calendars.CAL_ACCESS_OWNER);
+    value.put(CalendarContract.Calendars.SYNC_EVENTS, 1);
+    value.put(CalendarContract.Calendars.CALENDAR_TIME_ZONE, timeZone.getID());
+    value.put(CalendarContract.Calendars.OWNER_ACCOUNT, CALENDARS_ACCOUNT_NAME);
+    value.put(CalendarContract.Calendars.CAN_ORGANIZER_RESPOND, 0);
+
+    Uri calendarUri = asSyncAdapter(Uri.parse(CALANDER_URL));
+
+    Uri result = mResolver.insert(context, calendarUri, value);
+    long id = result == null ? -1 : ContentUris.parseId(result);
+    EventIntervalIndex index = mIntervalIndex;
+    if (id >= 0 && index != null) {
+      // 索引建立之后新建的应用日历
+      index.addCalendarId(id);
+    }
+    return id;
+  }
+
+  /**
+   * 以应用账户的同步适配器身份访问，可以写 _SYNC_ID 等同步列
+   * @param uri
+   * @return
+   */
+  Uri asSyncAdapter(Uri uri) {
+    return uri.buildUpon()
+        .appendQueryParameter(CalendarContract.CALLER_IS_SYNCADAPTER, "true")
+        .appendQueryParameter(CalendarContract.Calendars.ACCOUNT_NAME, CALENDARS_ACCOUNT_NAME)
+        .appendQueryParameter(CalendarContract.Calendars.ACCOUNT_TYPE, CALENDARS_ACCOUNT_TYPE)
+        .build();
+  }
+
+  /**
+   * 获取账户。如果账户不存在则先创建账户，账户存在获取账户id；获取账户成功返回账户id，否则返回-1
+   * 检查是否已经添加了日历账户，如果没有添加先添加一个日历账户
+   * 账户id缓存在内存中，日历表变化时由mCalendarsObserver刷新
+   * @param context
+   * @return
+   */
+  private int checkAndAddCalendarAccount(Context context) {
+    int cachedId = mCalendarId;
+    if (cachedId >= 0) {
+      return cachedId;
+    }
+    synchronized (mAccountLock) {
+      if (mCalendarId >= 0) {
+        return mCalendarId;
+      }
+      Map<String, Integer> shards = new HashMap<>();
+      int id = lookupCalendarAccount(context, true, shards);
+      if (mCalendarsObserver != null) {
+        mShardIds = id >= 0 ? shards : null;
+        mCalendarId = id;
+      }
+      return id;
+    }
+  }
+
+  /**
+   * 查询应用账户id，create为true且不存在时创建；记录账户查询的耗时（缓存命中时不经过这里）
+   * @param context
+   * @param create
+   * @param shards 放入查询到的分片日历
+   * @return 账户id，失败返回-1
+   */
+  private int lookupCalendarAccount(Context context, boolean create, Map<String, Integer> shards) {
+    long start = System.nanoTime();
+    int id = -1;
+    boolean failed = true;
+    try {
+      id = checkCalendarAccount(context, shards);
+      if (id < 0 && create) {
+        long addId = addCalendarAccount(context, null);
+        id = addId >= 0 ? (int) addId : -1;
+      }
+      failed = create && id < 0;
+      return id;
+    } finally {
+      mTracker.record(CalendarOperation.ACCOUNT_LOOKUP, start, id >= 0 ? 1 : 0, failed);
+    }
+  }
+
+  /**
+   * 设置应用日历的分片策略，null表示不分片（默认），事件都写入默认日历
+   * 修改策略不会移动已有的事件，之前建立的分片日历仍然参与查询
+   * 带去重key的写入（{@link #upsertEvent(CalendarRemindModel, String)}、{@link #reconcileEvents(List)}）
+   * 按key在默认日历中匹配，不分片
+   * @param policy
+   */
+  public void setShardPolicy(CalendarShardPolicy policy) {
+    mShardPolicy = policy;
+  }
+
+  public CalendarShardPolicy getShardPolicy() {
+    return mShardPolicy;
+  }
+
+  /**
+   * 事件写入的日历：按分片策略选择分片日历，不存在时创建；没有策略或事件不属于任何分片时为默认日历
+   * @param context
+   * @param model
+   * @return 日历id，失败返回-1
+   */
+  private int checkAndAddWriteCalendar(Context context, CalendarRemindModel model) {
+    CalendarShardPolicy policy = mShardPolicy;
+    String shardKey = policy == null ? null : policy.getShardKey(model, EventCodec.dtstartOf(model), EventCodec.dtendOf(model));
+    return checkAndAddShardCalendar(context, shardKey);
+  }
+
+  /**
+   * 分片对应的日历，不存在时创建
    * @param context
-   * @return
+   * @param shardKey 为null时为默认日历
+   * @return 日历id，失败返回-1
    */
-  private int checkCalendarAccount(Context context) {
-    Cursor userCursor = context.getContentResolver().query(Uri.parse(CALANDER_URL), null, null, null, null);
-    try {
-      if (userCursor == null) // 查询返回空值
-        return -1;
-      int count = userCursor.getCount();
-      if (count > 0) { // 存在现有账户，取第一个账户的id返回
-        userCursor.moveToFirst();
-        return userCursor.getInt(userCursor.getColumnIndex(CalendarContract.Calendars._ID));
-      } else {
+  private int checkAndAddShardCalendar(Context context, String shardKey) {
+    // 默认日历总是先于分片存在，分片随默认日历一起查询、缓存
+    int calId = checkAndAddCalendarAccount(context);
+    if (shardKey == null || calId < 0) {
+      return calId;
+    }
+    Map<String, Integer> shards = mShardIds;
+    Integer shardId = shards == null ? null : shards.get(shardKey);
+    if (shardId != null) {
+      return shardId;
+    }
+    synchronized (mAccountLock) {
+      shards = mShardIds;
+      if (shards == null) {
+        shards = new HashMap<>();
+        if (lookupCalendarAccount(context, false, shards) < 0) {
+          return -1;
+        }
+      }
+      shardId = shards.get(shardKey);
+      if (shardId != null) {
+        return shardId;
+      }
+      long start = System.nanoTime();
+      long addId = addCalendarAccount(context, shardKey);
+      mTracker.record(CalendarOperation.ACCOUNT_LOOKUP, start, addId >= 0 ? 1 : 0, addId < 0);
+      if (addId < 0) {
         return -1;
       }
-    } finally {
-      if (userCursor != null) {
-        userCursor.close();
+      if (mShardIds != null) {
+        Map<String, Integer> updated = new HashMap<>(mShardIds);
+        updated.put(shardKey, (int) addId);
+        mShardIds = updated;
       }
+      return (int) addId;
     }
   }
 
-  private static String CALENDARS_NAME = "test";
-  private static String CALENDARS_ACCOUNT_NAME = "test@gmail.com";
-  private static String CALENDARS_ACCOUNT_TYPE = "com.android.exchange";
-  private static String CALENDARS_DISPLAY_NAME = "测试账户";
-
   /**
-   * 添加账户。账户创建成功则返回账户id，否则返回-1
+   * 设置了分片策略时，修改了开始、结束时间或日历的应用日历事件按新的时间重新选择分片，分片变化时在 values 中写入 CALENDAR_ID，
+   * 保证每个分片仍满足 {@link CalendarShardPolicy#mayContain}；新的时间不属于任何分片时移到默认日历。
+   * 只有这种情况才按id读取一次当前的行，更新后不在应用日历中的事件不移动
    * @param context
-   * @return
+   * @param updates 事件id和要写入的列
+   * @return 读取当前的行或创建分片失败时返回false
    */
-  private long addCalendarAccount(Context context) {
-    TimeZone timeZone = TimeZone.getDefault();
-    ContentValues value = new ContentValues();
-    value.put(CalendarContract.Calendars.NAME, CALENDARS_NAME);
-    value.put(CalendarContract.Calendars.ACCOUNT_NAME, CALENDARS_ACCOUNT_NAME);
-    value.put(CalendarContract.Calendars.ACCOUNT_TYPE, CALENDARS_ACCOUNT_TYPE);
-    value.put(CalendarContract.Calendars.CALENDAR_DISPLAY_NAME, CALENDARS_DISPLAY_NAME);
-    value.put(CalendarContract.Calendars.VISIBLE, 1);
-    value.put(CalendarContract.Calendars.CALENDAR_COLOR, Color.BLUE);
-    value.put(CalendarContract.Calendars.CALENDAR_ACCESS_LEVEL, CalendarContract.Calendars.CAL_ACCESS_OWNER);
-    value.put(CalendarContract.Calendars.SYNC_EVENTS, 1);
-    value.put(CalendarContract.Calendars.CALENDAR_TIME_ZONE, timeZone.getID());
-    value.put(CalendarContract.Calendars.OWNER_ACCOUNT, CALENDARS_ACCOUNT_NAME);
-    value.put(CalendarContract.Calendars.CAN_ORGANIZER_RESPOND, 0);
+  boolean assignShardCalendars(Context context, Map<Long, ContentValues> updates) {
+    CalendarShardPolicy policy = mShardPolicy;
+    if (policy == null) {
+      return true;
+    }
+    long[] ids = new long[updates.size()];
+    int count = 0;
+    for (Map.Entry<Long, ContentValues> entry : updates.entrySet()) {
+      ContentValues values = entry.getValue();
+      if (values.containsKey(Events.DTSTART) || values.containsKey(Events.DTEND)
+          || values.containsKey(Events.CALENDAR_ID)) {
+        ids[count++] = entry.getKey();
+      }
+    }
+    if (count == 0) {
+      return true;
+    }
+    List<EventModel> rows = new ArrayList<>(count);
+    if (!queryEventsByIds(context, Arrays.copyOf(ids, count), rows)) {
+      return false;
+    }
+    long[] appCalIds = getAppCalendarIds(context);
+    for (EventModel row : rows) {
+      ContentValues values = updates.get(row.getId());
+      // 写入失败重新入队的更新中可能已有上次选择的分片，按合并后的时间重新选择
+      long current = values.containsKey(Events.CALENDAR_ID) ? values.getAsLong(Events.CALENDAR_ID) : row.getCalendarId();
+      if (Arrays.binarySearch(appCalIds, current) < 0) {
+        continue;
+      }
+      long dtstart = values.containsKey(Events.DTSTART) ? values.getAsLong(Events.DTSTART) : row.getDtstart();
+      long dtend = values.containsKey(Events.DTEND) ? values.getAsLong(Events.DTEND) : row.getDtend();
+      // 策略按存储的时间分片，model 只用于按其它字段分片的策略
+      CalendarRemindModel model = new CalendarRemindModel();
+      model.setTitle(values.containsKey(Events.TITLE) ? values.getAsString(Events.TITLE) : row.getTitle());
+      model.setStartDate(dtstart);
+      model.setEndDate(dtend);
+      model.setAllDay((values.containsKey(Events.ALL_DAY) ? values.getAsBoolean(Events.ALL_DAY) : row.isAllDay()) ? 1 : 0);
+      model.setTimeZone(row.getEventTimezone());
+      int calId = checkAndAddShardCalendar(context, policy.getShardKey(model, dtstart, dtend));
+      if (calId < 0) {
+        return false;
+      }
+      if (calId != current) {
+        values.put(Events.CALENDAR_ID, calId);
+      }
+    }
+    return true;
+  }
 
-    Uri calendarUri = Uri.parse(CALANDER_URL);
-    calendarUri = calendarUri.buildUpon()
-        .appendQueryParameter(CalendarContract.CALLER_IS_SYNCADAPTER, "true")
-        .appendQueryParameter(CalendarContract.Calendars.ACCOUNT_NAME, CALENDARS_ACCOUNT_NAME)
-        .appendQueryParameter(CalendarContract.Calendars.ACCOUNT_TYPE, CALENDARS_ACCOUNT_TYPE)
-        .build();
+  /**
+   * 应用日历的id：默认日历和分片日历；设置了分片策略时只包含可能有与 [begin, end) 重叠事件的分片
+   * 日历id已缓存时没有IPC
+   * @param context
+   * @param begin
+   * @param end
+   * @return 升序，还没有应用日历时返回空数组
+   */
+  public long[] getAppCalendarIds(Context context, long begin, long end) {
+    int calId = mCalendarId;
+    Map<String, Integer> shards = mShardIds;
+    if (calId < 0 || shards == null) {
+      synchronized (mAccountLock) {
+        calId = mCalendarId;
+        shards = mShardIds;
+        if (calId < 0 || shards == null) {
+          shards = new HashMap<>();
+          calId = lookupCalendarAccount(context, false, shards);
+          if (calId >= 0 && mCalendarsObserver != null) {
+            mShardIds = shards;
+            mCalendarId = calId;
+          }
+        }
+      }
+    }
+    if (calId < 0) {
+      return new long[0];
+    }
+    CalendarShardPolicy policy = mShardPolicy;
+    long[] ids = new long[shards.size() + 1];
+    int count = 0;
+    ids[count++] = calId;
+    for (Map.Entry<String, Integer> entry : shards.entrySet()) {
+      if (policy == null || policy.mayContain(entry.getKey(), begin, end)) {
+        ids[count++] = entry.getValue();
+      }
+    }
+    ids = count == ids.length ? ids : Arrays.copyOf(ids, count);
+    Arrays.sort(ids);
+    return ids;
+  }
 
-    Uri result = context.getContentResolver().insert(calendarUri, value);
-    long id = result == null ? -1 : ContentUris.parseId(result);
-    return id;
+  /**
+   * 所有应用日历的id
+   * @see #getAppCalendarIds(Context, long, long)
+   */
+  long[] getAppCalendarIds(Context context) {
+    return getAppCalendarIds(context, Long.MIN_VALUE, Long.MAX_VALUE);
   }
 
   /**
-   * 获取账户。如果账户不存在则先创建账户，账户存在获取账户id；获取账户成功返回账户id，否则返回-1
-   * 检查是否已经添加了日历账户，如果没有添加先添加一个日历账户再查询
+   * 删除已经过去且没有事件的分片日历：按分片策略分片中不会有与当前时间之后重叠的事件（{@link CalendarShardPolicy#mayContain}），
+   * 且分片中没有未删除的事件。{@link MonthShardPolicy} 等分片数随时间增长的策略需要定期调用（如每天一次），
+   * 否则系统日历的日历列表中的分片会越来越多。没有设置分片策略时不删除。
+   * 一次查询过期分片中的事件，一次删除；有IPC，在后台线程调用
    * @param context
-   * @return
+   * @return 删除的分片数，失败返回-1
    */
-  private int checkAndAddCalendarAccount(Context context) {
-    int oldId = checkCalendarAccount(context);
-    if (oldId >= 0) {
-      return oldId;
-    } else {
-      long addId = addCalendarAccount(context);
-      if (addId >= 0) {
-        return checkCalendarAccount(context);
-      } else {
-        return -1;
+  public int removeExpiredShards(Context context) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.REMOVE_EXPIRED_SHARDS);
+    try {
+      CalendarShardPolicy policy = mShardPolicy;
+      if (policy == null) {
+        return 0;
+      }
+      try {
+        // 加载分片缓存
+        getAppCalendarIds(context);
+        Map<String, Integer> shards = mShardIds;
+        if (shards == null) {
+          return 0;
+        }
+        long now = System.currentTimeMillis();
+        Map<Long, String> expired = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : shards.entrySet()) {
+          if (!policy.mayContain(entry.getKey(), now, Long.MAX_VALUE)) {
+            expired.put((long) entry.getValue(), entry.getKey());
+          }
+        }
+        if (expired.isEmpty()) {
+          return 0;
+        }
+        // 还有事件的分片保留
+        long[] calIds = toArray(expired.keySet());
+        Cursor cursor = mResolver.query(context,
+            Uri.parse(CALANDER_EVENT_URL),
+            new String[]{ Events.CALENDAR_ID },
+            SelectionUtils.in(Events.CALENDAR_ID, calIds.length) + " AND " + Events.DELETED + "!=1",
+            SelectionUtils.toArgs(calIds),
+            null);
+        if (cursor == null) {
+          return -1;
+        }
+        try {
+          while (cursor.moveToNext()) {
+            expired.remove(cursor.getLong(0));
+          }
+        } finally {
+          cursor.close();
+        }
+        if (expired.isEmpty()) {
+          return 0;
+        }
+        long[] emptyIds = toArray(expired.keySet());
+        int rows = mResolver.delete(context,
+            asSyncAdapter(Uri.parse(CALANDER_URL)),
+            SelectionUtils.in(CalendarContract.Calendars._ID, emptyIds.length),
+            SelectionUtils.toArgs(emptyIds));
+        synchronized (mAccountLock) {
+          if (mShardIds != null) {
+            Map<String, Integer> updated = new HashMap<>(mShardIds);
+            updated.keySet().removeAll(expired.values());
+            mShardIds = updated;
+          }
+        }
+        mTracker.addRows(rows);
+        return rows;
+      } catch (Exception e) {
+        mTracker.error(TAG, "removeExpiredShards failed", e);
       }
+      return -1;
+    } finally {
+      mTracker.exit(outer);
     }
   }
 
+  private static long[] toArray(Collection<Long> ids) {
+    long[] result = new long[ids.size()];
+    int i = 0;
+    for (Long id : ids) {
+      result[i++] = id;
+    }
+    return result;
+  }
+
   /**
    * 添加日历事件、日程
    * @param context
    */
   public boolean addCalendarEvent(Context context, CalendarRemindModel calendarRemindModel) {
-    if (null == context || null == calendarRemindModel) {
-      return false;
+    CalendarOperation outer = mTracker.enter(CalendarOperation.ADD_CALENDAR_EVENT);
+    try {
+      if (null == context || null == calendarRemindModel) {
+        return false;
+      }
+      // 获取日历账户的id，设置了分片策略时为事件所属的分片日历
+      int calId = checkAndAddWriteCalendar(context, calendarRemindModel);
+      if (calId < 0) {
+        // 获取账户id失败直接返回，添加日历事件失败
+        mTracker.markError();
+        return false;
+      }
+
+      ContentValues event = EventCodec.toInsertValues(calId, calendarRemindModel);
+      ArrayList<ContentProviderOperation> ops = new ArrayList<>(2);
+      // 添加事件（这里如果calId不正确不会崩溃）
+      ops.add(ContentProviderOperation.newInsert(eventsUri).withValues(event).build());
+
+      // 事件提醒的设定，Reminders表（如果没有下面的代码，那么提醒选项将会是无）
+      // 默认在事件发生时提醒；和事件在同一个applyBatch中插入，通过 withValueBackReference 引用事件id，一次IPC
+      appendReminderOperations(ops, null, -1, 0);
+      ContentProviderResult[] cps;
+      try {
+        // 这里会有SQLiteException（比如CALENDAR_ID不对时会抛出此异常），整批回滚
+        cps = mResolver.applyBatch(context, CalendarContract.AUTHORITY, ops);
+      } catch (Exception e) {
+        mTracker.error(TAG, "addCalendarEvent failed", e);
+        invalidateCalendarAccount();
+        return false;
+      }
+      if (cps.length < 2 || cps[0].uri == null) {
+        // 添加日历事件失败直接返回，账户可能已被删除
+        mTracker.markError();
+        invalidateCalendarAccount();
+        return false;
+      }
+      mTracker.addRows(1);
+      notifyEventSaved(EventCodec.decode(ContentUris.parseId(cps[0].uri), event));
+      if (cps[1].uri == null) {
+        // 添加闹钟提醒失败直接返回
+        mTracker.markError();
+        return false;
+      }
+      return true;
+    } finally {
+      mTracker.exit(outer);
     }
-    // 获取日历账户的id
-    int calId = checkAndAddCalendarAccount(context);
-    if (calId < 0) {
-      // 获取账户id失败直接返回，添加日历事件失败
-      return false;
+  }
+
+  /**
+   * 按客户端去重key写入日程：已存在则原地更新，否则插入
+   * key 保存在事件的 _SYNC_ID 列（只有同步适配器可以写），按 (_SYNC_ID, CALENDAR_ID) 索引查询事件id，
+   * 再用一次 applyBatch 更新或插入，共两次IPC；失败重试、重复调用都不会产生重复事件，
+   * 不需要再先用 {@link #hasCalendarEvent(Context, String)} 按标题检查
+   * 同一个key已被标记删除（DELETED=1，如用户在系统日历中删除）的行在同一批中以同步适配器身份清除，不会随删除、重新写入累积
+   * 更新时提醒、参与人列表不为null则整体替换，为null时保留原有的
+   * @param calendarRemindModel
+   * @param dedupKey 调用方生成的稳定key，如业务id
+   * @return 事件的uri，失败返回null
+   */
+  public Uri upsertEvent(CalendarRemindModel calendarRemindModel, String dedupKey) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.UPSERT_EVENT);
+    try {
+      if (null == mContext || null == calendarRemindModel || TextUtils.isEmpty(dedupKey)) {
+        return null;
+      }
+      int calId = checkAndAddCalendarAccount(mContext);
+      if (calId < 0) {
+        mTracker.markError();
+        return null;
+      }
+      ContentValues event = EventCodec.toInsertValues(calId, calendarRemindModel);
+      event.put(Events._SYNC_ID, dedupKey);
+      if (calendarRemindModel.getReminders() != null || calendarRemindModel.getAttendees() != null) {
+        // 提醒、参与人会被替换，清除 CalendarReconciler 记录的指纹
+        event.putNull(CalendarReconciler.DETAILS_FINGERPRINT);
+      }
+      Uri eventUri = asSyncAdapter(eventsUri);
+      // 同一个key的查询和写入之间不能插入其它写入，否则并发调用会重复插入
+      synchronized (mUpsertLock) {
+        List<Long> ids = new ArrayList<>();
+        List<Long> deletedIds = new ArrayList<>();
+        if (!queryEventIdsByDedupKey(calId, dedupKey, ids, deletedIds)) {
+          mTracker.markError();
+          return null;
+        }
+        long eventId = ids.isEmpty() ? -1 : ids.get(0);
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        if (eventId < 0) {
+          appendInsertOperations(ops, eventUri, event, calendarRemindModel);
+        } else {
+          appendUpdateOperations(ops, eventUri, eventId, event, calendarRemindModel);
+        }
+        if (!deletedIds.isEmpty()) {
+          ops.add(ContentProviderOperation.newDelete(eventUri)
+              .withSelection(SelectionUtils.in(Events._ID, deletedIds.size()), SelectionUtils.toArgs(deletedIds, 0, deletedIds.size()))
+              .build());
+        }
+        try {
+          ContentProviderResult[] cps = mResolver.applyBatch(mContext, CalendarContract.AUTHORITY, ops);
+          if (eventId < 0) {
+            if (cps[0].uri == null) {
+              mTracker.markError();
+              invalidateCalendarAccount();
+              return null;
+            }
+            eventId = ContentUris.parseId(cps[0].uri);
+          } else if (cps[0].count == null || cps[0].count == 0) {
+            // 查询之后事件被删除
+            mTracker.markError();
+            return null;
+          }
+          mTracker.addRows(1);
+          notifyEventSaved(EventCodec.decode(eventId, event));
+          return ContentUris.withAppendedId(eventsUri, eventId);
+        } catch (Exception e) {
+          invalidateCalendarAccount();
+          mTracker.error(TAG, "upsertEvent failed", e);
+        }
+      }
+      return null;
+    } finally {
+      mTracker.exit(outer);
     }
+  }
 
-    ContentValues event = new ContentValues();
-    // 插入账户的id
-    event.put(CalendarContract.Events.CALENDAR_ID, calId); // 日历事件属于的Calendars#_ID，必须有
-    event.put(CalendarContract.Events.TITLE, calendarRemindModel.getTitle()); // 事件的标题
-    event.put(CalendarContract.Events.DESCRIPTION, calendarRemindModel.getDescription()); // 事件的备注
-    Calendar calendar = Calendar.getInstance();
-    Calendar startCalendar = Calendar.getInstance();
-    Calendar endCalendar = Calendar.getInstance();
-    // 如果是全天事件的话，取开始时间的那一整天
-    if (calendarRemindModel.isAllDay()) {
-      // 开始时间
-      startCalendar.set(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get(Calendar.DAY_OF_MONTH), 0, 0, 0);
-      // 结束时间
-      endCalendar.set(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get(Calendar.DAY_OF_MONTH), 24, 0, 0);
-    } else {
-      // 开始时间
-      startCalendar.setTimeInMillis(calendarRemindModel.getStartDate()); // 设置开始时间
-      // 结束时间
-      endCalendar.setTimeInMillis(calendarRemindModel.getEndDate()); // 设置终止时间
-    }
-    event.put(CalendarContract.Events.ALL_DAY, calendarRemindModel.isAllDay());
-    long start = startCalendar.getTimeInMillis();
-    long end = endCalendar.getTimeInMillis();
-    event.put(CalendarContract.Events.DTSTART, start); // 事件的启动时间，使用从纪元开始的UTC毫秒计时，必须有
-    event.put(CalendarContract.Events.DTEND, end); // 事件的结束时间，使用从纪元开始的UTC毫秒计时，对于非重复发生的事件，必须有
-
-//    event.put(CalendarContract.Events.STATUS, 1); // 事件状态:暂定(0)，确认(1)或取消(2)
-    event.put(CalendarContract.Events.HAS_ALARM, calendarRemindModel.getHasAlarm()); // 设置有闹钟提醒
-    String timeZone = calendarRemindModel.getTimeZone();
-    event.put(CalendarContract.Events.EVENT_TIMEZONE, TextUtils.isEmpty(timeZone) ? "Asia/Shanghai" : timeZone); // 事件所针对的时区，必须有
-    String location = calendarRemindModel.getLocation();
-    // 如果地址不为空插入地址
-    if (!TextUtils.isEmpty(location)) {
-      event.put(CalendarContract.Events.EVENT_LOCATION, location);
-    }
-    // 设置我的状态
-//    event.put(CalendarContract.Events.AVAILABILITY, calendarRemindModel.getAvailability());
-    // 设置隐私
-//    event.put(CalendarContract.Events.ACCESS_LEVEL, calendarRemindModel.getAccessLevel());
-    // 添加事件（这里如果calId不正确不会崩溃）
-    Uri newEvent = context.getContentResolver().insert(Uri.parse(CALANDER_EVENT_URL), event);
-    if (newEvent == null) {
-      // 添加日历事件失败直接返回
-      return false;
+  /**
+   * 按期望状态同步应用日历：desired 为用户应有的完整日程列表，以 {@link CalendarRemindModel#getDedupKey()} 匹配已有事件，
+   * 只插入新增的、更新变化的列、删除不再需要的，见 {@link CalendarReconciler}
+   * 代替"按标题删除再逐条添加"；没有变化时只有一次查询
+   * 没有key的日程会被跳过，应用日历中没有key的事件（其它接口添加的）不受影响
+   * @param desired
+   * @return 同步结果
+   */
+  public ReconcileResult reconcileEvents(List<CalendarRemindModel> desired) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.RECONCILE_EVENTS);
+    try {
+      if (null == mContext || null == desired) {
+        return new ReconcileResult();
+      }
+      int calId = checkAndAddCalendarAccount(mContext);
+      if (calId < 0) {
+        mTracker.markError();
+        ReconcileResult result = new ReconcileResult();
+        result.addFailed(desired.size());
+        return result;
+      }
+      // 与 upsertEvent 共用锁，避免同一个key被并发插入两次
+      synchronized (mUpsertLock) {
+        ReconcileResult result = new CalendarReconciler(this, mContext, calId).reconcile(desired);
+        mTracker.addRows(result.getInserted() + result.getUpdated() + result.getDeleted());
+        if (result.getFailed() > 0) {
+          mTracker.markError();
+        }
+        return result;
+      }
+    } finally {
+      mTracker.exit(outer);
     }
+  }
 
-    // 事件提醒的设定，Reminders表（如果没有下面的代码，那么提醒选项将会是无）
-    ContentValues values = new ContentValues();
-    values.put(CalendarContract.Reminders.EVENT_ID, ContentUris.parseId(newEvent));
-    // 提醒：提前10分钟有提醒（若注释掉或者设为0表示日程发生时）（注释掉将不会有闹铃提醒）（无论HAS_ALARM是没有设置、设为1或是设为0，都会有闹铃）
-    values.put(CalendarContract.Reminders.MINUTES, 0); // 应该在几分钟之前触发事件。
-    // 在服务上设置的报警的方法，下列设置之一：
-    // 1.  METHOD_ALERT
-    // 2.  METHOD_DEFAULT
-    // 3.  METHOD_EMAIL
-    // 4.  METHOD_SMS
-    values.put(CalendarContract.Reminders.METHOD, CalendarContract.Reminders.METHOD_ALERT);
-    // 这里会有SQLiteException（比如CALENDAR_ID不对时会抛出此异常）
-    Uri uri = context.getContentResolver().insert(Uri.parse(CALANDER_REMIDER_URL), values);
-    if(uri == null) {
-      // 添加闹钟提醒失败直接返回
+  /**
+   * 按去重key查询应用日历中的事件id，使用 (_SYNC_ID, CALENDAR_ID) 索引，只取_ID、DELETED
+   * @param calId
+   * @param dedupKey
+   * @param ids 未删除的事件id，追加到该列表
+   * @param deletedIds 已标记删除（DELETED=1）的事件id，追加到该列表
+   * @return 查询是否成功
+   */
+  private boolean queryEventIdsByDedupKey(int calId, String dedupKey, List<Long> ids, List<Long> deletedIds) {
+    Cursor cursor = mResolver.query(mContext,
+        eventsUri,
+        new String[]{ Events._ID, Events.DELETED },
+        Events._SYNC_ID + "=? AND " + Events.CALENDAR_ID + "=?",
+        new String[]{ dedupKey, String.valueOf(calId) },
+        null);
+    if (cursor == null) {
       return false;
     }
-    return true;
+    try {
+      while (cursor.moveToNext()) {
+        (cursor.getInt(1) == 1 ? deletedIds : ids).add(cursor.getLong(0));
+      }
+      return true;
+    } finally {
+      cursor.close();
+    }
   }
 
+  /**
+   * 应用日历中是否存在该标题的日程
+   * 标题和日历id作为查询条件交给provider过滤，只取_ID
+   * 只按标题判断，不同日程可能同名；避免重复添加请使用 {@link #upsertEvent(CalendarRemindModel, String)}
+   * @param context
+   * @param title
+   * @return
+   */
   public boolean hasCalendarEvent(Context context, String title) {
-    Cursor eventCursor = context.getContentResolver().query(Uri.parse(CALANDER_EVENT_URL), null, null, null, null);
+    CalendarOperation outer = mTracker.enter(CalendarOperation.HAS_CALENDAR_EVENT);
     try {
-      if (eventCursor == null) // 查询返回空值
+      if (TextUtils.isEmpty(title)) {
         return false;
-      if (eventCursor.getCount() > 0) {
-        // 遍历所有事件，找到title跟需要查询的title一样的项
-        for (eventCursor.moveToFirst(); !eventCursor.isAfterLast(); eventCursor.moveToNext()) {
-          String eventTitle = eventCursor.getString(eventCursor.getColumnIndex("title"));
-          if (!TextUtils.isEmpty(title) && title.equals(eventTitle)) {
-            return true;
-          }
-        }
       }
-      return false;
+      List<Long> ids = queryEventIdsByTitle(context, title);
+      return ids != null && !ids.isEmpty();
     } finally {
-      if (eventCursor != null) {
-        eventCursor.close();
-      }
+      mTracker.exit(outer);
     }
   }
 
@@ -1000,32 +2360,294 @@ public class CalendarManager {
    * 根据设置的title来查找并删除
    * @param context
    * @param title
+   * @return 是否成功，没有匹配的事件时也返回true；需要删除的事件数时用 {@link #deleteCalendarEventCount(Context, String)}
    */
   public boolean deleteCalendarEvent(Context context, String title) {
-    Cursor eventCursor = context.getContentResolver().query(Uri.parse(CALANDER_EVENT_URL), null, null, null, null);
+    return deleteCalendarEventCount(context, title) >= 0;
+  }
+
+  /**
+   * 删除日历事件、日程
+   * 根据设置的title在应用日历中查找，一次性删除所有匹配的事件
+   * @param context
+   * @param title
+   * @return 删除的事件数，失败返回-1
+   */
+  public int deleteCalendarEventCount(Context context, String title) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.DELETE_CALENDAR_EVENT);
     try {
-      if (eventCursor == null) // 查询返回空值
-        return false;
-      if (eventCursor.getCount() > 0) {
-        // 遍历所有事件，找到title跟需要查询的title一样的项
-        for (eventCursor.moveToFirst(); !eventCursor.isAfterLast(); eventCursor.moveToNext()) {
-          String eventTitle = eventCursor.getString(eventCursor.getColumnIndex("title"));
-          if (!TextUtils.isEmpty(title) && title.equals(eventTitle)) {
-            int id = eventCursor.getInt(eventCursor.getColumnIndex(CalendarContract.Calendars._ID)); // 取得id
-            Uri deleteUri = ContentUris.withAppendedId(Uri.parse(CALANDER_EVENT_URL), id);
-            int rows = context.getContentResolver().delete(deleteUri, null, null);
-            if (rows == -1) {
-              // 事件删除失败
-              return false;
-            }
-          }
+      if (TextUtils.isEmpty(title)) {
+        return 0;
+      }
+      List<Long> ids = queryEventIdsByTitle(context, title);
+      if (ids == null) {
+        mTracker.markError();
+        return -1;
+      }
+      int rows = deleteEventsBySelection(context, ids, null, null, true);
+      if (rows < 0) {
+        mTracker.markError();
+      } else if (rows > 0) {
+        mTracker.addRows(rows);
+        notifyEventsDeleted(ids);
+      }
+      return rows;
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 按id、日历、时间范围批量删除事件，条件之间是 AND 关系
+   * id 按 {@link SelectionUtils#IN_CHUNK_SIZE} 分批，保证不超过 SQLite 的参数个数上限；
+   * 多批时每批一个删除操作，一次 applyBatch 执行，批与批之间允许 provider 让出事务（withYieldAllowed），不会长时间阻塞其它读写
+   * 只设置时间范围时只删除应用日历中的事件
+   * 有事件监听者时先查出匹配的事件id再按id删除，以便通知监听者
+   * 应用日历中的事件以同步适配器身份删除，直接删除行，见 {@link #deleteEventsBySelection}
+   * @param context
+   * @param filter 删除条件，为空或没有设置任何条件时不删除
+   * @return 删除的事件数，失败返回-1
+   */
+  public int deleteEvents(Context context, EventDeleteFilter filter) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.DELETE_EVENTS);
+    try {
+      if (filter == null || filter.isEmpty()) {
+        Log.w(TAG, "deleteEvents: empty filter");
+        return 0;
+      }
+      List<Long> ids = filter.getIds();
+      if (ids != null && ids.isEmpty()) {
+        return 0;
+      }
+      List<String> whereArgs = new ArrayList<>();
+      String where = buildDeleteSelection(filter, whereArgs);
+      // 条件是否已限定在应用日历
+      boolean appOnly = false;
+      if (filter.getCalendarId() >= 0) {
+        appOnly = Arrays.binarySearch(getAppCalendarIds(context), filter.getCalendarId()) >= 0;
+      } else if (ids == null) {
+        appOnly = true;
+        // 只有时间范围时限定在应用日历，不删除用户其它日历中的事件；分片时只访问时间范围内的分片
+        // 条件是 DTSTART>=begin AND DTEND<=end，DTEND 恰好为 end 的零时长事件也要包含，分片范围多取 1 毫秒
+        long begin = filter.getBegin() >= 0 ? filter.getBegin() : Long.MIN_VALUE;
+        long end = filter.getEnd() >= 0 ? filter.getEnd() + 1 : Long.MAX_VALUE;
+        long[] calIds = getAppCalendarIds(context, begin, end);
+        if (calIds.length == 0) {
+          return 0;
         }
+        where = SelectionUtils.in(Events.CALENDAR_ID, calIds.length) + " AND " + where;
+        whereArgs.addAll(0, Arrays.asList(SelectionUtils.toArgs(calIds)));
       }
-      return true;
+      int rows;
+      List<Long> deletedIds = null;
+      if (mEventListeners.isEmpty()) {
+        rows = deleteEventsBySelection(context, ids, where, whereArgs, appOnly);
+      } else {
+        deletedIds = where == null ? ids : queryEventIds(context, ids, where, whereArgs);
+        if (deletedIds == null) {
+          mTracker.markError();
+          return -1;
+        }
+        rows = deleteEventsBySelection(context, deletedIds, null, null, appOnly);
+      }
+      if (rows < 0) {
+        mTracker.markError();
+      } else if (rows > 0) {
+        mTracker.addRows(rows);
+        if (deletedIds != null) {
+          notifyEventsDeleted(deletedIds);
+        }
+      }
+      return rows;
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 组装 deleteEvents 中除id以外的条件
+   * @param filter
+   * @param selectionArgs 查询参数，追加到该列表
+   * @return 没有id以外的条件时返回null
+   */
+  String buildDeleteSelection(EventDeleteFilter filter, List<String> selectionArgs) {
+    StringBuilder selection = new StringBuilder();
+    if (filter.getCalendarId() >= 0) {
+      selection.append(Events.CALENDAR_ID).append("=?");
+      selectionArgs.add(String.valueOf(filter.getCalendarId()));
+    }
+    if (filter.getBegin() >= 0) {
+      if (selection.length() > 0) {
+        selection.append(" AND ");
+      }
+      selection.append(Events.DTSTART).append(">=?");
+      selectionArgs.add(String.valueOf(filter.getBegin()));
+    }
+    if (filter.getEnd() >= 0) {
+      if (selection.length() > 0) {
+        selection.append(" AND ");
+      }
+      selection.append(Events.DTEND).append("<=?");
+      selectionArgs.add(String.valueOf(filter.getEnd()));
+    }
+    return selection.length() == 0 ? null : selection.toString();
+  }
+
+  /**
+   * 查询匹配条件的事件id，ids不为null时按 IN_CHUNK_SIZE 分批查询
+   * @param context
+   * @param ids
+   * @param where id以外的条件
+   * @param whereArgs
+   * @return 查询失败返回null
+   */
+  private List<Long> queryEventIds(Context context, List<Long> ids, String where, List<String> whereArgs) {
+    List<Long> result = new ArrayList<>();
+    int total = ids == null ? 1 : ids.size();
+    for (int from = 0; from < total; from += SelectionUtils.IN_CHUNK_SIZE) {
+      int to = Math.min(from + SelectionUtils.IN_CHUNK_SIZE, total);
+      Cursor cursor = mResolver.query(context,
+          eventsUri,
+          new String[]{ Events._ID },
+          chunkSelection(ids, from, to, where),
+          chunkArgs(ids, from, to, whereArgs),
+          null);
+      if (cursor == null) {
+        return null;
+      }
+      try {
+        while (cursor.moveToNext()) {
+          result.add(cursor.getLong(0));
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 第 [from, to) 个id的 IN 条件与其它条件组合
+   */
+  private static String chunkSelection(List<Long> ids, int from, int to, String where) {
+    if (ids == null) {
+      return where;
+    }
+    String in = SelectionUtils.in(Events._ID, to - from);
+    return where == null ? in : in + " AND " + where;
+  }
+
+  private static String[] chunkArgs(List<Long> ids, int from, int to, List<String> whereArgs) {
+    int whereCount = whereArgs == null ? 0 : whereArgs.size();
+    if (ids == null) {
+      return whereCount == 0 ? null : whereArgs.toArray(new String[whereCount]);
+    }
+    String[] args = new String[to - from + whereCount];
+    for (int i = from; i < to; i++) {
+      args[i - from] = String.valueOf(ids.get(i));
+    }
+    for (int i = 0; i < whereCount; i++) {
+      args[to - from + i] = whereArgs.get(i);
+    }
+    return args;
+  }
+
+  /**
+   * 查询应用日历中标题为title的事件id
+   * @param context
+   * @param title
+   * @return 查询失败返回null
+   */
+  private List<Long> queryEventIdsByTitle(Context context, String title) {
+    List<Long> ids = new ArrayList<>();
+    long[] calIds = getAppCalendarIds(context);
+    if (calIds.length == 0) {
+      // 还没有应用日历，不会有应用的事件
+      return ids;
+    }
+    String[] args = Arrays.copyOf(SelectionUtils.toArgs(calIds), calIds.length + 1);
+    args[calIds.length] = title;
+    Cursor eventCursor = mResolver.query(context,
+        Uri.parse(CALANDER_EVENT_URL),
+        new String[]{ Events._ID },
+        SelectionUtils.in(Events.CALENDAR_ID, calIds.length) + " AND " + Events.TITLE + "=? AND " + Events.DELETED + "!=1",
+        args,
+        null);
+    if (eventCursor == null) // 查询返回空值
+      return null;
+    try {
+      while (eventCursor.moveToNext()) {
+        ids.add(eventCursor.getLong(0));
+      }
+      return ids;
     } finally {
-      if (eventCursor != null) {
-        eventCursor.close();
+      eventCursor.close();
+    }
+  }
+
+  /**
+   * 按id和其它条件删除事件。ids为null或不超过一批时一次delete，
+   * 否则每批一个删除操作，一次applyBatch执行，第二批起允许provider在批与批之间让出事务
+   * 应用日历中的事件以同步适配器身份删除：应用账户没有真正的同步适配器，普通删除只会把有 _SYNC_ID 的行
+   * （upsertEvent、reconcileEvents 写入的）标记为 DELETED=1、DIRTY=1，这些行会一直留在表中
+   * @param context
+   * @param ids 事件id，null表示不按id过滤
+   * @param where id以外的条件，可以为null
+   * @param whereArgs
+   * @param appOnly 条件已限定在应用日历时为true；为false且按id删除时，每批先以同步适配器身份删除其中应用日历的事件，再普通删除其余的
+   * @return 删除的事件数，失败返回-1
+   */
+  private int deleteEventsBySelection(Context context, List<Long> ids, String where, List<String> whereArgs, boolean appOnly) {
+    if (ids != null && ids.isEmpty()) {
+      return 0;
+    }
+    Uri syncUri = asSyncAdapter(eventsUri);
+    try {
+      long[] appCalIds = appOnly || ids == null ? null : getAppCalendarIds(context);
+      if (ids == null || ids.size() <= SelectionUtils.IN_CHUNK_SIZE && (appCalIds == null || appCalIds.length == 0)) {
+        int to = ids == null ? 0 : ids.size();
+        return mResolver.delete(context,
+            appOnly ? syncUri : eventsUri,
+            chunkSelection(ids, 0, to, where),
+            chunkArgs(ids, 0, to, whereArgs));
+      }
+      ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+      for (int from = 0; from < ids.size(); from += SelectionUtils.IN_CHUNK_SIZE) {
+        int to = Math.min(from + SelectionUtils.IN_CHUNK_SIZE, ids.size());
+        String selection = chunkSelection(ids, from, to, where);
+        String[] args = chunkArgs(ids, from, to, whereArgs);
+        if (appOnly) {
+          ops.add(ContentProviderOperation.newDelete(syncUri)
+              .withSelection(selection, args)
+              .withYieldAllowed(from > 0)
+              .build());
+          continue;
+        }
+        if (appCalIds.length > 0) {
+          String[] appArgs = SelectionUtils.toArgs(appCalIds);
+          String[] syncArgs = Arrays.copyOf(appArgs, appArgs.length + args.length);
+          System.arraycopy(args, 0, syncArgs, appArgs.length, args.length);
+          ops.add(ContentProviderOperation.newDelete(syncUri)
+              .withSelection(SelectionUtils.in(Events.CALENDAR_ID, appCalIds.length) + " AND " + selection, syncArgs)
+              .withYieldAllowed(from > 0)
+              .build());
+        }
+        ops.add(ContentProviderOperation.newDelete(eventsUri)
+            .withSelection(selection, args)
+            .withYieldAllowed(from > 0 && appCalIds.length == 0)
+            .build());
+      }
+      int rows = 0;
+      ContentProviderResult[] cps = mResolver.applyBatch(context, CalendarContract.AUTHORITY, ops);
+      for (ContentProviderResult cp : cps) {
+        if (cp.count != null) {
+          rows += cp.count;
+        }
       }
+      return rows;
+    } catch (Exception e) {
+      Log.e(TAG, "delete events failed", e);
     }
+    return -1;
   }
 }
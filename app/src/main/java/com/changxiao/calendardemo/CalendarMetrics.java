@@ -0,0 +1,82 @@
+package com.changxiao.calendardemo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 默认的指标统计：按接口记录耗时直方图（微秒）、失败次数、行数
+ *
+ * 记录时只做原子自增，不分配对象，可以在线上一直开着；上报时定期调用 {@link #snapshot(boolean)} 取数据。
+ * 使用：CalendarManager.getInstance().setMetricsListener(metrics)
+ *
+ * Created by Chang.Xiao on 2019/5/28.
+ *
+ * @version 1.0
+ */
+public class CalendarMetrics implements CalendarMetricsListener {
+
+  private static final int OPERATION_COUNT = CalendarOperation.values().length;
+
+  private final LatencyHistogram[] mLatencies = new LatencyHistogram[OPERATION_COUNT];
+  private final AtomicLongArray mErrors = new AtomicLongArray(OPERATION_COUNT);
+  private final AtomicLongArray mRows = new AtomicLongArray(OPERATION_COUNT);
+
+  public CalendarMetrics() {
+    for (int i = 0; i < OPERATION_COUNT; i++) {
+      mLatencies[i] = new LatencyHistogram();
+    }
+  }
+
+  @Override
+  public void onOperation(CalendarOperation operation, long durationMicros, int rows, boolean error) {
+    int index = operation.ordinal();
+    mLatencies[index].record(durationMicros);
+    if (rows > 0) {
+      mRows.addAndGet(index, rows);
+    }
+    if (error) {
+      mErrors.incrementAndGet(index);
+    }
+  }
+
+  /**
+   * 某个接口的耗时直方图
+   * @param operation
+   * @return
+   */
+  public LatencyHistogram getLatency(CalendarOperation operation) {
+    return mLatencies[operation.ordinal()];
+  }
+
+  /**
+   * 取各接口的统计，只包含有调用的接口
+   * @param reset 是否同时清零，上报后清零时传true，不会丢失取数据期间的记录
+   * @return
+   */
+  public List<OperationMetrics> snapshot(boolean reset) {
+    List<OperationMetrics> result = new ArrayList<>();
+    for (CalendarOperation operation : CalendarOperation.values()) {
+      int index = operation.ordinal();
+      LatencyHistogram latency = mLatencies[index];
+      if (latency.getCount() == 0 && mErrors.get(index) == 0) {
+        continue;
+      }
+      result.add(new OperationMetrics(operation,
+          latency.getCount(reset),
+          reset ? mErrors.getAndSet(index, 0) : mErrors.get(index),
+          reset ? mRows.getAndSet(index, 0) : mRows.get(index),
+          latency.getSum(reset),
+          latency.getMax(reset),
+          latency.copyBuckets(reset)));
+    }
+    return result;
+  }
+
+  /**
+   * 清零所有统计
+   */
+  public void reset() {
+    snapshot(true);
+  }
+}
@@ -0,0 +1,22 @@
+package com.changxiao.calendardemo;
+
+/**
+ * CalendarManager 接口耗时、结果的监听
+ *
+ * 在调用线程上、接口返回前回调，只统计最外层的接口调用。
+ * 回调在每次接口调用时都会执行，实现中不要做耗时操作或分配对象，默认实现见 {@link CalendarMetrics}
+ *
+ * Created by Chang.Xiao on 2019/5/28.
+ *
+ * @version 1.0
+ */
+public interface CalendarMetricsListener {
+
+  /**
+   * @param operation 接口
+   * @param durationMicros 耗时，微秒
+   * @param rows 读写的行数（查询返回的事件数、插入成功的日程数、更新、删除的行数）
+   * @param error 是否失败（包括内部捕获的异常）
+   */
+  void onOperation(CalendarOperation operation, long durationMicros, int rows, boolean error);
+}
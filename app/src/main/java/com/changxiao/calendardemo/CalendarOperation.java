@@ -0,0 +1,37 @@
+package com.changxiao.calendardemo;
+
+/**
+ * CalendarManager 对外接口，用于按接口统计 provider 调用
+ *
+ * Created by Chang.Xiao on 2019/5/27.
+ *
+ * @version 1.0
+ */
+public enum CalendarOperation {
+  ADD_CALENDAR_EVENT,
+  INSERT_EVENT,
+  INSERT_EVENTS,
+  UPSERT_EVENT,
+  RECONCILE_EVENTS,
+  UPDATE_EVENT,
+  UPDATE_REMINDER,
+  QUERY_EVENTS,
+  QUERY_EVENTS_COMPACT,
+  QUERY_INSTANCES,
+  QUERY_FREE_BUSY,
+  SEARCH_EVENTS,
+  QUERY_CALENDAR_EVENTS,
+  BUILD_INTERVAL_INDEX,
+  EVENT_MIRROR_REFRESH,
+  REMINDER_SCHEDULER_LOAD,
+  EVENT_PAGER,
+  HAS_CALENDAR_EVENT,
+  DELETE_CALENDAR_EVENT,
+  DELETE_EVENTS,
+  CHECK_EXIST,
+  ACCOUNT_LOOKUP,
+  REMOVE_EXPIRED_SHARDS,
+  WRITE_QUEUE_FLUSH,
+  /** 不在任何接口内的调用 */
+  OTHER
+}
@@ -0,0 +1,362 @@
+package com.changxiao.calendardemo;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.CalendarContract;
+import android.provider.CalendarContract.Events;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按期望状态同步应用日历，生成最少的 provider 操作
+ * 1. 一次查询读出应用日历中带key（_SYNC_ID）的事件，按key放入HashMap；
+ * 2. 期望列表也按key放入HashMap，只在期望列表中的插入，两边都有的逐列比较，只更新变化的列；
+ *    提醒、参与人的指纹保存在 SYNC_DATA1 列，指纹变化时才整体替换提醒、参与人；
+ * 3. 只在日历中的删除；
+ * 4. 操作按 BATCH_SIZE 条日程分批 applyBatch。
+ * 没有变化时只有一次查询，没有写入。某一批失败时不重试，下次同步会重新比对
+ *
+ * Created by Chang.Xiao on 2019/5/29.
+ *
+ * @version 1.0
+ */
+final class CalendarReconciler {
+
+  private static final String TAG = "CalendarReconciler";
+
+  /** 每次 applyBatch 包含的日程数 */
+  static final int BATCH_SIZE = 50;
+
+  /** 提醒、参与人的指纹所在的同步列 */
+  static final String DETAILS_FINGERPRINT = Events.SYNC_DATA1;
+
+  /** 事件列、key、指纹 */
+  static final String[] PROJECTION;
+
+  private static final Map<String, Integer> COLUMN_INDEXES = new HashMap<>();
+
+  private static final int ID_INDEX = 0;
+
+  static {
+    String[] columns = CalendarManager.EVENTS_COLUMNS;
+    PROJECTION = new String[columns.length + 2];
+    System.arraycopy(columns, 0, PROJECTION, 0, columns.length);
+    PROJECTION[columns.length] = Events._SYNC_ID;
+    PROJECTION[columns.length + 1] = DETAILS_FINGERPRINT;
+    for (int i = 0; i < PROJECTION.length; i++) {
+      COLUMN_INDEXES.put(PROJECTION[i], i);
+    }
+  }
+
+  private final CalendarManager mManager;
+  private final CalendarResolver mResolver;
+  private final Context mContext;
+  private final int mCalId;
+  private final Uri mEventUri;
+
+  private final ArrayList<ContentProviderOperation> mOps = new ArrayList<>();
+  private final List<PendingEvent> mPending = new ArrayList<>();
+  private final List<Long> mPendingDeletes = new ArrayList<>();
+  private final List<Long> mDuplicateIds = new ArrayList<>();
+
+  CalendarReconciler(CalendarManager manager, Context context, int calId) {
+    mManager = manager;
+    mResolver = manager.getResolver();
+    mContext = context;
+    mCalId = calId;
+    // 写 _SYNC_ID、SYNC_DATA1 需要同步适配器身份，删除时也直接删除而不是标记 DELETED
+    mEventUri = manager.asSyncAdapter(Events.CONTENT_URI);
+  }
+
+  /**
+   * 同步到期望状态
+   * @param desired 用户应有的完整日程列表
+   * @return
+   */
+  ReconcileResult reconcile(List<CalendarRemindModel> desired) {
+    ReconcileResult result = new ReconcileResult();
+    Map<String, CalendarRemindModel> targets = new LinkedHashMap<>();
+    for (CalendarRemindModel model : desired) {
+      if (model == null || TextUtils.isEmpty(model.getDedupKey())) {
+        result.addSkipped(1);
+      } else if (targets.put(model.getDedupKey(), model) != null) {
+        // key重复时以后面的为准
+        result.addSkipped(1);
+      }
+    }
+    Map<String, String[]> current = queryCurrent();
+    if (current == null) {
+      result.addFailed(targets.size());
+      return result;
+    }
+
+    for (Map.Entry<String, CalendarRemindModel> entry : targets.entrySet()) {
+      CalendarRemindModel model = entry.getValue();
+      ContentValues values = buildValues(entry.getKey(), model);
+      String[] row = current.remove(entry.getKey());
+      if (row == null) {
+        appendInsert(values, model);
+      } else {
+        ContentValues changed = diff(values, row);
+        if (changed.size() == 0) {
+          result.addUnchanged(1);
+          continue;
+        }
+        appendUpdate(Long.parseLong(row[ID_INDEX]), values, changed, model);
+      }
+      if (pendingCount() >= BATCH_SIZE) {
+        flush(result);
+      }
+    }
+    List<Long> deleteIds = new ArrayList<>(mDuplicateIds);
+    for (String[] row : current.values()) {
+      deleteIds.add(Long.parseLong(row[ID_INDEX]));
+    }
+    for (Long id : deleteIds) {
+      mPendingDeletes.add(id);
+      if (pendingCount() >= BATCH_SIZE) {
+        flush(result);
+      }
+    }
+    flush(result);
+    return result;
+  }
+
+  /**
+   * 读出应用日历中带key的事件
+   * @return key -> 按 PROJECTION 顺序的列值，查询失败返回null
+   */
+  private Map<String, String[]> queryCurrent() {
+    Cursor cursor = mResolver.query(mContext,
+        Events.CONTENT_URI,
+        PROJECTION,
+        Events.CALENDAR_ID + "=? AND " + Events._SYNC_ID + " IS NOT NULL AND " + Events.DELETED + "!=1",
+        new String[]{ String.valueOf(mCalId) },
+        null);
+    if (cursor == null) {
+      return null;
+    }
+    try {
+      Map<String, String[]> rows = new HashMap<>(cursor.getCount() * 4 / 3 + 1);
+      int keyIndex = COLUMN_INDEXES.get(Events._SYNC_ID);
+      while (cursor.moveToNext()) {
+        String key = cursor.getString(keyIndex);
+        if (key == null) {
+          continue;
+        }
+        String[] row = new String[PROJECTION.length];
+        for (int i = 0; i < row.length; i++) {
+          row[i] = cursor.getString(i);
+        }
+        String[] duplicate = rows.put(key, row);
+        if (duplicate != null) {
+          // 同一个key有多个事件时保留一个，其余删除
+          mDuplicateIds.add(Long.parseLong(duplicate[ID_INDEX]));
+        }
+      }
+      return rows;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * 期望的事件数据：与插入时相同的列，加上key和提醒、参与人的指纹；地点为空时清空原有的地点
+   * 同步时总会写入提醒（没有时写默认提醒），provider 插入提醒后会把 HAS_ALARM 置为1，
+   * 这里也固定为1，否则没有变化的事件每次都会因为 HAS_ALARM 不同而更新
+   */
+  private ContentValues buildValues(String key, CalendarRemindModel model) {
+    ContentValues values = EventCodec.toInsertValues(mCalId, model);
+    if (!values.containsKey(Events.EVENT_LOCATION)) {
+      values.putNull(Events.EVENT_LOCATION);
+    }
+    values.put(Events.HAS_ALARM, 1);
+    values.put(Events._SYNC_ID, key);
+    values.put(DETAILS_FINGERPRINT, detailsFingerprint(model));
+    return values;
+  }
+
+  /**
+   * 逐列比较，返回有变化的列
+   */
+  private ContentValues diff(ContentValues values, String[] row) {
+    ContentValues changed = new ContentValues();
+    for (String column : values.keySet()) {
+      Integer index = COLUMN_INDEXES.get(column);
+      Object value = values.get(column);
+      if (index == null || !TextUtils.equals(normalize(value), row[index])) {
+        putValue(changed, column, value);
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * 与游标 getString 的结果对齐：布尔值在 provider 中存为 0/1
+   */
+  private static String normalize(Object value) {
+    if (value == null) {
+      return null;
+    }
+    if (value instanceof Boolean) {
+      return (Boolean) value ? "1" : "0";
+    }
+    return value.toString();
+  }
+
+  private static void putValue(ContentValues values, String column, Object value) {
+    if (value == null) {
+      values.putNull(column);
+    } else if (value instanceof String) {
+      values.put(column, (String) value);
+    } else if (value instanceof Long) {
+      values.put(column, (Long) value);
+    } else if (value instanceof Integer) {
+      values.put(column, (Integer) value);
+    } else if (value instanceof Boolean) {
+      values.put(column, (Boolean) value);
+    } else {
+      values.put(column, value.toString());
+    }
+  }
+
+  private void appendInsert(ContentValues values, CalendarRemindModel model) {
+    mPending.add(new PendingEvent(mOps.size(), -1, values));
+    mManager.appendInsertOperations(mOps, mEventUri, values, model);
+  }
+
+  private void appendUpdate(long eventId, ContentValues values, ContentValues changed, CalendarRemindModel model) {
+    mPending.add(new PendingEvent(mOps.size(), eventId, values));
+    mOps.add(ContentProviderOperation.newUpdate(ContentUris.withAppendedId(mEventUri, eventId))
+        .withValues(changed)
+        .build());
+    if (changed.containsKey(DETAILS_FINGERPRINT)) {
+      String[] eventIdArgs = new String[]{ String.valueOf(eventId) };
+      mOps.add(ContentProviderOperation.newDelete(CalendarContract.Reminders.CONTENT_URI)
+          .withSelection(CalendarContract.Reminders.EVENT_ID + "=?", eventIdArgs)
+          .build());
+      mManager.appendReminderOperations(mOps, model.getReminders(), eventId, -1);
+      mOps.add(ContentProviderOperation.newDelete(CalendarContract.Attendees.CONTENT_URI)
+          .withSelection(CalendarContract.Attendees.EVENT_ID + "=?", eventIdArgs)
+          .build());
+      mManager.appendAttendeeOperations(mOps, model.getAttendees(), eventId, -1);
+    }
+  }
+
+  private int pendingCount() {
+    return mPending.size() + mPendingDeletes.size();
+  }
+
+  /**
+   * 提交当前批次：插入、更新的日程和一个按id删除的操作
+   */
+  private void flush(ReconcileResult result) {
+    if (pendingCount() == 0) {
+      return;
+    }
+    int deleteIndex = -1;
+    if (!mPendingDeletes.isEmpty()) {
+      deleteIndex = mOps.size();
+      mOps.add(ContentProviderOperation.newDelete(mEventUri)
+          .withSelection(SelectionUtils.in(Events._ID, mPendingDeletes.size()),
+              SelectionUtils.toArgs(mPendingDeletes, 0, mPendingDeletes.size()))
+          .build());
+    }
+    try {
+      ContentProviderResult[] cps = mResolver.applyBatch(mContext, CalendarContract.AUTHORITY, mOps);
+      for (PendingEvent pending : mPending) {
+        ContentProviderResult cp = cps[pending.opIndex];
+        long eventId = pending.eventId;
+        if (eventId < 0) {
+          if (cp.uri == null) {
+            result.addFailed(1);
+            continue;
+          }
+          eventId = ContentUris.parseId(cp.uri);
+          result.addInserted(1);
+        } else if (cp.count == null || cp.count == 0) {
+          // 查询之后事件被删除，下次同步时插入
+          result.addFailed(1);
+          continue;
+        } else {
+          result.addUpdated(1);
+        }
+        mManager.notifyEventSaved(EventCodec.decode(eventId, pending.values));
+      }
+      if (deleteIndex >= 0) {
+        Integer count = cps[deleteIndex].count;
+        result.addDeleted(count == null ? 0 : count);
+        mManager.notifyEventsDeleted(new ArrayList<>(mPendingDeletes));
+      }
+    } catch (Exception e) {
+      Log.w(TAG, "reconcile batch failed: " + e.getMessage());
+      result.addFailed(pendingCount());
+    } finally {
+      mOps.clear();
+      mPending.clear();
+      mPendingDeletes.clear();
+    }
+  }
+
+  /**
+   * 提醒、参与人的指纹：规范化后的内容做64位FNV-1a哈希。提醒为空时与插入时一样按默认提醒计算
+   * @param model
+   * @return
+   */
+  static String detailsFingerprint(CalendarRemindModel model) {
+    StringBuilder sb = new StringBuilder();
+    List<ReminderModel> reminders = model.getReminders();
+    if (reminders == null || reminders.isEmpty()) {
+      sb.append("r0,1;");
+    } else {
+      for (ReminderModel reminder : reminders) {
+        sb.append('r').append(reminder.getMinutes()).append(',').append(reminder.getMethod()).append(';');
+      }
+    }
+    List<AttendeeModel> attendees = model.getAttendees();
+    if (attendees != null) {
+      for (AttendeeModel attendee : attendees) {
+        if (TextUtils.isEmpty(attendee.getName())) {
+          continue;
+        }
+        sb.append('a').append(attendee.getName()).append('\u0000')
+            .append(attendee.getEmail()).append('\u0000')
+            .append(attendee.getRelationship()).append(',')
+            .append(attendee.getType()).append(',')
+            .append(attendee.getStatus()).append(';');
+      }
+    }
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < sb.length(); i++) {
+      hash ^= sb.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return Long.toHexString(hash);
+  }
+
+  /**
+   * 当前批次中的一条插入或更新
+   */
+  private static final class PendingEvent {
+    final int opIndex; // 事件操作在批次中的下标
+    final long eventId; // 更新的事件id，插入为-1
+    final ContentValues values; // 完整的事件数据，用于通知监听者
+
+    PendingEvent(int opIndex, long eventId, ContentValues values) {
+      this.opIndex = opIndex;
+      this.eventId = eventId;
+      this.values = values;
+    }
+  }
+}
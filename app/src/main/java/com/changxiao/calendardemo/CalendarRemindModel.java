@@ -1,5 +1,7 @@
 package com.changxiao.calendardemo;
 
+import java.util.List;
+
 /**
  * 日程提醒 model
  *
@@ -25,6 +27,10 @@ public class CalendarRemindModel {
   private int availability; // 我的状态:0=忙碌，1=有空，2=我的状态可能改变但应该被认为是忙时间冲突
   private int accessLevel; // 访问权限：默认=0，机密=1，私有=2，公共（任何人都可以访问）=3
 
+  private List<ReminderModel> reminders; // 提醒，为空时默认在事件发生时提醒
+  private List<AttendeeModel> attendees; // 参与人
+  private String dedupKey; // 业务方的唯一标识，按期望状态同步时用来匹配已有的事件
+
   public String getTitle() {
     return title;
   }
@@ -113,6 +119,30 @@ public class CalendarRemindModel {
     this.accessLevel = accessLevel;
   }
 
+  public List<ReminderModel> getReminders() {
+    return reminders;
+  }
+
+  public void setReminders(List<ReminderModel> reminders) {
+    this.reminders = reminders;
+  }
+
+  public List<AttendeeModel> getAttendees() {
+    return attendees;
+  }
+
+  public void setAttendees(List<AttendeeModel> attendees) {
+    this.attendees = attendees;
+  }
+
+  public String getDedupKey() {
+    return dedupKey;
+  }
+
+  public void setDedupKey(String dedupKey) {
+    this.dedupKey = dedupKey;
+  }
+
   /**
    * 是否为全天
    * @return
@@ -0,0 +1,82 @@
+package com.changxiao.calendardemo;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import java.util.ArrayList;
+
+/**
+ * ContentResolver 的包装，每次调用前记一次 IPC，见 {@link IpcStats}；
+ * 调用抛出 RuntimeException（如没有日历权限时的 SecurityException）时把当前接口标记为失败，见 {@link OperationTracker}
+ * CalendarManager 及其辅助类访问日历 provider 都要经过这里
+ *
+ * Created by Chang.Xiao on 2019/5/27.
+ *
+ * @version 1.0
+ */
+final class CalendarResolver {
+
+  private final IpcStats mStats;
+  private final OperationTracker mTracker;
+
+  CalendarResolver(OperationTracker tracker) {
+    mTracker = tracker;
+    mStats = tracker.getIpcStats();
+  }
+
+  Cursor query(Context context, Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+    mStats.record(IpcStats.Kind.QUERY);
+    try {
+      return context.getContentResolver().query(uri, projection, selection, selectionArgs, sortOrder);
+    } catch (RuntimeException e) {
+      mTracker.markError();
+      throw e;
+    }
+  }
+
+  Uri insert(Context context, Uri uri, ContentValues values) {
+    mStats.record(IpcStats.Kind.INSERT);
+    try {
+      return context.getContentResolver().insert(uri, values);
+    } catch (RuntimeException e) {
+      mTracker.markError();
+      throw e;
+    }
+  }
+
+  int update(Context context, Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+    mStats.record(IpcStats.Kind.UPDATE);
+    try {
+      return context.getContentResolver().update(uri, values, selection, selectionArgs);
+    } catch (RuntimeException e) {
+      mTracker.markError();
+      throw e;
+    }
+  }
+
+  int delete(Context context, Uri uri, String selection, String[] selectionArgs) {
+    mStats.record(IpcStats.Kind.DELETE);
+    try {
+      return context.getContentResolver().delete(uri, selection, selectionArgs);
+    } catch (RuntimeException e) {
+      mTracker.markError();
+      throw e;
+    }
+  }
+
+  ContentProviderResult[] applyBatch(Context context, String authority, ArrayList<ContentProviderOperation> operations)
+      throws RemoteException, OperationApplicationException {
+    mStats.record(IpcStats.Kind.APPLY_BATCH);
+    try {
+      return context.getContentResolver().applyBatch(authority, operations);
+    } catch (RuntimeException e) {
+      mTracker.markError();
+      throw e;
+    }
+  }
+}
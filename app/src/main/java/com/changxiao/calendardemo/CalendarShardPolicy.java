@@ -0,0 +1,37 @@
+package com.changxiao.calendardemo;
+
+/**
+ * 应用日历分片策略
+ *
+ * 设置后（见 {@link CalendarManager#setShardPolicy(CalendarShardPolicy)}），应用账户下按分片key建立多个日历，
+ * 写入时按事件路由到对应的分片日历；按时间范围读取、删除时只访问可能有命中的分片，每个分片的事件少，
+ * 扫描的行数也少。key 为null的事件写入默认日历，默认日历总是参与查询。
+ * 分片日历和默认日历一样是可见的（系统只为可见日历中的事件触发提醒），会逐个出现在系统日历的日历列表中，分片不宜过细；
+ * 分片数随时间增长的策略需要定期调用 {@link CalendarManager#removeExpiredShards}。
+ *
+ * Created by Chang.Xiao on 2019/6/12.
+ *
+ * @version 1.0
+ */
+public interface CalendarShardPolicy {
+
+  /**
+   * 事件所属的分片
+   * 更新事件的开始、结束时间时按新的时间重新调用，分片变化时事件移到新的分片；
+   * 此时 model 由当前的行生成，只有标题、开始结束时间、全天和时区
+   * @param model
+   * @param dtstart 写入provider的开始时间（全天事件为UTC零点）
+   * @param dtend 写入provider的结束时间
+   * @return 分片key，只能包含字母、数字、'-'、'_'；null表示写入默认日历
+   */
+  String getShardKey(CalendarRemindModel model, long dtstart, long dtend);
+
+  /**
+   * 分片中是否可能有与 [begin, end) 重叠的事件，不确定时必须返回true
+   * @param shardKey
+   * @param begin
+   * @param end
+   * @return
+   */
+  boolean mayContain(String shardKey, long begin, long end);
+}
@@ -0,0 +1,173 @@
+package com.changxiao.calendardemo;
+
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 日程时间计算，不创建 Calendar 对象
+ * 时区按id缓存（TimeZone.getTimeZone、TimeZone.getDefault 每次都会复制一个对象），
+ * 日期用纪元日（1970-01-01 起的天数）加减计算，只调用 TimeZone#getOffset(long)
+ *
+ * Created by Chang.Xiao on 2019/6/4.
+ *
+ * @version 1.0
+ */
+public final class CalendarTimeUtils {
+
+  public static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+  /** 全天事件的时区，CalendarContract 要求全天事件使用UTC并从UTC零点开始 */
+  public static final String TIMEZONE_UTC = "UTC";
+
+  private static final ConcurrentHashMap<String, TimeZone> sZones = new ConcurrentHashMap<>();
+  private static volatile TimeZone sDefaultZone;
+
+  private CalendarTimeUtils() {
+  }
+
+  /**
+   * 按id取时区，结果会缓存，不要修改返回的对象
+   * @param id 为空时返回系统默认时区
+   * @return
+   */
+  public static TimeZone getTimeZone(String id) {
+    if (id == null || id.length() == 0) {
+      return getDefaultTimeZone();
+    }
+    TimeZone zone = sZones.get(id);
+    if (zone == null) {
+      zone = TimeZone.getTimeZone(id);
+      TimeZone existing = sZones.putIfAbsent(id, zone);
+      if (existing != null) {
+        zone = existing;
+      }
+    }
+    return zone;
+  }
+
+  /**
+   * 系统默认时区，结果会缓存；系统时区变化（ACTION_TIMEZONE_CHANGED）后需调用 {@link #resetDefaultTimeZone()}，
+   * CalendarManager#init 注册的广播接收器会自动调用
+   * @return
+   */
+  public static TimeZone getDefaultTimeZone() {
+    TimeZone zone = sDefaultZone;
+    if (zone == null) {
+      zone = TimeZone.getDefault();
+      sDefaultZone = zone;
+    }
+    return zone;
+  }
+
+  public static void resetDefaultTimeZone() {
+    sDefaultZone = null;
+  }
+
+  /**
+   * 某一时刻在时区中的偏移（含夏令时）
+   * @param utcMillis
+   * @param zone
+   * @return 毫秒
+   */
+  public static int getOffset(long utcMillis, TimeZone zone) {
+    return zone.getOffset(utcMillis);
+  }
+
+  /**
+   * 某一时刻在时区中的日期，以纪元日表示
+   * @param utcMillis
+   * @param zone
+   * @return
+   */
+  public static long toEpochDay(long utcMillis, TimeZone zone) {
+    return floorDiv(utcMillis + zone.getOffset(utcMillis), MILLIS_PER_DAY);
+  }
+
+  /**
+   * 某一时刻所在的那一天在时区中的零点
+   * @param utcMillis
+   * @param zone
+   * @return UTC毫秒
+   */
+  public static long startOfDay(long utcMillis, TimeZone zone) {
+    long localMidnight = toEpochDay(utcMillis, zone) * MILLIS_PER_DAY;
+    // 先按当前时刻的偏移估算，再用零点附近的偏移修正（跨夏令时切换的那一天偏移不同）
+    long guess = localMidnight - zone.getOffset(utcMillis);
+    return localMidnight - zone.getOffset(guess);
+  }
+
+  /**
+   * 全天事件的开始时间：startMillis 在时区中的日期的UTC零点
+   * @param startMillis
+   * @param zone 用户所在时区
+   * @return
+   */
+  public static long allDayStart(long startMillis, TimeZone zone) {
+    return toEpochDay(startMillis, zone) * MILLIS_PER_DAY;
+  }
+
+  /**
+   * 全天事件的结束时间：endMillis 所在日期的下一天UTC零点（endMillis 恰好为零点时不包含该天），至少比开始晚一天
+   * @param startMillis
+   * @param endMillis
+   * @param zone 用户所在时区
+   * @return
+   */
+  public static long allDayEnd(long startMillis, long endMillis, TimeZone zone) {
+    long startDay = toEpochDay(startMillis, zone);
+    long endDay = endMillis > startMillis ? toEpochDay(endMillis - 1, zone) + 1 : startDay + 1;
+    return Math.max(endDay, startDay + 1) * MILLIS_PER_DAY;
+  }
+
+  /**
+   * 全天事件的开始、结束时间（UTC零点）对应的那一天在时区中的零点
+   * @param utcMidnight
+   * @param zone 用户所在时区
+   * @return UTC毫秒
+   */
+  public static long allDayToLocal(long utcMidnight, TimeZone zone) {
+    long guess = utcMidnight - zone.getOffset(utcMidnight);
+    return utcMidnight - zone.getOffset(guess);
+  }
+
+  /**
+   * 纪元日对应的年月（公历）
+   * @param epochDay
+   * @return year * 100 + month，如 201905
+   */
+  public static int toYearMonth(long epochDay) {
+    long z = epochDay + 719468; // 以 0000-03-01 为起点，闰日在每年的最后
+    long era = floorDiv(z, 146097);
+    long doe = z - era * 146097;
+    long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+    long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+    long mp = (5 * doy + 2) / 153;
+    int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+    long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+    return (int) (year * 100 + month);
+  }
+
+  /**
+   * 公历日期对应的纪元日
+   * @param year
+   * @param month 1-12
+   * @param day 1-31
+   * @return
+   */
+  public static long toEpochDay(int year, int month, int day) {
+    long y = month <= 2 ? year - 1 : year;
+    long era = floorDiv(y, 400);
+    long yoe = y - era * 400;
+    long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    return era * 146097 + doe - 719468;
+  }
+
+  private static long floorDiv(long x, long y) {
+    long q = x / y;
+    if ((x % y != 0) && ((x ^ y) < 0)) {
+      q--;
+    }
+    return q;
+  }
+}
@@ -0,0 +1,83 @@
+package com.changxiao.calendardemo;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+
+/**
+ * 列写入目标，codec 通过它直接写入 ContentValues 或 ContentProviderOperation.Builder，
+ * 同一套编码逻辑用于 insert/update 调用和 applyBatch 操作
+ *
+ * Created by Chang.Xiao on 2019/6/5.
+ *
+ * @version 1.0
+ */
+abstract class ColumnWriter {
+
+  abstract void put(String column, String value);
+
+  abstract void put(String column, long value);
+
+  abstract void put(String column, int value);
+
+  abstract void put(String column, boolean value);
+
+  abstract void putNull(String column);
+
+  static ColumnWriter of(final ContentValues values) {
+    return new ColumnWriter() {
+      @Override
+      void put(String column, String value) {
+        values.put(column, value);
+      }
+
+      @Override
+      void put(String column, long value) {
+        values.put(column, value);
+      }
+
+      @Override
+      void put(String column, int value) {
+        values.put(column, value);
+      }
+
+      @Override
+      void put(String column, boolean value) {
+        values.put(column, value);
+      }
+
+      @Override
+      void putNull(String column) {
+        values.putNull(column);
+      }
+    };
+  }
+
+  static ColumnWriter of(final ContentProviderOperation.Builder builder) {
+    return new ColumnWriter() {
+      @Override
+      void put(String column, String value) {
+        builder.withValue(column, value);
+      }
+
+      @Override
+      void put(String column, long value) {
+        builder.withValue(column, value);
+      }
+
+      @Override
+      void put(String column, int value) {
+        builder.withValue(column, value);
+      }
+
+      @Override
+      void put(String column, boolean value) {
+        builder.withValue(column, value);
+      }
+
+      @Override
+      void putNull(String column) {
+        builder.withValue(column, null);
+      }
+    };
+  }
+}
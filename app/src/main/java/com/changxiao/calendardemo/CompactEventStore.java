@@ -0,0 +1,418 @@
+package com.changxiao.calendardemo;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.provider.CalendarContract.Events;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 紧凑的事件结果集，按列存储（struct of arrays）
+ *
+ * 每行不再是一个 EventModel：id、日历id、开始、结束时间存在 long[] 中，
+ * 布尔值和状态类的小整数打包在一个 int[] 中，字符串存为 {@link StringTable} 的下标，相同的标题、时区等只保存一份。
+ * 按下标读取各列（flyweight），排序、过滤只操作下标和基本类型数组，不创建对象；
+ * 需要 EventModel 时用 {@link #toEventModel(int)} 或 {@link #asList()} 按需转换。
+ * 适合一次查询大量事件（如整月、整年视图）的场景。
+ *
+ * 建好之后只读，可以在线程间共享；sortByStart、filter 返回新的结果集，与原结果集共享字符串表。
+ *
+ * Created by Chang.Xiao on 2019/6/3.
+ *
+ * @version 1.0
+ */
+public final class CompactEventStore {
+
+  private static final int FLAG_HAS_ALARM = 1;
+  private static final int FLAG_ALL_DAY = 1 << 1;
+  private static final int AVAILABILITY_SHIFT = 8;
+  private static final int ACCESS_LEVEL_SHIFT = 16;
+  private static final int STATUS_SHIFT = 24;
+  private static final int BYTE_MASK = 0xff;
+
+  /**
+   * 行过滤条件
+   */
+  public interface RowFilter {
+    /**
+     * @param store
+     * @param index 行下标
+     * @return 是否保留该行
+     */
+    boolean accept(CompactEventStore store, int index);
+  }
+
+  private final StringTable mStrings;
+  private int mSize;
+  private long[] mIds;
+  private long[] mCalendarIds;
+  private long[] mStarts;
+  private long[] mEnds;
+  private int[] mBits; // 标志位、我的状态、访问权限、事件状态
+  private int[] mTitles;
+  private int[] mDescriptions;
+  private int[] mLocations;
+  private int[] mTimezones;
+
+  private CompactEventStore(StringTable strings, int capacity) {
+    mStrings = strings;
+    capacity = Math.max(capacity, 1);
+    mIds = new long[capacity];
+    mCalendarIds = new long[capacity];
+    mStarts = new long[capacity];
+    mEnds = new long[capacity];
+    mBits = new int[capacity];
+    mTitles = new int[capacity];
+    mDescriptions = new int[capacity];
+    mLocations = new int[capacity];
+    mTimezones = new int[capacity];
+  }
+
+  /**
+   * 从游标当前位置读取剩余所有行，游标需包含 {@link CalendarManager#EVENTS_COLUMNS}
+   * 字符串列通过 copyStringToBuffer 读到复用的缓冲区中去重，重复的字符串不创建对象
+   * @param cursor
+   * @return
+   */
+  public static CompactEventStore read(Cursor cursor) {
+    CompactEventStore store = new CompactEventStore(new StringTable(), cursor.getCount());
+    int idIndex = cursor.getColumnIndexOrThrow(Events._ID);
+    int calendarIdIndex = cursor.getColumnIndexOrThrow(Events.CALENDAR_ID);
+    int titleIndex = cursor.getColumnIndexOrThrow(Events.TITLE);
+    int descriptionIndex = cursor.getColumnIndexOrThrow(Events.DESCRIPTION);
+    int locationIndex = cursor.getColumnIndexOrThrow(Events.EVENT_LOCATION);
+    int dtstartIndex = cursor.getColumnIndexOrThrow(Events.DTSTART);
+    int dtendIndex = cursor.getColumnIndexOrThrow(Events.DTEND);
+    int timezoneIndex = cursor.getColumnIndexOrThrow(Events.EVENT_TIMEZONE);
+    int hasAlarmIndex = cursor.getColumnIndexOrThrow(Events.HAS_ALARM);
+    int allDayIndex = cursor.getColumnIndexOrThrow(Events.ALL_DAY);
+    int availabilityIndex = cursor.getColumnIndexOrThrow(Events.AVAILABILITY);
+    int accessLevelIndex = cursor.getColumnIndexOrThrow(Events.ACCESS_LEVEL);
+    int statusIndex = cursor.getColumnIndexOrThrow(Events.STATUS);
+    CharArrayBuffer buffer = new CharArrayBuffer(64);
+    while (cursor.moveToNext()) {
+      int i = store.grow();
+      store.mIds[i] = cursor.getLong(idIndex);
+      store.mCalendarIds[i] = cursor.getLong(calendarIdIndex);
+      store.mStarts[i] = cursor.getLong(dtstartIndex);
+      store.mEnds[i] = cursor.getLong(dtendIndex); // 重复事件DTEND为null，读出为0
+      store.mBits[i] = pack(cursor.getInt(hasAlarmIndex) == 1, cursor.getInt(allDayIndex) == 1,
+          cursor.getInt(availabilityIndex), cursor.getInt(accessLevelIndex), cursor.getInt(statusIndex));
+      store.mTitles[i] = store.internColumn(cursor, titleIndex, buffer);
+      store.mDescriptions[i] = store.internColumn(cursor, descriptionIndex, buffer);
+      store.mLocations[i] = store.internColumn(cursor, locationIndex, buffer);
+      store.mTimezones[i] = store.internColumn(cursor, timezoneIndex, buffer);
+    }
+    return store;
+  }
+
+  /**
+   * 由已有的 EventModel 列表建立（不含提醒、参与人）
+   * @param events
+   * @return
+   */
+  public static CompactEventStore of(List<EventModel> events) {
+    CompactEventStore store = new CompactEventStore(new StringTable(), events.size());
+    for (EventModel event : events) {
+      int i = store.grow();
+      store.mIds[i] = event.getId();
+      store.mCalendarIds[i] = event.getCalendarId();
+      store.mStarts[i] = event.getDtstart();
+      store.mEnds[i] = event.getDtend();
+      store.mBits[i] = pack(event.isHasAlarm(), event.isAllDay(),
+          event.getAvailability(), event.getAccessLevel(), event.getEventStatus());
+      store.mTitles[i] = store.mStrings.intern(event.getTitle());
+      store.mDescriptions[i] = store.mStrings.intern(event.getDescription());
+      store.mLocations[i] = store.mStrings.intern(event.getEventLocation());
+      store.mTimezones[i] = store.mStrings.intern(event.getEventTimezone());
+    }
+    return store;
+  }
+
+  private int internColumn(Cursor cursor, int column, CharArrayBuffer buffer) {
+    if (cursor.isNull(column)) {
+      return StringTable.NULL;
+    }
+    cursor.copyStringToBuffer(column, buffer);
+    return mStrings.intern(buffer.data, buffer.sizeCopied);
+  }
+
+  private static int pack(boolean hasAlarm, boolean allDay, int availability, int accessLevel, int status) {
+    int bits = (hasAlarm ? FLAG_HAS_ALARM : 0) | (allDay ? FLAG_ALL_DAY : 0);
+    bits |= (availability & BYTE_MASK) << AVAILABILITY_SHIFT;
+    bits |= (accessLevel & BYTE_MASK) << ACCESS_LEVEL_SHIFT;
+    bits |= (status & BYTE_MASK) << STATUS_SHIFT;
+    return bits;
+  }
+
+  /**
+   * 追加一行，容量不足时扩容
+   * @return 新行的下标
+   */
+  private int grow() {
+    if (mSize == mIds.length) {
+      int capacity = mSize + (mSize >> 1) + 1;
+      mIds = Arrays.copyOf(mIds, capacity);
+      mCalendarIds = Arrays.copyOf(mCalendarIds, capacity);
+      mStarts = Arrays.copyOf(mStarts, capacity);
+      mEnds = Arrays.copyOf(mEnds, capacity);
+      mBits = Arrays.copyOf(mBits, capacity);
+      mTitles = Arrays.copyOf(mTitles, capacity);
+      mDescriptions = Arrays.copyOf(mDescriptions, capacity);
+      mLocations = Arrays.copyOf(mLocations, capacity);
+      mTimezones = Arrays.copyOf(mTimezones, capacity);
+    }
+    return mSize++;
+  }
+
+  public int size() {
+    return mSize;
+  }
+
+  public boolean isEmpty() {
+    return mSize == 0;
+  }
+
+  /**
+   * 不同字符串的个数，用于观察去重效果
+   * @return
+   */
+  public int getStringCount() {
+    return mStrings.size();
+  }
+
+  public long getId(int index) {
+    return mIds[checkIndex(index)];
+  }
+
+  public long getCalendarId(int index) {
+    return mCalendarIds[checkIndex(index)];
+  }
+
+  public long getDtstart(int index) {
+    return mStarts[checkIndex(index)];
+  }
+
+  public long getDtend(int index) {
+    return mEnds[checkIndex(index)];
+  }
+
+  public String getTitle(int index) {
+    return mStrings.get(mTitles[checkIndex(index)]);
+  }
+
+  public String getDescription(int index) {
+    return mStrings.get(mDescriptions[checkIndex(index)]);
+  }
+
+  public String getEventLocation(int index) {
+    return mStrings.get(mLocations[checkIndex(index)]);
+  }
+
+  public String getEventTimezone(int index) {
+    return mStrings.get(mTimezones[checkIndex(index)]);
+  }
+
+  public boolean isHasAlarm(int index) {
+    return (mBits[checkIndex(index)] & FLAG_HAS_ALARM) != 0;
+  }
+
+  public boolean isAllDay(int index) {
+    return (mBits[checkIndex(index)] & FLAG_ALL_DAY) != 0;
+  }
+
+  public int getAvailability(int index) {
+    return (mBits[checkIndex(index)] >>> AVAILABILITY_SHIFT) & BYTE_MASK;
+  }
+
+  public int getAccessLevel(int index) {
+    return (mBits[checkIndex(index)] >>> ACCESS_LEVEL_SHIFT) & BYTE_MASK;
+  }
+
+  public int getEventStatus(int index) {
+    return (mBits[checkIndex(index)] >>> STATUS_SHIFT) & BYTE_MASK;
+  }
+
+  private int checkIndex(int index) {
+    if (index < 0 || index >= mSize) {
+      throw new IndexOutOfBoundsException("index=" + index + ", size=" + mSize);
+    }
+    return index;
+  }
+
+  /**
+   * 按id查找行下标，线性查找
+   * @param eventId
+   * @return 不存在返回-1
+   */
+  public int indexOf(long eventId) {
+    for (int i = 0; i < mSize; i++) {
+      if (mIds[i] == eventId) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * 转换为 EventModel（不含提醒、参与人），每次调用创建新对象
+   * @param index
+   * @return
+   */
+  public EventModel toEventModel(int index) {
+    checkIndex(index);
+    EventModel event = new EventModel();
+    event.setId(mIds[index]);
+    event.setCalendarId(mCalendarIds[index]);
+    event.setTitle(mStrings.get(mTitles[index]));
+    event.setDescription(mStrings.get(mDescriptions[index]));
+    event.setEventLocation(mStrings.get(mLocations[index]));
+    event.setDtstart(mStarts[index]);
+    event.setDtend(mEnds[index]);
+    event.setEventTimezone(mStrings.get(mTimezones[index]));
+    event.setHasAlarm(isHasAlarm(index));
+    event.setAllDay(isAllDay(index));
+    event.setAvailability(getAvailability(index));
+    event.setAccessLevel(getAccessLevel(index));
+    event.setEventStatus(getEventStatus(index));
+    event.clearDirtyFields();
+    return event;
+  }
+
+  /**
+   * 只读的 List 视图，get 时才转换为 EventModel，不缓存
+   * @return
+   */
+  public List<EventModel> asList() {
+    return new AbstractList<EventModel>() {
+      @Override
+      public EventModel get(int index) {
+        return toEventModel(index);
+      }
+
+      @Override
+      public int size() {
+        return mSize;
+      }
+    };
+  }
+
+  /**
+   * 按 (dtstart, id) 排序后的新结果集，原结果集不变
+   * @return
+   */
+  public CompactEventStore sortByStart() {
+    int[] order = new int[mSize];
+    for (int i = 0; i < mSize; i++) {
+      order[i] = i;
+    }
+    mergeSort(order, new int[mSize], 0, mSize);
+    return select(order, mSize);
+  }
+
+  /**
+   * 保留满足条件的行
+   * @param filter
+   * @return 新结果集，原结果集不变
+   */
+  public CompactEventStore filter(RowFilter filter) {
+    int[] selected = new int[mSize];
+    int count = 0;
+    for (int i = 0; i < mSize; i++) {
+      if (filter.accept(this, i)) {
+        selected[count++] = i;
+      }
+    }
+    return select(selected, count);
+  }
+
+  /**
+   * 保留与 [begin, end) 有重叠的事件，结束时间不大于开始时间的按 1 毫秒处理（与 {@link EventIntervalIndex} 一致）
+   * @param begin
+   * @param end
+   * @return
+   */
+  public CompactEventStore filterOverlapping(long begin, long end) {
+    int[] selected = new int[mSize];
+    int count = 0;
+    for (int i = 0; i < mSize; i++) {
+      long start = mStarts[i];
+      if (start < end && Math.max(mEnds[i], start + 1) > begin) {
+        selected[count++] = i;
+      }
+    }
+    return select(selected, count);
+  }
+
+  /**
+   * 只保留某个日历的事件
+   * @param calendarId
+   * @return
+   */
+  public CompactEventStore filterCalendar(long calendarId) {
+    int[] selected = new int[mSize];
+    int count = 0;
+    for (int i = 0; i < mSize; i++) {
+      if (mCalendarIds[i] == calendarId) {
+        selected[count++] = i;
+      }
+    }
+    return select(selected, count);
+  }
+
+  /**
+   * 按下标复制各列，共享字符串表
+   */
+  private CompactEventStore select(int[] indexes, int count) {
+    CompactEventStore store = new CompactEventStore(mStrings, count);
+    for (int j = 0; j < count; j++) {
+      int i = indexes[j];
+      store.mIds[j] = mIds[i];
+      store.mCalendarIds[j] = mCalendarIds[i];
+      store.mStarts[j] = mStarts[i];
+      store.mEnds[j] = mEnds[i];
+      store.mBits[j] = mBits[i];
+      store.mTitles[j] = mTitles[i];
+      store.mDescriptions[j] = mDescriptions[i];
+      store.mLocations[j] = mLocations[i];
+      store.mTimezones[j] = mTimezones[i];
+    }
+    store.mSize = count;
+    return store;
+  }
+
+  private int compareRows(int a, int b) {
+    if (mStarts[a] != mStarts[b]) {
+      return mStarts[a] < mStarts[b] ? -1 : 1;
+    }
+    return mIds[a] < mIds[b] ? -1 : (mIds[a] == mIds[b] ? 0 : 1);
+  }
+
+  /**
+   * 对下标数组 [from, to) 归并排序，稳定，不装箱
+   */
+  private void mergeSort(int[] order, int[] temp, int from, int to) {
+    if (to - from < 2) {
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    mergeSort(order, temp, from, mid);
+    mergeSort(order, temp, mid, to);
+    if (compareRows(order[mid - 1], order[mid]) <= 0) {
+      // 已经有序（provider 通常按 _ID 返回，按时间插入的数据大多已经有序）
+      return;
+    }
+    System.arraycopy(order, from, temp, from, to - from);
+    int left = from;
+    int right = mid;
+    for (int k = from; k < to; k++) {
+      if (right >= to || (left < mid && compareRows(temp[left], temp[right]) <= 0)) {
+        order[k] = temp[left++];
+      } else {
+        order[k] = temp[right++];
+      }
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package com.changxiao.calendardemo;
+
+import java.util.List;
+
+/**
+ * 通过 CalendarManager 写入事件后的回调，用于同步内存中的索引、缓存
+ * 在执行写操作的线程回调
+ *
+ * Created by Chang.Xiao on 2019/5/20.
+ *
+ * @version 1.0
+ */
+public interface EventChangeListener {
+
+  /**
+   * 事件已插入或更新
+   * @param event 写入后的事件
+   */
+  void onEventSaved(EventModel event);
+
+  /**
+   * 事件已删除
+   * @param eventIds
+   */
+  void onEventsDeleted(List<Long> eventIds);
+}
@@ -0,0 +1,187 @@
+package com.changxiao.calendardemo;
+
+import android.content.ContentValues;
+import android.provider.CalendarContract.Events;
+import android.text.TextUtils;
+
+/**
+ * 事件表的编码、解码，所有写事件表的地方都经过这里
+ * 插入时由 CalendarRemindModel 编码完整的行；更新时由 EventModel 按字段编码，默认只写修改过的字段
+ *
+ * Created by Chang.Xiao on 2019/6/5.
+ *
+ * @version 1.0
+ */
+final class EventCodec {
+
+  /** 没有设置时区的定时事件使用的时区 */
+  static final String DEFAULT_TIMEZONE = "Asia/Shanghai";
+
+  private EventCodec() {
+  }
+
+  /**
+   * 插入事件的完整数据
+   * @param calId 日历账户id
+   * @param model
+   * @return
+   */
+  static ContentValues toInsertValues(int calId, CalendarRemindModel model) {
+    ContentValues values = new ContentValues();
+    encodeInsert(calId, model, ColumnWriter.of(values));
+    return values;
+  }
+
+  /**
+   * 编码插入事件的完整数据
+   * 事件状态固定为确认；全天事件取 startDate 所在的那一天（按日程的时区，未设置时按系统时区），跨天时到 endDate 所在的那一天，
+   * 按 CalendarContract 的要求存为UTC零点、时区UTC；其它事件直接使用 startDate、endDate；地点为空时不写
+   * @param calId
+   * @param model
+   * @param out
+   */
+  static void encodeInsert(int calId, CalendarRemindModel model, ColumnWriter out) {
+    out.put(Events.CALENDAR_ID, calId); // 日历事件属于的Calendars#_ID，必须有
+    out.put(Events.TITLE, model.getTitle()); // 事件的标题
+    out.put(Events.DESCRIPTION, model.getDescription()); // 事件的备注
+    String timeZone = model.getTimeZone();
+    out.put(Events.ALL_DAY, model.isAllDay());
+    out.put(Events.DTSTART, dtstartOf(model)); // 事件的启动时间，使用从纪元开始的UTC毫秒计时，必须有
+    out.put(Events.DTEND, dtendOf(model)); // 事件的结束时间，使用从纪元开始的UTC毫秒计时，对于非重复发生的事件，必须有
+    if (model.isAllDay()) {
+      out.put(Events.EVENT_TIMEZONE, CalendarTimeUtils.TIMEZONE_UTC);
+    } else {
+      out.put(Events.EVENT_TIMEZONE, TextUtils.isEmpty(timeZone) ? DEFAULT_TIMEZONE : timeZone); // 事件所针对的时区，必须有
+    }
+    out.put(Events.STATUS, 1); // 事件状态:暂定(0)，确认(1)或取消(2)
+    out.put(Events.HAS_ALARM, model.getHasAlarm()); // 设置有闹钟提醒
+    String location = model.getLocation();
+    if (!TextUtils.isEmpty(location)) {
+      out.put(Events.EVENT_LOCATION, location);
+    }
+    out.put(Events.AVAILABILITY, model.getAvailability()); // 我的状态
+    out.put(Events.ACCESS_LEVEL, model.getAccessLevel()); // 隐私
+  }
+
+  /**
+   * 写入provider的开始时间，全天事件为开始日期的UTC零点
+   * @param model
+   * @return
+   */
+  static long dtstartOf(CalendarRemindModel model) {
+    if (model.isAllDay()) {
+      return CalendarTimeUtils.allDayStart(model.getStartDate(), CalendarTimeUtils.getTimeZone(model.getTimeZone()));
+    }
+    return model.getStartDate();
+  }
+
+  /**
+   * 写入provider的结束时间，全天事件为结束日期下一天的UTC零点
+   * @param model
+   * @return
+   */
+  static long dtendOf(CalendarRemindModel model) {
+    if (model.isAllDay()) {
+      return CalendarTimeUtils.allDayEnd(model.getStartDate(), model.getEndDate(), CalendarTimeUtils.getTimeZone(model.getTimeZone()));
+    }
+    return model.getEndDate();
+  }
+
+  /**
+   * 更新事件的数据，只包含修改过的字段
+   * @param model
+   * @return 没有修改过的字段时为空
+   */
+  static ContentValues toUpdateValues(EventModel model) {
+    ContentValues values = new ContentValues();
+    encodeUpdate(model, model.getDirtyFields(), ColumnWriter.of(values));
+    return values;
+  }
+
+  /**
+   * 编码更新事件的数据
+   * 全天事件的开始、结束时间由调用方给出UTC零点（与查询结果一致）
+   * @param model
+   * @param fields 要写入的字段，EventModel.FIELD_* 的组合
+   * @param out
+   */
+  static void encodeUpdate(EventModel model, int fields, ColumnWriter out) {
+    if ((fields & EventModel.FIELD_CALENDAR_ID) != 0) {
+      out.put(Events.CALENDAR_ID, model.getCalendarId());
+    }
+    if ((fields & EventModel.FIELD_TITLE) != 0) {
+      putString(out, Events.TITLE, model.getTitle());
+    }
+    if ((fields & EventModel.FIELD_DESCRIPTION) != 0) {
+      putString(out, Events.DESCRIPTION, model.getDescription());
+    }
+    if ((fields & EventModel.FIELD_EVENT_LOCATION) != 0) {
+      putString(out, Events.EVENT_LOCATION, model.getEventLocation());
+    }
+    if ((fields & EventModel.FIELD_DTSTART) != 0) {
+      out.put(Events.DTSTART, model.getDtstart());
+    }
+    if ((fields & EventModel.FIELD_DTEND) != 0) {
+      out.put(Events.DTEND, model.getDtend());
+    }
+    if ((fields & EventModel.FIELD_EVENT_TIMEZONE) != 0) {
+      putString(out, Events.EVENT_TIMEZONE, model.getEventTimezone());
+    }
+    if ((fields & EventModel.FIELD_HAS_ALARM) != 0) {
+      out.put(Events.HAS_ALARM, model.isHasAlarm() ? 1 : 0);
+    }
+    if ((fields & EventModel.FIELD_ALL_DAY) != 0) {
+      out.put(Events.ALL_DAY, model.isAllDay());
+    }
+    if ((fields & EventModel.FIELD_AVAILABILITY) != 0) {
+      out.put(Events.AVAILABILITY, model.getAvailability());
+    }
+    if ((fields & EventModel.FIELD_ACCESS_LEVEL) != 0) {
+      out.put(Events.ACCESS_LEVEL, model.getAccessLevel());
+    }
+    if ((fields & EventModel.FIELD_EVENT_STATUS) != 0) {
+      out.put(Events.STATUS, model.getEventStatus());
+    }
+  }
+
+  private static void putString(ColumnWriter out, String column, String value) {
+    if (value == null) {
+      out.putNull(column);
+    } else {
+      out.put(column, value);
+    }
+  }
+
+  /**
+   * 由写入的事件数据生成 EventModel，没有修改过的字段
+   * @param eventId
+   * @param values
+   * @return
+   */
+  static EventModel decode(long eventId, ContentValues values) {
+    EventModel event = new EventModel();
+    event.setId(eventId);
+    Long calendarId = values.getAsLong(Events.CALENDAR_ID);
+    event.setCalendarId(calendarId == null ? -1 : calendarId);
+    event.setTitle(values.getAsString(Events.TITLE));
+    event.setDescription(values.getAsString(Events.DESCRIPTION));
+    event.setEventLocation(values.getAsString(Events.EVENT_LOCATION));
+    Long dtstart = values.getAsLong(Events.DTSTART);
+    event.setDtstart(dtstart == null ? 0 : dtstart);
+    Long dtend = values.getAsLong(Events.DTEND);
+    event.setDtend(dtend == null ? 0 : dtend);
+    event.setEventTimezone(values.getAsString(Events.EVENT_TIMEZONE));
+    Integer hasAlarm = values.getAsInteger(Events.HAS_ALARM);
+    event.setHasAlarm(hasAlarm != null && hasAlarm == 1);
+    Boolean allDay = values.getAsBoolean(Events.ALL_DAY);
+    event.setAllDay(allDay != null && allDay);
+    Integer availability = values.getAsInteger(Events.AVAILABILITY);
+    event.setAvailability(availability == null ? 0 : availability);
+    Integer accessLevel = values.getAsInteger(Events.ACCESS_LEVEL);
+    event.setAccessLevel(accessLevel == null ? 0 : accessLevel);
+    Integer status = values.getAsInteger(Events.STATUS);
+    event.setEventStatus(status == null ? 0 : status);
+    event.clearDirtyFields();
+    return event;
+  }
+}
@@ -0,0 +1,62 @@
+package com.changxiao.calendardemo;
+
+import java.util.List;
+
+/**
+ * 批量删除事件的条件，见 {@link CalendarManager#deleteEvents(android.content.Context, EventDeleteFilter)}
+ * 设置的条件之间是 AND 关系，至少设置一个条件
+ *
+ * Created by Chang.Xiao on 2019/5/30.
+ *
+ * @version 1.0
+ */
+public class EventDeleteFilter {
+
+  private List<Long> ids; // 事件id，null表示不按id过滤
+  private long calendarId = -1; // 日历账户id，-1表示不按日历过滤
+  private long begin = -1; // DTSTART 不早于该时间，-1表示不限
+  private long end = -1; // DTEND 不晚于该时间，-1表示不限
+
+  public List<Long> getIds() {
+    return ids;
+  }
+
+  public void setIds(List<Long> ids) {
+    this.ids = ids;
+  }
+
+  public long getCalendarId() {
+    return calendarId;
+  }
+
+  public void setCalendarId(long calendarId) {
+    this.calendarId = calendarId;
+  }
+
+  public long getBegin() {
+    return begin;
+  }
+
+  public long getEnd() {
+    return end;
+  }
+
+  /**
+   * 删除完全落在 [begin, end] 内的事件（DTSTART >= begin 且 DTEND <= end），-1表示该端不限
+   * 没有 DTEND 的重复事件不会按结束时间匹配
+   * @param begin
+   * @param end
+   */
+  public void setRange(long begin, long end) {
+    this.begin = begin;
+    this.end = end;
+  }
+
+  /**
+   * 是否没有设置任何条件
+   * @return
+   */
+  public boolean isEmpty() {
+    return ids == null && calendarId < 0 && begin < 0 && end < 0;
+  }
+}
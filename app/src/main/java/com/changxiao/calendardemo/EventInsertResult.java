@@ -0,0 +1,53 @@
+package com.changxiao.calendardemo;
+
+/**
+ * 批量插入日程时单条日程的插入结果
+ *
+ * Created by Chang.Xiao on 2019/5/6.
+ *
+ * @version 1.0
+ */
+public class EventInsertResult {
+
+  private final int position; // 对应入参列表中的下标
+  private long eventId = -1; // 插入成功后的事件id，失败为-1
+  private String error; // 失败原因
+
+  public EventInsertResult(int position) {
+    this.position = position;
+  }
+
+  public int getPosition() {
+    return position;
+  }
+
+  public long getEventId() {
+    return eventId;
+  }
+
+  void setEventId(long eventId) {
+    this.eventId = eventId;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  void setError(String error) {
+    this.error = error;
+  }
+
+  /**
+   * 是否插入成功
+   * @return
+   */
+  public boolean isSuccess() {
+    return eventId >= 0;
+  }
+
+  @Override
+  public String toString() {
+    return isSuccess() ? "第" + (position + 1) + "条日程，eventId=" + eventId
+        : "第" + (position + 1) + "条日程，添加失败：" + error;
+  }
+}
@@ -0,0 +1,322 @@
+package com.changxiao.calendardemo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * 事件时间区间索引
+ *
+ * 以事件的 [dtstart, dtend) 为区间，内存中维护一棵按 (dtstart, id) 排序的 treap，
+ * 每个节点记录子树中最大的结束时间，用于剪枝。不需要访问 provider 就可以回答
+ * “哪些事件和 [t0, t1) 重叠”、“t 时刻有哪些事件”，插入、删除、定位都是 O(log n)，
+ * 查询只会进入可能有命中的子树。
+ *
+ * 全天事件存为UTC零点，放入时按 {@link #setTimeZone(TimeZone)} 的时区（默认为系统时区）换算为当地零点，与 FreeBusy 一致。
+ * 开始、结束为同一时刻的事件按 1 毫秒处理。重复事件（DTEND 为空，只有 DURATION，读出的结束时间为0）
+ * 没有单一的时间区间，不放入索引，按时间段查询重复事件请用 CalendarManager#queryInstances。
+ * 设置了 {@link #setCalendarIds(long[])} 时，{@link #onEventSaved(EventModel)} 只接收这些日历中的事件。
+ * 线程安全。
+ *
+ * Created by Chang.Xiao on 2019/5/20.
+ *
+ * @version 1.0
+ */
+public class EventIntervalIndex implements EventChangeListener {
+
+  private static final class Node {
+    final EventModel event;
+    final long start;
+    final long end;
+    final int priority;
+    long maxEnd;
+    Node left;
+    Node right;
+
+    Node(EventModel event, long start, long end, int priority) {
+      this.event = event;
+      this.start = start;
+      this.end = Math.max(end, start + 1);
+      this.priority = priority;
+      this.maxEnd = this.end;
+    }
+  }
+
+  private final Random mRandom = new Random();
+  private final Map<Long, Node> mNodes = new HashMap<>();
+  private Node mRoot;
+  /** 接收变化通知的日历，升序，null 表示不限 */
+  private long[] mCalendarIds;
+  /** 全天事件按这个时区换算 */
+  private TimeZone mZone = CalendarTimeUtils.getDefaultTimeZone();
+
+  /**
+   * 全天事件换算为当地零点使用的时区，已有的事件按新的时区重新放入；系统时区变化后需要调用
+   * @param zone
+   */
+  public synchronized void setTimeZone(TimeZone zone) {
+    if (zone == null || zone.equals(mZone)) {
+      return;
+    }
+    mZone = zone;
+    List<EventModel> events = new ArrayList<>(mNodes.size());
+    for (Node node : mNodes.values()) {
+      events.add(node.event);
+    }
+    build(events);
+  }
+
+  /**
+   * 只接收这些日历中的事件的变化通知，如 CalendarManager#getAppCalendarIds 的结果
+   * @param calendarIds 为null时不限
+   */
+  public synchronized void setCalendarIds(long[] calendarIds) {
+    if (calendarIds == null) {
+      mCalendarIds = null;
+    } else {
+      mCalendarIds = calendarIds.clone();
+      Arrays.sort(mCalendarIds);
+    }
+  }
+
+  /**
+   * 接收的日历中增加一个，如新建的应用日历；没有设置过 {@link #setCalendarIds(long[])} 时不需要
+   * @param calendarId
+   */
+  public synchronized void addCalendarId(long calendarId) {
+    if (mCalendarIds == null || Arrays.binarySearch(mCalendarIds, calendarId) >= 0) {
+      return;
+    }
+    long[] ids = Arrays.copyOf(mCalendarIds, mCalendarIds.length + 1);
+    ids[ids.length - 1] = calendarId;
+    Arrays.sort(ids);
+    mCalendarIds = ids;
+  }
+
+  /**
+   * 用事件列表重建索引，如 queryEvents、queryCalendarEvents 的结果
+   * @param events
+   */
+  public synchronized void build(List<EventModel> events) {
+    clear();
+    for (EventModel event : events) {
+      put(event);
+    }
+  }
+
+  /**
+   * 添加事件，同一id的事件已存在时替换；重复事件不放入索引（已存在时移除）
+   * @param event
+   */
+  public synchronized void put(EventModel event) {
+    remove(event.getId());
+    if (isRecurring(event)) {
+      return;
+    }
+    long start = event.getDtstart();
+    long end = event.getDtend();
+    if (event.isAllDay()) {
+      start = CalendarTimeUtils.allDayToLocal(start, mZone);
+      end = CalendarTimeUtils.allDayToLocal(end, mZone);
+    }
+    Node node = new Node(event, start, end, mRandom.nextInt());
+    mRoot = insert(mRoot, node);
+    mNodes.put(event.getId(), node);
+  }
+
+  /**
+   * 删除事件
+   * @param eventId
+   * @return 是否存在
+   */
+  public synchronized boolean remove(long eventId) {
+    Node node = mNodes.remove(eventId);
+    if (node == null) {
+      return false;
+    }
+    mRoot = delete(mRoot, node);
+    return true;
+  }
+
+  public synchronized void clear() {
+    mNodes.clear();
+    mRoot = null;
+  }
+
+  public synchronized int size() {
+    return mNodes.size();
+  }
+
+  /**
+   * 查询和 [t0, t1) 重叠的事件
+   * @param t0
+   * @param t1
+   * @return 按开始时间排序
+   */
+  public synchronized List<EventModel> queryOverlaps(long t0, long t1) {
+    List<EventModel> result = new ArrayList<>();
+    collect(mRoot, t0, t1, result);
+    return result;
+  }
+
+  /**
+   * 查询 t 时刻进行中的事件，即 dtstart <= t < dtend
+   * @param t
+   * @return 按开始时间排序
+   */
+  public synchronized List<EventModel> queryActiveAt(long t) {
+    return queryOverlaps(t, t + 1);
+  }
+
+  /**
+   * [t0, t1) 内是否已有事件，找到第一个即返回，用于创建前的冲突检查
+   * @param t0
+   * @param t1
+   * @return
+   */
+  public synchronized boolean hasOverlap(long t0, long t1) {
+    return overlapsAny(mRoot, t0, t1);
+  }
+
+  private boolean overlapsAny(Node node, long t0, long t1) {
+    if (node == null || node.maxEnd <= t0) {
+      return false;
+    }
+    if (overlapsAny(node.left, t0, t1)) {
+      return true;
+    }
+    if (node.start >= t1) {
+      return false;
+    }
+    return node.end > t0 || overlapsAny(node.right, t0, t1);
+  }
+
+  private void collect(Node node, long t0, long t1, List<EventModel> out) {
+    if (node == null || node.maxEnd <= t0) {
+      // 子树中所有事件都在t0之前结束
+      return;
+    }
+    collect(node.left, t0, t1, out);
+    if (node.start >= t1) {
+      // 右子树的开始时间都不早于当前节点
+      return;
+    }
+    if (node.end > t0) {
+      out.add(node.event);
+    }
+    collect(node.right, t0, t1, out);
+  }
+
+  private static int compare(Node a, Node b) {
+    if (a.start != b.start) {
+      return a.start < b.start ? -1 : 1;
+    }
+    long ida = a.event.getId();
+    long idb = b.event.getId();
+    return ida < idb ? -1 : (ida == idb ? 0 : 1);
+  }
+
+  private static void update(Node node) {
+    long maxEnd = node.end;
+    if (node.left != null && node.left.maxEnd > maxEnd) {
+      maxEnd = node.left.maxEnd;
+    }
+    if (node.right != null && node.right.maxEnd > maxEnd) {
+      maxEnd = node.right.maxEnd;
+    }
+    node.maxEnd = maxEnd;
+  }
+
+  private static Node rotateRight(Node node) {
+    Node left = node.left;
+    node.left = left.right;
+    left.right = node;
+    update(node);
+    update(left);
+    return left;
+  }
+
+  private static Node rotateLeft(Node node) {
+    Node right = node.right;
+    node.right = right.left;
+    right.left = node;
+    update(node);
+    update(right);
+    return right;
+  }
+
+  private static Node insert(Node root, Node node) {
+    if (root == null) {
+      return node;
+    }
+    if (compare(node, root) < 0) {
+      root.left = insert(root.left, node);
+      if (root.left.priority > root.priority) {
+        return rotateRight(root);
+      }
+    } else {
+      root.right = insert(root.right, node);
+      if (root.right.priority > root.priority) {
+        return rotateLeft(root);
+      }
+    }
+    update(root);
+    return root;
+  }
+
+  private static Node delete(Node root, Node node) {
+    if (root == null) {
+      return null;
+    }
+    if (root == node) {
+      if (root.left == null) {
+        return root.right;
+      }
+      if (root.right == null) {
+        return root.left;
+      }
+      // 把优先级高的子节点旋转上来，继续向下删除
+      if (root.left.priority > root.right.priority) {
+        root = rotateRight(root);
+        root.right = delete(root.right, node);
+      } else {
+        root = rotateLeft(root);
+        root.left = delete(root.left, node);
+      }
+    } else if (compare(node, root) < 0) {
+      root.left = delete(root.left, node);
+    } else {
+      root.right = delete(root.right, node);
+    }
+    update(root);
+    return root;
+  }
+
+  /**
+   * 没有结束时间的事件视为重复事件（DTEND 为空时读出0）
+   */
+  static boolean isRecurring(EventModel event) {
+    return event.getDtend() < event.getDtstart();
+  }
+
+  @Override
+  public synchronized void onEventSaved(EventModel event) {
+    if (mCalendarIds != null && Arrays.binarySearch(mCalendarIds, event.getCalendarId()) < 0) {
+      // 不属于索引的日历（如通过 updateEvent 修改的其它日历的事件），移到其它日历的事件移出索引
+      remove(event.getId());
+      return;
+    }
+    put(event);
+  }
+
+  @Override
+  public synchronized void onEventsDeleted(List<Long> eventIds) {
+    for (Long id : eventIds) {
+      remove(id);
+    }
+  }
+}
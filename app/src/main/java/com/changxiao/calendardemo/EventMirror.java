@@ -0,0 +1,385 @@
+package com.changxiao.calendardemo;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.provider.CalendarContract.Events;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 应用日历事件的内存镜像
+ *
+ * 第一次全量加载，之后监听 Events 表，合并 REFRESH_DELAY 内的变化通知后增量刷新：
+ * 1. 查询应用日历中所有事件的 (_ID, DIRTY)，只有两列，游标窗口很小；
+ * 2. 镜像中没有的、DIRTY=1 的事件为新增或被修改，镜像中有但查询结果中没有的为已删除；
+ * 3. 以同步适配器身份把这些事件的 DIRTY 清零，再按id分批查询完整的行。
+ *    先清零再读取，清零之后的修改会重新置 DIRTY 并触发下一次刷新，不会丢失。
+ * 应用日历属于本应用的账户，没有其它同步适配器使用 DIRTY。没有变化时一次刷新只有第1步的一次查询；
+ * 第3步的清零本身也会触发一次通知，对应的刷新没有变化。
+ * 通过 CalendarManager 的写操作会经 {@link EventChangeListener} 立即更新镜像，不需要等刷新。
+ *
+ * 返回的 EventModel 是镜像中的对象，不要修改。线程安全。
+ *
+ * Created by Chang.Xiao on 2019/5/31.
+ *
+ * @version 1.0
+ */
+public class EventMirror implements EventChangeListener {
+
+  private static final String TAG = "EventMirror";
+
+  /** 合并连续变化通知的延迟 */
+  static final long REFRESH_DELAY = 500;
+
+  private static final String[] KEY_COLUMNS = new String[] { Events._ID, Events.DIRTY };
+
+  /** 按 (dtstart, id) 排序 */
+  static final Comparator<EventModel> START_ORDER = new Comparator<EventModel>() {
+    @Override
+    public int compare(EventModel a, EventModel b) {
+      if (a.getDtstart() != b.getDtstart()) {
+        return a.getDtstart() < b.getDtstart() ? -1 : 1;
+      }
+      return a.getId() < b.getId() ? -1 : (a.getId() == b.getId() ? 0 : 1);
+    }
+  };
+
+  private final CalendarManager mManager;
+  private final CalendarResolver mResolver;
+  private final OperationTracker mTracker;
+  private final Context mContext;
+  private final Handler mHandler;
+  private final ContentObserver mObserver;
+
+  private final Map<Long, EventModel> mEvents = new HashMap<>();
+  /** 镜像对应的应用日历（默认日历和分片日历），升序 */
+  private long[] mCalendarIds = new long[0];
+  private volatile boolean mLoaded;
+  private boolean mStarted;
+
+  private final List<EventChangeListener> mListeners = new CopyOnWriteArrayList<>();
+
+  EventMirror(CalendarManager manager, Context context, Handler handler) {
+    mManager = manager;
+    mResolver = manager.getResolver();
+    mTracker = manager.getTracker();
+    mContext = context;
+    mHandler = handler;
+    mObserver = new ContentObserver(handler) {
+      @Override
+      public void onChange(boolean selfChange) {
+        scheduleRefresh();
+      }
+    };
+  }
+
+  private final Runnable mRefreshTask = new Runnable() {
+    @Override
+    public void run() {
+      try {
+        refresh();
+      } catch (Exception e) {
+        // 没有权限等情况，保留当前镜像，下次变化时再刷新
+        Log.w(TAG, "refresh failed: " + e.getMessage());
+      }
+    }
+  };
+
+  /**
+   * 注册 Events 表监听
+   */
+  synchronized void start() {
+    if (!mStarted) {
+      mStarted = true;
+      mContext.getContentResolver().registerContentObserver(Events.CONTENT_URI, true, mObserver);
+    }
+  }
+
+  /**
+   * 停止监听，之后镜像不再刷新
+   */
+  public synchronized void stop() {
+    if (mStarted) {
+      mStarted = false;
+      mContext.getContentResolver().unregisterContentObserver(mObserver);
+      mHandler.removeCallbacks(mRefreshTask);
+    }
+  }
+
+  private void scheduleRefresh() {
+    mHandler.removeCallbacks(mRefreshTask);
+    mHandler.postDelayed(mRefreshTask, REFRESH_DELAY);
+  }
+
+  /**
+   * 是否已经完成全量加载
+   * @return
+   */
+  public boolean isLoaded() {
+    return mLoaded;
+  }
+
+  public void addChangeListener(EventChangeListener listener) {
+    if (listener != null && !mListeners.contains(listener)) {
+      mListeners.add(listener);
+    }
+  }
+
+  public void removeChangeListener(EventChangeListener listener) {
+    mListeners.remove(listener);
+  }
+
+  /**
+   * 镜像中的所有事件，按 (dtstart, id) 排序
+   * @return
+   */
+  public List<EventModel> getEvents() {
+    List<EventModel> events;
+    synchronized (this) {
+      events = new ArrayList<>(mEvents.values());
+    }
+    Collections.sort(events, START_ORDER);
+    return events;
+  }
+
+  /**
+   * 按id取事件
+   * @param eventId
+   * @return 不存在返回null
+   */
+  public synchronized EventModel getEvent(long eventId) {
+    return mEvents.get(eventId);
+  }
+
+  public synchronized int size() {
+    return mEvents.size();
+  }
+
+  /**
+   * 全量加载应用日历中的事件
+   * @return 是否加载成功
+   */
+  boolean load() {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.EVENT_MIRROR_REFRESH);
+    try {
+      long[] calIds = mManager.getAppCalendarIds(mContext);
+      List<EventModel> events = new ArrayList<>();
+      if (calIds.length > 0) {
+        // 先清零再读取，读取之后的修改会重新置 DIRTY
+        clearDirty(calIds, null, 0, 0);
+        Cursor cursor = mResolver.query(mContext,
+            Events.CONTENT_URI,
+            CalendarManager.EVENTS_COLUMNS,
+            SelectionUtils.in(Events.CALENDAR_ID, calIds.length) + " AND " + Events.DELETED + "!=1",
+            SelectionUtils.toArgs(calIds),
+            null);
+        if (cursor == null) {
+          mTracker.markError();
+          return false;
+        }
+        try {
+          new EventRowMapper(cursor).mapAll(cursor, events);
+        } finally {
+          cursor.close();
+        }
+      }
+      List<Long> deletedIds = new ArrayList<>();
+      synchronized (this) {
+        Map<Long, EventModel> previous = new HashMap<>(mEvents);
+        mEvents.clear();
+        for (EventModel event : events) {
+          mEvents.put(event.getId(), event);
+          previous.remove(event.getId());
+        }
+        deletedIds.addAll(previous.keySet());
+        mCalendarIds = calIds;
+      }
+      mLoaded = true;
+      mTracker.addRows(events.size());
+      // 账户变化后的重新加载也要同步给监听者（第一次加载时还没有监听者）
+      if (!mListeners.isEmpty()) {
+        for (EventModel event : events) {
+          notifyEventSaved(event);
+        }
+        if (!deletedIds.isEmpty()) {
+          notifyEventsDeleted(deletedIds);
+        }
+      }
+      return true;
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 增量刷新，在监听线程执行
+   */
+  void refresh() {
+    long[] calIds = mManager.getAppCalendarIds(mContext);
+    long[] mirrored;
+    synchronized (this) {
+      mirrored = mCalendarIds;
+    }
+    if (!Arrays.equals(calIds, mirrored) || !mLoaded) {
+      // 账户新建、重建或新增了分片日历，全量加载
+      load();
+      return;
+    }
+    if (calIds.length == 0) {
+      return;
+    }
+    CalendarOperation outer = mTracker.enter(CalendarOperation.EVENT_MIRROR_REFRESH);
+    try {
+      Cursor cursor = mResolver.query(mContext,
+          Events.CONTENT_URI,
+          KEY_COLUMNS,
+          SelectionUtils.in(Events.CALENDAR_ID, calIds.length) + " AND " + Events.DELETED + "!=1",
+          SelectionUtils.toArgs(calIds),
+          null);
+      if (cursor == null) {
+        mTracker.markError();
+        return;
+      }
+      List<Long> changedIds = new ArrayList<>();
+      List<Long> deletedIds = new ArrayList<>();
+      try {
+        Set<Long> present = new HashSet<>(cursor.getCount() * 4 / 3 + 1);
+        synchronized (this) {
+          while (cursor.moveToNext()) {
+            long id = cursor.getLong(0);
+            present.add(id);
+            if (cursor.getInt(1) == 1 || !mEvents.containsKey(id)) {
+              changedIds.add(id);
+            }
+          }
+          for (Long id : mEvents.keySet()) {
+            if (!present.contains(id)) {
+              deletedIds.add(id);
+            }
+          }
+        }
+      } finally {
+        cursor.close();
+      }
+
+      List<EventModel> changed = new ArrayList<>(changedIds.size());
+      for (int from = 0; from < changedIds.size(); from += SelectionUtils.IN_CHUNK_SIZE) {
+        int to = Math.min(from + SelectionUtils.IN_CHUNK_SIZE, changedIds.size());
+        clearDirty(calIds, changedIds, from, to);
+        if (!queryEvents(changedIds, from, to, changed)) {
+          mTracker.markError();
+          return;
+        }
+      }
+      synchronized (this) {
+        for (EventModel event : changed) {
+          mEvents.put(event.getId(), event);
+        }
+        for (Long id : deletedIds) {
+          mEvents.remove(id);
+        }
+      }
+      mTracker.addRows(changed.size() + deletedIds.size());
+      for (EventModel event : changed) {
+        notifyEventSaved(event);
+      }
+      if (!deletedIds.isEmpty()) {
+        notifyEventsDeleted(deletedIds);
+      }
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 以同步适配器身份清零 DIRTY
+   * @param calIds
+   * @param ids 为null时清零这些日历中的所有事件，否则只清零 ids[from, to)
+   */
+  private void clearDirty(long[] calIds, List<Long> ids, int from, int to) {
+    ContentValues values = new ContentValues();
+    values.put(Events.DIRTY, 0);
+    Uri uri = mManager.asSyncAdapter(Events.CONTENT_URI);
+    if (ids == null) {
+      mResolver.update(mContext, uri, values,
+          SelectionUtils.in(Events.CALENDAR_ID, calIds.length) + " AND " + Events.DIRTY + "=1",
+          SelectionUtils.toArgs(calIds));
+    } else {
+      mResolver.update(mContext, uri, values,
+          SelectionUtils.in(Events._ID, to - from) + " AND " + Events.DIRTY + "=1",
+          SelectionUtils.toArgs(ids, from, to));
+    }
+  }
+
+  /**
+   * 查询 ids[from, to) 的完整行
+   * @return 查询失败返回false
+   */
+  private boolean queryEvents(List<Long> ids, int from, int to, List<EventModel> out) {
+    Cursor cursor = mResolver.query(mContext,
+        Events.CONTENT_URI,
+        CalendarManager.EVENTS_COLUMNS,
+        SelectionUtils.in(Events._ID, to - from) + " AND " + Events.DELETED + "!=1",
+        SelectionUtils.toArgs(ids, from, to),
+        null);
+    if (cursor == null) {
+      return false;
+    }
+    try {
+      new EventRowMapper(cursor).mapAll(cursor, out);
+      return true;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  @Override
+  public void onEventSaved(EventModel event) {
+    synchronized (this) {
+      if (!mLoaded || Arrays.binarySearch(mCalendarIds, event.getCalendarId()) < 0) {
+        return;
+      }
+      mEvents.put(event.getId(), event);
+    }
+    notifyEventSaved(event);
+  }
+
+  @Override
+  public void onEventsDeleted(List<Long> eventIds) {
+    boolean removed = false;
+    synchronized (this) {
+      for (Long id : eventIds) {
+        removed |= mEvents.remove(id) != null;
+      }
+    }
+    if (removed) {
+      notifyEventsDeleted(eventIds);
+    }
+  }
+
+  private void notifyEventSaved(EventModel event) {
+    for (EventChangeListener listener : mListeners) {
+      listener.onEventSaved(event);
+    }
+  }
+
+  private void notifyEventsDeleted(List<Long> eventIds) {
+    for (EventChangeListener listener : mListeners) {
+      listener.onEventsDeleted(eventIds);
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package com.changxiao.calendardemo;
 
+import java.util.List;
+
 /**
  * 日程提醒 model
  *
@@ -9,6 +11,21 @@ package com.changxiao.calendardemo;
  */
 public class EventModel {
 
+  /** 事件表字段，用于标记修改过的字段，见 {@link #getDirtyFields()} */
+  public static final int FIELD_CALENDAR_ID = 1 << 0; // 日历id
+  public static final int FIELD_TITLE = 1 << 1; // 标题
+  public static final int FIELD_DESCRIPTION = 1 << 2; // 备注
+  public static final int FIELD_EVENT_LOCATION = 1 << 3; // 地点
+  public static final int FIELD_DTSTART = 1 << 4; // 开始时间
+  public static final int FIELD_DTEND = 1 << 5; // 结束时间
+  public static final int FIELD_EVENT_TIMEZONE = 1 << 6; // 时区
+  public static final int FIELD_HAS_ALARM = 1 << 7; // 是否有闹钟提醒
+  public static final int FIELD_ALL_DAY = 1 << 8; // 是否全天
+  public static final int FIELD_AVAILABILITY = 1 << 9; // 我的状态
+  public static final int FIELD_ACCESS_LEVEL = 1 << 10; // 访问权限
+  public static final int FIELD_EVENT_STATUS = 1 << 11; // 事件状态
+  public static final int ALL_FIELDS = (1 << 12) - 1;
+
   private long id;
   private long calendarId;
   private String title;
@@ -23,6 +40,11 @@ public class EventModel {
   private int accessLevel;
   private int eventStatus;
 
+  private List<ReminderModel> reminders; // 提醒
+  private List<AttendeeModel> attendees; // 参与人
+
+  private int dirtyFields; // 调用 setter 修改过的字段
+
   public long getId() {
     return id;
   }
@@ -37,6 +59,7 @@ public class EventModel {
 
   public void setCalendarId(long calendarId) {
     this.calendarId = calendarId;
+    dirtyFields |= FIELD_CALENDAR_ID;
   }
 
   public String getTitle() {
@@ -45,6 +68,7 @@ public class EventModel {
 
   public void setTitle(String title) {
     this.title = title;
+    dirtyFields |= FIELD_TITLE;
   }
 
   public String getDescription() {
@@ -53,6 +77,7 @@ public class EventModel {
 
   public void setDescription(String description) {
     this.description = description;
+    dirtyFields |= FIELD_DESCRIPTION;
   }
 
   public String getEventLocation() {
@@ -61,6 +86,7 @@ public class EventModel {
 
   public void setEventLocation(String eventLocation) {
     this.eventLocation = eventLocation;
+    dirtyFields |= FIELD_EVENT_LOCATION;
   }
 
   public long getDtstart() {
@@ -69,6 +95,7 @@ public class EventModel {
 
   public void setDtstart(long dtstart) {
     this.dtstart = dtstart;
+    dirtyFields |= FIELD_DTSTART;
   }
 
   public long getDtend() {
@@ -77,6 +104,7 @@ public class EventModel {
 
   public void setDtend(long dtend) {
     this.dtend = dtend;
+    dirtyFields |= FIELD_DTEND;
   }
 
   public String getEventTimezone() {
@@ -85,6 +113,7 @@ public class EventModel {
 
   public void setEventTimezone(String eventTimezone) {
     this.eventTimezone = eventTimezone;
+    dirtyFields |= FIELD_EVENT_TIMEZONE;
   }
 
   public boolean isHasAlarm() {
@@ -93,6 +122,7 @@ public class EventModel {
 
   public void setHasAlarm(boolean hasAlarm) {
     this.hasAlarm = hasAlarm;
+    dirtyFields |= FIELD_HAS_ALARM;
   }
 
   public boolean isAllDay() {
@@ -101,6 +131,7 @@ public class EventModel {
 
   public void setAllDay(boolean allDay) {
     this.allDay = allDay;
+    dirtyFields |= FIELD_ALL_DAY;
   }
 
   public int getAvailability() {
@@ -109,6 +140,7 @@ public class EventModel {
 
   public void setAvailability(int availability) {
     this.availability = availability;
+    dirtyFields |= FIELD_AVAILABILITY;
   }
 
   public int getAccessLevel() {
@@ -117,6 +149,7 @@ public class EventModel {
 
   public void setAccessLevel(int accessLevel) {
     this.accessLevel = accessLevel;
+    dirtyFields |= FIELD_ACCESS_LEVEL;
   }
 
   public int getEventStatus() {
@@ -125,5 +158,51 @@ public class EventModel {
 
   public void setEventStatus(int eventStatus) {
     this.eventStatus = eventStatus;
+    dirtyFields |= FIELD_EVENT_STATUS;
+  }
+
+  public List<ReminderModel> getReminders() {
+    return reminders;
+  }
+
+  public void setReminders(List<ReminderModel> reminders) {
+    this.reminders = reminders;
+  }
+
+  public List<AttendeeModel> getAttendees() {
+    return attendees;
+  }
+
+  public void setAttendees(List<AttendeeModel> attendees) {
+    this.attendees = attendees;
+  }
+
+  /**
+   * 创建后或上次 {@link #clearDirtyFields()} 后通过 setter 修改过的字段，FIELD_* 的组合
+   * 查询得到的事件没有修改过的字段，更新时只写入修改过的列
+   * @return
+   */
+  public int getDirtyFields() {
+    return dirtyFields;
+  }
+
+  /**
+   * 标记字段为已修改，如需要整体写入时标记 {@link #ALL_FIELDS}
+   * @param fields
+   */
+  public void markDirty(int fields) {
+    dirtyFields |= fields & ALL_FIELDS;
+  }
+
+  public void clearDirtyFields() {
+    dirtyFields = 0;
+  }
+
+  /**
+   * 清除部分字段的修改标记，如这些字段已经写入
+   * @param fields
+   */
+  public void clearDirtyFields(int fields) {
+    dirtyFields &= ~fields;
   }
 }
@@ -0,0 +1,61 @@
+package com.changxiao.calendardemo;
+
+/**
+ * 事件分页位置，即上一页最后一条事件的 (DTSTART, _ID)
+ * 可以通过 {@link #encode()} 保存，之后用 {@link #parse(String)} 恢复并继续翻页
+ *
+ * Created by Chang.Xiao on 2019/5/15.
+ *
+ * @version 1.0
+ */
+public final class EventPageToken {
+
+  private final long dtstart;
+  private final long id;
+
+  public EventPageToken(long dtstart, long id) {
+    this.dtstart = dtstart;
+    this.id = id;
+  }
+
+  public long getDtstart() {
+    return dtstart;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  /**
+   * 编码为字符串，格式：dtstart:id
+   * @return
+   */
+  public String encode() {
+    return dtstart + ":" + id;
+  }
+
+  /**
+   * 解析 {@link #encode()} 的结果
+   * @param token
+   * @return 格式不正确返回null
+   */
+  public static EventPageToken parse(String token) {
+    if (token == null) {
+      return null;
+    }
+    int split = token.indexOf(':');
+    if (split <= 0 || split == token.length() - 1) {
+      return null;
+    }
+    try {
+      return new EventPageToken(Long.parseLong(token.substring(0, split)), Long.parseLong(token.substring(split + 1)));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return encode();
+  }
+}
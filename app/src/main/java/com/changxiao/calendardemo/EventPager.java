@@ -0,0 +1,217 @@
+package com.changxiao.calendardemo;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.CalendarContract.Events;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 事件分页查询（keyset 分页）
+ *
+ * 按 (DTSTART, _ID) 排序，每页以上一页最后一条的 (DTSTART, _ID) 为起点查询，不使用 OFFSET，
+ * 翻到多后面都只读取一页的数据；内存中最多只保留一页事件。
+ * 调用方随时可以停止翻页，也可以保存 {@link #getToken()} 之后从该位置继续。
+ *
+ * 非线程安全，需要在后台线程使用。
+ *
+ * Created by Chang.Xiao on 2019/5/15.
+ *
+ * @version 1.0
+ */
+public class EventPager implements Iterable<EventModel> {
+
+  private static final String TAG = "EventPager";
+
+  public static final int DEFAULT_PAGE_SIZE = 100;
+
+  /** 日历provider是否接受 sortOrder 中的 LIMIT，不接受时退化为只读取游标的前 pageSize + 1 行 */
+  private static volatile boolean sLimitSupported = true;
+
+  private final Context mContext;
+  private final CalendarResolver mResolver;
+  private final OperationTracker mTracker;
+  private final int mPageSize;
+
+  private long[] mCalendarIds;
+  private long mBegin = Long.MIN_VALUE;
+  private long mEnd = Long.MAX_VALUE;
+
+  private EventPageToken mToken;
+  private boolean mHasNext = true;
+
+  public EventPager(Context context, int pageSize, EventPageToken token) {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("pageSize must be > 0");
+    }
+    mContext = context.getApplicationContext();
+    mResolver = CalendarManager.getInstance().getResolver();
+    mTracker = CalendarManager.getInstance().getTracker();
+    mPageSize = pageSize;
+    mToken = token;
+  }
+
+  /**
+   * 只查询某个日历的事件
+   * @param calendarId
+   */
+  public void setCalendarId(long calendarId) {
+    mCalendarIds = calendarId >= 0 ? new long[]{ calendarId } : null;
+  }
+
+  /**
+   * 只查询这些日历的事件，如 {@link CalendarManager#getAppCalendarIds(Context, long, long)} 的结果
+   * @param calendarIds
+   */
+  public void setCalendarIds(long[] calendarIds) {
+    mCalendarIds = calendarIds;
+  }
+
+  /**
+   * 只查询开始时间在 [begin, end) 内的事件
+   * @param begin
+   * @param end
+   */
+  public void setTimeRange(long begin, long end) {
+    mBegin = begin;
+    mEnd = end;
+  }
+
+  public int getPageSize() {
+    return mPageSize;
+  }
+
+  /**
+   * 当前位置，即已返回的最后一条事件；还没有开始翻页且没有传入token时为null
+   * @return
+   */
+  public EventPageToken getToken() {
+    return mToken;
+  }
+
+  /**
+   * 是否可能还有下一页
+   * @return
+   */
+  public boolean hasNext() {
+    return mHasNext;
+  }
+
+  /**
+   * 查询下一页
+   * @return 没有更多时返回空列表
+   */
+  public List<EventModel> nextPage() {
+    List<EventModel> page = new ArrayList<>(mPageSize);
+    if (!mHasNext) {
+      return page;
+    }
+
+    StringBuilder selection = new StringBuilder(Events.DELETED + "!=1");
+    List<String> args = new ArrayList<>();
+    if (mCalendarIds != null) {
+      selection.append(" AND ").append(SelectionUtils.in(Events.CALENDAR_ID, mCalendarIds.length));
+      for (long calendarId : mCalendarIds) {
+        args.add(String.valueOf(calendarId));
+      }
+    }
+    if (mBegin != Long.MIN_VALUE) {
+      selection.append(" AND ").append(Events.DTSTART).append(">=?");
+      args.add(String.valueOf(mBegin));
+    }
+    if (mEnd != Long.MAX_VALUE) {
+      selection.append(" AND ").append(Events.DTSTART).append("<?");
+      args.add(String.valueOf(mEnd));
+    }
+    if (mToken != null) {
+      selection.append(" AND (").append(Events.DTSTART).append(">? OR (")
+          .append(Events.DTSTART).append("=? AND ").append(Events._ID).append(">?))");
+      args.add(String.valueOf(mToken.getDtstart()));
+      args.add(String.valueOf(mToken.getDtstart()));
+      args.add(String.valueOf(mToken.getId()));
+    }
+
+    // 多取一条用来判断是否还有下一页
+    Cursor cursor = query(selection.toString(), args.toArray(new String[args.size()]), mPageSize + 1);
+    if (cursor == null) {
+      mHasNext = false;
+      return page;
+    }
+    try {
+      EventRowMapper mapper = new EventRowMapper(cursor);
+      while (page.size() < mPageSize && cursor.moveToNext()) {
+        page.add(mapper.map(cursor));
+      }
+      mHasNext = cursor.moveToNext();
+    } finally {
+      cursor.close();
+    }
+    if (!page.isEmpty()) {
+      EventModel last = page.get(page.size() - 1);
+      mToken = new EventPageToken(last.getDtstart(), last.getId());
+    }
+    return page;
+  }
+
+  private Cursor query(String selection, String[] args, int limit) {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.EVENT_PAGER);
+    try {
+      String order = Events.DTSTART + " ASC, " + Events._ID + " ASC";
+      if (sLimitSupported) {
+        try {
+          return mResolver.query(mContext, Events.CONTENT_URI, CalendarManager.EVENTS_COLUMNS,
+              selection, args, order + " LIMIT " + limit);
+        } catch (IllegalArgumentException e) {
+          // 部分系统的provider开启了严格语法检查，不允许在排序中带LIMIT
+          Log.w(TAG, "LIMIT not supported by calendar provider: " + e.getMessage());
+          sLimitSupported = false;
+        }
+      }
+      return mResolver.query(mContext, Events.CONTENT_URI, CalendarManager.EVENTS_COLUMNS,
+          selection, args, order);
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 逐条遍历剩余的事件，按需翻页；中途跳出循环即可提前结束
+   * @return
+   */
+  @Override
+  public Iterator<EventModel> iterator() {
+    return new Iterator<EventModel>() {
+      private List<EventModel> mPage = new ArrayList<>();
+      private int mIndex;
+
+      @Override
+      public boolean hasNext() {
+        if (mIndex < mPage.size()) {
+          return true;
+        }
+        if (!EventPager.this.hasNext()) {
+          return false;
+        }
+        mPage = nextPage();
+        mIndex = 0;
+        return !mPage.isEmpty();
+      }
+
+      @Override
+      public EventModel next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return mPage.get(mIndex++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
@@ -0,0 +1,64 @@
+package com.changxiao.calendardemo;
+
+import android.database.Cursor;
+import android.provider.CalendarContract.Events;
+
+/**
+ * 事件表行映射，对应 {@link CalendarManager#EVENTS_COLUMNS}
+ *
+ * Created by Chang.Xiao on 2019/5/10.
+ *
+ * @version 1.0
+ */
+public class EventRowMapper extends RowMapper<EventModel> {
+
+  private final int idIndex;
+  private final int calendarIdIndex;
+  private final int titleIndex;
+  private final int descriptionIndex;
+  private final int locationIndex;
+  private final int dtstartIndex;
+  private final int dtendIndex;
+  private final int timezoneIndex;
+  private final int hasAlarmIndex;
+  private final int allDayIndex;
+  private final int availabilityIndex;
+  private final int accessLevelIndex;
+  private final int statusIndex;
+
+  public EventRowMapper(Cursor cursor) {
+    idIndex = cursor.getColumnIndexOrThrow(Events._ID);
+    calendarIdIndex = cursor.getColumnIndexOrThrow(Events.CALENDAR_ID);
+    titleIndex = cursor.getColumnIndexOrThrow(Events.TITLE);
+    descriptionIndex = cursor.getColumnIndexOrThrow(Events.DESCRIPTION);
+    locationIndex = cursor.getColumnIndexOrThrow(Events.EVENT_LOCATION);
+    dtstartIndex = cursor.getColumnIndexOrThrow(Events.DTSTART);
+    dtendIndex = cursor.getColumnIndexOrThrow(Events.DTEND);
+    timezoneIndex = cursor.getColumnIndexOrThrow(Events.EVENT_TIMEZONE);
+    hasAlarmIndex = cursor.getColumnIndexOrThrow(Events.HAS_ALARM);
+    allDayIndex = cursor.getColumnIndexOrThrow(Events.ALL_DAY);
+    availabilityIndex = cursor.getColumnIndexOrThrow(Events.AVAILABILITY);
+    accessLevelIndex = cursor.getColumnIndexOrThrow(Events.ACCESS_LEVEL);
+    statusIndex = cursor.getColumnIndexOrThrow(Events.STATUS);
+  }
+
+  @Override
+  public EventModel map(Cursor cursor) {
+    EventModel event = new EventModel();
+    event.setId(cursor.getLong(idIndex));
+    event.setCalendarId(cursor.getLong(calendarIdIndex));
+    event.setTitle(cursor.getString(titleIndex));
+    event.setDescription(cursor.getString(descriptionIndex));
+    event.setEventLocation(cursor.getString(locationIndex));
+    event.setDtstart(cursor.getLong(dtstartIndex));
+    event.setDtend(cursor.getLong(dtendIndex)); // 重复事件DTEND为null，读出为0
+    event.setEventTimezone(cursor.getString(timezoneIndex));
+    event.setHasAlarm(cursor.getInt(hasAlarmIndex) == 1);
+    event.setAllDay(cursor.getInt(allDayIndex) == 1);
+    event.setAvailability(cursor.getInt(availabilityIndex));
+    event.setAccessLevel(cursor.getInt(accessLevelIndex));
+    event.setEventStatus(cursor.getInt(statusIndex));
+    event.clearDirtyFields();
+    return event;
+  }
+}
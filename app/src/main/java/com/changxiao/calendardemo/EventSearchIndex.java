@@ -0,0 +1,305 @@
+package com.changxiao.calendardemo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 事件标题、备注、地点的本地搜索索引
+ *
+ * 每个字段按字符转小写后，把其中所有长度为 1~3 的片段（n-gram）映射到包含它的事件id的有序列表（倒排表）。
+ * 查询不超过3个字符时直接取对应片段的倒排表；更长的查询取其中所有3字符片段的倒排表求交集（从最短的开始），
+ * 再用保存的字段文本逐个确认，排除片段都出现但不连续的事件。不需要访问provider，
+ * 代替 LIKE '%x%' 在provider中的全表扫描。
+ * 前缀查询只匹配出现在字段开头、或紧跟在非字母数字字符之后的位置（即某个词的开头）。
+ *
+ * 由 {@link CalendarManager#getSearchIndex()} 从 {@link EventMirror} 加载并监听镜像的变化，
+ * 通过 CalendarManager 的写操作和镜像的增量刷新都会同步到索引。线程安全。
+ *
+ * Created by Chang.Xiao on 2019/6/12.
+ *
+ * @version 1.0
+ */
+public class EventSearchIndex implements EventChangeListener {
+
+  /** 搜索的字段，EventModel.FIELD_* 的组合 */
+  public static final int FIELDS_ALL = EventModel.FIELD_TITLE | EventModel.FIELD_DESCRIPTION | EventModel.FIELD_EVENT_LOCATION;
+
+  private static final int MAX_GRAM = 3;
+  private static final int[] FIELDS = new int[] {
+      EventModel.FIELD_TITLE, EventModel.FIELD_DESCRIPTION, EventModel.FIELD_EVENT_LOCATION
+  };
+  private static final long[] EMPTY = new long[0];
+
+  /** 按id升序保存的倒排表 */
+  private static final class Postings {
+    long[] ids = new long[4];
+    int size;
+
+    void add(long id) {
+      int index = Arrays.binarySearch(ids, 0, size, id);
+      if (index >= 0) {
+        return;
+      }
+      index = -index - 1;
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      System.arraycopy(ids, index, ids, index + 1, size - index);
+      ids[index] = id;
+      size++;
+    }
+
+    void remove(long id) {
+      int index = Arrays.binarySearch(ids, 0, size, id);
+      if (index < 0) {
+        return;
+      }
+      System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+      size--;
+    }
+
+    boolean contains(long id) {
+      return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+  }
+
+  private static final Comparator<Postings> SIZE_ORDER = new Comparator<Postings>() {
+    @Override
+    public int compare(Postings a, Postings b) {
+      return a.size < b.size ? -1 : (a.size == b.size ? 0 : 1);
+    }
+  };
+
+  private final Map<Long, Postings> mPostings = new HashMap<>();
+  /** 事件id -> 转小写后的标题、备注、地点，与 FIELDS 对应 */
+  private final Map<Long, String[]> mTexts = new HashMap<>();
+
+  /**
+   * 用镜像中的事件重建索引，在持有索引锁时读取镜像，读取之后镜像的变化经监听再同步过来，不会被重建覆盖
+   * @param mirror
+   */
+  synchronized void load(EventMirror mirror) {
+    build(mirror.getEvents());
+  }
+
+  /**
+   * 用事件列表重建索引
+   * @param events
+   */
+  public synchronized void build(List<EventModel> events) {
+    clear();
+    for (EventModel event : events) {
+      put(event);
+    }
+  }
+
+  /**
+   * 添加事件，同一id的事件已存在时替换
+   * @param event
+   */
+  public synchronized void put(EventModel event) {
+    remove(event.getId());
+    long id = event.getId();
+    String[] texts = textsOf(event);
+    mTexts.put(id, texts);
+    for (String text : texts) {
+      int length = text.length();
+      for (int start = 0; start < length; start++) {
+        for (int n = 1; n <= MAX_GRAM && start + n <= length; n++) {
+          long key = gramKey(text, start, n);
+          Postings postings = mPostings.get(key);
+          if (postings == null) {
+            postings = new Postings();
+            mPostings.put(key, postings);
+          }
+          postings.add(id);
+        }
+      }
+    }
+  }
+
+  /**
+   * 删除事件
+   * @param eventId
+   * @return 是否存在
+   */
+  public synchronized boolean remove(long eventId) {
+    String[] texts = mTexts.remove(eventId);
+    if (texts == null) {
+      return false;
+    }
+    for (String text : texts) {
+      int length = text.length();
+      for (int start = 0; start < length; start++) {
+        for (int n = 1; n <= MAX_GRAM && start + n <= length; n++) {
+          long key = gramKey(text, start, n);
+          Postings postings = mPostings.get(key);
+          if (postings != null) {
+            postings.remove(eventId);
+            if (postings.size == 0) {
+              mPostings.remove(key);
+            }
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  public synchronized void clear() {
+    mPostings.clear();
+    mTexts.clear();
+  }
+
+  public synchronized int size() {
+    return mTexts.size();
+  }
+
+  /**
+   * 子串查询，不区分大小写
+   * @param query 为空时返回所有事件
+   * @param fields 搜索的字段，{@link EventModel#FIELD_TITLE}、{@link EventModel#FIELD_DESCRIPTION}、
+   *               {@link EventModel#FIELD_EVENT_LOCATION} 的组合，见 {@link #FIELDS_ALL}
+   * @return 匹配的事件id，升序
+   */
+  public long[] search(String query, int fields) {
+    return search(query, fields, false);
+  }
+
+  /**
+   * 词前缀查询，不区分大小写，只匹配出现在字段开头或紧跟在非字母数字字符之后的位置
+   * @see #search(String, int)
+   */
+  public long[] searchPrefix(String query, int fields) {
+    return search(query, fields, true);
+  }
+
+  private synchronized long[] search(String query, int fields, boolean prefix) {
+    String q = normalize(query);
+    long[] candidates;
+    if (q.length() == 0) {
+      candidates = new long[mTexts.size()];
+      int i = 0;
+      for (Long id : mTexts.keySet()) {
+        candidates[i++] = id;
+      }
+      Arrays.sort(candidates);
+    } else {
+      candidates = candidates(q);
+    }
+    int count = 0;
+    for (long id : candidates) {
+      if (matches(mTexts.get(id), q, fields, prefix)) {
+        candidates[count++] = id;
+      }
+    }
+    return count == candidates.length ? candidates : Arrays.copyOf(candidates, count);
+  }
+
+  /** 包含查询中所有片段的事件，可能有不连续的误匹配 */
+  private long[] candidates(String q) {
+    if (q.length() <= MAX_GRAM) {
+      Postings postings = mPostings.get(gramKey(q, 0, q.length()));
+      return postings == null ? EMPTY : Arrays.copyOf(postings.ids, postings.size);
+    }
+    List<Postings> lists = new ArrayList<>(q.length() - MAX_GRAM + 1);
+    for (int start = 0; start + MAX_GRAM <= q.length(); start++) {
+      Postings postings = mPostings.get(gramKey(q, start, MAX_GRAM));
+      if (postings == null) {
+        return EMPTY;
+      }
+      lists.add(postings);
+    }
+    Collections.sort(lists, SIZE_ORDER);
+    Postings smallest = lists.get(0);
+    long[] result = Arrays.copyOf(smallest.ids, smallest.size);
+    int count = result.length;
+    for (int i = 1; i < lists.size() && count > 0; i++) {
+      Postings postings = lists.get(i);
+      int kept = 0;
+      for (int j = 0; j < count; j++) {
+        if (postings.contains(result[j])) {
+          result[kept++] = result[j];
+        }
+      }
+      count = kept;
+    }
+    return count == result.length ? result : Arrays.copyOf(result, count);
+  }
+
+  /**
+   * 事件是否匹配查询，规则与索引查询相同
+   * @param event
+   * @param query
+   * @param fields
+   * @param prefix
+   * @return
+   */
+  static boolean matches(EventModel event, String query, int fields, boolean prefix) {
+    return matches(textsOf(event), normalize(query), fields, prefix);
+  }
+
+  private static boolean matches(String[] texts, String q, int fields, boolean prefix) {
+    for (int i = 0; i < FIELDS.length; i++) {
+      if ((fields & FIELDS[i]) == 0) {
+        continue;
+      }
+      String text = texts[i];
+      int index = text.indexOf(q);
+      while (index >= 0) {
+        if (!prefix || index == 0 || !Character.isLetterOrDigit(text.charAt(index - 1))) {
+          return true;
+        }
+        index = text.indexOf(q, index + 1);
+      }
+    }
+    return false;
+  }
+
+  /** 转小写后的标题、备注、地点，与 FIELDS 对应 */
+  private static String[] textsOf(EventModel event) {
+    return new String[] {
+        normalize(event.getTitle()), normalize(event.getDescription()), normalize(event.getEventLocation())
+    };
+  }
+
+  /** 逐字符转小写，长度不变 */
+  private static String normalize(String text) {
+    if (text == null) {
+      return "";
+    }
+    char[] chars = text.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Character.toLowerCase(chars[i]);
+    }
+    return new String(chars);
+  }
+
+  /** 长度为 n 的片段的键：长度放在高位，不同长度的片段不会相同 */
+  private static long gramKey(String text, int start, int n) {
+    long key = n;
+    for (int i = 0; i < n; i++) {
+      key = (key << 16) | text.charAt(start + i);
+    }
+    return key;
+  }
+
+  @Override
+  public void onEventSaved(EventModel event) {
+    put(event);
+  }
+
+  @Override
+  public void onEventsDeleted(List<Long> eventIds) {
+    synchronized (this) {
+      for (Long id : eventIds) {
+        remove(id);
+      }
+    }
+  }
+}
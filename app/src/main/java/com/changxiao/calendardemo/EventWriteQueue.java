@@ -0,0 +1,455 @@
+package com.changxiao.calendardemo;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.provider.CalendarContract;
+import android.provider.CalendarContract.Events;
+import android.provider.CalendarContract.Reminders;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 事件、提醒的合并写入队列（write-behind）
+ *
+ * 同一事件、提醒的多次更新在内存中按id合并，同一列保留最后一次写入的值；
+ * 等待 {@link #setFlushDelay(long)} 毫秒或待写入条数达到 {@link #setMaxPending(int)} 后，
+ * 在后台线程用一次 applyBatch 写入。不做存在性查询，id 不存在时更新0行。
+ * applyBatch 失败时逐条写入找出失败的更新，只有失败的更新重新入队，重试 {@link #MAX_RETRY} 次后放弃并通知 {@link OnDropListener}。
+ * 写入成功后才清除 EventModel 中已写入字段的修改标记；入队后又修改过、写入的不是当前值的字段保留标记，需要重新提交。
+ * 页面退出等时机需要调用 {@link #flush()} 立即写入。
+ *
+ * Created by Chang.Xiao on 2019/5/22.
+ *
+ * @version 1.0
+ */
+public class EventWriteQueue {
+
+  private static final String TAG = "EventWriteQueue";
+
+  /**
+   * 放弃写入的回调
+   */
+  public interface OnDropListener {
+    /**
+     * 更新重试多次仍写入失败，已放弃，在写入线程回调
+     * @param eventIds 放弃的事件更新的id
+     * @param reminderIds 放弃的提醒更新的id
+     */
+    void onDropped(long[] eventIds, long[] reminderIds);
+  }
+
+  public static final long DEFAULT_FLUSH_DELAY = 1000;
+  public static final int DEFAULT_MAX_PENDING = 50;
+
+  /** 写入失败后最多重新入队的次数 */
+  static final int MAX_RETRY = 3;
+
+  private final Context mContext;
+  private final CalendarManager mManager;
+  private final ScheduledThreadPoolExecutor mWriter;
+
+  private final Object mLock = new Object();
+  private Map<Long, ContentValues> mPendingEvents = new LinkedHashMap<>();
+  /** 入队的 EventModel 及其入队时修改过的字段 */
+  private Map<EventModel, Integer> mPendingEventModels = new IdentityHashMap<>();
+  private Map<Long, ContentValues> mPendingReminders = new LinkedHashMap<>();
+  private ScheduledFuture<?> mScheduledFlush;
+  /** 写入失败的事件、提醒id及其已重试的次数 */
+  private final Map<Long, Integer> mEventRetries = new HashMap<>();
+  private final Map<Long, Integer> mReminderRetries = new HashMap<>();
+  private final List<OnDropListener> mDropListeners = new CopyOnWriteArrayList<>();
+
+  private long mFlushDelay = DEFAULT_FLUSH_DELAY;
+  private int mMaxPending = DEFAULT_MAX_PENDING;
+
+  EventWriteQueue(Context context, CalendarManager manager) {
+    mContext = context.getApplicationContext();
+    mManager = manager;
+    mWriter = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        return new Thread(r, "CalendarManager-writer");
+      }
+    });
+    mWriter.setKeepAliveTime(30, TimeUnit.SECONDS);
+    mWriter.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * 最后一次入队后多久写入
+   * @param flushDelay 毫秒
+   */
+  public void setFlushDelay(long flushDelay) {
+    mFlushDelay = flushDelay;
+  }
+
+  /**
+   * 待写入的事件、提醒数达到该值时立即写入
+   * @param maxPending
+   */
+  public void setMaxPending(int maxPending) {
+    mMaxPending = maxPending;
+  }
+
+  public void addOnDropListener(OnDropListener listener) {
+    if (listener != null && !mDropListeners.contains(listener)) {
+      mDropListeners.add(listener);
+    }
+  }
+
+  public void removeOnDropListener(OnDropListener listener) {
+    mDropListeners.remove(listener);
+  }
+
+  /**
+   * 更新事件，与队列中同一事件未写入的更新合并
+   * @param model
+   */
+  public void updateEvent(EventModel model) {
+    if (model == null) {
+      return;
+    }
+    // 只合并修改过的字段，写入成功后再清除标记
+    int fields = model.getDirtyFields();
+    ContentValues values = EventCodec.toUpdateValues(model);
+    if (values.size() == 0) {
+      return;
+    }
+    synchronized (mLock) {
+      merge(mPendingEvents, model.getId(), values);
+      mergeFields(mPendingEventModels, model, fields);
+      onEnqueued();
+    }
+  }
+
+  /**
+   * 更新提醒，与队列中同一提醒未写入的更新合并
+   * @param model
+   */
+  public void updateReminder(ReminderModel model) {
+    if (model == null) {
+      return;
+    }
+    ContentValues values = ReminderCodec.toValues(model);
+    synchronized (mLock) {
+      merge(mPendingReminders, model.getId(), values);
+      onEnqueued();
+    }
+  }
+
+  /**
+   * 待写入的事件、提醒数
+   * @return
+   */
+  public int getPendingCount() {
+    synchronized (mLock) {
+      return mPendingEvents.size() + mPendingReminders.size();
+    }
+  }
+
+  /**
+   * 在后台线程立即写入所有待写入的更新
+   * @return 是否全部写入成功
+   */
+  public Future<Boolean> flush() {
+    synchronized (mLock) {
+      cancelScheduledFlush();
+    }
+    return mWriter.submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return flushNow();
+      }
+    });
+  }
+
+  private static void merge(Map<Long, ContentValues> pending, long id, ContentValues values) {
+    ContentValues old = pending.get(id);
+    if (old == null) {
+      pending.put(id, values);
+    } else {
+      // 同一列后写入的覆盖先写入的
+      old.putAll(values);
+    }
+  }
+
+  private static void mergeFields(Map<EventModel, Integer> pending, EventModel model, int fields) {
+    Integer old = pending.get(model);
+    pending.put(model, old == null ? fields : old | fields);
+  }
+
+  private void onEnqueued() {
+    if (mPendingEvents.size() + mPendingReminders.size() >= mMaxPending) {
+      flush();
+      return;
+    }
+    // 每次入队重新计时，连续的更新合并为一次写入
+    cancelScheduledFlush();
+    mScheduledFlush = mWriter.schedule(new Runnable() {
+      @Override
+      public void run() {
+        flushNow();
+      }
+    }, mFlushDelay, TimeUnit.MILLISECONDS);
+  }
+
+  private void cancelScheduledFlush() {
+    if (mScheduledFlush != null) {
+      mScheduledFlush.cancel(false);
+      mScheduledFlush = null;
+    }
+  }
+
+  /**
+   * 在当前线程写入，只在写入线程调用
+   * @return 是否全部写入成功
+   */
+  private boolean flushNow() {
+    Map<Long, ContentValues> events;
+    Map<EventModel, Integer> eventModels;
+    Map<Long, ContentValues> reminders;
+    synchronized (mLock) {
+      if (mPendingEvents.isEmpty() && mPendingReminders.isEmpty()) {
+        return true;
+      }
+      events = mPendingEvents;
+      eventModels = mPendingEventModels;
+      reminders = mPendingReminders;
+      mPendingEvents = new LinkedHashMap<>();
+      mPendingEventModels = new IdentityHashMap<>();
+      mPendingReminders = new LinkedHashMap<>();
+    }
+
+    // 修改了时间的分片事件可能要换分片，读取失败时与写入失败一样重新入队
+    boolean assigned;
+    try {
+      assigned = mManager.assignShardCalendars(mContext, events);
+    } catch (Exception e) {
+      Log.w(TAG, "assign shard failed: " + e.getMessage());
+      assigned = false;
+    }
+    if (!assigned) {
+      requeue(events, eventModels, reminders);
+      return false;
+    }
+
+    // 先事件后提醒，与 failed 的下标对应
+    ArrayList<ContentProviderOperation> ops = new ArrayList<>(events.size() + reminders.size());
+    for (Map.Entry<Long, ContentValues> entry : events.entrySet()) {
+      ops.add(ContentProviderOperation.newUpdate(ContentUris.withAppendedId(Events.CONTENT_URI, entry.getKey()))
+          .withValues(entry.getValue())
+          .build());
+    }
+    for (Map.Entry<Long, ContentValues> entry : reminders.entrySet()) {
+      ops.add(ContentProviderOperation.newUpdate(ContentUris.withAppendedId(Reminders.CONTENT_URI, entry.getKey()))
+          .withValues(entry.getValue())
+          .build());
+    }
+    boolean[] failed = null;
+    CalendarOperation outer = mManager.getTracker().enter(CalendarOperation.WRITE_QUEUE_FLUSH);
+    try {
+      try {
+        mManager.getResolver().applyBatch(mContext, CalendarContract.AUTHORITY, ops);
+        mManager.getTracker().addRows(ops.size());
+      } catch (Exception e) {
+        // applyBatch 在一个事务中写入，一条失败全部回滚；逐条写入找出失败的更新
+        Log.w(TAG, "flush failed, apply one by one: " + e.getMessage());
+        failed = applyEach(ops);
+      }
+    } finally {
+      mManager.getTracker().exit(outer);
+    }
+
+    Map<Long, ContentValues> failedEvents = new LinkedHashMap<>();
+    Map<EventModel, Integer> failedModels = new IdentityHashMap<>();
+    Map<Long, ContentValues> failedReminders = new LinkedHashMap<>();
+    long[] eventIds = new long[events.size()];
+    int eventCount = 0;
+    int i = 0;
+    for (Map.Entry<Long, ContentValues> entry : events.entrySet()) {
+      if (failed != null && failed[i++]) {
+        failedEvents.put(entry.getKey(), entry.getValue());
+      } else {
+        eventIds[eventCount++] = entry.getKey();
+      }
+    }
+    List<ReminderModel> savedReminders = new ArrayList<>(reminders.size());
+    for (Map.Entry<Long, ContentValues> entry : reminders.entrySet()) {
+      if (failed != null && failed[i++]) {
+        failedReminders.put(entry.getKey(), entry.getValue());
+      } else {
+        savedReminders.add(ReminderCodec.decode(entry.getKey(), entry.getValue()));
+      }
+    }
+    for (Map.Entry<EventModel, Integer> entry : eventModels.entrySet()) {
+      EventModel model = entry.getKey();
+      if (failedEvents.containsKey(model.getId())) {
+        failedModels.put(model, entry.getValue());
+      } else {
+        model.clearDirtyFields(writtenFields(model, entry.getValue(), events.get(model.getId())));
+      }
+    }
+    synchronized (mLock) {
+      for (int j = 0; j < eventCount; j++) {
+        mEventRetries.remove(eventIds[j]);
+      }
+      for (ReminderModel reminder : savedReminders) {
+        mReminderRetries.remove(reminder.getId());
+      }
+    }
+
+    // 写入的只是修改过的列，按id重新读取整行再通知
+    if (eventCount > 0) {
+      mManager.notifyEventsUpdated(mContext, eventCount == eventIds.length ? eventIds : Arrays.copyOf(eventIds, eventCount));
+    }
+    for (ReminderModel reminder : savedReminders) {
+      mManager.notifyReminderUpdated(reminder);
+    }
+    if (failedEvents.isEmpty() && failedReminders.isEmpty()) {
+      return true;
+    }
+    requeue(failedEvents, failedModels, failedReminders);
+    return false;
+  }
+
+  /**
+   * 逐条写入
+   * @param ops
+   * @return 每条是否失败
+   */
+  private boolean[] applyEach(ArrayList<ContentProviderOperation> ops) {
+    boolean[] failed = new boolean[ops.size()];
+    ArrayList<ContentProviderOperation> single = new ArrayList<>(1);
+    for (int i = 0; i < ops.size(); i++) {
+      single.clear();
+      single.add(ops.get(i));
+      try {
+        mManager.getResolver().applyBatch(mContext, CalendarContract.AUTHORITY, single);
+        mManager.getTracker().addRows(1);
+      } catch (Exception e) {
+        Log.w(TAG, "update " + ops.get(i).getUri() + " failed: " + e.getMessage());
+        failed[i] = true;
+      }
+    }
+    return failed;
+  }
+
+  /**
+   * 已写入当前值的字段：入队后又修改过的字段写入的是旧值，不能清除修改标记
+   * @param model
+   * @param fields 入队时修改过的字段
+   * @param written 写入的列
+   * @return
+   */
+  private static int writtenFields(EventModel model, int fields, ContentValues written) {
+    int result = 0;
+    ContentValues current = new ContentValues();
+    for (int rest = fields; rest != 0; rest &= rest - 1) {
+      int field = Integer.lowestOneBit(rest);
+      current.clear();
+      EventCodec.encodeUpdate(model, field, ColumnWriter.of(current));
+      if (sameValues(current, written)) {
+        result |= field;
+      }
+    }
+    return result;
+  }
+
+  private static boolean sameValues(ContentValues current, ContentValues written) {
+    for (String key : current.keySet()) {
+      Object value = current.get(key);
+      if (!written.containsKey(key) || (value == null ? written.get(key) != null : !value.equals(written.get(key)))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 写入失败的更新放回队列，期间新入队的更新优先；重试次数用完的放弃并通知
+   */
+  private void requeue(Map<Long, ContentValues> events, Map<EventModel, Integer> eventModels, Map<Long, ContentValues> reminders) {
+    List<Long> droppedEvents = new ArrayList<>();
+    List<Long> droppedReminders = new ArrayList<>();
+    synchronized (mLock) {
+      for (Map.Entry<Long, ContentValues> entry : events.entrySet()) {
+        if (!retry(mEventRetries, entry.getKey())) {
+          droppedEvents.add(entry.getKey());
+          continue;
+        }
+        ContentValues newer = mPendingEvents.get(entry.getKey());
+        if (newer != null) {
+          entry.getValue().putAll(newer);
+        }
+        mPendingEvents.put(entry.getKey(), entry.getValue());
+      }
+      for (Map.Entry<EventModel, Integer> entry : eventModels.entrySet()) {
+        // 放弃的事件保留修改标记，调用方可以重新提交
+        if (mPendingEvents.containsKey(entry.getKey().getId())) {
+          mergeFields(mPendingEventModels, entry.getKey(), entry.getValue());
+        }
+      }
+      for (Map.Entry<Long, ContentValues> entry : reminders.entrySet()) {
+        if (!retry(mReminderRetries, entry.getKey())) {
+          droppedReminders.add(entry.getKey());
+          continue;
+        }
+        ContentValues newer = mPendingReminders.get(entry.getKey());
+        if (newer != null) {
+          entry.getValue().putAll(newer);
+        }
+        mPendingReminders.put(entry.getKey(), entry.getValue());
+      }
+      if (!mPendingEvents.isEmpty() || !mPendingReminders.isEmpty()) {
+        onEnqueued();
+      }
+    }
+    if (droppedEvents.isEmpty() && droppedReminders.isEmpty()) {
+      return;
+    }
+    Log.e(TAG, "drop " + droppedEvents + " events, " + droppedReminders + " reminders after " + MAX_RETRY + " retries");
+    long[] eventIds = toArray(droppedEvents);
+    long[] reminderIds = toArray(droppedReminders);
+    for (OnDropListener listener : mDropListeners) {
+      listener.onDropped(eventIds, reminderIds);
+    }
+  }
+
+  /**
+   * 记录一次重试
+   * @return 是否还可以重试，不能时清除计数
+   */
+  private static boolean retry(Map<Long, Integer> retries, long id) {
+    Integer count = retries.get(id);
+    int next = count == null ? 1 : count + 1;
+    if (next > MAX_RETRY) {
+      retries.remove(id);
+      return false;
+    }
+    retries.put(id, next);
+    return true;
+  }
+
+  private static long[] toArray(List<Long> ids) {
+    long[] result = new long[ids.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = ids.get(i);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,268 @@
+package com.changxiao.calendardemo;
+
+import android.provider.CalendarContract.Events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * 时间段内的忙闲信息
+ *
+ * 由一次实例查询的结果计算：取消的事件、“我的状态”为空闲的事件不占用时间，暂定按忙处理；
+ * 全天事件的UTC零点换算为所在时区那一天的零点。所有忙碌区间裁剪到 [begin, end) 后，
+ * 开始时间、结束时间分别排序，再按时间顺序扫描一遍合并为互不重叠的忙碌区间，O(n log n)。
+ * 首尾相接的区间合并为一个，零长度的事件不占用时间。
+ * 创建后不再修改，线程安全。
+ *
+ * Created by Chang.Xiao on 2019/6/10.
+ *
+ * @version 1.0
+ */
+public final class FreeBusy {
+
+  /**
+   * 一个时间段 [begin, end)
+   */
+  public static final class Slot {
+    private final long begin;
+    private final long end;
+
+    Slot(long begin, long end) {
+      this.begin = begin;
+      this.end = end;
+    }
+
+    public long getBegin() {
+      return begin;
+    }
+
+    public long getEnd() {
+      return end;
+    }
+
+    public long getLength() {
+      return end - begin;
+    }
+
+    @Override
+    public String toString() {
+      return "Slot{" +
+          "begin=" + begin +
+          ", end=" + end +
+          '}';
+    }
+  }
+
+  private final long mBegin;
+  private final long mEnd;
+  /** 合并后的忙碌区间，按开始时间排序，互不重叠也不相接 */
+  private final long[] mBusyStarts;
+  private final long[] mBusyEnds;
+  private final int mBusyCount;
+
+  private FreeBusy(long begin, long end, long[] busyStarts, long[] busyEnds, int busyCount) {
+    mBegin = begin;
+    mEnd = end;
+    mBusyStarts = busyStarts;
+    mBusyEnds = busyEnds;
+    mBusyCount = busyCount;
+  }
+
+  /**
+   * 计算忙闲
+   * @param begin 开始时间，UTC毫秒
+   * @param end 结束时间，UTC毫秒
+   * @param events 与时间段有重叠的事件实例，如 queryInstances 的结果，顺序不限
+   * @param zone 全天事件按这个时区换算
+   * @return
+   */
+  public static FreeBusy compute(long begin, long end, List<EventModel> events, TimeZone zone) {
+    int size = events.size();
+    long[] starts = new long[size];
+    long[] ends = new long[size];
+    int n = 0;
+    for (int i = 0; i < size; i++) {
+      EventModel event = events.get(i);
+      if (!isBusy(event)) {
+        continue;
+      }
+      long start = event.getDtstart();
+      long stop = event.getDtend();
+      if (event.isAllDay()) {
+        start = CalendarTimeUtils.allDayToLocal(start, zone);
+        stop = CalendarTimeUtils.allDayToLocal(stop, zone);
+      }
+      start = Math.max(start, begin);
+      stop = Math.min(stop, end);
+      if (stop <= start) {
+        continue;
+      }
+      starts[n] = start;
+      ends[n] = stop;
+      n++;
+    }
+    Arrays.sort(starts, 0, n);
+    Arrays.sort(ends, 0, n);
+    // 按时间顺序扫描开始、结束两个序列，depth 为当前重叠的事件数，同一时刻先处理开始，首尾相接的区间不会断开
+    long[] busyStarts = new long[n];
+    long[] busyEnds = new long[n];
+    int count = 0;
+    int depth = 0;
+    int i = 0;
+    int j = 0;
+    while (i < n) {
+      if (starts[i] <= ends[j]) {
+        if (depth == 0) {
+          busyStarts[count] = starts[i];
+        }
+        depth++;
+        i++;
+      } else {
+        depth--;
+        if (depth == 0) {
+          busyEnds[count++] = ends[j];
+        }
+        j++;
+      }
+    }
+    if (n > 0) {
+      // 开始都处理完后剩下的结束中最大的一个就是最后一个区间的结束
+      busyEnds[count++] = ends[n - 1];
+    }
+    return new FreeBusy(begin, end, busyStarts, busyEnds, count);
+  }
+
+  /**
+   * 事件是否占用时间：取消的事件、“我的状态”为空闲的事件不占用
+   * @param event
+   * @return
+   */
+  static boolean isBusy(EventModel event) {
+    return event.getEventStatus() != Events.STATUS_CANCELED
+        && event.getAvailability() != Events.AVAILABILITY_FREE;
+  }
+
+  public long getBegin() {
+    return mBegin;
+  }
+
+  public long getEnd() {
+    return mEnd;
+  }
+
+  /**
+   * 合并后的忙碌区间数
+   * @return
+   */
+  public int getBusyCount() {
+    return mBusyCount;
+  }
+
+  public long getBusyBegin(int index) {
+    checkIndex(index);
+    return mBusyStarts[index];
+  }
+
+  public long getBusyEnd(int index) {
+    checkIndex(index);
+    return mBusyEnds[index];
+  }
+
+  /**
+   * 合并后的忙碌区间
+   * @return 按开始时间排序
+   */
+  public List<Slot> getBusySlots() {
+    List<Slot> result = new ArrayList<>(mBusyCount);
+    for (int i = 0; i < mBusyCount; i++) {
+      result.add(new Slot(mBusyStarts[i], mBusyEnds[i]));
+    }
+    return result;
+  }
+
+  /**
+   * 某一时刻是否忙碌
+   * @param time UTC毫秒
+   * @return
+   */
+  public boolean isBusyAt(long time) {
+    int index = lastBusyStartingAtOrBefore(time);
+    return index >= 0 && time < mBusyEnds[index];
+  }
+
+  /**
+   * 时间段内所有不短于 minLength 的空闲时间
+   * @param minLength 毫秒
+   * @return 按开始时间排序
+   */
+  public List<Slot> getFreeSlots(long minLength) {
+    List<Slot> result = new ArrayList<>();
+    long cursor = mBegin;
+    for (int i = 0; i <= mBusyCount; i++) {
+      long freeEnd = i < mBusyCount ? mBusyStarts[i] : mEnd;
+      if (freeEnd - cursor >= minLength && freeEnd > cursor) {
+        result.add(new Slot(cursor, freeEnd));
+      }
+      if (i < mBusyCount) {
+        cursor = mBusyEnds[i];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 从 from 开始的第一段不短于 length 的空闲时间，如“接下来空闲的30分钟”
+   * @param from UTC毫秒，早于时间段开始时从时间段开始找
+   * @param length 毫秒
+   * @return 空闲时间段的开始时间，到时间段结束都没有时返回 -1
+   */
+  public long findFreeTime(long from, long length) {
+    long cursor = Math.max(from, mBegin);
+    int i = lastBusyStartingAtOrBefore(cursor);
+    if (i >= 0 && cursor < mBusyEnds[i]) {
+      cursor = mBusyEnds[i];
+    }
+    for (i = i + 1; i <= mBusyCount; i++) {
+      long freeEnd = i < mBusyCount ? mBusyStarts[i] : mEnd;
+      if (freeEnd - cursor >= length && freeEnd > cursor) {
+        return cursor;
+      }
+      if (i < mBusyCount) {
+        cursor = mBusyEnds[i];
+      }
+    }
+    return -1;
+  }
+
+  /** 开始时间不晚于 time 的最后一个忙碌区间，没有时返回 -1 */
+  private int lastBusyStartingAtOrBefore(long time) {
+    int low = 0;
+    int high = mBusyCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (mBusyStarts[mid] <= time) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= mBusyCount) {
+      throw new IndexOutOfBoundsException("index=" + index + ", busyCount=" + mBusyCount);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "FreeBusy{" +
+        "begin=" + mBegin +
+        ", end=" + mEnd +
+        ", busyCount=" + mBusyCount +
+        '}';
+  }
+}
@@ -0,0 +1,65 @@
+package com.changxiao.calendardemo;
+
+import android.database.Cursor;
+import android.provider.CalendarContract.Instances;
+
+/**
+ * 事件实例表行映射，对应 {@link CalendarManager#INSTANCES_COLUMNS}
+ * 每个实例映射为一个 EventModel：id 为所属事件的id，dtstart/dtend 为该实例的开始、结束时间
+ *
+ * Created by Chang.Xiao on 2019/5/17.
+ *
+ * @version 1.0
+ */
+public class InstanceRowMapper extends RowMapper<EventModel> {
+
+  private final int eventIdIndex;
+  private final int calendarIdIndex;
+  private final int titleIndex;
+  private final int descriptionIndex;
+  private final int locationIndex;
+  private final int beginIndex;
+  private final int endIndex;
+  private final int timezoneIndex;
+  private final int hasAlarmIndex;
+  private final int allDayIndex;
+  private final int availabilityIndex;
+  private final int accessLevelIndex;
+  private final int statusIndex;
+
+  public InstanceRowMapper(Cursor cursor) {
+    eventIdIndex = cursor.getColumnIndexOrThrow(Instances.EVENT_ID);
+    calendarIdIndex = cursor.getColumnIndexOrThrow(Instances.CALENDAR_ID);
+    titleIndex = cursor.getColumnIndexOrThrow(Instances.TITLE);
+    descriptionIndex = cursor.getColumnIndexOrThrow(Instances.DESCRIPTION);
+    locationIndex = cursor.getColumnIndexOrThrow(Instances.EVENT_LOCATION);
+    beginIndex = cursor.getColumnIndexOrThrow(Instances.BEGIN);
+    endIndex = cursor.getColumnIndexOrThrow(Instances.END);
+    timezoneIndex = cursor.getColumnIndexOrThrow(Instances.EVENT_TIMEZONE);
+    hasAlarmIndex = cursor.getColumnIndexOrThrow(Instances.HAS_ALARM);
+    allDayIndex = cursor.getColumnIndexOrThrow(Instances.ALL_DAY);
+    availabilityIndex = cursor.getColumnIndexOrThrow(Instances.AVAILABILITY);
+    accessLevelIndex = cursor.getColumnIndexOrThrow(Instances.ACCESS_LEVEL);
+    statusIndex = cursor.getColumnIndexOrThrow(Instances.STATUS);
+  }
+
+  @Override
+  public EventModel map(Cursor cursor) {
+    EventModel event = new EventModel();
+    event.setId(cursor.getLong(eventIdIndex));
+    event.setCalendarId(cursor.getLong(calendarIdIndex));
+    event.setTitle(cursor.getString(titleIndex));
+    event.setDescription(cursor.getString(descriptionIndex));
+    event.setEventLocation(cursor.getString(locationIndex));
+    event.setDtstart(cursor.getLong(beginIndex));
+    event.setDtend(cursor.getLong(endIndex));
+    event.setEventTimezone(cursor.getString(timezoneIndex));
+    event.setHasAlarm(cursor.getInt(hasAlarmIndex) == 1);
+    event.setAllDay(cursor.getInt(allDayIndex) == 1);
+    event.setAvailability(cursor.getInt(availabilityIndex));
+    event.setAccessLevel(cursor.getInt(accessLevelIndex));
+    event.setEventStatus(cursor.getInt(statusIndex));
+    event.clearDirtyFields();
+    return event;
+  }
+}
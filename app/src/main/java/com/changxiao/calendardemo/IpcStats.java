@@ -0,0 +1,151 @@
+package com.changxiao.calendardemo;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * provider IPC 次数统计
+ *
+ * 每次 ContentResolver 的 query、insert、update、delete、applyBatch 都算一次往返，
+ * 记在当前线程最外层的 CalendarManager 接口上（接口内部调用其它接口时不单独计数），
+ * 测试中可以据此限制每个接口的往返次数，例如 addCalendarEvent 不超过2次。
+ *
+ * 计数只是原子自增，不分配对象，可以一直开着。
+ *
+ * Created by Chang.Xiao on 2019/5/27.
+ *
+ * @version 1.0
+ */
+public final class IpcStats {
+
+  /** IPC 类型 */
+  public enum Kind {
+    QUERY,
+    INSERT,
+    UPDATE,
+    DELETE,
+    APPLY_BATCH
+  }
+
+  private static final int KIND_COUNT = Kind.values().length;
+  private static final int OPERATION_COUNT = CalendarOperation.values().length;
+
+  private final AtomicLongArray mCounts = new AtomicLongArray(OPERATION_COUNT * KIND_COUNT);
+  private final AtomicLongArray mCalls = new AtomicLongArray(OPERATION_COUNT);
+  private final ThreadLocal<CalendarOperation> mScope = new ThreadLocal<>();
+
+  IpcStats() {
+  }
+
+  /**
+   * 进入接口。已经在其它接口内时不改变归属
+   * @param operation
+   * @return 进入前的接口，传给 {@link #exit(CalendarOperation)}
+   */
+  CalendarOperation enter(CalendarOperation operation) {
+    CalendarOperation outer = mScope.get();
+    if (outer == null) {
+      mScope.set(operation);
+      mCalls.incrementAndGet(operation.ordinal());
+    }
+    return outer;
+  }
+
+  /**
+   * 退出接口，与 {@link #enter(CalendarOperation)} 成对在 finally 中调用
+   * @param outer enter 的返回值
+   */
+  void exit(CalendarOperation outer) {
+    if (outer == null) {
+      mScope.set(null);
+    }
+  }
+
+  /**
+   * 当前线程所在的最外层接口
+   * @return
+   */
+  CalendarOperation current() {
+    CalendarOperation operation = mScope.get();
+    return operation == null ? CalendarOperation.OTHER : operation;
+  }
+
+  void record(Kind kind) {
+    mCounts.incrementAndGet(current().ordinal() * KIND_COUNT + kind.ordinal());
+  }
+
+  /**
+   * 某个接口某种类型的 IPC 次数
+   * @param operation
+   * @param kind
+   * @return
+   */
+  public long getCount(CalendarOperation operation, Kind kind) {
+    return mCounts.get(operation.ordinal() * KIND_COUNT + kind.ordinal());
+  }
+
+  /**
+   * 某个接口的 IPC 总次数
+   * @param operation
+   * @return
+   */
+  public long getRoundTrips(CalendarOperation operation) {
+    long total = 0;
+    int base = operation.ordinal() * KIND_COUNT;
+    for (int i = 0; i < KIND_COUNT; i++) {
+      total += mCounts.get(base + i);
+    }
+    return total;
+  }
+
+  /**
+   * 所有接口的 IPC 总次数
+   * @return
+   */
+  public long getTotalRoundTrips() {
+    long total = 0;
+    for (int i = 0; i < mCounts.length(); i++) {
+      total += mCounts.get(i);
+    }
+    return total;
+  }
+
+  /**
+   * 某个接口被调用的次数（只统计最外层调用）
+   * @param operation
+   * @return
+   */
+  public long getCalls(CalendarOperation operation) {
+    return mCalls.get(operation.ordinal());
+  }
+
+  /**
+   * 清零所有计数
+   */
+  public void reset() {
+    for (int i = 0; i < mCounts.length(); i++) {
+      mCounts.set(i, 0);
+    }
+    for (int i = 0; i < mCalls.length(); i++) {
+      mCalls.set(i, 0);
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("IpcStats{");
+    boolean first = true;
+    for (CalendarOperation operation : CalendarOperation.values()) {
+      long calls = getCalls(operation);
+      long roundTrips = getRoundTrips(operation);
+      if (calls == 0 && roundTrips == 0) {
+        continue;
+      }
+      if (!first) {
+        sb.append(", ");
+      }
+      first = false;
+      sb.append(operation).append("=").append(roundTrips).append("/").append(calls);
+    }
+    return sb.append("}").toString();
+  }
+}
@@ -0,0 +1,142 @@
+package com.changxiao.calendardemo;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时直方图，单位微秒
+ *
+ * 对数分桶：每个2的幂区间再均分为4个桶，相对误差不超过25%，0 ~ 2^36 微秒（约19小时）共 {@link #BUCKET_COUNT} 个桶，
+ * 超出的记在最后一个桶。记录只做原子自增，不分配对象，可以多线程同时记录。
+ *
+ * Created by Chang.Xiao on 2019/5/28.
+ *
+ * @version 1.0
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 36;
+
+  public static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong mCount = new AtomicLong();
+  private final AtomicLong mSum = new AtomicLong();
+  private final AtomicLong mMax = new AtomicLong();
+
+  /**
+   * 耗时所在的桶
+   * @param micros
+   * @return
+   */
+  static int bucketIndex(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return micros < 0 ? 0 : (int) micros;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    int index = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    return index < BUCKET_COUNT ? index : BUCKET_COUNT - 1;
+  }
+
+  /**
+   * 桶的下界（包含）
+   * @param index
+   * @return
+   */
+  public static long bucketLowerBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long sub = index % SUB_BUCKETS;
+    return (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  /**
+   * 桶的上界（包含）
+   * @param index
+   * @return
+   */
+  public static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    return bucketLowerBound(index) + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+  /**
+   * 记录一次耗时
+   * @param micros
+   */
+  public void record(long micros) {
+    mBuckets.incrementAndGet(bucketIndex(micros));
+    mCount.incrementAndGet();
+    mSum.addAndGet(micros);
+    long max = mMax.get();
+    while (micros > max && !mMax.compareAndSet(max, micros)) {
+      max = mMax.get();
+    }
+  }
+
+  public long getCount() {
+    return mCount.get();
+  }
+
+  /**
+   * 复制各桶的计数
+   * @param reset 是否同时清零
+   * @return
+   */
+  long[] copyBuckets(boolean reset) {
+    long[] buckets = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets[i] = reset ? mBuckets.getAndSet(i, 0) : mBuckets.get(i);
+    }
+    return buckets;
+  }
+
+  long getSum(boolean reset) {
+    return reset ? mSum.getAndSet(0) : mSum.get();
+  }
+
+  long getCount(boolean reset) {
+    return reset ? mCount.getAndSet(0) : mCount.get();
+  }
+
+  long getMax(boolean reset) {
+    return reset ? mMax.getAndSet(0) : mMax.get();
+  }
+
+  /**
+   * 按桶计数计算分位数，返回所在桶的上界（不超过最大值）
+   * @param buckets
+   * @param max
+   * @param percentile 0 ~ 100
+   * @return
+   */
+  static long percentile(long[] buckets, long max, double percentile) {
+    long total = 0;
+    for (long count : buckets) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(total * percentile / 100d);
+    if (rank < 1) {
+      rank = 1;
+    }
+    long seen = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      seen += buckets[i];
+      if (seen >= rank) {
+        return Math.min(bucketUpperBound(i), max);
+      }
+    }
+    return max;
+  }
+}
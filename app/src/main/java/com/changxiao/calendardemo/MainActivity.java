@@ -9,6 +9,7 @@ import android.widget.Toast;
 import com.mobile2345.epermission.DangerPermission;
 import com.mobile2345.epermission.EPermission;
 import com.mobile2345.epermission.callback.PermissionCallback;
+import java.lang.ref.WeakReference;
 import java.util.Calendar;
 import java.util.List;
 
@@ -25,6 +26,8 @@ public class MainActivity extends AppCompatActivity {
     btn_insert = findViewById(R.id.btn_insert);
     btn_delete = findViewById(R.id.btn_delete);
 
+    CalendarManager.getInstance().init(this);
+
 //    btn_insert.setOnClickListener(new OnClickListener() {
 //      @Override
 //      public void onClick(View v) {
@@ -33,7 +36,7 @@ public class MainActivity extends AppCompatActivity {
 //            new PermissionCallback() {
 //              @Override
 //              public void onPermissionsGranted(List<String> list) {
-                CalendarManager.getInstance().addCalendarEvent(MainActivity.this, create());
+                CalendarManager.getInstance().addCalendarEventAsync(MainActivity.this, create(), new AddEventCallback(MainActivity.this));
 //              }
 //
 //              @Override
@@ -52,6 +55,36 @@ public class MainActivity extends AppCompatActivity {
     });
   }
 
+  /**
+   * 添加日程的回调，静态类弱引用 Activity：任务完成前 Activity 已销毁时不会持有它
+   */
+  private static class AddEventCallback implements CalendarCallback<Boolean> {
+
+    private final WeakReference<MainActivity> mActivity;
+
+    AddEventCallback(MainActivity activity) {
+      mActivity = new WeakReference<>(activity);
+    }
+
+    @Override
+    public void onSuccess(Boolean result) {
+      MainActivity activity = mActivity.get();
+      if (activity == null || activity.isFinishing()) {
+        return;
+      }
+      Toast.makeText(activity, result ? "添加日程成功" : "添加日程失败", Toast.LENGTH_SHORT).show();
+    }
+
+    @Override
+    public void onError(Throwable e) {
+      MainActivity activity = mActivity.get();
+      if (activity == null || activity.isFinishing()) {
+        return;
+      }
+      Toast.makeText(activity, "添加日程失败：" + e.getMessage(), Toast.LENGTH_LONG).show();
+    }
+  }
+
   private CalendarRemindModel create() {
     CalendarRemindModel model = new CalendarRemindModel();
     model.setTitle("测试提醒title");
@@ -0,0 +1,285 @@
+package com.changxiao.calendardemo;
+
+import android.content.Context;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * 多个日历的事件并发查询、按开始时间归并
+ *
+ * 每个日历一个 {@link EventPager}，在有界线程池上并发翻页，每个日历预取一页；
+ * 同时提交的预取不超过 maxPrefetch 个（线程数），其余按顺序排队，有预取被取走后再提交，
+ * 日历很多时也不会占满共用线程池的队列。
+ * 各日历当前页的第一条放在一个大小为日历数的小顶堆中，按 (DTSTART, CALENDAR_ID, _ID) 依次取出（k 路归并）。
+ * 每个日历只要返回了第一页就可以开始输出，不需要等最慢的日历查完；内存中每个日历最多两页。
+ *
+ * 取结果的方法会等待查询，需要在后台线程调用，且不能在 CalendarExecutor 的线程中调用。
+ * 非线程安全。不再需要时调用 {@link #cancel()} 取消预取。
+ *
+ * Created by Chang.Xiao on 2019/6/14.
+ *
+ * @version 1.0
+ */
+public class MergedEventQuery implements Iterable<EventModel> {
+
+  /** 按 (dtstart, calendarId, id) 排序 */
+  static final Comparator<EventModel> MERGE_ORDER = new Comparator<EventModel>() {
+    @Override
+    public int compare(EventModel a, EventModel b) {
+      if (a.getDtstart() != b.getDtstart()) {
+        return a.getDtstart() < b.getDtstart() ? -1 : 1;
+      }
+      if (a.getCalendarId() != b.getCalendarId()) {
+        return a.getCalendarId() < b.getCalendarId() ? -1 : 1;
+      }
+      return a.getId() < b.getId() ? -1 : (a.getId() == b.getId() ? 0 : 1);
+    }
+  };
+
+  /**
+   * 一个日历的翻页状态；pager 同一时间只在一个线程中使用，通过 Future 交接
+   */
+  private final class Source {
+    final EventPager pager;
+    Future<List<EventModel>> pending;
+    /** 预取在 mWaiting 中排队，还没有提交 */
+    boolean waiting;
+    List<EventModel> page;
+    int index;
+
+    Source(EventPager pager) {
+      this.pager = pager;
+    }
+
+    EventModel head() {
+      return page.get(index);
+    }
+
+    void prefetch() {
+      if (mInFlight < mMaxPrefetch) {
+        submit();
+      } else {
+        waiting = true;
+        mWaiting.add(this);
+      }
+    }
+
+    void submit() {
+      waiting = false;
+      mInFlight++;
+      pending = mExecutor.submit(new Callable<List<EventModel>>() {
+        @Override
+        public List<EventModel> call() {
+          return pager.nextPage();
+        }
+      }, null);
+    }
+
+    /**
+     * 等待预取的下一页
+     * @return 还有事件时返回true
+     */
+    boolean advance() {
+      while (pending != null || waiting) {
+        if (waiting) {
+          // 正在等待的就是这个日历，不再排队
+          mWaiting.remove(this);
+          submit();
+        }
+        page = await(pending);
+        index = 0;
+        pending = null;
+        mInFlight--;
+        submitWaiting();
+        if (pager.hasNext()) {
+          prefetch();
+        }
+        if (!page.isEmpty()) {
+          return true;
+        }
+      }
+      page = null;
+      return false;
+    }
+  }
+
+  private final CalendarExecutor mExecutor;
+  private final int mPageSize;
+  private final List<Source> mSources;
+  private final PriorityQueue<Source> mHeap;
+  private final int mMaxPrefetch;
+  private final ArrayDeque<Source> mWaiting = new ArrayDeque<>();
+  /** 已提交、还没有取走的预取数 */
+  private int mInFlight;
+  private boolean mStarted;
+  private boolean mCancelled;
+
+  /**
+   * 创建后立即开始查询各日历的第一页
+   * @param context
+   * @param executor 执行查询的线程池
+   * @param calendarIds
+   * @param begin 只查询开始时间不早于 begin 的事件，Long.MIN_VALUE 表示不限
+   * @param end 只查询开始时间早于 end 的事件，Long.MAX_VALUE 表示不限
+   * @param pageSize 每个日历每次查询的条数，也是 {@link #nextPage()} 返回的条数
+   * @param maxPrefetch 同时提交到 executor 的预取数，一般为线程数
+   */
+  MergedEventQuery(Context context, CalendarExecutor executor, long[] calendarIds, long begin, long end, int pageSize, int maxPrefetch) {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("pageSize must be > 0");
+    }
+    if (maxPrefetch <= 0) {
+      throw new IllegalArgumentException("maxPrefetch must be > 0");
+    }
+    mExecutor = executor;
+    mMaxPrefetch = maxPrefetch;
+    mPageSize = pageSize;
+    mSources = new ArrayList<>(calendarIds.length);
+    mHeap = new PriorityQueue<>(Math.max(1, calendarIds.length), new Comparator<Source>() {
+      @Override
+      public int compare(Source a, Source b) {
+        return MERGE_ORDER.compare(a.head(), b.head());
+      }
+    });
+    for (long calendarId : calendarIds) {
+      EventPager pager = new EventPager(context, pageSize, null);
+      pager.setCalendarId(calendarId);
+      pager.setTimeRange(begin, end);
+      Source source = new Source(pager);
+      source.prefetch();
+      mSources.add(source);
+    }
+  }
+
+  public int getPageSize() {
+    return mPageSize;
+  }
+
+  /**
+   * 是否还有事件，可能需要等待查询
+   * @return
+   */
+  public boolean hasNext() {
+    start();
+    return !mHeap.isEmpty();
+  }
+
+  /**
+   * 下一条事件，可能需要等待查询
+   * @return
+   */
+  public EventModel next() {
+    start();
+    Source source = mHeap.poll();
+    if (source == null) {
+      throw new NoSuchElementException();
+    }
+    EventModel event = source.page.get(source.index++);
+    if (source.index < source.page.size() || source.advance()) {
+      mHeap.add(source);
+    }
+    return event;
+  }
+
+  /**
+   * 按顺序取下一页
+   * @return 没有更多时返回空列表
+   */
+  public List<EventModel> nextPage() {
+    List<EventModel> page = new ArrayList<>(mPageSize);
+    while (page.size() < mPageSize && hasNext()) {
+      page.add(next());
+    }
+    return page;
+  }
+
+  /**
+   * 取消还没有完成的查询，之后没有更多事件
+   */
+  public void cancel() {
+    mCancelled = true;
+    mHeap.clear();
+    mWaiting.clear();
+    for (Source source : mSources) {
+      source.waiting = false;
+      if (source.pending != null) {
+        source.pending.cancel(false);
+        source.pending = null;
+      }
+    }
+  }
+
+  /**
+   * 第一次取结果时等待各日历的第一页，之后只在某个日历的当前页用完时等待它的下一页
+   */
+  private void start() {
+    if (mStarted || mCancelled) {
+      return;
+    }
+    mStarted = true;
+    for (Source source : mSources) {
+      if (source.advance()) {
+        mHeap.add(source);
+      }
+    }
+  }
+
+  /**
+   * 有空余时按顺序提交排队的预取
+   */
+  private void submitWaiting() {
+    while (mInFlight < mMaxPrefetch && !mWaiting.isEmpty()) {
+      mWaiting.poll().submit();
+    }
+  }
+
+  private List<EventModel> await(Future<List<EventModel>> future) {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      cancel();
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    } catch (InterruptedException e) {
+      cancel();
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted", e);
+    }
+  }
+
+  /**
+   * 逐条遍历剩余的事件
+   * @return
+   */
+  @Override
+  public Iterator<EventModel> iterator() {
+    return new Iterator<EventModel>() {
+      @Override
+      public boolean hasNext() {
+        return MergedEventQuery.this.hasNext();
+      }
+
+      @Override
+      public EventModel next() {
+        return MergedEventQuery.this.next();
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
@@ -0,0 +1,52 @@
+package com.changxiao.calendardemo;
+
+import java.util.TimeZone;
+
+/**
+ * 按月分片：开始、结束在同一个UTC月内的事件写入该月的分片（key 如 "201905"），
+ * 跨月的事件写入默认日历，所以每个分片中的事件都不会超出该月，按时间范围查询时可以准确排除其它月份。
+ * 使用UTC月份：全天事件存为UTC零点，不会因为时区被分到相邻的月份。
+ * 分片数没有上限，每个有事件的月份一个可见日历；需要定期调用 {@link CalendarManager#removeExpiredShards}
+ * 删除已经过去且没有事件的月份，保留历史事件时分片仍会随时间增长。
+ *
+ * Created by Chang.Xiao on 2019/6/12.
+ *
+ * @version 1.0
+ */
+public class MonthShardPolicy implements CalendarShardPolicy {
+
+  private static final TimeZone UTC = CalendarTimeUtils.getTimeZone(CalendarTimeUtils.TIMEZONE_UTC);
+
+  @Override
+  public String getShardKey(CalendarRemindModel model, long dtstart, long dtend) {
+    long startDay = CalendarTimeUtils.toEpochDay(dtstart, UTC);
+    // 结束时间是开区间，恰好为下个月零点时仍属于本月
+    long endDay = dtend > dtstart ? CalendarTimeUtils.toEpochDay(dtend - 1, UTC) : startDay;
+    int startMonth = CalendarTimeUtils.toYearMonth(startDay);
+    if (CalendarTimeUtils.toYearMonth(endDay) != startMonth) {
+      return null;
+    }
+    return String.valueOf(startMonth);
+  }
+
+  @Override
+  public boolean mayContain(String shardKey, long begin, long end) {
+    int yearMonth;
+    try {
+      yearMonth = Integer.parseInt(shardKey);
+    } catch (NumberFormatException e) {
+      // 其它策略建立的分片
+      return true;
+    }
+    int year = yearMonth / 100;
+    int month = yearMonth % 100;
+    if (month < 1 || month > 12) {
+      return true;
+    }
+    long monthStart = CalendarTimeUtils.toEpochDay(year, month, 1) * CalendarTimeUtils.MILLIS_PER_DAY;
+    long monthEnd = (month == 12
+        ? CalendarTimeUtils.toEpochDay(year + 1, 1, 1)
+        : CalendarTimeUtils.toEpochDay(year, month + 1, 1)) * CalendarTimeUtils.MILLIS_PER_DAY;
+    return monthStart < end && monthEnd > begin;
+  }
+}
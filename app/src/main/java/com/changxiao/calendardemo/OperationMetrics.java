@@ -0,0 +1,87 @@
+package com.changxiao.calendardemo;
+
+/**
+ * 某个接口在一段时间内的统计快照，见 {@link CalendarMetrics#snapshot(boolean)}
+ *
+ * Created by Chang.Xiao on 2019/5/28.
+ *
+ * @version 1.0
+ */
+public class OperationMetrics {
+
+  private final CalendarOperation operation;
+  private final long count;
+  private final long errors;
+  private final long rows;
+  private final long totalMicros;
+  private final long maxMicros;
+  private final long[] buckets;
+
+  OperationMetrics(CalendarOperation operation, long count, long errors, long rows, long totalMicros, long maxMicros, long[] buckets) {
+    this.operation = operation;
+    this.count = count;
+    this.errors = errors;
+    this.rows = rows;
+    this.totalMicros = totalMicros;
+    this.maxMicros = maxMicros;
+    this.buckets = buckets;
+  }
+
+  public CalendarOperation getOperation() {
+    return operation;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getErrors() {
+    return errors;
+  }
+
+  public long getRows() {
+    return rows;
+  }
+
+  public long getTotalMicros() {
+    return totalMicros;
+  }
+
+  public long getMaxMicros() {
+    return maxMicros;
+  }
+
+  public long getMeanMicros() {
+    return count == 0 ? 0 : totalMicros / count;
+  }
+
+  /**
+   * 分位数耗时，按桶估算，误差不超过25%
+   * @param percentile 0 ~ 100，如 50、99
+   * @return 微秒
+   */
+  public long getPercentileMicros(double percentile) {
+    return LatencyHistogram.percentile(buckets, maxMicros, percentile);
+  }
+
+  /**
+   * 各桶的计数，桶的范围见 {@link LatencyHistogram#bucketLowerBound(int)}，用于上报原始分布
+   * @return
+   */
+  public long[] getBuckets() {
+    return buckets.clone();
+  }
+
+  @Override
+  public String toString() {
+    return "OperationMetrics{" +
+        "operation=" + operation +
+        ", count=" + count +
+        ", errors=" + errors +
+        ", rows=" + rows +
+        ", p50=" + getPercentileMicros(50) +
+        ", p99=" + getPercentileMicros(99) +
+        ", max=" + maxMicros +
+        '}';
+  }
+}
@@ -0,0 +1,129 @@
+package com.changxiao.calendardemo;
+
+import android.util.Log;
+
+/**
+ * 跟踪当前线程最外层的 CalendarManager 接口调用：统计 IPC（见 {@link IpcStats}），
+ * 设置了 {@link CalendarMetricsListener} 时记录耗时、行数、是否失败并在接口返回前回调
+ *
+ * 每个线程复用一个 Frame，记录过程不分配对象。接口方法中 enter 之后在 finally 中 exit；
+ * provider 调用抛出的 RuntimeException 由 {@link CalendarResolver} 统一标记失败，接口方法不需要再捕获。
+ *
+ * Created by Chang.Xiao on 2019/5/28.
+ *
+ * @version 1.0
+ */
+final class OperationTracker {
+
+  private static final class Frame {
+    CalendarOperation operation;
+    long startNanos;
+    int rows;
+    boolean error;
+  }
+
+  private final IpcStats mIpcStats;
+  private volatile CalendarMetricsListener mListener;
+
+  private final ThreadLocal<Frame> mFrames = new ThreadLocal<Frame>() {
+    @Override
+    protected Frame initialValue() {
+      return new Frame();
+    }
+  };
+
+  OperationTracker(IpcStats ipcStats) {
+    mIpcStats = ipcStats;
+  }
+
+  IpcStats getIpcStats() {
+    return mIpcStats;
+  }
+
+  void setListener(CalendarMetricsListener listener) {
+    mListener = listener;
+  }
+
+  CalendarMetricsListener getListener() {
+    return mListener;
+  }
+
+  /**
+   * 接口内捕获、不再抛出的异常：标记当前接口失败并输出日志
+   * @param tag
+   * @param message
+   * @param e
+   */
+  void error(String tag, String message, Throwable e) {
+    markError();
+    Log.e(tag, message, e);
+  }
+
+  /**
+   * 进入接口，与 {@link #exit(CalendarOperation)} 成对在 finally 中调用
+   * @param operation
+   * @return 进入前的接口，不在其它接口内时为null
+   */
+  CalendarOperation enter(CalendarOperation operation) {
+    CalendarOperation outer = mIpcStats.enter(operation);
+    if (outer == null && mListener != null) {
+      Frame frame = mFrames.get();
+      frame.operation = operation;
+      frame.startNanos = System.nanoTime();
+      frame.rows = 0;
+      frame.error = false;
+    }
+    return outer;
+  }
+
+  void exit(CalendarOperation outer) {
+    mIpcStats.exit(outer);
+    if (outer != null) {
+      return;
+    }
+    Frame frame = mFrames.get();
+    if (frame.operation == null) {
+      return;
+    }
+    CalendarMetricsListener listener = mListener;
+    if (listener != null) {
+      listener.onOperation(frame.operation, (System.nanoTime() - frame.startNanos) / 1000, frame.rows, frame.error);
+    }
+    frame.operation = null;
+  }
+
+  /**
+   * 累加当前接口读写的行数
+   * @param rows
+   */
+  void addRows(int rows) {
+    Frame frame = mFrames.get();
+    if (frame.operation != null && rows > 0) {
+      frame.rows += rows;
+    }
+  }
+
+  /**
+   * 标记当前接口失败
+   */
+  void markError() {
+    Frame frame = mFrames.get();
+    if (frame.operation != null) {
+      frame.error = true;
+    }
+  }
+
+  /**
+   * 直接记录一次不作为接口范围跟踪的操作（如接口内部的账户查询）
+   * @param operation
+   * @param startNanos System.nanoTime() 开始时间
+   * @param rows
+   * @param error
+   */
+  void record(CalendarOperation operation, long startNanos, int rows, boolean error) {
+    CalendarMetricsListener listener = mListener;
+    if (listener != null) {
+      listener.onOperation(operation, (System.nanoTime() - startNanos) / 1000, rows, error);
+    }
+  }
+}
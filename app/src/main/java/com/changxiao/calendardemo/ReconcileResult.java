@@ -0,0 +1,80 @@
+package com.changxiao.calendardemo;
+
+/**
+ * 按期望状态同步应用日历的结果，见 {@link CalendarManager#reconcileEvents(java.util.List)}
+ *
+ * Created by Chang.Xiao on 2019/5/29.
+ *
+ * @version 1.0
+ */
+public class ReconcileResult {
+
+  private int inserted; // 新增的日程数
+  private int updated; // 更新的日程数
+  private int deleted; // 删除的事件数
+  private int unchanged; // 没有变化的日程数
+  private int skipped; // 没有key或key重复而跳过的日程数
+  private int failed; // 写入失败的日程数，下次同步时会重新比对
+
+  public int getInserted() {
+    return inserted;
+  }
+
+  void addInserted(int count) {
+    inserted += count;
+  }
+
+  public int getUpdated() {
+    return updated;
+  }
+
+  void addUpdated(int count) {
+    updated += count;
+  }
+
+  public int getDeleted() {
+    return deleted;
+  }
+
+  void addDeleted(int count) {
+    deleted += count;
+  }
+
+  public int getUnchanged() {
+    return unchanged;
+  }
+
+  void addUnchanged(int count) {
+    unchanged += count;
+  }
+
+  public int getSkipped() {
+    return skipped;
+  }
+
+  void addSkipped(int count) {
+    skipped += count;
+  }
+
+  public int getFailed() {
+    return failed;
+  }
+
+  void addFailed(int count) {
+    failed += count;
+  }
+
+  /**
+   * 是否写入了应用日历
+   * @return
+   */
+  public boolean hasChanges() {
+    return inserted + updated + deleted > 0;
+  }
+
+  @Override
+  public String toString() {
+    return "ReconcileResult{inserted=" + inserted + ", updated=" + updated + ", deleted=" + deleted
+        + ", unchanged=" + unchanged + ", skipped=" + skipped + ", failed=" + failed + '}';
+  }
+}
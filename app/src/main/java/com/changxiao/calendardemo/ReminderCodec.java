@@ -0,0 +1,80 @@
+package com.changxiao.calendardemo;
+
+import android.content.ContentValues;
+import android.provider.CalendarContract.Reminders;
+
+/**
+ * 提醒表的编码
+ *
+ * Created by Chang.Xiao on 2019/6/5.
+ *
+ * @version 1.0
+ */
+final class ReminderCodec {
+
+  private ReminderCodec() {
+  }
+
+  /**
+   * 更新提醒的数据
+   * @param model
+   * @return
+   */
+  static ContentValues toValues(ReminderModel model) {
+    ContentValues values = new ContentValues();
+    encode(model, ColumnWriter.of(values));
+    return values;
+  }
+
+  /**
+   * 由写入的数据还原提醒，不含 EVENT_ID
+   * @param reminderId
+   * @param values {@link #toValues(ReminderModel)} 的结果
+   * @return
+   */
+  static ReminderModel decode(long reminderId, ContentValues values) {
+    ReminderModel model = new ReminderModel();
+    model.setId(reminderId);
+    Integer minutes = values.getAsInteger(Reminders.MINUTES);
+    Integer method = values.getAsInteger(Reminders.METHOD);
+    model.setMinutes(minutes == null ? 0 : minutes);
+    model.setMethod(method == null ? Reminders.METHOD_DEFAULT : method);
+    return model;
+  }
+
+  /**
+   * 编码提醒时间和方法，不含 EVENT_ID
+   * @param model
+   * @param out
+   */
+  static void encode(ReminderModel model, ColumnWriter out) {
+    out.put(Reminders.MINUTES, model.getMinutes()); // 提醒在事件前多少分钟后发出
+    out.put(Reminders.METHOD, toProviderMethod(model.getMethod()));
+  }
+
+  /**
+   * 默认提醒：事件发生时提醒
+   * @param out
+   */
+  static void encodeDefault(ColumnWriter out) {
+    out.put(Reminders.MINUTES, 0);
+    out.put(Reminders.METHOD, Reminders.METHOD_ALERT);
+  }
+
+  /**
+   * 提醒方法转换:METHOD_DEFAULT:0,*_ALERT:1,*_EMAIL:2,*_SMS:3
+   * @param method
+   * @return
+   */
+  static int toProviderMethod(int method) {
+    int methodType = Reminders.METHOD_DEFAULT;
+    if (method == 1) {
+      methodType = Reminders.METHOD_ALERT;
+    } else if (method == 2) {
+      methodType = Reminders.METHOD_EMAIL;
+    } else if (method == 3) {
+      methodType = Reminders.METHOD_SMS;
+    }
+    return methodType;
+  }
+}
@@ -0,0 +1,36 @@
+package com.changxiao.calendardemo;
+
+import android.database.Cursor;
+import android.provider.CalendarContract.Reminders;
+
+/**
+ * 提醒表行映射，对应 {@link CalendarManager#REMINDERS_COLUMNS}
+ *
+ * Created by Chang.Xiao on 2019/5/10.
+ *
+ * @version 1.0
+ */
+public class ReminderRowMapper extends RowMapper<ReminderModel> {
+
+  private final int idIndex;
+  private final int eventIdIndex;
+  private final int minutesIndex;
+  private final int methodIndex;
+
+  public ReminderRowMapper(Cursor cursor) {
+    idIndex = cursor.getColumnIndexOrThrow(Reminders._ID);
+    eventIdIndex = cursor.getColumnIndexOrThrow(Reminders.EVENT_ID);
+    minutesIndex = cursor.getColumnIndexOrThrow(Reminders.MINUTES);
+    methodIndex = cursor.getColumnIndexOrThrow(Reminders.METHOD);
+  }
+
+  @Override
+  public ReminderModel map(Cursor cursor) {
+    ReminderModel reminder = new ReminderModel();
+    reminder.setId(cursor.getLong(idIndex));
+    reminder.setEventId(cursor.getLong(eventIdIndex));
+    reminder.setMinutes(cursor.getInt(minutesIndex));
+    reminder.setMethod(cursor.getInt(methodIndex));
+    return reminder;
+  }
+}
@@ -0,0 +1,496 @@
+package com.changxiao.calendardemo;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.provider.CalendarContract.Events;
+import android.provider.CalendarContract.Reminders;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 应用内提醒调度，用于前台时显示横幅等，与系统日历的闹钟提醒（Reminders.METHOD_ALERT）互不影响
+ *
+ * 提醒按 dtstart - minutes 放入 {@link TimingWheel}（全天事件的 dtstart 为UTC零点，换算为用户时区当天的零点），添加、取消都是 O(1)，
+ * 只在一个专用线程上每 {@link #TICK_MILLIS} 推进一次，时间轮为空时不推进。
+ * 启动时在该线程加载应用日历中未开始的事件及其提醒；之后通过 {@link EventChangeListener}
+ * 跟随 CalendarManager 的写操作更新：
+ * 1. 带提醒列表的事件直接替换该事件的所有提醒；
+ * 2. 不带提醒列表的事件先按新的开始时间重新调度已知的提醒，合并 REFRESH_DELAY 内的事件后
+ *    用一次 EVENT_ID IN (...) 查询重新读取提醒（插入、upsert 后提醒id才确定）；
+ * 3. updateReminder、写入队列写入提醒后按新的提前时间重新调度。
+ * 其它应用对日历的修改不会自动同步，需要时调用 {@link #reload()}。
+ * 只按事件本身的 DTSTART 计算，重复事件的后续实例不在这里提醒。
+ *
+ * 回调在主线程执行，到期超过 LATE_TOLERANCE 的提醒（如线程被挂起）直接丢弃。
+ * 回调中的 EventModel 是调度器中的对象，不要修改。
+ *
+ * Created by Chang.Xiao on 2019/6/10.
+ *
+ * @version 1.0
+ */
+public class ReminderScheduler implements EventChangeListener {
+
+  private static final String TAG = "ReminderScheduler";
+
+  /**
+   * 提醒回调
+   */
+  public interface OnReminderListener {
+    /**
+     * 提醒到期，在主线程回调
+     * @param event 提醒所属的事件
+     * @param reminder
+     */
+    void onReminder(EventModel event, ReminderModel reminder);
+  }
+
+  /** 时间轮刻度 */
+  public static final long TICK_MILLIS = 1000;
+
+  /** 到期后超过该时间仍未分发的提醒不再回调 */
+  static final long LATE_TOLERANCE = 60 * 1000;
+
+  /** 合并保存事件后重新读取提醒的延迟 */
+  static final long REFRESH_DELAY = 500;
+
+  private static final long MINUTE_MILLIS = 60 * 1000;
+
+  private final CalendarManager mManager;
+  private final CalendarResolver mResolver;
+  private final OperationTracker mTracker;
+  private final Context mContext;
+  private final HandlerThread mThread;
+  private final Handler mHandler;
+  private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+  private final List<OnReminderListener> mListeners = new CopyOnWriteArrayList<>();
+
+  // 以下只在 mThread 上访问
+  private final TimingWheel<ReminderModel> mWheel;
+  private final Map<Long, EventModel> mEvents = new HashMap<>();
+  private final Map<Long, List<TimingWheel.Timeout<ReminderModel>>> mEventReminders = new HashMap<>();
+  private final Map<Long, TimingWheel.Timeout<ReminderModel>> mTimeouts = new HashMap<>();
+  private final Set<Long> mPendingRefresh = new HashSet<>();
+  private final List<TimingWheel.Timeout<ReminderModel>> mExpired = new ArrayList<>();
+  private boolean mTicking;
+
+  private volatile int mScheduledCount;
+  private volatile boolean mLoaded;
+
+  ReminderScheduler(CalendarManager manager, Context context) {
+    mManager = manager;
+    mResolver = manager.getResolver();
+    mTracker = manager.getTracker();
+    mContext = context;
+    mWheel = new TimingWheel<>(TICK_MILLIS, System.currentTimeMillis());
+    mThread = new HandlerThread("CalendarManager-reminder");
+    mThread.start();
+    mHandler = new Handler(mThread.getLooper());
+  }
+
+  private final Runnable mTickTask = new Runnable() {
+    @Override
+    public void run() {
+      mTicking = false;
+      tick();
+    }
+  };
+
+  private final Runnable mLoadTask = new Runnable() {
+    @Override
+    public void run() {
+      try {
+        load();
+      } catch (Exception e) {
+        // 没有权限等情况，保留当前调度，调用 reload 时再加载
+        Log.w(TAG, "load failed: " + e.getMessage());
+      }
+    }
+  };
+
+  private final Runnable mRefreshTask = new Runnable() {
+    @Override
+    public void run() {
+      try {
+        refreshReminders();
+      } catch (Exception e) {
+        Log.w(TAG, "refresh reminders failed: " + e.getMessage());
+      }
+    }
+  };
+
+  /**
+   * 停止调度线程，之后不再回调
+   */
+  public void stop() {
+    mMainHandler.removeCallbacksAndMessages(null);
+    mThread.quit();
+  }
+
+  /**
+   * 在调度线程重新加载应用日历中的事件和提醒
+   */
+  public void reload() {
+    mHandler.post(mLoadTask);
+  }
+
+  /**
+   * 是否已经完成加载
+   * @return
+   */
+  public boolean isLoaded() {
+    return mLoaded;
+  }
+
+  /**
+   * 时间轮中等待到期的提醒数
+   * @return
+   */
+  public int getScheduledCount() {
+    return mScheduledCount;
+  }
+
+  public void addOnReminderListener(OnReminderListener listener) {
+    if (listener != null && !mListeners.contains(listener)) {
+      mListeners.add(listener);
+    }
+  }
+
+  public void removeOnReminderListener(OnReminderListener listener) {
+    mListeners.remove(listener);
+  }
+
+  @Override
+  public void onEventSaved(final EventModel event) {
+    final List<ReminderModel> reminders = event.getReminders() == null ? null : copyReminders(event.getReminders());
+    mHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        if (!isAppEvent(event)) {
+          // 不属于应用日历（如通过 updateEvent 修改的用户、其它应用的事件），不调度；移到其它日历的事件移出调度
+          removeEvent(event.getId());
+          mPendingRefresh.remove(event.getId());
+          updateTicking();
+          return;
+        }
+        putEvent(event, reminders);
+        if (reminders == null && mPendingRefresh.add(event.getId()) && mPendingRefresh.size() == 1) {
+          mHandler.postDelayed(mRefreshTask, REFRESH_DELAY);
+        }
+        updateTicking();
+      }
+    });
+  }
+
+  /**
+   * 事件是否属于应用日历，只在 mThread 调用；查询失败时按不属于处理
+   */
+  private boolean isAppEvent(EventModel event) {
+    try {
+      return Arrays.binarySearch(mManager.getAppCalendarIds(mContext), event.getCalendarId()) >= 0;
+    } catch (RuntimeException e) {
+      Log.w(TAG, "query app calendars failed: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public void onEventsDeleted(final List<Long> eventIds) {
+    mHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        for (Long id : eventIds) {
+          removeEvent(id);
+          mPendingRefresh.remove(id);
+        }
+        updateTicking();
+      }
+    });
+  }
+
+  /**
+   * 提醒的提前时间、方法已修改
+   * @param reminder
+   */
+  void onReminderUpdated(ReminderModel reminder) {
+    final long reminderId = reminder.getId();
+    final int minutes = reminder.getMinutes();
+    final int method = reminder.getMethod();
+    mHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        TimingWheel.Timeout<ReminderModel> timeout = mTimeouts.get(reminderId);
+        if (timeout == null) {
+          return;
+        }
+        timeout.getPayload().setMinutes(minutes);
+        timeout.getPayload().setMethod(method);
+        schedule(timeout, System.currentTimeMillis());
+        updateTicking();
+      }
+    });
+  }
+
+  /**
+   * 加载应用日历中未开始的事件及其提醒，替换当前的调度
+   */
+  void load() {
+    CalendarOperation outer = mTracker.enter(CalendarOperation.REMINDER_SCHEDULER_LOAD);
+    try {
+      long now = System.currentTimeMillis();
+      long[] calIds = mManager.getAppCalendarIds(mContext, now - CalendarTimeUtils.MILLIS_PER_DAY, Long.MAX_VALUE);
+      List<EventModel> events = new ArrayList<>();
+      if (calIds.length > 0) {
+        // 提前时间不为负，开始时间已过的事件不会再有提醒到期；分片时只查询还没有结束的分片
+        // 全天事件存为UTC零点，西半球时区当天的零点晚于UTC零点，多查询一天
+        String[] args = Arrays.copyOf(SelectionUtils.toArgs(calIds), calIds.length + 1);
+        args[calIds.length] = String.valueOf(now - CalendarTimeUtils.MILLIS_PER_DAY);
+        Cursor cursor = mResolver.query(mContext,
+            Events.CONTENT_URI,
+            CalendarManager.EVENTS_COLUMNS,
+            SelectionUtils.in(Events.CALENDAR_ID, calIds.length) + " AND " + Events.DTSTART + ">=? AND " + Events.DELETED + "!=1",
+            args,
+            null);
+        if (cursor == null) {
+          mTracker.markError();
+          return;
+        }
+        try {
+          new EventRowMapper(cursor).mapAll(cursor, events);
+        } finally {
+          cursor.close();
+        }
+      }
+      List<Long> ids = new ArrayList<>(events.size());
+      for (EventModel event : events) {
+        ids.add(event.getId());
+      }
+      Map<Long, List<ReminderModel>> reminders = queryReminders(ids);
+      if (reminders == null) {
+        mTracker.markError();
+        return;
+      }
+
+      for (Long id : new ArrayList<>(mEvents.keySet())) {
+        removeEvent(id);
+      }
+      mPendingRefresh.clear();
+      mHandler.removeCallbacks(mRefreshTask);
+      for (EventModel event : events) {
+        List<ReminderModel> list = reminders.get(event.getId());
+        putEvent(event, list == null ? new ArrayList<ReminderModel>() : list);
+      }
+      mLoaded = true;
+      updateTicking();
+      mTracker.addRows(events.size());
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 重新读取保存时不带提醒列表的事件的提醒
+   */
+  private void refreshReminders() {
+    if (mPendingRefresh.isEmpty()) {
+      return;
+    }
+    List<Long> ids = new ArrayList<>(mPendingRefresh);
+    mPendingRefresh.clear();
+    CalendarOperation outer = mTracker.enter(CalendarOperation.REMINDER_SCHEDULER_LOAD);
+    try {
+      Map<Long, List<ReminderModel>> reminders = queryReminders(ids);
+      if (reminders == null) {
+        mTracker.markError();
+        return;
+      }
+      for (Long id : ids) {
+        EventModel event = mEvents.get(id);
+        if (event != null) {
+          List<ReminderModel> list = reminders.get(id);
+          putEvent(event, list == null ? new ArrayList<ReminderModel>() : list);
+        }
+      }
+      updateTicking();
+    } finally {
+      mTracker.exit(outer);
+    }
+  }
+
+  /**
+   * 按事件id分批查询提醒
+   * @return 事件id -> 提醒，查询失败返回null
+   */
+  private Map<Long, List<ReminderModel>> queryReminders(List<Long> eventIds) {
+    Map<Long, List<ReminderModel>> result = new HashMap<>();
+    for (int from = 0; from < eventIds.size(); from += SelectionUtils.IN_CHUNK_SIZE) {
+      int to = Math.min(from + SelectionUtils.IN_CHUNK_SIZE, eventIds.size());
+      Cursor cursor = mResolver.query(mContext,
+          Reminders.CONTENT_URI,
+          CalendarManager.REMINDERS_COLUMNS,
+          SelectionUtils.in(Reminders.EVENT_ID, to - from),
+          SelectionUtils.toArgs(eventIds, from, to),
+          null);
+      if (cursor == null) {
+        return null;
+      }
+      try {
+        ReminderRowMapper mapper = new ReminderRowMapper(cursor);
+        while (cursor.moveToNext()) {
+          ReminderModel reminder = mapper.map(cursor);
+          List<ReminderModel> list = result.get(reminder.getEventId());
+          if (list == null) {
+            list = new ArrayList<>();
+            result.put(reminder.getEventId(), list);
+          }
+          list.add(reminder);
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 保存事件，reminders 不为null时替换该事件的所有提醒，否则按新的开始时间重新调度已有的提醒
+   */
+  private void putEvent(EventModel event, List<ReminderModel> reminders) {
+    long now = System.currentTimeMillis();
+    if (reminders != null) {
+      removeEvent(event.getId());
+    }
+    mEvents.put(event.getId(), event);
+    List<TimingWheel.Timeout<ReminderModel>> timeouts = mEventReminders.get(event.getId());
+    if (timeouts == null) {
+      timeouts = new ArrayList<>();
+      mEventReminders.put(event.getId(), timeouts);
+    }
+    if (reminders != null) {
+      for (ReminderModel reminder : reminders) {
+        reminder.setEventId(event.getId());
+        TimingWheel.Timeout<ReminderModel> timeout = new TimingWheel.Timeout<>(reminder);
+        timeouts.add(timeout);
+        mTimeouts.put(reminder.getId(), timeout);
+      }
+    }
+    for (TimingWheel.Timeout<ReminderModel> timeout : timeouts) {
+      schedule(timeout, now);
+    }
+  }
+
+  private void removeEvent(long eventId) {
+    mEvents.remove(eventId);
+    List<TimingWheel.Timeout<ReminderModel>> timeouts = mEventReminders.remove(eventId);
+    if (timeouts != null) {
+      for (TimingWheel.Timeout<ReminderModel> timeout : timeouts) {
+        mWheel.cancel(timeout);
+        mTimeouts.remove(timeout.getPayload().getId());
+      }
+    }
+  }
+
+  /**
+   * 按事件开始时间和提前时间放入时间轮，到期时间已过的只记录不调度，修改后还可以重新调度
+   */
+  private void schedule(TimingWheel.Timeout<ReminderModel> timeout, long now) {
+    ReminderModel reminder = timeout.getPayload();
+    EventModel event = mEvents.get(reminder.getEventId());
+    long fireTime = event == null ? Long.MIN_VALUE : startOf(event) - reminder.getMinutes() * MINUTE_MILLIS;
+    if (fireTime < now) {
+      mWheel.cancel(timeout);
+    } else {
+      mWheel.schedule(timeout, fireTime);
+    }
+  }
+
+  /**
+   * 事件在用户时区的开始时间，全天事件由UTC零点换算为当天的零点，与 {@link FreeBusy} 一致
+   */
+  private static long startOf(EventModel event) {
+    if (event.isAllDay()) {
+      return CalendarTimeUtils.allDayToLocal(event.getDtstart(), CalendarTimeUtils.getDefaultTimeZone());
+    }
+    return event.getDtstart();
+  }
+
+  /**
+   * 提醒在时间轮中的到期时间，只在调度线程调用
+   * @param reminderId
+   * @return 没有调度（未知的提醒、到期时间已过）时返回-1
+   */
+  long getFireTime(long reminderId) {
+    TimingWheel.Timeout<ReminderModel> timeout = mTimeouts.get(reminderId);
+    return timeout == null || !timeout.isScheduled() ? -1 : timeout.getDeadline();
+  }
+
+  private void tick() {
+    long now = System.currentTimeMillis();
+    mWheel.advance(now, mExpired);
+    for (TimingWheel.Timeout<ReminderModel> timeout : mExpired) {
+      if (now - timeout.getDeadline() > LATE_TOLERANCE) {
+        continue;
+      }
+      final ReminderModel reminder = timeout.getPayload();
+      final EventModel event = mEvents.get(reminder.getEventId());
+      if (event == null) {
+        continue;
+      }
+      mMainHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          for (OnReminderListener listener : mListeners) {
+            listener.onReminder(event, reminder);
+          }
+        }
+      });
+    }
+    mExpired.clear();
+    updateTicking();
+  }
+
+  /**
+   * 时间轮不为空时在下一个刻度推进，为空时停止
+   */
+  private void updateTicking() {
+    mScheduledCount = mWheel.size();
+    if (mWheel.size() == 0) {
+      if (mTicking) {
+        mHandler.removeCallbacks(mTickTask);
+        mTicking = false;
+      }
+      // 停止期间时间轮不推进，重新开始前对齐到当前时间
+      mWheel.advance(System.currentTimeMillis(), mExpired);
+      return;
+    }
+    if (!mTicking) {
+      mTicking = true;
+      long now = System.currentTimeMillis();
+      mHandler.postDelayed(mTickTask, TICK_MILLIS - now % TICK_MILLIS);
+    }
+  }
+
+  private static List<ReminderModel> copyReminders(List<ReminderModel> reminders) {
+    List<ReminderModel> copy = new ArrayList<>(reminders.size());
+    for (ReminderModel reminder : reminders) {
+      ReminderModel model = new ReminderModel();
+      model.setId(reminder.getId());
+      model.setEventId(reminder.getEventId());
+      model.setMinutes(reminder.getMinutes());
+      model.setMethod(reminder.getMethod());
+      copy.add(model);
+    }
+    return copy;
+  }
+}
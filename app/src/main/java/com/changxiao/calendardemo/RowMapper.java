@@ -0,0 +1,35 @@
+package com.changxiao.calendardemo;
+
+import android.database.Cursor;
+import java.util.List;
+
+/**
+ * 游标行映射
+ * 构造时按固定的查询列解析一次列下标，之后每行直接按下标读取基本类型到 model 中
+ *
+ * Created by Chang.Xiao on 2019/5/10.
+ *
+ * @version 1.0
+ */
+public abstract class RowMapper<T> {
+
+  /**
+   * 读取游标当前行
+   * @param cursor 构造时传入的游标
+   * @return
+   */
+  public abstract T map(Cursor cursor);
+
+  /**
+   * 从游标当前位置读取剩余所有行
+   * @param cursor 构造时传入的游标
+   * @param out
+   * @return out
+   */
+  public List<T> mapAll(Cursor cursor, List<T> out) {
+    while (cursor.moveToNext()) {
+      out.add(map(cursor));
+    }
+    return out;
+  }
+}
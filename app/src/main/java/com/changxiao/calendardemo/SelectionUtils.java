@@ -0,0 +1,79 @@
+package com.changxiao.calendardemo;
+
+import java.util.List;
+
+/**
+ * 查询条件拼装工具
+ *
+ * Created by Chang.Xiao on 2019/5/8.
+ *
+ * @version 1.0
+ */
+final class SelectionUtils {
+
+  /** SQLite 单条语句默认最多 999 个绑定参数（SQLITE_MAX_VARIABLE_NUMBER） */
+  static final int MAX_SQL_VARIABLES = 999;
+
+  /** IN(...) 查询每批的 id 个数，给同一语句中的其它条件预留参数 */
+  static final int IN_CHUNK_SIZE = 500;
+
+  private SelectionUtils() {
+  }
+
+  /**
+   * 拼装 column IN (?,?,...)
+   * @param column
+   * @param count 参数个数
+   * @return
+   */
+  static String in(String column, int count) {
+    StringBuilder sb = new StringBuilder(column.length() + 6 + count * 2);
+    sb.append(column).append(" IN (");
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append('?');
+    }
+    return sb.append(')').toString();
+  }
+
+  /**
+   * 取 ids[from, to) 作为查询参数
+   * @param ids
+   * @param from
+   * @param to
+   * @return
+   */
+  static String[] toArgs(List<Long> ids, int from, int to) {
+    String[] args = new String[to - from];
+    for (int i = from; i < to; i++) {
+      args[i - from] = String.valueOf(ids.get(i));
+    }
+    return args;
+  }
+
+  /**
+   * ids 作为查询参数
+   * @param ids
+   * @return
+   */
+  static String[] toArgs(long[] ids) {
+    return toArgs(ids, 0, ids.length);
+  }
+
+  /**
+   * 取 ids[from, to) 作为查询参数
+   * @param ids
+   * @param from
+   * @param to
+   * @return
+   */
+  static String[] toArgs(long[] ids, int from, int to) {
+    String[] args = new String[to - from];
+    for (int i = from; i < to; i++) {
+      args[i - from] = String.valueOf(ids[i]);
+    }
+    return args;
+  }
+}
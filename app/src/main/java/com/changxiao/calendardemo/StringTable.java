@@ -0,0 +1,125 @@
+package com.changxiao.calendardemo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 字符串去重表，相同内容的字符串只保存一份，按下标引用
+ * 使用开放寻址的 int[] 哈希表，可以直接按 char[] 查找（配合 Cursor#copyStringToBuffer），
+ * 已存在的字符串不会再创建 String 对象。非线程安全，建好之后只读
+ *
+ * Created by Chang.Xiao on 2019/6/3.
+ *
+ * @version 1.0
+ */
+final class StringTable {
+
+  /** 空值的下标 */
+  static final int NULL = -1;
+
+  private final List<String> mStrings = new ArrayList<>();
+  private int[] mSlots; // 存 下标+1，0 为空槽
+  private int[] mHashes; // 与 mStrings 对应的哈希值
+
+  StringTable() {
+    mSlots = new int[16];
+    mHashes = new int[16];
+  }
+
+  int size() {
+    return mStrings.size();
+  }
+
+  String get(int index) {
+    return index == NULL ? null : mStrings.get(index);
+  }
+
+  /**
+   * @param value 可以为null
+   * @return 下标，null返回 {@link #NULL}
+   */
+  int intern(String value) {
+    if (value == null) {
+      return NULL;
+    }
+    int hash = value.hashCode();
+    int mask = mSlots.length - 1;
+    for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+      int ref = mSlots[slot];
+      if (ref == 0) {
+        return add(slot, hash, value);
+      }
+      if (mHashes[ref - 1] == hash && mStrings.get(ref - 1).equals(value)) {
+        return ref - 1;
+      }
+    }
+  }
+
+  /**
+   * 按 data[0, length) 查找，不存在时才创建 String
+   */
+  int intern(char[] data, int length) {
+    // 与 String#hashCode 相同的算法
+    int hash = 0;
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + data[i];
+    }
+    int mask = mSlots.length - 1;
+    for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+      int ref = mSlots[slot];
+      if (ref == 0) {
+        return add(slot, hash, new String(data, 0, length));
+      }
+      if (mHashes[ref - 1] == hash && contentEquals(mStrings.get(ref - 1), data, length)) {
+        return ref - 1;
+      }
+    }
+  }
+
+  private static boolean contentEquals(String value, char[] data, int length) {
+    if (value.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (value.charAt(i) != data[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int add(int slot, int hash, String value) {
+    int index = mStrings.size();
+    mStrings.add(value);
+    if (index == mHashes.length) {
+      mHashes = Arrays.copyOf(mHashes, index * 2);
+    }
+    mHashes[index] = hash;
+    mSlots[slot] = index + 1;
+    // 负载因子不超过 1/2
+    if (mStrings.size() * 2 > mSlots.length) {
+      rehash(mSlots.length * 2);
+    }
+    return index;
+  }
+
+  private void rehash(int capacity) {
+    int[] slots = new int[capacity];
+    int mask = capacity - 1;
+    for (int i = 0; i < mStrings.size(); i++) {
+      int slot = mix(mHashes[i]) & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = i + 1;
+    }
+    mSlots = slots;
+  }
+
+  /** 打散低位，String#hashCode 的低位分布较差 */
+  private static int mix(int hash) {
+    hash *= 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,216 @@
+package com.changxiao.calendardemo;
+
+import java.util.List;
+
+/**
+ * 分层时间轮
+ *
+ * 时间按 tickMillis 切分为刻度，共 LEVELS 层，每层 WHEEL_SIZE 个槽，第 L 层一个槽覆盖 WHEEL_SIZE^L 个刻度。
+ * 到期刻度距当前刻度不足 WHEEL_SIZE^(L+1) 的定时器放在第 L 层，槽号取到期刻度的第 L 组 WHEEL_BITS 位；
+ * 当前刻度进入第 L 层某个槽的范围时，把该槽的定时器按新的当前刻度重新放入低层（cascade），
+ * 每个定时器最多下降 LEVELS - 1 次。添加、取消都是 O(1)（槽为双向链表），推进一个刻度只处理一个槽。
+ * 1 秒一个刻度时 4 层可以覆盖约 194 天，更远的定时器先放在最高层最远的槽，下降时重新计算，不会提前到期。
+ *
+ * 到期刻度向上取整，不会早于 deadline 到期；推进时不检查墙上时间回拨，now 小于当前时间时不处理。
+ * 非线程安全，只在一个线程使用。
+ *
+ * Created by Chang.Xiao on 2019/6/10.
+ *
+ * @version 1.0
+ */
+public class TimingWheel<T> {
+
+  static final int WHEEL_BITS = 6;
+  static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+  static final int LEVELS = 4;
+  private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+  /** 最高层能放下的最大刻度差 */
+  private static final long MAX_DELTA = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+  /**
+   * 定时器，可以取消后重新添加
+   */
+  public static final class Timeout<T> {
+    private final T payload;
+    private long deadline;
+    private long deadlineTick;
+    private Timeout<T> prev;
+    private Timeout<T> next;
+    /** 所在槽在 mSlots 中的下标，-1 表示不在时间轮中 */
+    private int slot = -1;
+
+    public Timeout(T payload) {
+      this.payload = payload;
+    }
+
+    public T getPayload() {
+      return payload;
+    }
+
+    /**
+     * 最后一次添加时的到期时间
+     * @return
+     */
+    public long getDeadline() {
+      return deadline;
+    }
+
+    public boolean isScheduled() {
+      return slot >= 0;
+    }
+  }
+
+  private final long mTickMillis;
+  /** 各层的槽依次排列，每个槽是 Timeout 双向链表的表头；不能创建泛型数组，元素只会是 Timeout<T>，转换是安全的 */
+  @SuppressWarnings("unchecked")
+  private final Timeout<T>[] mSlots = (Timeout<T>[]) new Timeout<?>[LEVELS * WHEEL_SIZE];
+  private long mCurrentTick;
+  private int mSize;
+
+  /**
+   * @param tickMillis 刻度长度
+   * @param now 当前时间，早于该时间到期的定时器在下一个刻度到期
+   */
+  public TimingWheel(long tickMillis, long now) {
+    if (tickMillis <= 0) {
+      throw new IllegalArgumentException("tickMillis must be positive");
+    }
+    mTickMillis = tickMillis;
+    mCurrentTick = floorTick(now);
+  }
+
+  public long getTickMillis() {
+    return mTickMillis;
+  }
+
+  /**
+   * 时间轮中的定时器数
+   * @return
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * 添加定时器，已在时间轮中时先取消。deadline 不晚于当前刻度时在下一个刻度到期
+   * @param timeout
+   * @param deadline 到期时间，毫秒
+   */
+  public void schedule(Timeout<T> timeout, long deadline) {
+    cancel(timeout);
+    timeout.deadline = deadline;
+    // 向上取整，不会提前到期
+    long tick = floorTick(deadline);
+    if (tick * mTickMillis < deadline) {
+      tick++;
+    }
+    timeout.deadlineTick = Math.max(tick, mCurrentTick + 1);
+    place(timeout);
+    mSize++;
+  }
+
+  /**
+   * 取消定时器
+   * @param timeout
+   * @return 定时器在时间轮中时返回 true
+   */
+  public boolean cancel(Timeout<T> timeout) {
+    if (timeout.slot < 0) {
+      return false;
+    }
+    unlink(timeout);
+    mSize--;
+    return true;
+  }
+
+  /**
+   * 推进到 now，到期的定时器按到期刻度先后加入 expired 并移出时间轮
+   * @param now
+   * @param expired
+   * @return 到期的定时器数
+   */
+  public int advance(long now, List<Timeout<T>> expired) {
+    long target = floorTick(now);
+    int count = 0;
+    while (mCurrentTick < target) {
+      if (mSize == 0) {
+        // 没有定时器时直接跳到目标刻度，长时间未推进也不需要逐个刻度处理
+        mCurrentTick = target;
+        break;
+      }
+      long tick = ++mCurrentTick;
+      // 进入高层槽的范围时下降
+      for (int level = 1; level < LEVELS && (tick & ((1L << (WHEEL_BITS * level)) - 1)) == 0; level++) {
+        cascade(level, (int) (tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+      }
+      int index = (int) tick & WHEEL_MASK;
+      Timeout<T> timeout = mSlots[index];
+      mSlots[index] = null;
+      while (timeout != null) {
+        Timeout<T> next = timeout.next;
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+        mSize--;
+        expired.add(timeout);
+        count++;
+        timeout = next;
+      }
+    }
+    return count;
+  }
+
+  private void cascade(int level, int index) {
+    int slot = level * WHEEL_SIZE + index;
+    Timeout<T> timeout = mSlots[slot];
+    mSlots[slot] = null;
+    while (timeout != null) {
+      Timeout<T> next = timeout.next;
+      timeout.prev = null;
+      timeout.next = null;
+      place(timeout);
+      timeout = next;
+    }
+  }
+
+  private void place(Timeout<T> timeout) {
+    long delta = timeout.deadlineTick - mCurrentTick;
+    long tick = timeout.deadlineTick;
+    if (delta > MAX_DELTA) {
+      // 超出范围的放在最高层最远的槽，下降时按真实到期刻度重新放置
+      tick = mCurrentTick + MAX_DELTA;
+      delta = MAX_DELTA;
+    }
+    int level = 0;
+    while (level < LEVELS - 1 && delta >= (1L << (WHEEL_BITS * (level + 1)))) {
+      level++;
+    }
+    int slot = level * WHEEL_SIZE + ((int) (tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+    Timeout<T> head = mSlots[slot];
+    timeout.next = head;
+    if (head != null) {
+      head.prev = timeout;
+    }
+    mSlots[slot] = timeout;
+    timeout.slot = slot;
+  }
+
+  private void unlink(Timeout<T> timeout) {
+    if (timeout.prev != null) {
+      timeout.prev.next = timeout.next;
+    } else {
+      mSlots[timeout.slot] = timeout.next;
+    }
+    if (timeout.next != null) {
+      timeout.next.prev = timeout.prev;
+    }
+    timeout.prev = null;
+    timeout.next = null;
+    timeout.slot = -1;
+  }
+
+  private long floorTick(long millis) {
+    long tick = millis / mTickMillis;
+    return (millis % mTickMillis < 0) ? tick - 1 : tick;
+  }
+}
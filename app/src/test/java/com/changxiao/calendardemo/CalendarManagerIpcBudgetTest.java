@@ -0,0 +1,216 @@
+package com.changxiao.calendardemo;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.CalendarContract;
+import android.provider.CalendarContract.Events;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * CalendarManager 各接口的 IPC 次数上限，provider 使用内存中的 FakeCalendarProvider
+ * 账户id在 setUp 中已经缓存，这里统计的是热路径
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CalendarManagerIpcBudgetTest {
+
+  private Context mContext;
+  private CalendarManager mManager;
+  private IpcStats mStats;
+
+  @Before
+  public void setUp() {
+    mContext = RuntimeEnvironment.application;
+    Robolectric.buildContentProvider(FakeCalendarProvider.class).create(CalendarContract.AUTHORITY);
+    mManager = CalendarManager.getInstance();
+    mManager.init(mContext);
+    assertTrue(mManager.addCalendarEvent(mContext, model("warm up")));
+    mStats = mManager.getIpcStats();
+    mStats.reset();
+  }
+
+  private static CalendarRemindModel model(String title) {
+    CalendarRemindModel model = new CalendarRemindModel();
+    model.setTitle(title);
+    model.setDescription("https://www.baidu.com/");
+    model.setStartDate(1556640000000L);
+    model.setEndDate(1556641800000L);
+    model.setHasAlarm(1);
+    return model;
+  }
+
+  private static List<CalendarRemindModel> models(int count) {
+    List<CalendarRemindModel> models = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      models.add(model("batch " + i));
+    }
+    return models;
+  }
+
+  @Test
+  public void addCalendarEventWithinTwoRoundTrips() {
+    assertTrue(mManager.addCalendarEvent(mContext, model("add")));
+    assertEquals(1, mStats.getCalls(CalendarOperation.ADD_CALENDAR_EVENT));
+    assertTrue(mStats.toString(), mStats.getRoundTrips(CalendarOperation.ADD_CALENDAR_EVENT) <= 2);
+  }
+
+  @Test
+  public void insertEventsOneApplyBatchPerChunk() {
+    mManager.insertEvents(models(120));
+    assertEquals(3, mStats.getCount(CalendarOperation.INSERT_EVENTS, IpcStats.Kind.APPLY_BATCH));
+    assertEquals(3, mStats.getRoundTrips(CalendarOperation.INSERT_EVENTS));
+  }
+
+  @Test
+  public void queryEventsPageWithinThreeRoundTrips() {
+    mManager.insertEvents(models(99));
+    mStats.reset();
+    List<EventModel> events = mManager.queryEvents(mContext, null, true);
+    assertEquals(100, events.size());
+    assertTrue(mStats.toString(), mStats.getRoundTrips(CalendarOperation.QUERY_EVENTS) <= 3);
+  }
+
+  @Test
+  public void updateEventWithinTwoRoundTrips() {
+    EventModel event = mManager.queryEvents(mContext, null, false).get(0);
+    mStats.reset();
+    event.setTitle("updated");
+    assertTrue(mManager.updateEvent(mContext, event));
+    // 有监听者（如其它用例建立的索引）时更新后再读取一次整行
+    assertTrue(mStats.toString(), mStats.getRoundTrips(CalendarOperation.UPDATE_EVENT) <= 2);
+  }
+
+  @Test
+  public void upsertEventUpdatesInPlaceWithinTwoRoundTrips() {
+    Uri first = mManager.upsertEvent(model("upsert"), "order-1");
+    assertNotNull(first);
+    assertTrue(mStats.toString(), mStats.getRoundTrips(CalendarOperation.UPSERT_EVENT) <= 2);
+
+    mStats.reset();
+    CalendarRemindModel changed = model("upsert changed");
+    Uri second = mManager.upsertEvent(changed, "order-1");
+    assertEquals(first, second);
+    assertTrue(mStats.toString(), mStats.getRoundTrips(CalendarOperation.UPSERT_EVENT) <= 2);
+
+    assertNotEquals(first, mManager.upsertEvent(model("upsert"), "order-2"));
+    assertEquals(3, mManager.queryEvents(mContext, null, false).size());
+  }
+
+  /** events 表中该key的行数，包括 DELETED=1 的行 */
+  private int rowsWithKey(String dedupKey) {
+    Cursor cursor = mContext.getContentResolver().query(Events.CONTENT_URI, new String[]{ Events._ID },
+        Events._SYNC_ID + "=?", new String[]{ dedupKey }, null);
+    try {
+      return cursor.getCount();
+    } finally {
+      cursor.close();
+    }
+  }
+
+  @Test
+  public void upsertAfterDeleteKeepsOneRowPerKey() {
+    for (int i = 0; i < 3; i++) {
+      assertNotNull(mManager.upsertEvent(model("cycle"), "order-1"));
+      assertTrue(mManager.deleteCalendarEvent(mContext, "cycle"));
+      assertEquals(0, rowsWithKey("order-1"));
+    }
+    Uri uri = mManager.upsertEvent(model("cycle"), "order-1");
+    assertNotNull(uri);
+
+    // 其它应用（如系统日历）的删除只标记 DELETED=1，下次 upsert 时在同一批中清除
+    mContext.getContentResolver().delete(uri, null, null);
+    assertEquals(1, rowsWithKey("order-1"));
+    mStats.reset();
+    Uri again = mManager.upsertEvent(model("cycle"), "order-1");
+    assertNotNull(again);
+    assertNotEquals(uri, again);
+    assertTrue(mStats.toString(), mStats.getRoundTrips(CalendarOperation.UPSERT_EVENT) <= 2);
+    assertEquals(1, rowsWithKey("order-1"));
+  }
+
+  @Test
+  public void reconcileWithoutChangesReadsOnce() {
+    List<CalendarRemindModel> desired = models(3);
+    for (int i = 0; i < desired.size(); i++) {
+      desired.get(i).setDedupKey("remind-" + i);
+    }
+    ReconcileResult first = mManager.reconcileEvents(desired);
+    assertEquals(3, first.getInserted());
+
+    mStats.reset();
+    ReconcileResult second = mManager.reconcileEvents(desired);
+    assertFalse(second.toString(), second.hasChanges());
+    assertEquals(3, second.getUnchanged());
+    assertEquals(1, mStats.getRoundTrips(CalendarOperation.RECONCILE_EVENTS));
+    assertEquals(1, mStats.getCount(CalendarOperation.RECONCILE_EVENTS, IpcStats.Kind.QUERY));
+
+    mStats.reset();
+    desired.get(0).setTitle("batch 0 changed");
+    desired.remove(2);
+    ReconcileResult third = mManager.reconcileEvents(desired);
+    assertEquals(1, third.getUpdated());
+    assertEquals(1, third.getDeleted());
+    assertEquals(1, third.getUnchanged());
+    assertEquals(2, mStats.getRoundTrips(CalendarOperation.RECONCILE_EVENTS));
+    // 没有key的 warm up 事件不受影响
+    assertEquals(3, mManager.queryEvents(mContext, null, false).size());
+  }
+
+  @Test
+  public void reconcileIgnoresHasAlarmSetByProvider() {
+    List<CalendarRemindModel> desired = models(2);
+    for (int i = 0; i < desired.size(); i++) {
+      // 调用方不设置 HAS_ALARM，provider 插入提醒时置为1
+      desired.get(i).setHasAlarm(0);
+      desired.get(i).setDedupKey("alarm-" + i);
+    }
+    assertEquals(2, mManager.reconcileEvents(desired).getInserted());
+
+    mStats.reset();
+    ReconcileResult second = mManager.reconcileEvents(desired);
+    assertFalse(second.toString(), second.hasChanges());
+    assertEquals(0, mStats.getCount(CalendarOperation.RECONCILE_EVENTS, IpcStats.Kind.APPLY_BATCH));
+  }
+
+  @Test
+  public void deleteCalendarEventWithinTwoRoundTrips() {
+    assertTrue(mManager.deleteCalendarEventCount(mContext, "warm up") > 0);
+    assertTrue(mStats.toString(), mStats.getRoundTrips(CalendarOperation.DELETE_CALENDAR_EVENT) <= 2);
+    // 没有匹配的事件也算成功
+    assertTrue(mManager.deleteCalendarEvent(mContext, "warm up"));
+  }
+
+  @Test
+  public void deleteEventsChunksIdsInOneApplyBatch() {
+    mManager.insertEvents(models(120));
+    List<Long> ids = new ArrayList<>();
+    for (EventModel event : mManager.queryEvents(mContext, null, false)) {
+      ids.add(event.getId());
+    }
+    for (long id = 100000; ids.size() < 1100; id++) {
+      ids.add(id);
+    }
+    mStats.reset();
+    EventDeleteFilter filter = new EventDeleteFilter();
+    filter.setIds(ids);
+    assertEquals(121, mManager.deleteEvents(mContext, filter));
+    assertEquals(1, mStats.getRoundTrips(CalendarOperation.DELETE_EVENTS));
+    assertEquals(1, mStats.getCount(CalendarOperation.DELETE_EVENTS, IpcStats.Kind.APPLY_BATCH));
+  }
+
+  @Test
+  public void nestedCallsCountOnOutermostOperation() {
+    mManager.buildIntervalIndex(mContext);
+    assertEquals(1, mStats.getRoundTrips(CalendarOperation.BUILD_INTERVAL_INDEX));
+    assertEquals(0, mStats.getCalls(CalendarOperation.QUERY_CALENDAR_EVENTS));
+  }
+}
@@ -0,0 +1,193 @@
+package com.changxiao.calendardemo;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.CalendarContract;
+import android.provider.CalendarContract.Events;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * CalendarManager 写接口的返回值：写入前不再查询行是否存在，行不存在、写入失败时仍返回false；
+ * 删除、修改时间后 provider 中的行
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CalendarManagerWriteTest {
+
+  private static final long MISSING_ID = 100000;
+
+  private Context mContext;
+  private CalendarManager mManager;
+  private FakeCalendarProvider mProvider;
+
+  @Before
+  public void setUp() {
+    mContext = RuntimeEnvironment.application;
+    mProvider = Robolectric.buildContentProvider(FakeCalendarProvider.class).create(CalendarContract.AUTHORITY).get();
+    mManager = CalendarManager.getInstance();
+    mManager.init(mContext);
+    assertTrue(mManager.addCalendarEvent(mContext, model("existing")));
+  }
+
+  @After
+  public void tearDown() {
+    // CalendarManager 是单例，不影响其它测试
+    mManager.setShardPolicy(null);
+  }
+
+  private static CalendarRemindModel model(String title) {
+    CalendarRemindModel model = new CalendarRemindModel();
+    model.setTitle(title);
+    model.setStartDate(1556640000000L);
+    model.setEndDate(1556641800000L);
+    model.setHasAlarm(1);
+    return model;
+  }
+
+  /** 直接查询 events 表的行数，包括 DELETED=1 的行 */
+  private int rowCount(String selection, String... args) {
+    Cursor cursor = mContext.getContentResolver().query(Events.CONTENT_URI, new String[]{ Events._ID }, selection, args, null);
+    try {
+      return cursor.getCount();
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /** 按标题查询事件id */
+  private long idOf(String title) {
+    Cursor cursor = mContext.getContentResolver().query(Events.CONTENT_URI, new String[]{ Events._ID }, Events.TITLE + "=?", new String[]{ title }, null);
+    try {
+      assertTrue(cursor.moveToFirst());
+      return cursor.getLong(0);
+    } finally {
+      cursor.close();
+    }
+  }
+
+  @Test
+  public void eventMovedToAnotherMonthIsRangeDeleted() {
+    mManager.setShardPolicy(new MonthShardPolicy());
+    // 2019-05-10 02:00 UTC，都写入5月的分片
+    CalendarRemindModel moved = model("moved");
+    moved.setStartDate(1557453600000L);
+    moved.setEndDate(1557453600000L + 1800000L);
+    assertTrue(mManager.addCalendarEvent(mContext, moved));
+    CalendarRemindModel stay = model("stay");
+    stay.setStartDate(1557453600000L);
+    stay.setEndDate(1557453600000L + 1800000L);
+    assertTrue(mManager.addCalendarEvent(mContext, stay));
+
+    // 移到 2019-06-10 02:00 UTC
+    EventModel update = new EventModel();
+    update.setId(idOf("moved"));
+    update.setDtstart(1560132000000L);
+    update.setDtend(1560132000000L + 1800000L);
+    assertTrue(mManager.updateEvent(mContext, update));
+
+    // 按6月删除只访问默认日历和6月的分片
+    EventDeleteFilter june = new EventDeleteFilter();
+    june.setRange(1559347200000L, 1561939200000L);
+    mManager.deleteEvents(mContext, june);
+    assertEquals(0, rowCount(Events.TITLE + "=?", "moved"));
+    assertEquals(1, rowCount(Events.TITLE + "=?", "stay"));
+  }
+
+  @Test
+  public void removesOnlyEmptyExpiredShards() {
+    mManager.setShardPolicy(new MonthShardPolicy());
+    // 2019年5月、6月的分片，6月的事件删除后分片为空
+    CalendarRemindModel may = model("may");
+    may.setStartDate(1557453600000L);
+    may.setEndDate(1557453600000L + 1800000L);
+    assertTrue(mManager.addCalendarEvent(mContext, may));
+    CalendarRemindModel june = model("june");
+    june.setStartDate(1560132000000L);
+    june.setEndDate(1560132000000L + 1800000L);
+    assertTrue(mManager.addCalendarEvent(mContext, june));
+    assertEquals(1, mManager.deleteCalendarEventCount(mContext, "june"));
+
+    assertEquals(1, mManager.removeExpiredShards(mContext));
+    Cursor cursor = mContext.getContentResolver().query(CalendarContract.Calendars.CONTENT_URI,
+        new String[]{ CalendarContract.Calendars.CAL_SYNC1 }, CalendarContract.Calendars.CAL_SYNC1 + "=?", new String[]{ "201906" }, null);
+    try {
+      assertEquals(0, cursor.getCount());
+    } finally {
+      cursor.close();
+    }
+    assertEquals(0, mManager.removeExpiredShards(mContext));
+    // 有事件的分片保留，仍可以按时间范围查询
+    EventDeleteFilter range = new EventDeleteFilter();
+    range.setRange(1556668800000L, 1559347200000L);
+    mManager.deleteEvents(mContext, range);
+    assertEquals(0, rowCount(Events.TITLE + "=?", "may"));
+  }
+
+  @Test
+  public void deletedUpsertedEventsLeaveNoRows() {
+    // upsertEvent 写入 _SYNC_ID，普通删除只会标记 DELETED=1
+    Uri byId = mManager.upsertEvent(model("by id"), "order-1");
+    EventDeleteFilter filter = new EventDeleteFilter();
+    filter.setIds(Arrays.asList(ContentUris.parseId(byId)));
+    assertEquals(1, mManager.deleteEvents(mContext, filter));
+    assertEquals(0, rowCount(Events._SYNC_ID + "=?", "order-1"));
+
+    assertNotNull(mManager.upsertEvent(model("by title"), "order-2"));
+    assertEquals(1, mManager.deleteCalendarEventCount(mContext, "by title"));
+    assertEquals(0, rowCount(Events._SYNC_ID + "=?", "order-2"));
+
+    assertNotNull(mManager.upsertEvent(model("by range"), "order-3"));
+    EventDeleteFilter range = new EventDeleteFilter();
+    range.setRange(1556640000000L, 1556641800000L);
+    assertEquals(2, mManager.deleteEvents(mContext, range));
+    assertEquals(0, rowCount(Events._SYNC_ID + "=?", "order-3"));
+    assertEquals(0, rowCount(null));
+  }
+
+  @Test
+  public void updateEventMissingRowReturnsFalse() {
+    EventModel event = new EventModel();
+    event.setId(MISSING_ID);
+    event.setTitle("missing");
+    assertFalse(mManager.updateEvent(mContext, event));
+    // 没有写入，修改标记保留
+    assertTrue((event.getDirtyFields() & EventModel.FIELD_TITLE) != 0);
+
+    EventModel existing = mManager.queryEvents(mContext, null, false).get(0);
+    existing.setTitle("renamed");
+    assertTrue(mManager.updateEvent(mContext, existing));
+    assertEquals(0, existing.getDirtyFields());
+  }
+
+  @Test
+  public void updateReminderMissingRowReturnsFalse() {
+    ReminderModel reminder = new ReminderModel();
+    reminder.setId(MISSING_ID);
+    reminder.setMinutes(10);
+    reminder.setMethod(CalendarContract.Reminders.METHOD_ALERT);
+    assertFalse(mManager.updateReminder(mContext, reminder));
+
+    EventModel existing = mManager.queryEvents(mContext, null, true).get(0);
+    ReminderModel stored = existing.getReminders().get(0);
+    stored.setMinutes(10);
+    assertTrue(mManager.updateReminder(mContext, stored));
+  }
+
+  @Test
+  public void addCalendarEventFailureReturnsFalse() {
+    mProvider.setFailInserts(true);
+    assertFalse(mManager.addCalendarEvent(mContext, model("rejected")));
+    mProvider.setFailInserts(false);
+    assertEquals(1, mManager.queryEvents(mContext, null, false).size());
+  }
+}
@@ -0,0 +1,62 @@
+package com.changxiao.calendardemo;
+
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * LatencyHistogram 分桶、CalendarMetrics 快照单元测试
+ */
+public class CalendarMetricsTest {
+
+  @Test
+  public void bucketsAreContiguous() {
+    assertEquals(0, LatencyHistogram.bucketLowerBound(0));
+    for (int i = 1; i < LatencyHistogram.BUCKET_COUNT; i++) {
+      assertEquals(LatencyHistogram.bucketUpperBound(i - 1) + 1, LatencyHistogram.bucketLowerBound(i));
+    }
+    for (long micros = 0; micros < 100000; micros++) {
+      int index = LatencyHistogram.bucketIndex(micros);
+      assertTrue(LatencyHistogram.bucketLowerBound(index) <= micros);
+      assertTrue(LatencyHistogram.bucketUpperBound(index) >= micros);
+    }
+    assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void percentilesWithinBucketError() {
+    CalendarMetrics metrics = new CalendarMetrics();
+    for (int i = 1; i <= 1000; i++) {
+      metrics.onOperation(CalendarOperation.QUERY_EVENTS, i, 2, i % 100 == 0);
+    }
+    OperationMetrics query = metrics.snapshot(false).get(0);
+    assertEquals(CalendarOperation.QUERY_EVENTS, query.getOperation());
+    assertEquals(1000, query.getCount());
+    assertEquals(10, query.getErrors());
+    assertEquals(2000, query.getRows());
+    assertEquals(1000, query.getMaxMicros());
+    long p50 = query.getPercentileMicros(50);
+    assertTrue(String.valueOf(p50), p50 >= 500 && p50 <= 625);
+    long p99 = query.getPercentileMicros(99);
+    assertTrue(String.valueOf(p99), p99 >= 990 && p99 <= 1000);
+  }
+
+  @Test
+  public void snapshotWithReset() {
+    CalendarMetrics metrics = new CalendarMetrics();
+    metrics.onOperation(CalendarOperation.ADD_CALENDAR_EVENT, 1200, 1, false);
+    metrics.onOperation(CalendarOperation.ACCOUNT_LOOKUP, 300, 1, false);
+
+    List<OperationMetrics> first = metrics.snapshot(true);
+    assertEquals(2, first.size());
+    assertTrue(metrics.snapshot(false).isEmpty());
+
+    metrics.onOperation(CalendarOperation.ADD_CALENDAR_EVENT, 800, 0, true);
+    List<OperationMetrics> second = metrics.snapshot(false);
+    assertEquals(1, second.size());
+    assertEquals(1, second.get(0).getCount());
+    assertEquals(1, second.get(0).getErrors());
+    assertEquals(800, second.get(0).getMaxMicros());
+  }
+}
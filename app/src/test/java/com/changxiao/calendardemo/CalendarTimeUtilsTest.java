@@ -0,0 +1,86 @@
+package com.changxiao.calendardemo;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * CalendarTimeUtils 单元测试，与 java.util.Calendar 的结果对照
+ */
+public class CalendarTimeUtilsTest {
+
+  private static final TimeZone SHANGHAI = TimeZone.getTimeZone("Asia/Shanghai");
+  private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+
+  private static long localMidnight(long millis, TimeZone zone) {
+    Calendar calendar = Calendar.getInstance(zone);
+    calendar.setTimeInMillis(millis);
+    calendar.set(Calendar.HOUR_OF_DAY, 0);
+    calendar.set(Calendar.MINUTE, 0);
+    calendar.set(Calendar.SECOND, 0);
+    calendar.set(Calendar.MILLISECOND, 0);
+    return calendar.getTimeInMillis();
+  }
+
+  @Test
+  public void startOfDayMatchesCalendar() {
+    TimeZone[] zones = { SHANGHAI, NEW_YORK, TimeZone.getTimeZone("UTC") };
+    for (TimeZone zone : zones) {
+      // 覆盖 1969 年（负数时间）到 2030 年，包括纽约夏令时切换的日期
+      for (long t = -86400000L * 400; t < 1900000000000L; t += 86400000L * 7 + 3600000L * 5 + 17) {
+        assertEquals(zone.getID() + " " + t, localMidnight(t, zone), CalendarTimeUtils.startOfDay(t, zone));
+      }
+    }
+  }
+
+  @Test
+  public void allDayUsesStartDateAsUtcMidnight() {
+    // 2019-05-01 23:30 +08:00，上海的 5 月 1 日
+    long start = 1556724600000L;
+    long day = 1556668800000L; // 2019-05-01 00:00 UTC
+    assertEquals(day, CalendarTimeUtils.allDayStart(start, SHANGHAI));
+    assertEquals(day + CalendarTimeUtils.MILLIS_PER_DAY, CalendarTimeUtils.allDayEnd(start, start, SHANGHAI));
+    // 结束在 5 月 3 日 10:00，共三天
+    long end = start + CalendarTimeUtils.MILLIS_PER_DAY + 10 * 3600000L + 30 * 60000L;
+    assertEquals(day + 3 * CalendarTimeUtils.MILLIS_PER_DAY, CalendarTimeUtils.allDayEnd(start, end, SHANGHAI));
+    // 结束恰好为本地零点时不包含那一天
+    long nextMidnight = localMidnight(start, SHANGHAI) + CalendarTimeUtils.MILLIS_PER_DAY;
+    assertEquals(day + CalendarTimeUtils.MILLIS_PER_DAY, CalendarTimeUtils.allDayEnd(start, nextMidnight, SHANGHAI));
+  }
+
+  @Test
+  public void epochDayOfNegativeTime() {
+    assertEquals(-1, CalendarTimeUtils.toEpochDay(-1, TimeZone.getTimeZone("UTC")));
+    assertEquals(0, CalendarTimeUtils.toEpochDay(-1, SHANGHAI));
+  }
+
+  @Test
+  public void cachesTimeZones() {
+    assertSame(CalendarTimeUtils.getTimeZone("Asia/Shanghai"), CalendarTimeUtils.getTimeZone("Asia/Shanghai"));
+    assertSame(CalendarTimeUtils.getDefaultTimeZone(), CalendarTimeUtils.getTimeZone(""));
+  }
+
+  @Test
+  public void yearMonthMatchesCalendar() {
+    TimeZone utc = TimeZone.getTimeZone("UTC");
+    Calendar calendar = Calendar.getInstance(utc);
+    for (long day = -800000; day < 800000; day += 13) {
+      calendar.setTimeInMillis(day * CalendarTimeUtils.MILLIS_PER_DAY);
+      int year = calendar.get(Calendar.YEAR);
+      if (calendar.get(Calendar.ERA) != GregorianCalendar.AD || year < 1600) {
+        // Calendar 在 1582 年之前使用儒略历，只对照公历部分
+        continue;
+      }
+      int month = calendar.get(Calendar.MONTH) + 1;
+      int dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
+      assertEquals(year * 100 + month, CalendarTimeUtils.toYearMonth(day));
+      assertEquals(day, CalendarTimeUtils.toEpochDay(year, month, dayOfMonth));
+    }
+    assertEquals(197001, CalendarTimeUtils.toYearMonth(0));
+    assertEquals(196912, CalendarTimeUtils.toYearMonth(-1));
+    assertEquals(0, CalendarTimeUtils.toEpochDay(1970, 1, 1));
+  }
+}
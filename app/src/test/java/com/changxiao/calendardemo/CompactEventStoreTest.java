@@ -0,0 +1,108 @@
+package com.changxiao.calendardemo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * CompactEventStore、StringTable 单元测试
+ */
+public class CompactEventStoreTest {
+
+  private static EventModel event(long id, long calendarId, long start, String title) {
+    EventModel event = new EventModel();
+    event.setId(id);
+    event.setCalendarId(calendarId);
+    event.setTitle(title);
+    event.setDtstart(start);
+    event.setDtend(start + 1800000L);
+    event.setEventTimezone("Asia/Shanghai");
+    event.setAllDay(id % 2 == 0);
+    event.setHasAlarm(true);
+    event.setAvailability(2);
+    event.setAccessLevel(3);
+    event.setEventStatus(1);
+    return event;
+  }
+
+  @Test
+  public void roundTripsEventFields() {
+    EventModel source = event(7, 3, 1556640000000L, "会议");
+    source.setDescription(null);
+    CompactEventStore store = CompactEventStore.of(Collections.singletonList(source));
+    EventModel event = store.toEventModel(0);
+    assertEquals(7, event.getId());
+    assertEquals(3, event.getCalendarId());
+    assertEquals("会议", event.getTitle());
+    assertNull(event.getDescription());
+    assertEquals(1556640000000L, event.getDtstart());
+    assertEquals("Asia/Shanghai", event.getEventTimezone());
+    assertFalse(event.isAllDay());
+    assertTrue(event.isHasAlarm());
+    assertEquals(2, event.getAvailability());
+    assertEquals(3, event.getAccessLevel());
+    assertEquals(1, event.getEventStatus());
+  }
+
+  @Test
+  public void deduplicatesStrings() {
+    List<EventModel> events = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      events.add(event(i, 1, i * 1000L, "title " + (i % 10)));
+    }
+    CompactEventStore store = CompactEventStore.of(events);
+    // 10 个标题 + 1 个时区
+    assertEquals(11, store.getStringCount());
+    assertSame(store.getTitle(3), store.getTitle(13));
+  }
+
+  @Test
+  public void internsCharArraysWithoutDuplicates() {
+    StringTable table = new StringTable();
+    int first = table.intern("abc");
+    char[] data = new char[]{ 'a', 'b', 'c', 'x' };
+    assertEquals(first, table.intern(data, 3));
+    assertEquals(StringTable.NULL, table.intern(null));
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i + 1, table.intern("s" + i));
+    }
+    assertEquals(first, table.intern("abc"));
+    assertEquals("s42", table.get(table.intern("s42".toCharArray(), 3)));
+  }
+
+  @Test
+  public void sortsAndFiltersWithoutChangingSource() {
+    Random random = new Random(5);
+    List<EventModel> events = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      events.add(event(i, i % 3, random.nextInt(100) * 60000L, "t"));
+    }
+    CompactEventStore store = CompactEventStore.of(events);
+    CompactEventStore sorted = store.sortByStart();
+    assertEquals(500, sorted.size());
+    for (int i = 1; i < sorted.size(); i++) {
+      assertTrue(sorted.getDtstart(i - 1) < sorted.getDtstart(i)
+          || (sorted.getDtstart(i - 1) == sorted.getDtstart(i) && sorted.getId(i - 1) < sorted.getId(i)));
+    }
+    assertEquals(0, store.getId(0));
+
+    CompactEventStore calendar = sorted.filterCalendar(1);
+    for (int i = 0; i < calendar.size(); i++) {
+      assertEquals(1, calendar.getCalendarId(i));
+    }
+    CompactEventStore overlapping = store.filterOverlapping(10 * 60000L, 20 * 60000L);
+    int expected = 0;
+    for (EventModel event : events) {
+      if (event.getDtstart() < 20 * 60000L && event.getDtend() > 10 * 60000L) {
+        expected++;
+      }
+    }
+    assertEquals(expected, overlapping.size());
+    assertEquals(overlapping.size(), overlapping.asList().size());
+    assertEquals(overlapping.getId(0), overlapping.asList().get(0).getId());
+  }
+}
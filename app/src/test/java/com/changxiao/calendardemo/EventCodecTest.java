@@ -0,0 +1,64 @@
+package com.changxiao.calendardemo;
+
+import android.content.ContentValues;
+import android.provider.CalendarContract.Events;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.*;
+
+/**
+ * EventCodec 编码、解码与修改字段跟踪
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EventCodecTest {
+
+  private static CalendarRemindModel model() {
+    CalendarRemindModel model = new CalendarRemindModel();
+    model.setTitle("title");
+    model.setDescription("description");
+    model.setStartDate(1556640000000L);
+    model.setEndDate(1556641800000L);
+    model.setHasAlarm(1);
+    model.setAvailability(1);
+    model.setAccessLevel(3);
+    return model;
+  }
+
+  @Test
+  public void insertValuesContainEveryColumn() {
+    ContentValues values = EventCodec.toInsertValues(5, model());
+    assertEquals(Integer.valueOf(5), values.getAsInteger(Events.CALENDAR_ID));
+    assertEquals(Integer.valueOf(1), values.getAsInteger(Events.STATUS));
+    assertEquals(Integer.valueOf(1), values.getAsInteger(Events.AVAILABILITY));
+    assertEquals(Integer.valueOf(3), values.getAsInteger(Events.ACCESS_LEVEL));
+    assertEquals(EventCodec.DEFAULT_TIMEZONE, values.getAsString(Events.EVENT_TIMEZONE));
+    assertFalse(values.containsKey(Events.EVENT_LOCATION));
+  }
+
+  @Test
+  public void decodedEventHasNoDirtyFields() {
+    EventModel event = EventCodec.decode(9, EventCodec.toInsertValues(5, model()));
+    assertEquals(9, event.getId());
+    assertEquals("title", event.getTitle());
+    assertEquals(0, event.getDirtyFields());
+    assertEquals(0, EventCodec.toUpdateValues(event).size());
+  }
+
+  @Test
+  public void updateValuesContainOnlyDirtyFields() {
+    EventModel event = EventCodec.decode(9, EventCodec.toInsertValues(5, model()));
+    event.setTitle("changed");
+    event.setEventLocation(null);
+    ContentValues values = EventCodec.toUpdateValues(event);
+    assertEquals(2, values.size());
+    assertEquals("changed", values.getAsString(Events.TITLE));
+    assertTrue(values.containsKey(Events.EVENT_LOCATION));
+    assertNull(values.get(Events.EVENT_LOCATION));
+
+    event.clearDirtyFields();
+    event.markDirty(EventModel.ALL_FIELDS);
+    assertEquals(12, EventCodec.toUpdateValues(event).size());
+  }
+}
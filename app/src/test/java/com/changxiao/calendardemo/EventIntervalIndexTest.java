@@ -0,0 +1,149 @@
+package com.changxiao.calendardemo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * EventIntervalIndex 单元测试，与逐个比较的结果对照
+ */
+public class EventIntervalIndexTest {
+
+  private static EventModel event(long id, long start, long end) {
+    EventModel event = new EventModel();
+    event.setId(id);
+    event.setDtstart(start);
+    event.setDtend(end);
+    return event;
+  }
+
+  private static List<Long> bruteForce(List<EventModel> events, long t0, long t1) {
+    List<Long> ids = new ArrayList<>();
+    for (EventModel event : events) {
+      long end = Math.max(event.getDtend(), event.getDtstart() + 1);
+      if (event.getDtstart() < t1 && end > t0) {
+        ids.add(event.getId());
+      }
+    }
+    return ids;
+  }
+
+  private static List<Long> ids(List<EventModel> events) {
+    List<Long> ids = new ArrayList<>();
+    for (EventModel event : events) {
+      ids.add(event.getId());
+    }
+    return ids;
+  }
+
+  @Test
+  public void overlapsAndActiveAt() {
+    EventIntervalIndex index = new EventIntervalIndex();
+    List<EventModel> events = new ArrayList<>();
+    events.add(event(1, 0, 10));
+    events.add(event(2, 5, 15));
+    events.add(event(3, 20, 30));
+    events.add(event(4, 25, 25)); // 开始、结束相同
+    index.build(events);
+
+    assertEquals(4, index.size());
+    assertEquals("[1, 2]", ids(index.queryOverlaps(8, 12)).toString());
+    assertEquals("[2]", ids(index.queryOverlaps(10, 20)).toString());
+    assertEquals("[3, 4]", ids(index.queryActiveAt(25)).toString());
+    assertTrue(index.queryOverlaps(15, 20).isEmpty());
+    assertFalse(index.hasOverlap(15, 20));
+    assertTrue(index.hasOverlap(29, 40));
+  }
+
+  @Test
+  public void putReplacesAndRemoveDeletes() {
+    EventIntervalIndex index = new EventIntervalIndex();
+    index.put(event(1, 0, 10));
+    index.put(event(1, 100, 110));
+    assertEquals(1, index.size());
+    assertTrue(index.queryOverlaps(0, 10).isEmpty());
+    assertEquals(1, index.queryOverlaps(105, 106).size());
+
+    assertTrue(index.remove(1));
+    assertFalse(index.remove(1));
+    assertTrue(index.queryOverlaps(Long.MIN_VALUE, Long.MAX_VALUE).isEmpty());
+  }
+
+  @Test
+  public void skipsRecurringAndOtherCalendars() {
+    EventIntervalIndex index = new EventIntervalIndex();
+    index.setCalendarIds(new long[]{ 7, 3 });
+    EventModel recurring = event(1, 100, 0); // DTEND 为空
+    recurring.setCalendarId(3);
+    index.onEventSaved(recurring);
+    assertEquals(0, index.size());
+
+    EventModel own = event(2, 0, 10);
+    own.setCalendarId(7);
+    index.onEventSaved(own);
+    EventModel other = event(3, 0, 10);
+    other.setCalendarId(1);
+    index.onEventSaved(other);
+    assertEquals("[2]", ids(index.queryOverlaps(0, 10)).toString());
+
+    // 移到其它日历后移出索引
+    EventModel moved = event(2, 0, 10);
+    moved.setCalendarId(1);
+    index.onEventSaved(moved);
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  public void allDayEventsCoverLocalDay() {
+    EventIntervalIndex index = new EventIntervalIndex();
+    index.setTimeZone(TimeZone.getTimeZone("Asia/Shanghai"));
+    // 2019-05-10 全天，存为UTC零点；上海当天零点为UTC前一天16点
+    long day = CalendarTimeUtils.toEpochDay(2019, 5, 10) * CalendarTimeUtils.MILLIS_PER_DAY;
+    long hour = 60 * 60 * 1000;
+    EventModel allDay = event(1, day, day + CalendarTimeUtils.MILLIS_PER_DAY);
+    allDay.setAllDay(true);
+    index.put(allDay);
+    assertEquals("[1]", ids(index.queryActiveAt(day - 4 * hour)).toString());
+    assertTrue(index.queryActiveAt(day + CalendarTimeUtils.MILLIS_PER_DAY - 4 * hour).isEmpty());
+
+    // 时区变化后按新的时区重新放入
+    index.setTimeZone(TimeZone.getTimeZone(CalendarTimeUtils.TIMEZONE_UTC));
+    assertTrue(index.queryActiveAt(day - 4 * hour).isEmpty());
+    assertEquals("[1]", ids(index.queryActiveAt(day + CalendarTimeUtils.MILLIS_PER_DAY - 4 * hour)).toString());
+  }
+
+  @Test
+  public void matchesBruteForce() {
+    Random random = new Random(42);
+    EventIntervalIndex index = new EventIntervalIndex();
+    List<EventModel> events = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      long start = random.nextInt(100000);
+      EventModel event = event(i, start, start + random.nextInt(500));
+      events.add(event);
+      index.put(event);
+    }
+    for (int i = 0; i < 500; i += 3) {
+      index.remove(events.get(i).getId());
+    }
+    List<EventModel> remaining = new ArrayList<>();
+    for (int i = 0; i < events.size(); i++) {
+      if (i >= 500 || i % 3 != 0) {
+        remaining.add(events.get(i));
+      }
+    }
+    for (int i = 0; i < 200; i++) {
+      long t0 = random.nextInt(100000);
+      long t1 = t0 + random.nextInt(2000);
+      List<Long> expected = bruteForce(remaining, t0, t1);
+      List<Long> actual = ids(index.queryOverlaps(t0, t1));
+      assertEquals(expected.size(), actual.size());
+      assertTrue(actual.containsAll(expected));
+      assertEquals(!expected.isEmpty(), index.hasOverlap(t0, t1));
+    }
+  }
+}
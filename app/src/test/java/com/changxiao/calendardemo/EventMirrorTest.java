@@ -0,0 +1,139 @@
+package com.changxiao.calendardemo;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.provider.CalendarContract;
+import android.provider.CalendarContract.Events;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * EventMirror 的加载与增量刷新，provider 使用内存中的 FakeCalendarProvider
+ * 直接通过 ContentResolver 写入模拟其它应用的修改，手动调用 refresh 代替变化通知
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EventMirrorTest {
+
+  private Context mContext;
+  private CalendarManager mManager;
+  private EventMirror mMirror;
+  private long mCalendarId;
+
+  @Before
+  public void setUp() {
+    mContext = RuntimeEnvironment.application;
+    Robolectric.buildContentProvider(FakeCalendarProvider.class).create(CalendarContract.AUTHORITY);
+    mManager = CalendarManager.getInstance();
+    mManager.init(mContext);
+    assertTrue(mManager.addCalendarEvent(mContext, model("first")));
+    mCalendarId = mManager.queryEvents(mContext, null, false).get(0).getCalendarId();
+    mMirror = mManager.getEventMirror();
+    assertNotNull(mMirror);
+  }
+
+  @After
+  public void tearDown() {
+    mManager.releaseEventMirror();
+  }
+
+  private static CalendarRemindModel model(String title) {
+    CalendarRemindModel model = new CalendarRemindModel();
+    model.setTitle(title);
+    model.setStartDate(1556640000000L);
+    model.setEndDate(1556641800000L);
+    return model;
+  }
+
+  private Uri insertExternally(String title) {
+    ContentValues values = new ContentValues();
+    values.put(Events.CALENDAR_ID, mCalendarId);
+    values.put(Events.TITLE, title);
+    values.put(Events.DTSTART, 1556650000000L);
+    values.put(Events.DTEND, 1556651800000L);
+    values.put(Events.DIRTY, 1);
+    return mContext.getContentResolver().insert(Events.CONTENT_URI, values);
+  }
+
+  @Test
+  public void loadsAppCalendarEvents() {
+    assertEquals(1, mMirror.size());
+    assertEquals("first", mManager.queryAppEvents(mContext).get(0).getTitle());
+  }
+
+  @Test
+  public void writesThroughManagerUpdateMirrorImmediately() {
+    assertNotNull(mManager.insertEvent(model("second")));
+    assertEquals(2, mMirror.size());
+  }
+
+  @Test
+  public void partialUpdateKeepsFullRowInMirror() {
+    long id = mManager.queryEvents(mContext, null, false).get(0).getId();
+    EventModel partial = new EventModel();
+    partial.setId(id);
+    partial.setTitle("renamed");
+    assertTrue(mManager.updateEvent(mContext, partial));
+    EventModel mirrored = mMirror.getEvent(id);
+    assertEquals("renamed", mirrored.getTitle());
+    assertEquals(1556640000000L, mirrored.getDtstart());
+    assertEquals(mCalendarId, mirrored.getCalendarId());
+  }
+
+  @Test
+  public void partialUpdateReindexesSearch() {
+    CalendarRemindModel model = model("weekly sync");
+    model.setDescription("room 301");
+    long id = ContentUris.parseId(mManager.insertEvent(model));
+    EventSearchIndex index = mManager.getSearchIndex();
+    assertArrayEquals(new long[]{ id }, index.search("sync", EventSearchIndex.FIELDS_ALL));
+
+    // 只写入标题，通知中的整行让索引去掉旧标题、保留备注
+    EventModel partial = new EventModel();
+    partial.setId(id);
+    partial.setTitle("standup");
+    assertTrue(mManager.updateEvent(mContext, partial));
+    assertArrayEquals(new long[0], index.search("sync", EventSearchIndex.FIELDS_ALL));
+    assertArrayEquals(new long[]{ id }, index.search("standup", EventSearchIndex.FIELDS_ALL));
+    assertArrayEquals(new long[]{ id }, index.search("room", EventSearchIndex.FIELDS_ALL));
+    assertTrue(mManager.searchEvents(mContext, "weekly", EventSearchIndex.FIELDS_ALL, false, false).isEmpty());
+  }
+
+  @Test
+  public void refreshPicksUpExternalChanges() {
+    Uri uri = insertExternally("external");
+    long id = ContentUris.parseId(uri);
+    mMirror.refresh();
+    assertEquals("external", mMirror.getEvent(id).getTitle());
+
+    ContentValues values = new ContentValues();
+    values.put(Events.TITLE, "external changed");
+    values.put(Events.DIRTY, 1);
+    mContext.getContentResolver().update(uri, values, null, null);
+    mMirror.refresh();
+    assertEquals("external changed", mMirror.getEvent(id).getTitle());
+
+    mContext.getContentResolver().delete(uri, null, null);
+    mMirror.refresh();
+    assertNull(mMirror.getEvent(id));
+    assertEquals(1, mMirror.size());
+  }
+
+  @Test
+  public void refreshWithoutChangesReadsOnlyKeys() {
+    insertExternally("external");
+    mMirror.refresh();
+    IpcStats stats = mManager.getIpcStats();
+    stats.reset();
+    mMirror.refresh();
+    assertEquals(1, stats.getRoundTrips(CalendarOperation.EVENT_MIRROR_REFRESH));
+  }
+}
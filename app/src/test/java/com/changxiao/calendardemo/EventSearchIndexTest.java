@@ -0,0 +1,96 @@
+package com.changxiao.calendardemo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * EventSearchIndex 单元测试，与逐个 indexOf 的结果对照
+ */
+public class EventSearchIndexTest {
+
+  private static EventModel event(long id, String title, String description, String location) {
+    EventModel event = new EventModel();
+    event.setId(id);
+    event.setTitle(title);
+    event.setDescription(description);
+    event.setEventLocation(location);
+    return event;
+  }
+
+  @Test
+  public void substringAndPrefix() {
+    EventSearchIndex index = new EventSearchIndex();
+    List<EventModel> events = new ArrayList<>();
+    events.add(event(1, "Team Meeting", "weekly sync", "Room 301"));
+    events.add(event(2, "项目评审会议", null, "三楼会议室"));
+    events.add(event(3, "Lunch", "meet at the gate", null));
+    index.build(events);
+
+    assertArrayEquals(new long[]{ 1, 3 }, index.search("MEET", EventSearchIndex.FIELDS_ALL));
+    assertArrayEquals(new long[]{ 1 }, index.search("meet", EventModel.FIELD_TITLE));
+    assertArrayEquals(new long[]{ 2 }, index.search("会议", EventSearchIndex.FIELDS_ALL));
+    assertArrayEquals(new long[]{ 2 }, index.search("会议室", EventModel.FIELD_EVENT_LOCATION));
+    assertArrayEquals(new long[0], index.search("会议室", EventModel.FIELD_TITLE));
+    assertArrayEquals(new long[0], index.search("meeting room", EventSearchIndex.FIELDS_ALL));
+    assertArrayEquals(new long[]{ 1, 2, 3 }, index.search("", EventSearchIndex.FIELDS_ALL));
+
+    assertArrayEquals(new long[]{ 1 }, index.searchPrefix("sync", EventSearchIndex.FIELDS_ALL));
+    assertArrayEquals(new long[0], index.searchPrefix("ync", EventSearchIndex.FIELDS_ALL));
+    assertArrayEquals(new long[]{ 1 }, index.searchPrefix("30", EventSearchIndex.FIELDS_ALL));
+
+    EventModel renamed = event(1, "Standup", null, null);
+    index.onEventSaved(renamed);
+    assertArrayEquals(new long[]{ 3 }, index.search("meet", EventSearchIndex.FIELDS_ALL));
+    index.onEventsDeleted(Arrays.asList(3L));
+    assertArrayEquals(new long[0], index.search("meet", EventSearchIndex.FIELDS_ALL));
+    assertEquals(2, index.size());
+  }
+
+  @Test
+  public void matchesBruteForce() {
+    Random random = new Random(25);
+    String alphabet = "abcAB 会议";
+    List<EventModel> events = new ArrayList<>();
+    EventSearchIndex index = new EventSearchIndex();
+    for (int i = 0; i < 300; i++) {
+      EventModel event = event(i, randomText(random, alphabet, 12), randomText(random, alphabet, 20), null);
+      events.add(event);
+      index.put(event);
+    }
+    for (int i = 0; i < 50; i++) {
+      int victim = random.nextInt(events.size());
+      index.remove(events.remove(victim).getId());
+    }
+    for (int round = 0; round < 200; round++) {
+      String query = randomText(random, alphabet, 5);
+      boolean prefix = random.nextBoolean();
+      List<Long> expected = new ArrayList<>();
+      for (EventModel event : events) {
+        if (EventSearchIndex.matches(event, query, EventSearchIndex.FIELDS_ALL, prefix)) {
+          expected.add(event.getId());
+        }
+      }
+      long[] actual = prefix
+          ? index.searchPrefix(query, EventSearchIndex.FIELDS_ALL)
+          : index.search(query, EventSearchIndex.FIELDS_ALL);
+      assertEquals(query, expected.size(), actual.length);
+      for (int i = 0; i < actual.length; i++) {
+        assertEquals(query, (long) expected.get(i), actual[i]);
+      }
+    }
+  }
+
+  private static String randomText(Random random, String alphabet, int maxLength) {
+    int length = 1 + random.nextInt(maxLength);
+    StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return builder.toString();
+  }
+}
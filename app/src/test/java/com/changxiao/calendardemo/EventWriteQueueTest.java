@@ -0,0 +1,204 @@
+package com.changxiao.calendardemo;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.CalendarContract;
+import android.provider.CalendarContract.Events;
+import android.provider.CalendarContract.Reminders;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * EventWriteQueue 的合并、写入时机和写入失败
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EventWriteQueueTest {
+
+  private static final long TIMEOUT = 5000;
+
+  private Context mContext;
+  private FakeCalendarProvider mProvider;
+  private EventWriteQueue mQueue;
+
+  @Before
+  public void setUp() {
+    mContext = RuntimeEnvironment.application;
+    mProvider = Robolectric.buildContentProvider(FakeCalendarProvider.class).create(CalendarContract.AUTHORITY).get();
+    CalendarManager manager = CalendarManager.getInstance();
+    manager.init(mContext);
+    mQueue = new EventWriteQueue(mContext, manager);
+    // 默认不按时间写入，由各个用例设置
+    mQueue.setFlushDelay(60 * 1000);
+  }
+
+  private long insertEvent(String title) {
+    ContentValues values = new ContentValues();
+    values.put(Events.TITLE, title);
+    values.put(Events.DESCRIPTION, "");
+    return ContentUris.parseId(mContext.getContentResolver().insert(Events.CONTENT_URI, values));
+  }
+
+  private String column(long eventId, String column) {
+    Cursor cursor = mContext.getContentResolver().query(ContentUris.withAppendedId(Events.CONTENT_URI, eventId),
+        new String[]{ column }, null, null, null);
+    try {
+      assertTrue(cursor.moveToFirst());
+      return cursor.getString(0);
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /** 等待后台写入 */
+  private void awaitTitle(long eventId, String title) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (!title.equals(column(eventId, Events.TITLE))) {
+      assertTrue("timeout waiting for " + title, System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  private static EventModel event(long id) {
+    EventModel model = new EventModel();
+    model.setId(id);
+    return model;
+  }
+
+  @Test
+  public void mergesColumnsLastWriterWins() throws Exception {
+    long id = insertEvent("old");
+    EventModel first = event(id);
+    first.setTitle("first");
+    first.setDescription("note");
+    mQueue.updateEvent(first);
+    EventModel second = event(id);
+    second.setTitle("second");
+    mQueue.updateEvent(second);
+    assertEquals(1, mQueue.getPendingCount());
+
+    assertTrue(mQueue.flush().get());
+    assertEquals("second", column(id, Events.TITLE));
+    assertEquals("note", column(id, Events.DESCRIPTION));
+    assertEquals(0, mQueue.getPendingCount());
+    assertEquals(0, second.getDirtyFields());
+  }
+
+  @Test
+  public void flushesWhenMaxPendingReached() throws Exception {
+    mQueue.setMaxPending(2);
+    long a = insertEvent("a");
+    long b = insertEvent("b");
+    EventModel modelA = event(a);
+    modelA.setTitle("a2");
+    mQueue.updateEvent(modelA);
+    EventModel modelB = event(b);
+    modelB.setTitle("b2");
+    mQueue.updateEvent(modelB);
+
+    awaitTitle(a, "a2");
+    awaitTitle(b, "b2");
+  }
+
+  @Test
+  public void flushesAfterDelay() throws Exception {
+    mQueue.setFlushDelay(20);
+    long id = insertEvent("old");
+    EventModel model = event(id);
+    model.setTitle("new");
+    mQueue.updateEvent(model);
+    assertEquals("old", column(id, Events.TITLE));
+
+    awaitTitle(id, "new");
+  }
+
+  @Test
+  public void explicitFlushWritesEventsAndReminders() throws Exception {
+    long id = insertEvent("old");
+    ContentValues values = new ContentValues();
+    values.put(Reminders.EVENT_ID, id);
+    values.put(Reminders.MINUTES, 10);
+    long reminderId = ContentUris.parseId(mContext.getContentResolver().insert(Reminders.CONTENT_URI, values));
+    EventModel model = event(id);
+    model.setTitle("new");
+    mQueue.updateEvent(model);
+    ReminderModel reminder = new ReminderModel();
+    reminder.setId(reminderId);
+    reminder.setEventId(id);
+    reminder.setMinutes(30);
+    mQueue.updateReminder(reminder);
+    assertEquals(2, mQueue.getPendingCount());
+
+    assertTrue(mQueue.flush().get());
+    assertEquals("new", column(id, Events.TITLE));
+    Cursor cursor = mContext.getContentResolver().query(ContentUris.withAppendedId(Reminders.CONTENT_URI, reminderId),
+        new String[]{ Reminders.MINUTES }, null, null, null);
+    try {
+      assertTrue(cursor.moveToFirst());
+      assertEquals(30, cursor.getInt(0));
+    } finally {
+      cursor.close();
+    }
+  }
+
+  @Test
+  public void keepsDirtyFieldChangedAfterEnqueue() throws Exception {
+    long id = insertEvent("old");
+    EventModel model = event(id);
+    model.setTitle("queued");
+    model.setDescription("note");
+    mQueue.updateEvent(model);
+    // 入队后又修改，没有重新提交
+    model.setTitle("edited");
+
+    assertTrue(mQueue.flush().get());
+    assertEquals("queued", column(id, Events.TITLE));
+    assertEquals(EventModel.FIELD_TITLE, model.getDirtyFields());
+  }
+
+  @Test
+  public void failedUpdateIsRetriedAloneThenDropped() throws Exception {
+    long good = insertEvent("good");
+    long bad = insertEvent("bad");
+    mProvider.setFailUpdateId(bad);
+    final AtomicReference<long[]> dropped = new AtomicReference<>();
+    final CountDownLatch latch = new CountDownLatch(1);
+    mQueue.addOnDropListener(new EventWriteQueue.OnDropListener() {
+      @Override
+      public void onDropped(long[] eventIds, long[] reminderIds) {
+        dropped.set(eventIds);
+        latch.countDown();
+      }
+    });
+    EventModel goodModel = event(good);
+    goodModel.setTitle("good2");
+    mQueue.updateEvent(goodModel);
+    EventModel badModel = event(bad);
+    badModel.setTitle("bad2");
+    mQueue.updateEvent(badModel);
+    // 重新入队后很快重试
+    mQueue.setFlushDelay(10);
+
+    assertFalse(mQueue.flush().get());
+    // 同一批中成功的更新已写入，只有失败的更新重新入队
+    assertEquals("good2", column(good, Events.TITLE));
+    assertEquals(0, goodModel.getDirtyFields());
+
+    assertTrue(latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    assertArrayEquals(new long[]{ bad }, dropped.get());
+    assertEquals("bad", column(bad, Events.TITLE));
+    assertEquals(0, mQueue.getPendingCount());
+    // 放弃后保留修改标记，可以重新提交
+    assertEquals(EventModel.FIELD_TITLE, badModel.getDirtyFields());
+  }
+}
@@ -0,0 +1,199 @@
+package com.changxiao.calendardemo;
+
+import android.content.ContentProvider;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.provider.CalendarContract;
+import android.provider.CalendarContract.Events;
+import android.provider.CalendarContract.Reminders;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 测试用的日历 provider，数据保存在内存中，用于统计 CalendarManager 的 IPC 次数
+ *
+ * 只按uri的第一段区分表（calendars、events、reminders、attendees）；查询条件只支持用 AND 连接的
+ * "列=?"、"列=数字"、"列!=数字"、"列 IN (?,...)"，其它条件忽略（视为满足）；不发送变化通知。
+ * 与 CalendarProvider 一样，插入提醒时把所属事件的 HAS_ALARM 置为1；不是同步适配器（uri 不带 CALLER_IS_SYNCADAPTER=true）
+ * 删除有 _SYNC_ID 的事件时只置 DELETED=1、DIRTY=1，不删除行。
+ * {@link #setFailInserts(boolean)} 后插入抛出 SQLiteException，模拟账户已被删除等写入失败；
+ * {@link #setFailUpdateId(long)} 后更新该id的行时抛出 SQLiteException，模拟单条数据违反约束。
+ */
+public class FakeCalendarProvider extends ContentProvider {
+
+  private static final Pattern COMPARE = Pattern.compile("(\\w+)\\s*(=|!=)\\s*(\\?|-?\\d+)");
+  private static final Pattern IN = Pattern.compile("(\\w+)\\s+IN\\s*\\(([?,\\s]*)\\)");
+
+  private final Map<String, List<ContentValues>> mTables = new HashMap<>();
+  private long mNextId = 1;
+  private boolean mFailInserts;
+  private volatile long mFailUpdateId = -1;
+
+  @Override
+  public boolean onCreate() {
+    return true;
+  }
+
+  private List<ContentValues> table(Uri uri) {
+    String name = uri.getPathSegments().get(0);
+    List<ContentValues> rows = mTables.get(name);
+    if (rows == null) {
+      rows = new ArrayList<>();
+      mTables.put(name, rows);
+    }
+    return rows;
+  }
+
+  private List<ContentValues> select(Uri uri, String selection, String[] selectionArgs) {
+    List<ContentValues> result = new ArrayList<>();
+    long id = uri.getPathSegments().size() > 1 ? ContentUris.parseId(uri) : -1;
+    for (ContentValues row : table(uri)) {
+      if ((id < 0 || row.getAsLong(BaseColumns._ID) == id) && matches(row, selection, selectionArgs)) {
+        result.add(row);
+      }
+    }
+    return result;
+  }
+
+  private static boolean matches(ContentValues row, String selection, String[] selectionArgs) {
+    if (selection == null || selection.trim().isEmpty()) {
+      return true;
+    }
+    int arg = 0;
+    for (String term : selection.split(" AND ")) {
+      term = term.trim();
+      Matcher compare = COMPARE.matcher(term);
+      Matcher in = IN.matcher(term);
+      if (compare.matches() && compare.group(1).matches("\\d+")) {
+        // 1=1 之类的恒等式
+        continue;
+      } else if (compare.matches()) {
+        String expected = "?".equals(compare.group(3)) ? selectionArgs[arg++] : compare.group(3);
+        boolean equal = expected.equals(String.valueOf(row.get(compare.group(1))));
+        if (equal != "=".equals(compare.group(2))) {
+          return false;
+        }
+      } else if (in.matches()) {
+        boolean found = false;
+        String value = String.valueOf(row.get(in.group(1)));
+        for (int i = 0; i < in.group(2).replaceAll("[^?]", "").length(); i++) {
+          found |= selectionArgs[arg++].equals(value);
+        }
+        if (!found) {
+          return false;
+        }
+      } else {
+        arg += term.replaceAll("[^?]", "").length();
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+    MatrixCursor cursor = new MatrixCursor(projection);
+    for (ContentValues row : select(uri, selection, selectionArgs)) {
+      Object[] values = new Object[projection.length];
+      for (int i = 0; i < projection.length; i++) {
+        values[i] = row.get(projection[i]);
+      }
+      cursor.addRow(values);
+    }
+    return cursor;
+  }
+
+  @Override
+  public String getType(Uri uri) {
+    return null;
+  }
+
+  /**
+   * 与 SQLite 一样把 boolean 存成 1/0
+   */
+  private static ContentValues normalize(ContentValues values) {
+    ContentValues row = new ContentValues(values);
+    for (String key : values.keySet()) {
+      Object value = values.get(key);
+      if (value instanceof Boolean) {
+        row.put(key, (Boolean) value ? 1 : 0);
+      }
+    }
+    return row;
+  }
+
+  public void setFailInserts(boolean failInserts) {
+    mFailInserts = failInserts;
+  }
+
+  @Override
+  public Uri insert(Uri uri, ContentValues values) {
+    if (mFailInserts) {
+      throw new SQLiteException("insert rejected");
+    }
+    ContentValues row = normalize(values);
+    long id = mNextId++;
+    row.put(BaseColumns._ID, id);
+    table(uri).add(row);
+    Long eventId = row.getAsLong(Reminders.EVENT_ID);
+    if ("reminders".equals(uri.getPathSegments().get(0)) && eventId != null) {
+      for (ContentValues event : table(Events.CONTENT_URI)) {
+        if (eventId.equals(event.getAsLong(BaseColumns._ID))) {
+          event.put(Events.HAS_ALARM, 1);
+        }
+      }
+    }
+    return ContentUris.withAppendedId(uri.buildUpon().clearQuery().build(), id);
+  }
+
+  @Override
+  public int delete(Uri uri, String selection, String[] selectionArgs) {
+    List<ContentValues> matched = select(uri, selection, selectionArgs);
+    boolean softDelete = "events".equals(uri.getPathSegments().get(0))
+        && !"true".equals(uri.getQueryParameter(CalendarContract.CALLER_IS_SYNCADAPTER));
+    Iterator<ContentValues> iterator = table(uri).iterator();
+    int count = 0;
+    while (iterator.hasNext()) {
+      ContentValues row = iterator.next();
+      if (!matched.contains(row)) {
+        continue;
+      }
+      if (softDelete && row.get(Events._SYNC_ID) != null) {
+        // 等同步适配器把删除同步到服务器后再清除
+        row.put(Events.DELETED, 1);
+        row.put(Events.DIRTY, 1);
+      } else {
+        iterator.remove();
+      }
+      count++;
+    }
+    return count;
+  }
+
+  public void setFailUpdateId(long failUpdateId) {
+    mFailUpdateId = failUpdateId;
+  }
+
+  @Override
+  public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+    List<ContentValues> matched = select(uri, selection, selectionArgs);
+    for (ContentValues row : matched) {
+      if (row.getAsLong(BaseColumns._ID) == mFailUpdateId) {
+        throw new SQLiteException("update rejected");
+      }
+    }
+    for (ContentValues row : matched) {
+      row.putAll(normalize(values));
+    }
+    return matched.size();
+  }
+}
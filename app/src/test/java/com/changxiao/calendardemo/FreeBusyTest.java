@@ -0,0 +1,106 @@
+package com.changxiao.calendardemo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * FreeBusy 单元测试，与逐分钟标记的结果对照
+ */
+public class FreeBusyTest {
+
+  private static final long MINUTE = 60 * 1000L;
+  private static final TimeZone SHANGHAI = TimeZone.getTimeZone("Asia/Shanghai");
+
+  private static EventModel event(long start, long end) {
+    EventModel event = new EventModel();
+    event.setDtstart(start);
+    event.setDtend(end);
+    event.setEventStatus(1);
+    return event;
+  }
+
+  @Test
+  public void mergesOverlappingAndAdjacent() {
+    List<EventModel> events = new ArrayList<>();
+    events.add(event(30 * MINUTE, 60 * MINUTE));
+    events.add(event(10 * MINUTE, 40 * MINUTE));
+    events.add(event(60 * MINUTE, 70 * MINUTE)); // 与上一段首尾相接
+    events.add(event(100 * MINUTE, 100 * MINUTE)); // 零长度
+    events.add(event(150 * MINUTE, 300 * MINUTE)); // 超出时间段
+    FreeBusy freeBusy = FreeBusy.compute(0, 200 * MINUTE, events, SHANGHAI);
+
+    assertEquals(2, freeBusy.getBusyCount());
+    assertEquals(10 * MINUTE, freeBusy.getBusyBegin(0));
+    assertEquals(70 * MINUTE, freeBusy.getBusyEnd(0));
+    assertEquals(150 * MINUTE, freeBusy.getBusyBegin(1));
+    assertEquals(200 * MINUTE, freeBusy.getBusyEnd(1));
+
+    List<FreeBusy.Slot> free = freeBusy.getFreeSlots(30 * MINUTE);
+    assertEquals(1, free.size());
+    assertEquals(70 * MINUTE, free.get(0).getBegin());
+    assertEquals(150 * MINUTE, free.get(0).getEnd());
+    assertEquals(2, freeBusy.getFreeSlots(1).size());
+
+    assertTrue(freeBusy.isBusyAt(10 * MINUTE));
+    assertFalse(freeBusy.isBusyAt(70 * MINUTE));
+    assertEquals(70 * MINUTE, freeBusy.findFreeTime(20 * MINUTE, 30 * MINUTE));
+    assertEquals(0, freeBusy.findFreeTime(0, 10 * MINUTE));
+    assertEquals(-1, freeBusy.findFreeTime(0, 90 * MINUTE));
+  }
+
+  @Test
+  public void skipsFreeAndCanceledAndShiftsAllDay() {
+    List<EventModel> events = new ArrayList<>();
+    EventModel free = event(0, 60 * MINUTE);
+    free.setAvailability(1);
+    events.add(free);
+    EventModel canceled = event(0, 60 * MINUTE);
+    canceled.setEventStatus(2);
+    events.add(canceled);
+    long day = CalendarTimeUtils.toEpochDay(2019, 6, 10) * CalendarTimeUtils.MILLIS_PER_DAY;
+    EventModel allDay = event(day, day + CalendarTimeUtils.MILLIS_PER_DAY);
+    allDay.setAllDay(true);
+    events.add(allDay);
+
+    FreeBusy freeBusy = FreeBusy.compute(0, Long.MAX_VALUE, events, SHANGHAI);
+    assertEquals(1, freeBusy.getBusyCount());
+    long hours8 = 8 * 60 * MINUTE;
+    assertEquals(day - hours8, freeBusy.getBusyBegin(0));
+    assertEquals(day + CalendarTimeUtils.MILLIS_PER_DAY - hours8, freeBusy.getBusyEnd(0));
+  }
+
+  @Test
+  public void matchesBruteForce() {
+    Random random = new Random(24);
+    int minutes = 600;
+    for (int round = 0; round < 50; round++) {
+      List<EventModel> events = new ArrayList<>();
+      boolean[] busy = new boolean[minutes];
+      int count = random.nextInt(20);
+      for (int i = 0; i < count; i++) {
+        int start = random.nextInt(minutes);
+        int end = start + random.nextInt(60);
+        events.add(event(start * MINUTE, end * MINUTE));
+        for (int m = start; m < Math.min(end, minutes); m++) {
+          busy[m] = true;
+        }
+      }
+      FreeBusy freeBusy = FreeBusy.compute(0, minutes * MINUTE, events, SHANGHAI);
+      for (int m = 0; m < minutes; m++) {
+        assertEquals(busy[m], freeBusy.isBusyAt(m * MINUTE));
+      }
+      int expected = 0;
+      for (int m = 0; m < minutes; m++) {
+        if (!busy[m] && (m == 0 || busy[m - 1])) {
+          expected++;
+        }
+      }
+      assertEquals(expected, freeBusy.getFreeSlots(1).size());
+    }
+  }
+}
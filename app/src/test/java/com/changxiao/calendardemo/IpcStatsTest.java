@@ -0,0 +1,53 @@
+package com.changxiao.calendardemo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * IpcStats 单元测试：IPC 记在最外层接口上
+ */
+public class IpcStatsTest {
+
+  @Test
+  public void recordsOnOutermostOperation() {
+    IpcStats stats = new IpcStats();
+    CalendarOperation outer = stats.enter(CalendarOperation.BUILD_INTERVAL_INDEX);
+    stats.record(IpcStats.Kind.QUERY);
+    CalendarOperation inner = stats.enter(CalendarOperation.QUERY_CALENDAR_EVENTS);
+    stats.record(IpcStats.Kind.QUERY);
+    stats.exit(inner);
+    stats.exit(outer);
+
+    assertEquals(2, stats.getRoundTrips(CalendarOperation.BUILD_INTERVAL_INDEX));
+    assertEquals(2, stats.getCount(CalendarOperation.BUILD_INTERVAL_INDEX, IpcStats.Kind.QUERY));
+    assertEquals(1, stats.getCalls(CalendarOperation.BUILD_INTERVAL_INDEX));
+    assertEquals(0, stats.getRoundTrips(CalendarOperation.QUERY_CALENDAR_EVENTS));
+    assertEquals(0, stats.getCalls(CalendarOperation.QUERY_CALENDAR_EVENTS));
+  }
+
+  @Test
+  public void recordsOutsideOperationAsOther() {
+    IpcStats stats = new IpcStats();
+    CalendarOperation outer = stats.enter(CalendarOperation.UPDATE_EVENT);
+    stats.record(IpcStats.Kind.UPDATE);
+    stats.exit(outer);
+    stats.record(IpcStats.Kind.APPLY_BATCH);
+
+    assertEquals(1, stats.getCount(CalendarOperation.UPDATE_EVENT, IpcStats.Kind.UPDATE));
+    assertEquals(1, stats.getCount(CalendarOperation.OTHER, IpcStats.Kind.APPLY_BATCH));
+    assertEquals(2, stats.getTotalRoundTrips());
+  }
+
+  @Test
+  public void resetClearsCounts() {
+    IpcStats stats = new IpcStats();
+    CalendarOperation outer = stats.enter(CalendarOperation.ADD_CALENDAR_EVENT);
+    stats.record(IpcStats.Kind.APPLY_BATCH);
+    stats.exit(outer);
+    stats.reset();
+
+    assertEquals(0, stats.getTotalRoundTrips());
+    assertEquals(0, stats.getCalls(CalendarOperation.ADD_CALENDAR_EVENT));
+  }
+}
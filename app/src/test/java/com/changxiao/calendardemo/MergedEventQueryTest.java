@@ -0,0 +1,107 @@
+package com.changxiao.calendardemo;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.provider.CalendarContract;
+import android.provider.CalendarContract.Events;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * 多日历并发查询的归并顺序，provider 使用内存中的 FakeCalendarProvider
+ * FakeCalendarProvider 不支持排序和 keyset 条件，每个日历的事件按开始时间顺序插入，且不超过一页
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MergedEventQueryTest {
+
+  private static final long START = 1556640000000L;
+  private static final long HOUR = 3600000L;
+
+  private Context mContext;
+  private CalendarManager mManager;
+
+  @Before
+  public void setUp() {
+    mContext = RuntimeEnvironment.application;
+    Robolectric.buildContentProvider(FakeCalendarProvider.class).create(CalendarContract.AUTHORITY);
+    mManager = CalendarManager.getInstance();
+  }
+
+  private void insert(long calendarId, String title, long dtstart) {
+    ContentValues values = new ContentValues();
+    values.put(Events.CALENDAR_ID, calendarId);
+    values.put(Events.TITLE, title);
+    values.put(Events.DTSTART, dtstart);
+    values.put(Events.DTEND, dtstart + HOUR);
+    mContext.getContentResolver().insert(Events.CONTENT_URI, values);
+  }
+
+  @Test
+  public void mergesCalendarsByStartTime() {
+    insert(1, "a1", START);
+    insert(1, "a2", START + 3 * HOUR);
+    insert(2, "b1", START + HOUR);
+    insert(2, "b2", START + 3 * HOUR);
+    insert(3, "c1", START + 2 * HOUR);
+
+    MergedEventQuery query = mManager.queryEventsMerged(mContext, new long[]{ 1, 2, 3 }, Long.MIN_VALUE, Long.MAX_VALUE, 10);
+    List<String> titles = new ArrayList<>();
+    for (EventModel event : query) {
+      titles.add(event.getTitle());
+    }
+    // 开始时间相同时按日历id
+    assertEquals("[a1, b1, c1, a2, b2]", titles.toString());
+    assertFalse(query.hasNext());
+  }
+
+  @Test
+  public void pagesAcrossCalendars() {
+    insert(1, "a1", START);
+    insert(2, "b1", START + HOUR);
+    insert(2, "b2", START + 2 * HOUR);
+
+    MergedEventQuery query = mManager.queryEventsMerged(mContext, new long[]{ 1, 2 }, Long.MIN_VALUE, Long.MAX_VALUE, 2);
+    List<EventModel> page = query.nextPage();
+    assertEquals(2, page.size());
+    assertEquals("a1", page.get(0).getTitle());
+    assertEquals("b1", page.get(1).getTitle());
+    query.cancel();
+    assertFalse(query.hasNext());
+    assertTrue(query.nextPage().isEmpty());
+  }
+
+  @Test
+  public void moreCalendarsThanExecutorQueue() {
+    // 日历数超过共用线程池的队列容量，预取排队提交，不会被拒绝
+    int count = CalendarExecutor.DEFAULT_QUEUE_CAPACITY * 2;
+    long[] calendarIds = new long[count];
+    for (int i = 0; i < count; i++) {
+      calendarIds[i] = i + 1;
+      insert(i + 1, "e" + i, START + (count - i) * HOUR);
+    }
+
+    MergedEventQuery query = mManager.queryEventsMerged(mContext, calendarIds, Long.MIN_VALUE, Long.MAX_VALUE, 10);
+    long last = Long.MIN_VALUE;
+    int total = 0;
+    for (EventModel event : query) {
+      assertTrue(event.getDtstart() > last);
+      last = event.getDtstart();
+      total++;
+    }
+    assertEquals(count, total);
+  }
+
+  @Test
+  public void emptyCalendarSet() {
+    MergedEventQuery query = mManager.queryEventsMerged(mContext, new long[0], Long.MIN_VALUE, Long.MAX_VALUE, 10);
+    assertFalse(query.hasNext());
+  }
+}
@@ -0,0 +1,39 @@
+package com.changxiao.calendardemo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * MonthShardPolicy 单元测试
+ */
+public class MonthShardPolicyTest {
+
+  private static final long DAY = CalendarTimeUtils.MILLIS_PER_DAY;
+  private static final long MAY_1 = CalendarTimeUtils.toEpochDay(2019, 5, 1) * DAY;
+  private static final long JUN_1 = CalendarTimeUtils.toEpochDay(2019, 6, 1) * DAY;
+
+  private final MonthShardPolicy mPolicy = new MonthShardPolicy();
+
+  @Test
+  public void routesEventsWithinOneUtcMonth() {
+    assertEquals("201905", mPolicy.getShardKey(null, MAY_1, MAY_1 + 3600000));
+    // 结束时间恰好为下个月零点，仍属于本月（如5月31日的全天事件）
+    assertEquals("201905", mPolicy.getShardKey(null, JUN_1 - DAY, JUN_1));
+    assertEquals("201906", mPolicy.getShardKey(null, JUN_1, JUN_1));
+    // 跨月的事件写入默认日历
+    assertNull(mPolicy.getShardKey(null, JUN_1 - 3600000, JUN_1 + 3600000));
+  }
+
+  @Test
+  public void prunesMonthsOutsideRange() {
+    assertTrue(mPolicy.mayContain("201905", MAY_1, MAY_1 + 1));
+    assertTrue(mPolicy.mayContain("201905", MAY_1 - DAY, MAY_1 + 1));
+    assertFalse(mPolicy.mayContain("201905", JUN_1, JUN_1 + DAY));
+    assertFalse(mPolicy.mayContain("201905", MAY_1 - DAY, MAY_1));
+    assertTrue(mPolicy.mayContain("201912", CalendarTimeUtils.toEpochDay(2019, 12, 31) * DAY, Long.MAX_VALUE));
+    assertFalse(mPolicy.mayContain("201912", CalendarTimeUtils.toEpochDay(2020, 1, 1) * DAY, Long.MAX_VALUE));
+    // 不认识的分片不能排除
+    assertTrue(mPolicy.mayContain("other", JUN_1, JUN_1 + DAY));
+  }
+}
@@ -0,0 +1,148 @@
+package com.changxiao.calendardemo;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.CalendarContract;
+import android.provider.CalendarContract.Events;
+import android.provider.CalendarContract.Reminders;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * ReminderScheduler 的加载、提前时间修改后的重新调度，全天事件按用户时区的零点提醒
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ReminderSchedulerTest {
+
+  private static final long MINUTE = 60 * 1000;
+  private static final long HOUR = 60 * MINUTE;
+  private static final long TIMEOUT = 5000;
+
+  private Context mContext;
+  private CalendarManager mManager;
+  private ReminderScheduler mScheduler;
+  private TimeZone mDefaultZone;
+
+  @Before
+  public void setUp() {
+    // 与UTC有时差的时区，全天事件的UTC零点和当地零点不同
+    mDefaultZone = TimeZone.getDefault();
+    TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+    CalendarTimeUtils.resetDefaultTimeZone();
+    mContext = RuntimeEnvironment.application;
+    Robolectric.buildContentProvider(FakeCalendarProvider.class).create(CalendarContract.AUTHORITY).get();
+    mManager = CalendarManager.getInstance();
+    mManager.init(mContext);
+    mScheduler = new ReminderScheduler(mManager, mContext);
+  }
+
+  @After
+  public void tearDown() {
+    mScheduler.stop();
+    TimeZone.setDefault(mDefaultZone);
+    CalendarTimeUtils.resetDefaultTimeZone();
+  }
+
+  private void addEvent(String title, long start, long end, boolean allDay, int minutes) {
+    CalendarRemindModel model = new CalendarRemindModel();
+    model.setTitle(title);
+    model.setStartDate(start);
+    model.setEndDate(end);
+    model.setAllDay(allDay ? 1 : 0);
+    model.setHasAlarm(1);
+    ReminderModel reminder = new ReminderModel();
+    reminder.setMinutes(minutes);
+    reminder.setMethod(Reminders.METHOD_ALERT);
+    List<ReminderModel> reminders = new ArrayList<>();
+    reminders.add(reminder);
+    model.setReminders(reminders);
+    assertTrue(mManager.addCalendarEvent(mContext, model));
+  }
+
+  private long query(Uri uri, String column, String selection, String arg) {
+    Cursor cursor = mContext.getContentResolver().query(uri, new String[]{ column }, selection, new String[]{ arg }, null);
+    try {
+      assertTrue(cursor.moveToFirst());
+      return cursor.getLong(0);
+    } finally {
+      cursor.close();
+    }
+  }
+
+  private long eventIdOf(String title) {
+    return query(Events.CONTENT_URI, Events._ID, Events.TITLE + "=?", title);
+  }
+
+  private long dtstartOf(String title) {
+    return query(Events.CONTENT_URI, Events.DTSTART, Events.TITLE + "=?", title);
+  }
+
+  private long reminderIdOf(String title) {
+    return query(Reminders.CONTENT_URI, Reminders._ID, Reminders.EVENT_ID + "=?", String.valueOf(eventIdOf(title)));
+  }
+
+  /** 等待调度线程处理 */
+  private void awaitFireTime(long reminderId, long fireTime) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (mScheduler.getFireTime(reminderId) != fireTime) {
+      assertTrue("timeout waiting for " + fireTime, System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void loadSchedulesRemindersNotYetDue() {
+    long now = System.currentTimeMillis();
+    addEvent("future", now + 2 * HOUR, now + 3 * HOUR, false, 10);
+    addEvent("past", now - 2 * HOUR, now - HOUR, false, 10);
+
+    mScheduler.load();
+    assertTrue(mScheduler.isLoaded());
+    assertEquals(1, mScheduler.getScheduledCount());
+    assertEquals(dtstartOf("future") - 10 * MINUTE, mScheduler.getFireTime(reminderIdOf("future")));
+    assertEquals(-1, mScheduler.getFireTime(reminderIdOf("past")));
+  }
+
+  @Test
+  public void reminderUpdateReschedules() throws Exception {
+    long now = System.currentTimeMillis();
+    addEvent("meeting", now + 2 * HOUR, now + 3 * HOUR, false, 10);
+    mScheduler.load();
+    long reminderId = reminderIdOf("meeting");
+
+    ReminderModel reminder = new ReminderModel();
+    reminder.setId(reminderId);
+    reminder.setEventId(eventIdOf("meeting"));
+    reminder.setMinutes(30);
+    reminder.setMethod(Reminders.METHOD_ALERT);
+    mScheduler.onReminderUpdated(reminder);
+
+    awaitFireTime(reminderId, dtstartOf("meeting") - 30 * MINUTE);
+    assertEquals(1, mScheduler.getScheduledCount());
+  }
+
+  @Test
+  public void allDayReminderFiresBeforeLocalMidnight() {
+    long start = System.currentTimeMillis() + 3 * CalendarTimeUtils.MILLIS_PER_DAY;
+    addEvent("holiday", start, start, true, 60);
+    // 存储为UTC零点
+    long dtstart = dtstartOf("holiday");
+    assertEquals(0, dtstart % CalendarTimeUtils.MILLIS_PER_DAY);
+
+    mScheduler.load();
+    long localMidnight = CalendarTimeUtils.allDayToLocal(dtstart, TimeZone.getTimeZone("America/Los_Angeles"));
+    assertNotEquals(dtstart, localMidnight);
+    assertEquals(localMidnight - HOUR, mScheduler.getFireTime(reminderIdOf("holiday")));
+  }
+}
@@ -0,0 +1,105 @@
+package com.changxiao.calendardemo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * TimingWheel 单元测试
+ */
+public class TimingWheelTest {
+
+  private static final long TICK = 1000;
+
+  @Test
+  public void expiresAtDeadlineNotBefore() {
+    TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+    TimingWheel.Timeout<String> timeout = new TimingWheel.Timeout<>("a");
+    wheel.schedule(timeout, 2500);
+    List<TimingWheel.Timeout<String>> expired = new ArrayList<>();
+
+    assertEquals(0, wheel.advance(2999, expired));
+    assertTrue(timeout.isScheduled());
+    assertEquals(1, wheel.advance(3000, expired));
+    assertSame(timeout, expired.get(0));
+    assertFalse(timeout.isScheduled());
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void cancelAndReschedule() {
+    TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+    TimingWheel.Timeout<String> a = new TimingWheel.Timeout<>("a");
+    TimingWheel.Timeout<String> b = new TimingWheel.Timeout<>("b");
+    wheel.schedule(a, 5000);
+    wheel.schedule(b, 5000);
+    assertTrue(wheel.cancel(a));
+    assertFalse(wheel.cancel(a));
+    // 重新添加时从原来的槽中移除
+    wheel.schedule(b, 3L * 24 * 3600 * 1000);
+    assertEquals(1, wheel.size());
+
+    List<TimingWheel.Timeout<String>> expired = new ArrayList<>();
+    assertEquals(0, wheel.advance(3L * 24 * 3600 * 1000 - 1, expired));
+    assertEquals(1, wheel.advance(3L * 24 * 3600 * 1000, expired));
+    assertSame(b, expired.get(0));
+  }
+
+  @Test
+  public void pastDeadlineExpiresOnNextTick() {
+    TimingWheel<String> wheel = new TimingWheel<>(TICK, 10000);
+    wheel.schedule(new TimingWheel.Timeout<>("late"), 5000);
+    List<TimingWheel.Timeout<String>> expired = new ArrayList<>();
+    assertEquals(0, wheel.advance(10999, expired));
+    assertEquals(1, wheel.advance(11000, expired));
+  }
+
+  @Test
+  public void beyondTopLevelDoesNotExpireEarly() {
+    TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+    long deadline = (1L << (TimingWheel.WHEEL_BITS * TimingWheel.LEVELS)) * TICK * 2 + 123456;
+    wheel.schedule(new TimingWheel.Timeout<>("far"), deadline);
+    List<TimingWheel.Timeout<String>> expired = new ArrayList<>();
+    assertEquals(0, wheel.advance(deadline - 1000, expired));
+    assertEquals(1, wheel.advance(deadline + 1000, expired));
+  }
+
+  @Test
+  public void randomScheduleMatchesSortedOrder() {
+    Random random = new Random(7);
+    long start = 1556640000000L;
+    TimingWheel<Long> wheel = new TimingWheel<>(TICK, start);
+    List<TimingWheel.Timeout<Long>> live = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      // 覆盖各层：几秒到几十天
+      long delay = TICK + (long) (Math.pow(random.nextDouble(), 4) * 40L * 24 * 3600 * 1000);
+      TimingWheel.Timeout<Long> timeout = new TimingWheel.Timeout<>((long) i);
+      wheel.schedule(timeout, start + delay);
+      live.add(timeout);
+    }
+    for (int i = 0; i < live.size(); i += 3) {
+      wheel.cancel(live.get(i));
+    }
+
+    List<TimingWheel.Timeout<Long>> expired = new ArrayList<>();
+    long now = start;
+    long lastDeadline = Long.MIN_VALUE;
+    while (wheel.size() > 0) {
+      now += TICK * (1 + random.nextInt(600));
+      int before = expired.size();
+      wheel.advance(now, expired);
+      for (int i = before; i < expired.size(); i++) {
+        long deadline = expired.get(i).getDeadline();
+        assertTrue(deadline <= now);
+        // 到期时间向上取整到刻度，同一次推进中按刻度顺序
+        assertTrue(deadline > now - TICK * 601);
+        assertTrue((deadline + TICK - 1) / TICK >= (lastDeadline + TICK - 1) / TICK);
+        lastDeadline = deadline;
+      }
+    }
+    assertEquals(live.size() - (live.size() + 2) / 3, expired.size());
+  }
+}
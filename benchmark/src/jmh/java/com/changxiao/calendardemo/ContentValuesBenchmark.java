@@ -0,0 +1,54 @@
+package com.changxiao.calendardemo;
+
+import android.content.ContentValues;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * model 经 codec 转 ContentValues，包括全天事件的时间计算
+ *
+ * Created by Chang.Xiao on 2019/5/24.
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+public class ContentValuesBenchmark {
+
+  private CalendarRemindModel timedModel;
+  private CalendarRemindModel allDayModel;
+  private EventModel eventModel;
+  private ReminderModel reminderModel;
+
+  @Setup
+  public void setup() {
+    timedModel = FakeCalendarData.remindModel(false);
+    allDayModel = FakeCalendarData.remindModel(true);
+    eventModel = FakeCalendarData.eventModel();
+    reminderModel = new ReminderModel();
+    reminderModel.setId(7);
+    reminderModel.setMinutes(10);
+    reminderModel.setMethod(1);
+  }
+
+  @Benchmark
+  public ContentValues remindModelTimed() {
+    return EventCodec.toInsertValues(1, timedModel);
+  }
+
+  @Benchmark
+  public ContentValues remindModelAllDay() {
+    return EventCodec.toInsertValues(1, allDayModel);
+  }
+
+  @Benchmark
+  public ContentValues eventModelUpdate() {
+    return EventCodec.toUpdateValues(eventModel);
+  }
+
+  @Benchmark
+  public ContentValues reminderModelUpdate() {
+    return ReminderCodec.toValues(reminderModel);
+  }
+}
@@ -0,0 +1,67 @@
+package com.changxiao.calendardemo;
+
+import android.database.MatrixCursor;
+import android.provider.CalendarContract.Events;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 事件游标行映射：原来 queryEvents 的逐行 getColumnIndex + String + HashMap 写法，与 EventRowMapper 对比
+ *
+ * Created by Chang.Xiao on 2019/5/24.
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+public class EventRowMappingBenchmark {
+
+  @Param({"100", "1000"})
+  public int rows;
+
+  private MatrixCursor cursor;
+
+  @Setup
+  public void setup() {
+    cursor = FakeCalendarData.eventsCursor(rows);
+  }
+
+  /**
+   * 优化前 queryEvents 循环中的读取方式，作为对照
+   */
+  @Benchmark
+  public List<Map<String, Object>> legacyGetColumnIndex() {
+    List<Map<String, Object>> result = new ArrayList<>();
+    cursor.moveToPosition(-1);
+    while (cursor.moveToNext()) {
+      Map<String, Object> event = new HashMap<>();
+      event.put("id", cursor.getString(cursor.getColumnIndex(Events._ID)));
+      event.put("calendarId", cursor.getString(cursor.getColumnIndex(Events.CALENDAR_ID)));
+      event.put("title", cursor.getString(cursor.getColumnIndex(Events.TITLE)));
+      event.put("description", cursor.getString(cursor.getColumnIndex(Events.DESCRIPTION)));
+      event.put("location", cursor.getString(cursor.getColumnIndex(Events.EVENT_LOCATION)));
+      event.put("startDate", cursor.getLong(cursor.getColumnIndex(Events.DTSTART)));
+      event.put("endDate", cursor.getLong(cursor.getColumnIndex(Events.DTEND)));
+      event.put("timeZone", cursor.getString(cursor.getColumnIndex(Events.EVENT_TIMEZONE)));
+      event.put("hasAlarm", cursor.getString(cursor.getColumnIndex(Events.HAS_ALARM)));
+      event.put("allDay", cursor.getString(cursor.getColumnIndex(Events.ALL_DAY)));
+      event.put("availability", cursor.getString(cursor.getColumnIndex(Events.AVAILABILITY)));
+      event.put("accessLevel", cursor.getString(cursor.getColumnIndex(Events.ACCESS_LEVEL)));
+      event.put("status", cursor.getString(cursor.getColumnIndex(Events.STATUS)));
+      result.add(event);
+    }
+    return result;
+  }
+
+  @Benchmark
+  public List<EventModel> eventRowMapper() {
+    cursor.moveToPosition(-1);
+    return new EventRowMapper(cursor).mapAll(cursor, new ArrayList<EventModel>(rows));
+  }
+}
@@ -0,0 +1,79 @@
+package com.changxiao.calendardemo;
+
+import android.database.MatrixCursor;
+
+/**
+ * 基准测试用的假数据，游标使用内存中的 MatrixCursor 代替日历 provider
+ *
+ * Created by Chang.Xiao on 2019/5/24.
+ *
+ * @version 1.0
+ */
+final class FakeCalendarData {
+
+  static final long BASE_TIME = 1556640000000L; // 2019-05-01 00:00:00 +08:00
+
+  private FakeCalendarData() {
+  }
+
+  /**
+   * 按 EVENTS_COLUMNS 生成事件游标
+   * @param rows
+   * @return
+   */
+  static MatrixCursor eventsCursor(int rows) {
+    MatrixCursor cursor = new MatrixCursor(CalendarManager.EVENTS_COLUMNS, rows);
+    for (int i = 0; i < rows; i++) {
+      long start = BASE_TIME + i * 3600000L;
+      cursor.addRow(new Object[] {
+          i + 1L,                        // _id
+          1L,                            // calendar_id
+          "提醒" + i,                     // title
+          "https://www.baidu.com/",       // description
+          i % 3 == 0 ? "会议室" : null,   // eventLocation
+          start,                         // dtstart
+          start + 1800000L,              // dtend
+          "Asia/Shanghai",               // eventTimezone
+          1,                             // hasAlarm
+          i % 10 == 0 ? 1 : 0,           // allDay
+          0,                             // availability
+          3,                             // accessLevel
+          1,                             // eventStatus
+      });
+    }
+    return cursor;
+  }
+
+  static CalendarRemindModel remindModel(boolean allDay) {
+    CalendarRemindModel model = new CalendarRemindModel();
+    model.setTitle("测试提醒title");
+    model.setDescription("https://www.baidu.com/");
+    model.setStartDate(BASE_TIME + 30000L);
+    model.setEndDate(BASE_TIME + 1830000L);
+    model.setLocation("");
+    model.setTimeZone("");
+    model.setHasAlarm(1);
+    model.setAllDay(allDay ? 1 : 0);
+    model.setEventStatus(1);
+    model.setAvailability(1);
+    model.setAccessLevel(3);
+    return model;
+  }
+
+  static EventModel eventModel() {
+    EventModel model = new EventModel();
+    model.setId(42);
+    model.setCalendarId(1);
+    model.setTitle("测试提醒title");
+    model.setDescription("https://www.baidu.com/");
+    model.setEventLocation("会议室");
+    model.setDtstart(BASE_TIME);
+    model.setDtend(BASE_TIME + 1800000L);
+    model.setEventTimezone("Asia/Shanghai");
+    model.setHasAlarm(true);
+    model.setAvailability(0);
+    model.setAccessLevel(3);
+    model.setEventStatus(1);
+    return model;
+  }
+}
@@ -0,0 +1,47 @@
+package com.changxiao.calendardemo;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * queryEvents 查询条件拼装，以及批量查询使用的 IN(...) 拼装
+ *
+ * Created by Chang.Xiao on 2019/5/24.
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+public class SelectionBenchmark {
+
+  private CalendarManager manager;
+  private EventModel model;
+  private List<Long> ids;
+
+  @Setup
+  public void setup() {
+    manager = CalendarManager.getInstance();
+    model = FakeCalendarData.eventModel();
+    ids = new ArrayList<>();
+    for (long i = 0; i < SelectionUtils.IN_CHUNK_SIZE; i++) {
+      ids.add(i + 1000);
+    }
+  }
+
+  @Benchmark
+  public void queryEventsSelection(Blackhole bh) {
+    List<String> args = new ArrayList<>();
+    bh.consume(manager.buildEventSelection(model, args));
+    bh.consume(args);
+  }
+
+  @Benchmark
+  public void inClauseChunk(Blackhole bh) {
+    bh.consume(SelectionUtils.in("event_id", ids.size()));
+    bh.consume(SelectionUtils.toArgs(ids, 0, ids.size()));
+  }
+}